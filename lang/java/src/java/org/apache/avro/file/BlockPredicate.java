@@ -0,0 +1,149 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.avro.file;
+
+/** A condition on entries that may be tested against the {@link
+ * BlockStatistics} of a block, to determine whether the block need be read.
+ * Tests are conservative: a block is only excluded if its statistics show
+ * that no entry can match, so entries of included blocks must still be
+ * checked.  A block with no statistics for a field, or with none at all, may
+ * always match.
+ * <p/>
+ * Comparisons never match null values.  Numbers are compared by value,
+ * whatever their type, and strings with {@link String#compareTo(String)}.
+ * Float and double values are ordered as by {@link
+ * Double#compare(double,double)}, so that NaN equals NaN and is greater than
+ * any number.
+ * @see DataFileReader#setBlockFilter(BlockPredicate)
+ */
+public abstract class BlockPredicate {
+
+  /** Return false only if no entry of a block with the given statistics can
+   * match. */
+  public abstract boolean mightMatch(BlockStatistics stats);
+
+  /** Entries whose field equals a value. */
+  public static BlockPredicate eq(String field, final Object value) {
+    return new Comparison(field, value) {
+      boolean mightMatch(Object min, Object max) {
+        return compare(min, value) <= 0 && compare(max, value) >= 0;
+      }
+    };
+  }
+
+  /** Entries whose field is less than a value. */
+  public static BlockPredicate lt(String field, final Object value) {
+    return new Comparison(field, value) {
+      boolean mightMatch(Object min, Object max) {
+        return compare(min, value) < 0;
+      }
+    };
+  }
+
+  /** Entries whose field is less than or equal to a value. */
+  public static BlockPredicate le(String field, final Object value) {
+    return new Comparison(field, value) {
+      boolean mightMatch(Object min, Object max) {
+        return compare(min, value) <= 0;
+      }
+    };
+  }
+
+  /** Entries whose field is greater than a value. */
+  public static BlockPredicate gt(String field, final Object value) {
+    return new Comparison(field, value) {
+      boolean mightMatch(Object min, Object max) {
+        return compare(max, value) > 0;
+      }
+    };
+  }
+
+  /** Entries whose field is greater than or equal to a value. */
+  public static BlockPredicate ge(String field, final Object value) {
+    return new Comparison(field, value) {
+      boolean mightMatch(Object min, Object max) {
+        return compare(max, value) >= 0;
+      }
+    };
+  }
+
+  /** Entries whose field is at least <i>low</i> and at most <i>high</i>. */
+  public static BlockPredicate between(String field, Object low, Object high) {
+    return and(ge(field, low), le(field, high));
+  }
+
+  /** Entries whose field is null. */
+  public static BlockPredicate isNull(final String field) {
+    return new BlockPredicate() {
+      public boolean mightMatch(BlockStatistics stats) {
+        return stats == null || !stats.hasField(field)
+          || stats.getNullCount(field) > 0;
+      }
+    };
+  }
+
+  /** Entries matching all of some predicates. */
+  public static BlockPredicate and(final BlockPredicate... predicates) {
+    return new BlockPredicate() {
+      public boolean mightMatch(BlockStatistics stats) {
+        for (BlockPredicate p : predicates)
+          if (!p.mightMatch(stats))
+            return false;
+        return true;
+      }
+    };
+  }
+
+  /** Entries matching any of some predicates. */
+  public static BlockPredicate or(final BlockPredicate... predicates) {
+    return new BlockPredicate() {
+      public boolean mightMatch(BlockStatistics stats) {
+        for (BlockPredicate p : predicates)
+          if (p.mightMatch(stats))
+            return true;
+        return false;
+      }
+    };
+  }
+
+  private abstract static class Comparison extends BlockPredicate {
+    private final String field;
+
+    Comparison(String field, Object value) {
+      if (value == null)
+        throw new IllegalArgumentException("Cannot compare with null: "+field);
+      this.field = field;
+    }
+
+    @Override
+    public boolean mightMatch(BlockStatistics stats) {
+      if (stats == null || !stats.hasField(field))
+        return true;
+      Object min = stats.getMin(field);
+      if (min == null)                            // all null
+        return false;
+      return mightMatch(min, stats.getMax(field));
+    }
+
+    abstract boolean mightMatch(Object min, Object max);
+
+    static int compare(Object a, Object b) {
+      return BlockStatistics.compare(a, b);
+    }
+  }
+}
@@ -0,0 +1,137 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.avro.file;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/** The minimum value, maximum value and number of nulls of some fields over
+ * the entries of a block.  Values are {@link Integer}, {@link Long}, {@link
+ * Float}, {@link Double}, {@link Boolean} or {@link String}, according to the
+ * type of the field.  Values are ordered as by {@link #compare(Object,Object)},
+ * so that a float or double NaN is greater than any other value: a block
+ * holding a NaN has a NaN maximum, and one whose only non-null values are
+ * NaN has a NaN minimum too.
+ * @see DataFileWriter#setBlockStatistics(String...)
+ * @see DataFileIndex#getBlockStatistics(int)
+ */
+public class BlockStatistics {
+  private final String[] fields;
+  private final long[] nullCounts;
+  private final Object[] mins;
+  private final Object[] maxs;
+
+  BlockStatistics(String[] fields) {
+    this.fields = fields;
+    this.nullCounts = new long[fields.length];
+    this.mins = new Object[fields.length];
+    this.maxs = new Object[fields.length];
+  }
+
+  /** Return the names of the fields with statistics. */
+  public List<String> getFields() {
+    return Collections.unmodifiableList(Arrays.asList(fields));
+  }
+
+  /** Return true if this has statistics for the named field. */
+  public boolean hasField(String field) {
+    return slot(field) >= 0;
+  }
+
+  /** Return the number of entries whose value for a field is null. */
+  public long getNullCount(String field) {
+    return nullCounts[checkedSlot(field)];
+  }
+
+  /** Return the least value of a field, or null if all are null. */
+  public Object getMin(String field) {
+    return mins[checkedSlot(field)];
+  }
+
+  /** Return the greatest value of a field, or null if all are null. */
+  public Object getMax(String field) {
+    return maxs[checkedSlot(field)];
+  }
+
+  /** Include a value of the field in the given slot. */
+  void add(int slot, Object value) {
+    if (value == null) {
+      nullCounts[slot]++;
+    } else {
+      if (mins[slot] == null || compare(value, mins[slot]) < 0)
+        mins[slot] = value;
+      if (maxs[slot] == null || compare(value, maxs[slot]) > 0)
+        maxs[slot] = value;
+    }
+  }
+
+  /** Set the statistics of the field in the given slot. */
+  void set(int slot, long nullCount, Object min, Object max) {
+    nullCounts[slot] = nullCount;
+    mins[slot] = min;
+    maxs[slot] = max;
+  }
+
+  int slot(String field) {
+    for (int i = 0; i < fields.length; i++)
+      if (fields[i].equals(field))
+        return i;
+    return -1;
+  }
+
+  private int checkedSlot(String field) {
+    int slot = slot(field);
+    if (slot < 0)
+      throw new IllegalArgumentException("No statistics for field: " + field);
+    return slot;
+  }
+
+  /** Compare two statistics values.  Numbers of different types are compared
+   * by value, and strings with any {@link CharSequence}.  Floating point
+   * values are ordered as by {@link Double#compare(double,double)}, which
+   * places NaN above every other value and equal to itself. */
+  static int compare(Object a, Object b) {
+    if (a instanceof Number && b instanceof Number) {
+      if (a instanceof Float || a instanceof Double
+          || b instanceof Float || b instanceof Double)
+        return Double.compare(((Number)a).doubleValue(),
+                              ((Number)b).doubleValue());
+      long x = ((Number)a).longValue();
+      long y = ((Number)b).longValue();
+      return x < y ? -1 : (x == y ? 0 : 1);
+    }
+    if (a instanceof CharSequence && b instanceof CharSequence)
+      return a.toString().compareTo(b.toString());
+    if (a instanceof Boolean && b instanceof Boolean)
+      return ((Boolean)a).compareTo((Boolean)b);
+    throw new IllegalArgumentException("Cannot compare " + a + " with " + b);
+  }
+
+  @Override
+  public String toString() {
+    StringBuilder buffer = new StringBuilder("{");
+    for (int i = 0; i < fields.length; i++) {
+      if (i > 0)
+        buffer.append(", ");
+      buffer.append(fields[i]).append(": [").append(mins[i]).append(", ")
+        .append(maxs[i]).append("] nulls=").append(nullCounts[i]);
+    }
+    return buffer.append("}").toString();
+  }
+}
@@ -22,16 +22,27 @@ import java.nio.ByteBuffer;
 
 /** 
  * Interface for Avro-supported compression codecs for data files.
- *
- * This is currently exclusively an internal-facing API.
+ * <p/>
+ * Additional codecs may be provided by subclassing this and {@link
+ * CodecFactory}, then either registering the factory with {@link
+ * CodecFactory#addCodec(String, CodecFactory)} or naming it in a
+ * <tt>META-INF/services/org.apache.avro.file.CodecFactory</tt> resource, so
+ * that it is found by {@link java.util.ServiceLoader}.
+ * <p/>
+ * A codec instance is only used by one thread at a time, so may keep state,
+ * like buffers, between calls.  Buffers passed to and returned from codecs
+ * are always backed by an array.  A returned buffer may be overwritten by the
+ * next call to the same instance.
  */
-abstract class Codec {
+public abstract class Codec {
   /** Name of the codec; written to the file's metadata. */
-  abstract String getName();
+  public abstract String getName();
   /** Compresses the input data */
-  abstract ByteBuffer compress(ByteBuffer uncompressedData) throws IOException;
+  public abstract ByteBuffer compress(ByteBuffer uncompressedData)
+    throws IOException;
   /** Decompress the data  */
-  abstract ByteBuffer decompress(ByteBuffer compressedData) throws IOException;
+  public abstract ByteBuffer decompress(ByteBuffer compressedData)
+    throws IOException;
   /** 
    * Codecs must implement an equals() method.  Two codecs, A and B are equal
    * if: the result of A and B decompressing content compressed by A is the same
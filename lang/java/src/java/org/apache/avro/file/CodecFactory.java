@@ -17,14 +17,32 @@
  */
 package org.apache.avro.file;
 
-import java.util.HashMap;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
 import java.util.Map;
+import java.util.ServiceConfigurationError;
+import java.util.ServiceLoader;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.zip.Deflater;
 
 import org.apache.avro.AvroRuntimeException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
-/** Encapsulates the ability to specify and configure a compression codec. */
+/** Encapsulates the ability to specify and configure a compression codec.
+ * <p/>
+ * Besides the codecs built in, codecs are registered for every factory named
+ * in a <tt>META-INF/services/org.apache.avro.file.CodecFactory</tt> resource
+ * on the classpath.  Each such factory must have a public no-argument
+ * constructor, and is registered under the name of the codec it creates.
+ * Factories that cannot be loaded, or that name a built-in codec, are logged
+ * and skipped.
+ * @see java.util.ServiceLoader
+ */
 public abstract class CodecFactory {
+  private static final Logger LOG = LoggerFactory.getLogger(CodecFactory.class);
+
   /** Null codec, for no compression. */
   public static CodecFactory nullCodec() { 
     return NullCodec.OPTION; 
@@ -36,6 +54,12 @@ public abstract class CodecFactory {
     return new DeflateCodec.Option(compressionLevel); 
   };
   
+  /** Snappy codec.  This is implemented in Java, with no native code, and
+   * decompresses much faster than deflate, at some cost in compression. */
+  public static CodecFactory snappyCodec() {
+    return new SnappyCodec.Option();
+  }
+
   /** Creates internal Codec. */
   protected abstract Codec createInstance();
   
@@ -43,18 +67,53 @@ public abstract class CodecFactory {
    * Note that currently options (like compression level)
    * are not recoverable. */
   private static final Map<String, CodecFactory> REGISTERED = 
-    new HashMap<String, CodecFactory>();
+    new ConcurrentHashMap<String, CodecFactory>();
+
+  /** Names that loaded factories may not replace. */
+  private static final Collection<String> BUILT_IN =
+    Arrays.asList("null", "deflate", "snappy");
 
   private static final int DEFAULT_DEFLATE_LEVEL = Deflater.DEFAULT_COMPRESSION;
 
   static {
     addCodec("null", nullCodec());
     addCodec("deflate", deflateCodec(DEFAULT_DEFLATE_LEVEL));
+    addCodec("snappy", snappyCodec());
+    loadCodecs(CodecFactory.class.getClassLoader());
+  }
+
+  /** Adds each codec whose factory is named in a
+   * <tt>META-INF/services/org.apache.avro.file.CodecFactory</tt> resource
+   * visible to a class loader.  Codecs on the classpath are loaded
+   * automatically; this permits loading codecs from other class loaders.
+   * Factories that fail to load or name a built-in codec are skipped. */
+  public static void loadCodecs(ClassLoader loader) {
+    Iterator<CodecFactory> factories =
+      ServiceLoader.load(CodecFactory.class, loader).iterator();
+    while (true) {
+      try {
+        if (!factories.hasNext())
+          return;
+        CodecFactory factory = factories.next();
+        String name = factory.createInstance().getName();
+        if (BUILT_IN.contains(name))
+          LOG.warn("Ignoring "+factory.getClass().getName()
+                   +": cannot replace built-in codec "+name);
+        else
+          addCodec(name, factory);
+      } catch (ServiceConfigurationError e) {   // skip just this factory
+        LOG.warn("Could not load codec", e);
+      } catch (RuntimeException e) {
+        LOG.warn("Could not load codec", e);
+      } catch (LinkageError e) {
+        LOG.warn("Could not load codec", e);
+      }
+    }
   }
 
   /** Maps a codec name into a CodecOption. */
   public static CodecFactory fromString(String s) {
-    CodecFactory o = REGISTERED.get(s);
+    CodecFactory o = s == null ? null : REGISTERED.get(s);
     if (o == null) {
       throw new AvroRuntimeException("Unrecognized codec: " + s);
     }
@@ -0,0 +1,285 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.avro.file;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.avro.Schema;
+import org.apache.avro.io.BinaryDecoder;
+import org.apache.avro.io.BinaryEncoder;
+import org.apache.avro.io.DecoderFactory;
+import org.apache.avro.util.Utf8;
+
+/** An index of the blocks in a data file, giving the position, entry count
+ * and ordinal of the first entry of each block.  Permits {@link
+ * DataFileReader#seekToRecord(long)} to locate an entry by its ordinal with a
+ * binary search rather than a scan of the file.
+ * <p/>
+ * An index is written by {@link DataFileWriter} when configured with {@link
+ * DataFileWriter#setBlockIndex(OutputStream)}, conventionally to a sidecar
+ * file named by {@link #getIndexFile(File)}.  The index records the
+ * synchronization marker of its data file, so that a stale or mismatched
+ * index can be detected.
+ * <p/>
+ * If the writer was configured with {@link
+ * DataFileWriter#setBlockStatistics(String...)}, the index also holds {@link
+ * BlockStatistics} for each block, permitting {@link
+ * DataFileReader#setBlockFilter(BlockPredicate)} to skip blocks without
+ * reading them.
+ * @see DataFileReader#setBlockIndex(DataFileIndex)
+ */
+public class DataFileIndex {
+  private static final byte[] MAGIC = new byte[] {
+    (byte)'O', (byte)'b', (byte)'x', DataFileConstants.VERSION
+  };
+
+  private byte[] sync;
+  private int size;
+  private long[] offsets = new long[16];          // block positions
+  private long[] firsts = new long[17];           // first entry of each block
+  private String[] fields;                        // with statistics
+  private Schema.Type[] types;
+  private BlockStatistics[] statistics = new BlockStatistics[16];
+
+  DataFileIndex(byte[] sync) {
+    this(sync, new String[0], new Schema.Type[0]);
+  }
+
+  DataFileIndex(byte[] sync, String[] fields, Schema.Type[] types) {
+    this.sync = sync;
+    this.fields = fields;
+    this.types = types;
+  }
+
+  /** Return the conventional name of the index file for a data file. */
+  public static File getIndexFile(File dataFile) {
+    return new File(dataFile.getPath() + ".idx");
+  }
+
+  /** Read an index from a file. */
+  public static DataFileIndex read(File file) throws IOException {
+    InputStream in = new FileInputStream(file);
+    try {
+      return read(in);
+    } finally {
+      in.close();
+    }
+  }
+
+  /** Read an index from a stream. */
+  public static DataFileIndex read(InputStream in) throws IOException {
+    BinaryDecoder decoder =
+      DecoderFactory.defaultFactory().createBinaryDecoder(in, null);
+    byte[] magic = new byte[MAGIC.length];
+    decoder.readFixed(magic);
+    if (!Arrays.equals(MAGIC, magic))
+      throw new IOException("Not a data file index.");
+    byte[] sync = new byte[DataFileConstants.SYNC_SIZE];
+    decoder.readFixed(sync);
+    List<String> fields = new ArrayList<String>();
+    List<Schema.Type> types = new ArrayList<Schema.Type>();
+    for (long n = decoder.readArrayStart(); n != 0; n = decoder.arrayNext()) {
+      for (long i = 0; i < n; i++) {
+        fields.add(decoder.readString(null).toString());
+        types.add(Schema.Type.valueOf
+                  (decoder.readString(null).toString().toUpperCase()));
+      }
+    }
+    DataFileIndex index =
+      new DataFileIndex(sync, fields.toArray(new String[fields.size()]),
+                        types.toArray(new Schema.Type[types.size()]));
+    long offset = 0;
+    for (long n = decoder.readArrayStart(); n != 0; n = decoder.arrayNext()) {
+      for (long i = 0; i < n; i++) {
+        offset += decoder.readLong();             // offsets are delta-encoded
+        long count = decoder.readLong();
+        index.add(offset, count, index.readStatistics(decoder));
+      }
+    }
+    return index;
+  }
+
+  private BlockStatistics readStatistics(BinaryDecoder in) throws IOException {
+    if (in.readIndex() == 0)                      // not known
+      return null;
+    BlockStatistics stats = new BlockStatistics(fields);
+    for (int i = 0; i < fields.length; i++) {
+      long nullCount = in.readLong();
+      Object min = null, max = null;
+      if (in.readIndex() == 1) {
+        min = StatisticsCollector.read(types[i], in);
+        max = StatisticsCollector.read(types[i], in);
+      }
+      stats.set(i, nullCount, min, max);
+    }
+    return stats;
+  }
+
+  private void writeStatistics(BlockStatistics stats, BinaryEncoder out)
+    throws IOException {
+    if (stats == null) {
+      out.writeIndex(0);
+      return;
+    }
+    out.writeIndex(1);
+    for (int i = 0; i < fields.length; i++) {
+      out.writeLong(stats.getNullCount(fields[i]));
+      Object min = stats.getMin(fields[i]);
+      if (min == null) {
+        out.writeIndex(0);
+      } else {
+        out.writeIndex(1);
+        write(types[i], min, out);
+        write(types[i], stats.getMax(fields[i]), out);
+      }
+    }
+  }
+
+  private static void write(Schema.Type type, Object value, BinaryEncoder out)
+    throws IOException {
+    switch (type) {
+    case INT:     out.writeInt((Integer)value);         break;
+    case LONG:    out.writeLong((Long)value);           break;
+    case FLOAT:   out.writeFloat((Float)value);         break;
+    case DOUBLE:  out.writeDouble((Double)value);       break;
+    case BOOLEAN: out.writeBoolean((Boolean)value);     break;
+    case STRING:  out.writeString(new Utf8((String)value)); break;
+    default: throw new IllegalArgumentException("Unsupported type: " + type);
+    }
+  }
+
+  /** Write this index to a stream. */
+  void write(OutputStream out) throws IOException {
+    BinaryEncoder encoder = new BinaryEncoder(out);
+    encoder.writeFixed(MAGIC);
+    encoder.writeFixed(sync);
+    encoder.writeArrayStart();
+    encoder.setItemCount(fields.length);
+    for (int i = 0; i < fields.length; i++) {
+      encoder.startItem();
+      encoder.writeString(new Utf8(fields[i]));
+      encoder.writeString(new Utf8(types[i].name().toLowerCase()));
+    }
+    encoder.writeArrayEnd();
+    encoder.writeArrayStart();
+    encoder.setItemCount(size);
+    long offset = 0;
+    for (int i = 0; i < size; i++) {
+      encoder.startItem();
+      encoder.writeLong(offsets[i] - offset);
+      encoder.writeLong(firsts[i+1] - firsts[i]);
+      writeStatistics(statistics[i], encoder);
+      offset = offsets[i];
+    }
+    encoder.writeArrayEnd();
+    encoder.flush();
+  }
+
+  /** Add a block, given its position, entry count and statistics, which are
+   * null if not known. */
+  void add(long offset, long count, BlockStatistics stats) {
+    if (size == offsets.length) {
+      offsets = Arrays.copyOf(offsets, size * 2);
+      firsts = Arrays.copyOf(firsts, size * 2 + 1);
+      statistics = Arrays.copyOf(statistics, size * 2);
+    }
+    offsets[size] = offset;
+    statistics[size] = stats;
+    firsts[size+1] = firsts[size] + count;
+    size++;
+  }
+
+  /** Return the synchronization marker of the indexed file. */
+  byte[] getSync() { return sync; }
+
+  /** Return the number of blocks in the indexed file. */
+  public int getBlockCount() { return size; }
+
+  /** Return the number of entries in the indexed file. */
+  public long getRecordCount() { return firsts[size]; }
+
+  /** Return the position of a block, suitable for {@link
+   * DataFileReader#seek(long)}. */
+  public long getBlockOffset(int block) {
+    checkBlock(block);
+    return offsets[block];
+  }
+
+  /** Return the number of entries in a block. */
+  public long getBlockRecordCount(int block) {
+    checkBlock(block);
+    return firsts[block+1] - firsts[block];
+  }
+
+  /** Return the ordinal of the first entry in a block. */
+  public long getBlockFirstRecord(int block) {
+    checkBlock(block);
+    return firsts[block];
+  }
+
+  /** Return the names of the fields with {@link BlockStatistics}. */
+  public List<String> getStatisticsFields() {
+    return Collections.unmodifiableList(Arrays.asList(fields));
+  }
+
+  /** Return the statistics of a block, or null if they are not known, e.g.,
+   * for blocks copied from another file by {@link
+   * DataFileWriter#appendAllFrom(DataFileStream, boolean)}. */
+  public BlockStatistics getBlockStatistics(int block) {
+    checkBlock(block);
+    return statistics[block];
+  }
+
+  /** Return the block at a position, or -1 if no block starts there. */
+  int findBlockAt(long offset) {
+    int i = Arrays.binarySearch(offsets, 0, size, offset);
+    return i < 0 ? -1 : i;
+  }
+
+  /** Return the block containing the entry with the given ordinal. */
+  public int findBlock(long record) {
+    if (record < 0 || record >= getRecordCount())
+      throw new IndexOutOfBoundsException("Record " + record + " not in "
+                                          + getRecordCount() + " records.");
+    int lo = 0;
+    int hi = size - 1;
+    while (lo < hi) {                             // find last block <= record
+      int mid = (lo + hi + 1) >>> 1;
+      if (firsts[mid] <= record)
+        lo = mid;
+      else
+        hi = mid - 1;
+    }
+    return lo;
+  }
+
+  private void checkBlock(int block) {
+    if (block < 0 || block >= size)
+      throw new IndexOutOfBoundsException("Block " + block + " not in "
+                                          + size + " blocks.");
+  }
+
+}
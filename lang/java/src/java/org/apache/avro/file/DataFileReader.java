@@ -18,10 +18,13 @@
 package org.apache.avro.file;
 
 import java.io.IOException;
-import java.io.EOFException;
 import java.io.InputStream;
 import java.io.File;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
 
+import org.apache.avro.AvroRuntimeException;
+import org.apache.avro.io.BinaryDecoder;
 import org.apache.avro.io.DecoderFactory;
 import org.apache.avro.io.DatumReader;
 import static org.apache.avro.file.DataFileConstants.SYNC_SIZE;
@@ -32,6 +35,14 @@ import static org.apache.avro.file.DataFileConstants.SYNC_SIZE;
 public class DataFileReader<D> extends DataFileStream<D> {
   private SeekableInputStream sin;
   private long blockStart;
+  private MappedSeekableInput mapped;             // non-null if memory mapped
+  private DataFileIndex index;
+  private BlockPredicate filter;
+  private long splitEnd = -1;                     // -1 unless split
+
+  private static final int SYNC_SCAN_BUFFER_SIZE = 64 * 1024;
+  private byte[] scanBuffer;                      // used by sync(long)
+  private int[] syncSkip;
 
   /** Construct a reader for a file. */
   public DataFileReader(File file, DatumReader<D> reader) throws IOException {
@@ -43,6 +54,8 @@ public class DataFileReader<D> extends DataFileStream<D> {
     throws IOException {
     super(reader);
     this.sin = new SeekableInputStream(sin);
+    if (sin instanceof MappedSeekableInput)
+      this.mapped = (MappedSeekableInput)sin;
     initialize(this.sin);
   }
 
@@ -52,45 +65,185 @@ public class DataFileReader<D> extends DataFileStream<D> {
   public void seek(long position) throws IOException {
     sin.seek(position);
     vin = DecoderFactory.defaultFactory().createBinaryDecoder(this.sin, vin);
+    datumIn = null;                               // abandon any partial block
     blockRemaining = 0;
     blockStart = position;
   }
 
+  /** Use an index of this file's blocks, as written by {@link
+   * DataFileWriter#setBlockIndex(java.io.OutputStream)}, to support {@link
+   * #seekToRecord(long)}.
+   * @throws IOException if the index was not written for this file. */
+  public void setBlockIndex(DataFileIndex index) throws IOException {
+    if (!Arrays.equals(sync, index.getSync()))
+      throw new IOException("Index does not match this file.");
+    this.index = index;
+  }
+
+  /** Return the index of this file's blocks, or null if none has been set. */
+  public DataFileIndex getBlockIndex() { return index; }
+
+  /** Return the number of blocks in this file.  Requires a block index. */
+  public int getBlockCount() {
+    return requireIndex().getBlockCount();
+  }
+
+  /** Move to the entry with the given ordinal, so that it is returned by the
+   * next call to {@link #next()}.  Uses the block index to seek directly to
+   * the block containing the entry, then reads past the entries that precede
+   * it in that block.  Seeking to the number of entries in the file moves to
+   * its end.  Requires a block index.
+   * @see #setBlockIndex(DataFileIndex)
+   */
+  public void seekToRecord(long record) throws IOException {
+    DataFileIndex index = requireIndex();
+    if (record == index.getRecordCount()) {
+      seek(sin.length());
+      return;
+    }
+    int block = index.findBlock(record);
+    seek(index.getBlockOffset(block));
+    D reuse = null;
+    for (long i = index.getBlockFirstRecord(block); i < record; i++)
+      reuse = next(reuse);
+  }
+
+  /** Skip blocks whose {@link BlockStatistics} show that none of their
+   * entries can match a predicate.  Entries of other blocks are returned as
+   * usual, whether they match or not, so callers must still test each entry.
+   * Blocks without statistics are always read.  Requires a block index
+   * written with {@link DataFileWriter#setBlockStatistics(String...)}.  Pass
+   * null to read all blocks.
+   * @see #setBlockIndex(DataFileIndex)
+   */
+  public void setBlockFilter(BlockPredicate filter) {
+    if (filter != null && requireIndex().getStatisticsFields().isEmpty())
+      throw new AvroRuntimeException("Block index has no statistics.");
+    this.filter = filter;
+  }
+
+  /** Restrict this reader to the entries of a split of its file.  Moves to
+   * the first block of the split, after which {@link #hasNext()} returns
+   * false once past the split's end.  This is equivalent to calling {@link
+   * #sync(long)} with the split's start, then checking {@link
+   * #pastSync(long)} with its end before each call to {@link #next()}.
+   * @see DataFileSplit#getSplits(java.io.File, int)
+   */
+  public void setSplit(DataFileSplit split) throws IOException {
+    sync(split.getStart());
+    this.splitEnd = split.getEnd();
+  }
+
+  /** Stop at the end of any split and, when filtering, skip blocks that
+   * cannot match. */
+  @Override
+  boolean hasNextBlock() {
+    if ((filter == null && splitEnd < 0) || availableBlock)
+      return super.hasNextBlock();
+    try {
+      while (true) {
+        blockStart = position();                  // even if not read by next()
+        if (splitEnd >= 0 && pastSync(splitEnd))
+          return false;
+        long start = position();
+        if (!super.hasNextBlock())
+          return false;
+        if (filter == null)
+          return true;
+        int block = index.findBlockAt(start);
+        if (block < 0 || filter.mightMatch(index.getBlockStatistics(block)))
+          return true;
+        skipBlock();
+        blockRemaining = 0;
+      }
+    } catch (IOException e) {
+      throw new AvroRuntimeException(e);
+    }
+  }
+
+  private DataFileIndex requireIndex() {
+    if (index == null)
+      throw new AvroRuntimeException("No block index set.");
+    return index;
+  }
+
+  /** Return the position of the next byte to be read from the file. */
+  long position() throws IOException {
+    return sin.tell() - vin.inputStream().available();
+  }
+
   /** Move to the next synchronization point after a position. To process a
    * range of file entires, call this with the starting position, then check
    * {@link #pastSync(long)} with the end point before each call to {@link
    * #next()}. */
   public void sync(long position) throws IOException {
     seek(position);
-    try {
-      int i=0, b;
-      InputStream in = vin.inputStream();
-      vin.readFixed(syncBuffer);
-    do {
-      int j = 0;
-      for (; j < SYNC_SIZE; j++) {
-        if (sync[j] != syncBuffer[(i+j)%SYNC_SIZE])
-          break;
-      }
-      if (j == SYNC_SIZE) {                       // matched a complete sync
-        blockStart = position + i + SYNC_SIZE;
+    if (syncSkip == null)
+      initSyncScan();
+    long bufferStart = position;                  // file position of buffer
+    int length = 0;                               // bytes in buffer
+    while (true) {
+      int n = sin.read(scanBuffer, length, scanBuffer.length - length);
+      if (n <= 0)
+        break;
+      length += n;
+      int i = findSync(scanBuffer, length);
+      if (i >= 0) {                               // matched a complete sync
+        seek(bufferStart + i + SYNC_SIZE);
         return;
       }
-      b = in.read();
-      syncBuffer[i++%SYNC_SIZE] = (byte)b;
-    } while (b != -1);
-    } catch (EOFException e) {
-      // fall through
+      // retain a possible partial match at the end of the buffer
+      int keep = Math.min(length, SYNC_SIZE - 1);
+      System.arraycopy(scanBuffer, length - keep, scanBuffer, 0, keep);
+      bufferStart += length - keep;
+      length = keep;
     }
     // if no match or EOF set start to the end position
-      blockStart = sin.tell();
-    //System.out.println("block start location after EOF: " + blockStart );
-      return;
+    seek(sin.length());
+  }
+
+  /** Build the Boyer-Moore-Horspool shift table for this file's sync. */
+  private void initSyncScan() {
+    scanBuffer = new byte[SYNC_SCAN_BUFFER_SIZE];
+    syncSkip = new int[256];
+    Arrays.fill(syncSkip, SYNC_SIZE);
+    for (int i = 0; i < SYNC_SIZE - 1; i++)
+      syncSkip[sync[i] & 0xff] = SYNC_SIZE - 1 - i;
+  }
+
+  /** Return the index of the first sync in the first <i>length</i> bytes of
+   * <i>buffer</i>, or -1 if none.  Compares from the end of the sync marker,
+   * skipping ahead by as much as its length on a mismatch. */
+  private int findSync(byte[] buffer, int length) {
+    int last = SYNC_SIZE - 1;
+    for (int i = 0; i <= length - SYNC_SIZE;
+         i += syncSkip[buffer[i + last] & 0xff]) {
+      int j = last;
+      while (buffer[i + j] == sync[j]) {
+        if (j == 0)
+          return i;
+        j--;
+      }
+    }
+    return -1;
+  }
+
+  /** When uncompressed blocks are memory mapped, decode entries in place. */
+  @Override
+  BinaryDecoder nextBlockDecoder(BinaryDecoder reuse) throws IOException {
+    if (mapped != null && codec instanceof NullCodec) {
+      ByteBuffer data = mapped.getBuffer(position(), (int)blockSize);
+      if (data != null) {
+        skipBlock();
+        return DecoderFactory.defaultFactory().createBinaryDecoder(data, reuse);
+      }
+    }
+    return super.nextBlockDecoder(reuse);
   }
 
   @Override
   protected void blockFinished() throws IOException {
-    blockStart = sin.tell() - vin.inputStream().available();
+    blockStart = position();
   }
 
   /** Return true if past the next synchronization point after a position. */ 
@@ -150,10 +303,10 @@ public class DataFileReader<D> extends DataFileStream<D> {
       long length = in.length();
       long remaining = length - position;
       if (remaining > skip) {
-        in.seek(skip);
+        in.seek(position + skip);
         return in.tell() - position;
       } else {
-        in.seek(remaining);
+        in.seek(length);
         return in.tell() - position;
     }
   }
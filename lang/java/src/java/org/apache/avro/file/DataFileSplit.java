@@ -0,0 +1,134 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.avro.file;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+/** A range of bytes of a data file, to be processed independently of other
+ * ranges, e.g., by another thread.  A block belongs to the split that
+ * contains the start of the synchronization marker that precedes it, so
+ * that the splits of a file together contain each of its entries exactly
+ * once, however the splits are chosen.  To read the entries of a split, pass
+ * it to {@link DataFileReader#setSplit(DataFileSplit)}.
+ * <p/>
+ * For example, to scan a file with a thread per split:
+ * <pre>
+ *   for (final DataFileSplit split : DataFileSplit.getSplits(file, threads))
+ *     executor.execute(new Runnable() {
+ *       public void run() {
+ *         DataFileReader&lt;D&gt; reader = new DataFileReader&lt;D&gt;(file, ...);
+ *         reader.setSplit(split);
+ *         for (D datum : reader)
+ *           ...
+ *       }
+ *     });
+ * </pre>
+ */
+public class DataFileSplit {
+  private final long start;
+  private final long length;
+
+  /** Construct a split, given its first byte and its length in bytes. */
+  public DataFileSplit(long start, long length) {
+    if (start < 0 || length < 0)
+      throw new IllegalArgumentException("Invalid split: "+start+"+"+length);
+    this.start = start;
+    this.length = length;
+  }
+
+  /** Return the position of the first byte of this split. */
+  public long getStart() { return start; }
+
+  /** Return the number of bytes in this split. */
+  public long getLength() { return length; }
+
+  /** Return the position following the last byte of this split. */
+  public long getEnd() { return start + length; }
+
+  /** Divide a file into <i>count</i> splits of nearly equal length. */
+  public static List<DataFileSplit> getSplits(File file, int count) {
+    return getSplits(file.length(), count);
+  }
+
+  /** Divide <i>length</i> bytes into <i>count</i> splits of nearly equal
+   * length. */
+  public static List<DataFileSplit> getSplits(long length, int count) {
+    if (count <= 0)
+      throw new IllegalArgumentException("Invalid split count: " + count);
+    List<DataFileSplit> splits = new ArrayList<DataFileSplit>(count);
+    long start = 0;
+    for (int i = 1; i <= count; i++) {
+      long end = length / count * i + length % count * i / count;
+      splits.add(new DataFileSplit(start, end - start));
+      start = end;
+    }
+    return splits;
+  }
+
+  /** Divide an indexed file into at most <i>count</i> splits with nearly
+   * equal numbers of entries.  Splits end at block boundaries, so splits are
+   * balanced to within a block, and fewer than <i>count</i> splits are
+   * returned when the file has fewer blocks.
+   * @param index the index of the file's blocks
+   * @param length the length of the file
+   * @param count the maximum number of splits */
+  public static List<DataFileSplit> getSplits(DataFileIndex index,
+                                              long length, int count) {
+    if (count <= 0)
+      throw new IllegalArgumentException("Invalid split count: " + count);
+    List<DataFileSplit> splits = new ArrayList<DataFileSplit>(count);
+    long records = index.getRecordCount();
+    long start = 0;
+    int block = 0;
+    for (int i = 1; i < count; i++) {
+      long target = records / count * i + records % count * i / count;
+      while (block < index.getBlockCount()
+             && index.getBlockFirstRecord(block) < target)
+        block++;
+      if (block == index.getBlockCount())
+        break;
+      // end before the synchronization marker preceding the block
+      long end = index.getBlockOffset(block) - DataFileConstants.SYNC_SIZE;
+      if (end > start) {
+        splits.add(new DataFileSplit(start, end - start));
+        start = end;
+      }
+    }
+    splits.add(new DataFileSplit(start, length - start));
+    return splits;
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (!(o instanceof DataFileSplit)) return false;
+    DataFileSplit that = (DataFileSplit)o;
+    return this.start == that.start && this.length == that.length;
+  }
+
+  @Override
+  public int hashCode() {
+    return (int)(start ^ (start >>> 32)) * 31 + (int)(length ^ (length >>> 32));
+  }
+
+  @Override
+  public String toString() {
+    return "DataFileSplit[" + start + "+" + length + "]";
+  }
+}
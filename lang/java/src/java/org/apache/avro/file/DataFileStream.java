@@ -43,8 +43,8 @@ public class DataFileStream<D> implements Iterator<D>, Iterable<D>, Closeable {
 
   private Schema schema;
   private DatumReader<D> reader;
-  private long blockSize;
-  private boolean availableBlock = false;
+  long blockSize;
+  boolean availableBlock = false;
 
   /** Decoder on raw input stream.  (Used for metadata.) */
   BinaryDecoder vin;
@@ -57,7 +57,7 @@ public class DataFileStream<D> implements Iterator<D>, Iterable<D>, Closeable {
   long blockRemaining;                          // # entries remaining in block
   byte[] sync = new byte[DataFileConstants.SYNC_SIZE];
   byte[] syncBuffer = new byte[DataFileConstants.SYNC_SIZE];
-  private Codec codec;
+  Codec codec;
 
   /** Construct a reader for an input stream.  For file-based input, use 
    * {@link DataFileReader}.  This will buffer, wrapping with a 
@@ -119,6 +119,9 @@ public class DataFileStream<D> implements Iterator<D>, Iterable<D>, Closeable {
   /** Return the schema used in this file. */
   public Schema getSchema() { return schema; }
 
+  /** Return the {@link DatumReader} used to read entries from this file. */
+  DatumReader<D> getDatumReader() { return reader; }
+
   /** Return the value of a metadata property. */
   public byte[] getMeta(String key) {
     return meta.get(key);
@@ -158,12 +161,7 @@ public class DataFileStream<D> implements Iterator<D>, Iterable<D>, Closeable {
           }
         }
         if (hasNextBlock()) {
-          block = nextBlock(block);
-          ByteBuffer blockBuffer = ByteBuffer.wrap(block.data, 0, block.blockSize);
-          blockBuffer = codec.decompress(blockBuffer);
-          datumIn = DecoderFactory.defaultFactory().createBinaryDecoder(
-              blockBuffer.array(), blockBuffer.arrayOffset() +
-              blockBuffer.position(), blockBuffer.remaining(), datumIn);
+          datumIn = nextBlockDecoder(datumIn);
         }
       }
       return blockRemaining != 0;
@@ -223,6 +221,16 @@ public class DataFileStream<D> implements Iterator<D>, Iterable<D>, Closeable {
     }
   }
 
+  /** Read the next block and return a decoder for its entries. */
+  BinaryDecoder nextBlockDecoder(BinaryDecoder reuse) throws IOException {
+    block = nextBlock(block);
+    ByteBuffer blockBuffer = ByteBuffer.wrap(block.data, 0, block.blockSize);
+    blockBuffer = codec.decompress(blockBuffer);
+    return DecoderFactory.defaultFactory().createBinaryDecoder(
+        blockBuffer.array(), blockBuffer.arrayOffset() +
+        blockBuffer.position(), blockBuffer.remaining(), reuse);
+  }
+
   DataBlock nextBlock(DataBlock reuse) throws IOException {
     if (!hasNextBlock()) {
       throw new NoSuchElementException();
@@ -240,6 +248,16 @@ public class DataFileStream<D> implements Iterator<D>, Iterable<D>, Closeable {
     return reuse;
   }
 
+  /** Skip the data of the next block without reading it. */
+  void skipBlock() throws IOException {
+    if (!hasNextBlock()) {
+      throw new NoSuchElementException();
+    }
+    vin.skipFixed((int) blockSize);
+    skipSync();
+    availableBlock = false;
+  }
+
   void skipSync() throws IOException {
     vin.readFixed(syncBuffer);
     if (!Arrays.equals(syncBuffer, sync))
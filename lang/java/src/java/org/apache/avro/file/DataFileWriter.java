@@ -35,7 +35,12 @@ import java.rmi.server.UID;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.util.HashMap;
+import java.util.LinkedList;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
 
 import org.apache.avro.AvroRuntimeException;
 import org.apache.avro.Schema;
@@ -44,6 +49,7 @@ import org.apache.avro.generic.GenericDatumReader;
 import org.apache.avro.io.BinaryEncoder;
 import org.apache.avro.io.DatumWriter;
 import org.apache.avro.io.Encoder;
+import org.apache.avro.io.EncoderFactory;
 
 /** Stores in a file a sequence of data conforming to a schema.  The schema is
  * stored in the file with the data.  Each datum in a file is of the same
@@ -65,13 +71,34 @@ public class DataFileWriter<D> implements Closeable, Flushable {
   private long blockCount;                       // # entries in current block
 
   private NonCopyingByteArrayOutputStream buffer;
-  private Encoder bufOut;
+  private BinaryEncoder bufOut;
 
   private byte[] sync;                          // 16 random bytes
   private int syncInterval = DataFileConstants.DEFAULT_SYNC_INTERVAL;
 
   private boolean isOpen;
+  private OutputStream indexOut;
+  private DataFileIndex index;
+  private String[] statisticsFields;
+  private StatisticsCollector statistics;       // null unless collecting
+  private BlockStatistics blockStatistics;      // of the current block
   private Codec codec;
+  private CodecFactory codecFactory;
+
+  private Executor compressor;                  // null unless asynchronous
+  private int maxPendingBlocks;
+  private final LinkedList<PendingBlock> pendingBlocks =
+    new LinkedList<PendingBlock>();
+  private final LinkedList<NonCopyingByteArrayOutputStream> freeBuffers =
+    new LinkedList<NonCopyingByteArrayOutputStream>();
+
+  // codec instances hold compression state, so each thread needs its own
+  private final ThreadLocal<Codec> codecs = new ThreadLocal<Codec>() {
+    @Override
+    protected Codec initialValue() {
+      return codecFactory.createInstance();
+    }
+  };
 
   /** Construct a writer, not yet open. */
   public DataFileWriter(DatumWriter<D> dout) {
@@ -91,6 +118,7 @@ public class DataFileWriter<D> implements Closeable, Flushable {
    */
   public DataFileWriter<D> setCodec(CodecFactory c) {
     assertNotOpen();
+    this.codecFactory = c;
     this.codec = c.createInstance();
     setMetaInternal(DataFileConstants.CODEC, codec.getName());
     return this;
@@ -116,6 +144,78 @@ public class DataFileWriter<D> implements Closeable, Flushable {
     return this;
   }
 
+  /**
+   * Configures this writer to compress blocks asynchronously.  When a block
+   * is full it is handed to a task run by <i>executor</i> and a new block is
+   * begun, so that serialization of further data overlaps with compression.
+   * Compressed blocks are written to the file in order.  If
+   * <i>maxPendingBlocks</i> blocks are already awaiting compression, {@link
+   * #append(Object)} blocks until the oldest of them has been written.
+   * <p/>
+   * {@link #sync()}, {@link #flush()} and {@link #close()} wait for all
+   * pending blocks to be written.  The executor is not shut down when this
+   * writer is closed.  May not be reset after writes have begun.
+   *
+   * @param executor runs block compression tasks
+   * @param maxPendingBlocks
+   *   the maximum number of blocks awaiting compression, at least 1
+   * @return
+   *   this DataFileWriter
+   */
+  public DataFileWriter<D> setCompressionExecutor(Executor executor,
+                                                  int maxPendingBlocks) {
+    assertNotOpen();
+    if (maxPendingBlocks < 1) {
+      throw new IllegalArgumentException("Invalid maxPendingBlocks value: "
+                                         + maxPendingBlocks);
+    }
+    this.compressor = executor;
+    this.maxPendingBlocks = maxPendingBlocks;
+    return this;
+  }
+
+  /**
+   * Configures this writer to write an index of its blocks to the given
+   * stream when it is closed.  The index records the position and entry count
+   * of each block, permitting {@link DataFileReader#seekToRecord(long)}.
+   * Conventionally, this is written to the file named by {@link
+   * DataFileIndex#getIndexFile(File)}.  When appending to an existing file,
+   * its existing blocks are scanned to include them in the index.  The stream
+   * is closed when this writer is closed.  May not be reset after writes have
+   * begun.
+   *
+   * @param out the stream to write the index to
+   * @return
+   *   this DataFileWriter
+   */
+  public DataFileWriter<D> setBlockIndex(OutputStream out) {
+    assertNotOpen();
+    this.indexOut = out;
+    return this;
+  }
+
+  /**
+   * Configures this writer to record, in its block index, the minimum value,
+   * maximum value and number of nulls of the named fields over each block.
+   * These permit readers to skip blocks that cannot match a query, with
+   * {@link DataFileReader#setBlockFilter(BlockPredicate)}.  Fields must be
+   * top-level fields of a record schema, of type int, long, float, double,
+   * boolean or string, or a union of one of these with null.  Statistics are
+   * gathered from each entry's serialized form, at the cost of decoding the
+   * named fields again.  Requires {@link #setBlockIndex(OutputStream)}.  May
+   * not be reset after writes have begun.
+   *
+   * @param fields the names of the fields
+   * @return
+   *   this DataFileWriter
+   * @see DataFileIndex#getBlockStatistics(int)
+   */
+  public DataFileWriter<D> setBlockStatistics(String... fields) {
+    assertNotOpen();
+    this.statisticsFields = fields.length == 0 ? null : fields.clone();
+    return this;
+  }
+
   /** Open a new file for data matching a schema. */
   public DataFileWriter<D> create(Schema schema, File file) throws IOException {
     return create(schema, new FileOutputStream(file));
@@ -129,6 +229,7 @@ public class DataFileWriter<D> implements Closeable, Flushable {
     this.schema = schema;
     setMetaInternal(DataFileConstants.SCHEMA, schema.toString());
     this.sync = generateSync();
+    initIndex();
 
     init(outs);
 
@@ -165,30 +266,61 @@ public class DataFileWriter<D> implements Closeable, Flushable {
     byte[] codecBytes = this.meta.get(DataFileConstants.CODEC);
     if (codecBytes != null) {
       String strCodec = new String(codecBytes, "UTF-8");
-      this.codec = CodecFactory.fromString(strCodec).createInstance();
+      this.codecFactory = CodecFactory.fromString(strCodec);
     } else {
-      this.codec = CodecFactory.nullCodec().createInstance();
+      this.codecFactory = CodecFactory.nullCodec();
+    }
+    this.codec = codecFactory.createInstance();
+    initIndex();
+    if (index != null) {
+      long start = reader.position();
+      while (reader.hasNextBlock()) {             // index existing blocks
+        index.add(start, reader.blockRemaining, null);
+        reader.skipBlock();
+        start = reader.position();
+      }
     }
     raf.close();
 
+    long length = file.length();
     init(new FileOutputStream(file, true));
+    out.position = length;                        // positions are absolute
 
     return this;
   }
 
+  private void initIndex() {
+    if (statisticsFields != null) {
+      if (indexOut == null)
+        throw new AvroRuntimeException("Block statistics require an index.");
+      this.statistics = new StatisticsCollector(schema, statisticsFields);
+      this.blockStatistics = statistics.newStatistics();
+      this.index = new DataFileIndex(sync, statistics.getFields(),
+                                     statistics.getTypes());
+    } else if (indexOut != null) {
+      this.index = new DataFileIndex(sync);
+    }
+  }
+
   private void init(OutputStream outs) throws IOException {
     this.out = new BufferedFileOutputStream(outs);
     this.vout = new BinaryEncoder(out);
     dout.setSchema(schema);
-    buffer = new NonCopyingByteArrayOutputStream(
-        Math.min((int)(syncInterval * 1.25), Integer.MAX_VALUE/2 -1));
-    this.bufOut = new BinaryEncoder(buffer);
+    buffer = newBuffer();
+    this.bufOut = EncoderFactory.defaultFactory()
+      .createBinaryEncoder(buffer, null);
     if (this.codec == null) {
-      this.codec = CodecFactory.nullCodec().createInstance();
+      this.codecFactory = CodecFactory.nullCodec();
+      this.codec = codecFactory.createInstance();
     }
     this.isOpen = true;
   }
 
+  private NonCopyingByteArrayOutputStream newBuffer() {
+    return new NonCopyingByteArrayOutputStream(
+        Math.min((int)(syncInterval * 1.25), Integer.MAX_VALUE/2 -1));
+  }
+
   private static byte[] generateSync() {
     try {
       MessageDigest digester = MessageDigest.getInstance("MD5");
@@ -242,10 +374,19 @@ public class DataFileWriter<D> implements Closeable, Flushable {
   /** Append a datum to the file. */
   public void append(D datum) throws IOException {
     assertOpen();
+    int start = buffer.size();
     dout.write(datum, bufOut);
+    bufOut.flush();
+    if (statistics != null)
+      statistics.collect(buffer.getByteArray(), start, buffer.size() - start,
+                         blockStatistics);
     blockCount++;
-    if (buffer.size() >= syncInterval)
-      writeBlock();
+    if (buffer.size() >= syncInterval) {
+      if (compressor != null)
+        submitBlock();
+      else
+        writeBlock();
+    }
   }
 
   /**
@@ -289,31 +430,130 @@ public class DataFileWriter<D> implements Closeable, Flushable {
         ByteBuffer uncompressedData = otherCodec.decompress(ByteBuffer.wrap(
             nextBlockRaw.data, 0, nextBlockRaw.blockSize));
         ByteBuffer compressed = codec.compress(uncompressedData);
-        nextBlockRaw.data = compressed.array();
-        nextBlockRaw.blockSize = compressed.remaining();
-        writeRawBlock(nextBlockRaw);
+        // codecs reuse their output buffer, so don't read the next block to it
+        writeBlockBytes(nextBlockRaw.numEntries, compressed.array(),
+            compressed.position() + compressed.arrayOffset(),
+            compressed.remaining(), null);
       }
     }
   }
   
   private void writeRawBlock(DataBlock rawBlock) throws IOException {
-    vout.writeLong(rawBlock.numEntries);
-    vout.writeLong(rawBlock.blockSize);
-    vout.writeFixed(rawBlock.data, 0, rawBlock.blockSize);
+    writeBlockBytes(rawBlock.numEntries, rawBlock.data, 0, rawBlock.blockSize,
+                    null);
+  }
+
+  private void writeBlockBytes(long numEntries, byte[] data, int offset,
+                               int length, BlockStatistics stats)
+    throws IOException {
+    if (index != null)
+      index.add(out.tell(), numEntries, stats);
+    vout.writeLong(numEntries);
+    vout.writeLong(length);
+    vout.writeFixed(data, offset, length);
     vout.writeFixed(sync);
   }
   
   private void writeBlock() throws IOException {
+    if (compressor != null) {
+      submitBlock();
+      writePendingBlocks(0);
+      return;
+    }
     if (blockCount > 0) {
-      vout.writeLong(blockCount);
       ByteBuffer uncompressed = buffer.getByteArrayAsByteBuffer();
       ByteBuffer block = codec.compress(uncompressed);
-      vout.writeLong(block.remaining());
-      vout.writeFixed(block.array(), block.position() + block.arrayOffset(), 
-          block.remaining());
+      writeBlockBytes(blockCount, block.array(),
+          block.position() + block.arrayOffset(), block.remaining(),
+          nextBlockStatistics());
       buffer.reset();
       blockCount = 0;
-      vout.writeFixed(sync);
+    }
+  }
+
+  /** Hand the current block to the compressor and start a new one. */
+  private void submitBlock() throws IOException {
+    if (blockCount > 0) {
+      writePendingBlocks(maxPendingBlocks - 1);   // apply back-pressure
+      PendingBlock block =
+        new PendingBlock(blockCount, buffer, nextBlockStatistics());
+      compressor.execute(block.result);
+      pendingBlocks.add(block);
+      buffer = freeBuffers.isEmpty() ? newBuffer() : freeBuffers.removeFirst();
+      bufOut = EncoderFactory.defaultFactory()
+        .createBinaryEncoder(buffer, bufOut);
+      blockCount = 0;
+    }
+  }
+
+  /** Write compressed blocks in order, first waiting until no more than
+   * <i>max</i> remain pending. Blocks that have already finished compressing
+   * are also written. */
+  private void writePendingBlocks(int max) throws IOException {
+    while (!pendingBlocks.isEmpty()
+           && (pendingBlocks.size() > max
+               || pendingBlocks.getFirst().result.isDone())) {
+      PendingBlock block = pendingBlocks.removeFirst();
+      ByteBuffer compressed = block.get();
+      writeBlockBytes(block.numEntries, compressed.array(),
+          compressed.position() + compressed.arrayOffset(),
+          compressed.remaining(), block.statistics);
+      block.data.reset();
+      freeBuffers.add(block.data);
+    }
+  }
+
+  /** Return the statistics of the current block, starting new ones for the
+   * next. */
+  private BlockStatistics nextBlockStatistics() {
+    BlockStatistics result = blockStatistics;
+    if (statistics != null)
+      blockStatistics = statistics.newStatistics();
+    return result;
+  }
+
+  /** A block awaiting compression by the {@link #compressor}. */
+  private class PendingBlock implements Callable<ByteBuffer> {
+    private final long numEntries;
+    private final NonCopyingByteArrayOutputStream data;
+    private final BlockStatistics statistics;
+    private final FutureTask<ByteBuffer> result;
+
+    PendingBlock(long numEntries, NonCopyingByteArrayOutputStream data,
+                 BlockStatistics statistics) {
+      this.numEntries = numEntries;
+      this.data = data;
+      this.statistics = statistics;
+      this.result = new FutureTask<ByteBuffer>(this);
+    }
+
+    public ByteBuffer call() throws IOException {
+      ByteBuffer uncompressed = data.getByteArrayAsByteBuffer();
+      ByteBuffer compressed = codecs.get().compress(uncompressed);
+      if (compressed.array() == uncompressed.array())
+        return compressed;
+      // codecs reuse their output buffer, so copy it before the next block
+      byte[] copy = new byte[compressed.remaining()];
+      System.arraycopy(compressed.array(),
+          compressed.position() + compressed.arrayOffset(),
+          copy, 0, copy.length);
+      return ByteBuffer.wrap(copy);
+    }
+
+    ByteBuffer get() throws IOException {
+      try {
+        return result.get();
+      } catch (ExecutionException e) {
+        Throwable cause = e.getCause();
+        if (cause instanceof IOException)
+          throw (IOException)cause;
+        if (cause instanceof RuntimeException)
+          throw (RuntimeException)cause;
+        throw new AvroRuntimeException(cause);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new AvroRuntimeException(e);
+      }
     }
   }
 
@@ -336,6 +576,10 @@ public class DataFileWriter<D> implements Closeable, Flushable {
   /** Close the file. */
   public void close() throws IOException {
     flush();
+    if (index != null) {
+      index.write(indexOut);
+      indexOut.close();
+    }
     out.close();
     isOpen = false;
   }
@@ -366,6 +610,9 @@ public class DataFileWriter<D> implements Closeable, Flushable {
     ByteBuffer getByteArrayAsByteBuffer() {
       return ByteBuffer.wrap(buf, 0, count);
     }
+    byte[] getByteArray() {
+      return buf;
+    }
   }
 
 }
@@ -17,17 +17,12 @@
  */
 package org.apache.avro.file;
 
-import java.io.ByteArrayInputStream;
-import java.io.EOFException;
 import java.io.IOException;
-import java.io.InputStream;
 import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
 import java.util.zip.Deflater;
-import java.util.zip.DeflaterOutputStream;
 import java.util.zip.Inflater;
-import java.util.zip.InflaterInputStream;
-
-import org.apache.avro.file.DataFileWriter.NonCopyingByteArrayOutputStream;
 
 /** 
  * Implements DEFLATE (RFC1951) compression and decompression. 
@@ -38,6 +33,10 @@ import org.apache.avro.file.DataFileWriter.NonCopyingByteArrayOutputStream;
  * code here, by passing "true" as the "nowrap" option to
  * {@link Inflater} and {@link Deflater}, is using
  * RFC1951.
+ * <p/>
+ * The {@link Deflater}, {@link Inflater} and output buffer are reused for
+ * every block, so that, once the buffer has grown to fit the largest block,
+ * compressing and decompressing allocate nothing.
  */
 class DeflateCodec extends Codec {
   
@@ -54,7 +53,7 @@ class DeflateCodec extends Codec {
     }
   }
 
-  NonCopyingByteArrayOutputStream compressionBuffer;
+  private byte[] buffer = new byte[0];            // reused for results
   private Deflater deflater;
   private Inflater inflater;
   //currently only do 'nowrap' -- RFC 1951, not zlib
@@ -66,61 +65,61 @@ class DeflateCodec extends Codec {
   }
 
   @Override
-  String getName() {
+  public String getName() {
     return DataFileConstants.DEFLATE_CODEC;
   }
 
   @Override
-  ByteBuffer compress(ByteBuffer data) throws IOException {
-    if (compressionBuffer == null) {
-      compressionBuffer = new NonCopyingByteArrayOutputStream(
-          data.remaining());
-    }
+  public ByteBuffer compress(ByteBuffer data) throws IOException {
     if (deflater == null) {
       deflater = new Deflater(compressionLevel, nowrap);
     }
-    // Pass output through deflate
-    DeflaterOutputStream deflaterStream = 
-      new DeflaterOutputStream(compressionBuffer, deflater);
-    deflaterStream.write(data.array(),
-        data.position() + data.arrayOffset(),
-        data.limit() + data.arrayOffset());
-    deflaterStream.finish();
-    ByteBuffer result = compressionBuffer.getByteArrayAsByteBuffer();
+    int length = data.remaining();
+    // stored blocks cost 5 bytes per 16k, so this is usually enough
+    ensureCapacity(length + (length >> 12) + 64);
+    deflater.setInput(data.array(), data.arrayOffset() + data.position(),
+                      length);
+    deflater.finish();
+    int n = 0;
+    while (!deflater.finished()) {
+      if (n == buffer.length)
+        ensureCapacity(buffer.length * 2);
+      n += deflater.deflate(buffer, n, buffer.length - n);
+    }
     deflater.reset();
-    compressionBuffer.reset();
-    return result;
+    return ByteBuffer.wrap(buffer, 0, n);
   }
 
   @Override
-  ByteBuffer decompress(ByteBuffer data) throws IOException {
-    if (compressionBuffer == null) {
-      compressionBuffer = new NonCopyingByteArrayOutputStream(
-          data.remaining());
-    }
+  public ByteBuffer decompress(ByteBuffer data) throws IOException {
     if (inflater == null) {
       inflater = new Inflater(nowrap);
     }
-    InputStream uncompressed = new InflaterInputStream(
-        new ByteArrayInputStream(data.array(),
-            data.position() + data.arrayOffset(),
-            data.remaining()), inflater);
-    int read;
-    byte[] buff = new byte[2048];
+    // blocks from a file are usually alike, so start with the largest so far
+    ensureCapacity(data.remaining() * 4);
+    inflater.setInput(data.array(), data.arrayOffset() + data.position(),
+                      data.remaining());
+    int n = 0;
     try {
-      while (true) {
-        read = uncompressed.read(buff);
-        if (read < 0) break;
-        compressionBuffer.write(buff, 0, read);
-      } 
-    } catch (EOFException e) {
-      // sometimes InflaterInputStream.read
-      // throws this instead of returning -1
+      while (!inflater.finished()) {
+        if (n == buffer.length)
+          ensureCapacity(buffer.length * 2);
+        int read = inflater.inflate(buffer, n, buffer.length - n);
+        if (read == 0 && (inflater.needsInput() || inflater.needsDictionary()))
+          break;                                  // input ended early
+        n += read;
+      }
+    } catch (DataFormatException e) {
+      throw new IOException(e.getMessage());
+    } finally {
+      inflater.reset();
     }
-    ByteBuffer result = compressionBuffer.getByteArrayAsByteBuffer();
-    inflater.reset();
-    compressionBuffer.reset();
-    return result;
+    return ByteBuffer.wrap(buffer, 0, n);
+  }
+
+  private void ensureCapacity(int capacity) {
+    if (buffer.length < capacity)
+      buffer = Arrays.copyOf(buffer, Math.max(capacity, 1024));
   }
 
   @Override
@@ -0,0 +1,122 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.avro.file;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/** A {@link SeekableInput} that memory-maps a file.  Reads are served from
+ * the mapped pages without system calls.  When a {@link DataFileReader} reads
+ * an uncompressed file through this, entries are decoded directly from the
+ * mapped region rather than first being copied into a block buffer.
+ * <p/>
+ * Files larger than the region size are mapped as several regions.  The
+ * mapping reflects the length of the file when this is constructed. */
+public class MappedSeekableInput implements SeekableInput, Closeable {
+  /** The default size of each mapped region, 1GB. */
+  public static final int DEFAULT_REGION_SIZE = 1 << 30;
+
+  private final long length;
+  private final int regionSize;
+  private MappedByteBuffer[] regions;
+  private long position;
+
+  /** Map a file using the default region size. */
+  public MappedSeekableInput(File file) throws IOException {
+    this(file, DEFAULT_REGION_SIZE);
+  }
+
+  /** Map a file as regions of at most <i>regionSize</i> bytes.  Blocks that
+   * span regions are copied rather than decoded in place. */
+  public MappedSeekableInput(File file, int regionSize) throws IOException {
+    if (regionSize < 1)
+      throw new IllegalArgumentException("Invalid regionSize: " + regionSize);
+    this.regionSize = regionSize;
+    RandomAccessFile raf = new RandomAccessFile(file, "r");
+    try {
+      FileChannel channel = raf.getChannel();
+      this.length = channel.size();
+      this.regions = new MappedByteBuffer[(int)((length+regionSize-1)/regionSize)];
+      for (int i = 0; i < regions.length; i++) {
+        long start = (long)i * regionSize;
+        regions[i] = channel.map(FileChannel.MapMode.READ_ONLY, start,
+                                 Math.min(regionSize, length - start));
+      }
+    } finally {
+      raf.close();                                // mappings remain valid
+    }
+  }
+
+  public void seek(long p) throws IOException {
+    if (p < 0 || p > length)
+      throw new IOException("Illegal seek: " + p);
+    position = p;
+  }
+
+  public long tell() throws IOException { return position; }
+
+  public long length() throws IOException { return length; }
+
+  public int read(byte[] b, int off, int len) throws IOException {
+    if (regions == null)
+      throw new IOException("Closed");
+    if (position >= length)
+      return -1;
+    int read = 0;
+    while (read < len && position < length) {
+      ByteBuffer region = regions[(int)(position / regionSize)].duplicate();
+      region.position((int)(position % regionSize));
+      int n = Math.min(len - read, region.remaining());
+      region.get(b, off + read, n);
+      read += n;
+      position += n;
+    }
+    return read;
+  }
+
+  /** Return a read-only view of <i>length</i> bytes of the file starting at
+   * <i>start</i>, without copying, or null if that range spans regions. */
+  ByteBuffer getBuffer(long start, int length) throws IOException {
+    if (regions == null)
+      throw new IOException("Closed");
+    if (start < 0 || length < 0 || start + length > this.length)
+      throw new IOException("Illegal range: " + start + "+" + length);
+    if (length == 0)
+      return ByteBuffer.allocate(0);
+    int offset = (int)(start % regionSize);
+    ByteBuffer region = regions[(int)(start / regionSize)];
+    if (offset + length > region.limit())
+      return null;
+    ByteBuffer view = region.asReadOnlyBuffer();
+    view.position(offset);
+    view.limit(offset + length);
+    return view.slice();
+  }
+
+  /** Release references to the mapped regions.  The mapping itself is
+   * released when the regions are garbage collected. */
+  public void close() throws IOException {
+    regions = null;
+  }
+
+}
@@ -0,0 +1,227 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.avro.file;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+
+import org.apache.avro.AvroRuntimeException;
+import org.apache.avro.file.DataFileStream.DataBlock;
+import org.apache.avro.io.BinaryDecoder;
+import org.apache.avro.io.DatumReader;
+import org.apache.avro.io.DecoderFactory;
+
+/** Reads the entries of a data file, decompressing and decoding its blocks in
+ * parallel.  Blocks are read sequentially from an underlying {@link
+ * DataFileStream} (or {@link DataFileReader}) on the caller's thread, but
+ * each block is decompressed and its entries decoded by a task run on an
+ * {@link Executor}.  At most a configured number of blocks are outstanding at
+ * once.
+ * <p/>
+ * By default entries are returned in file order.  In unordered mode the
+ * entries of whichever block finishes decoding first are returned first,
+ * though the entries within a block are always returned in order.
+ * <p/>
+ * The {@link DatumReader} of the underlying file is shared by all decoding
+ * tasks, and so must support concurrent calls to {@link
+ * DatumReader#read(Object, org.apache.avro.io.Decoder)}, as {@link
+ * org.apache.avro.generic.GenericDatumReader} does unless it has been given
+ * {@link org.apache.avro.generic.GenericDatumReader#setStringCache string
+ * caches}, which are not thread-safe.  Entries are never reused.
+ * The executor is not shut down when this reader is closed.
+ * @see DataFileReader
+ */
+public class ParallelDataFileReader<D>
+  implements Iterator<D>, Iterable<D>, Closeable {
+
+  /** The default maximum number of blocks decoded concurrently. */
+  public static final int DEFAULT_MAX_PENDING_BLOCKS =
+    2 * Runtime.getRuntime().availableProcessors();
+
+  private final DataFileStream<D> in;
+  private final DatumReader<D> reader;
+  private final Executor executor;
+  private final int maxPendingBlocks;
+  private final boolean ordered;
+
+  private final LinkedList<Future<List<D>>> pending = // in file order
+    new LinkedList<Future<List<D>>>();
+  private final CompletionService<List<D>> completed;
+  private int pendingCount;
+  private Iterator<D> current;
+
+  // codec instances hold compression state, so each thread needs its own
+  private final ThreadLocal<Codec> codecs = new ThreadLocal<Codec>() {
+    @Override
+    protected Codec initialValue() {
+      return in.resolveCodec();
+    }
+  };
+
+  /** Construct a reader that returns entries in file order, keeping up to
+   * {@link #DEFAULT_MAX_PENDING_BLOCKS} blocks in flight. */
+  public ParallelDataFileReader(DataFileStream<D> in, Executor executor) {
+    this(in, executor, DEFAULT_MAX_PENDING_BLOCKS, true);
+  }
+
+  /** Construct a reader.
+   * @param in the file to read.  Entries should not be read from it directly
+   *   once this reader has been constructed.
+   * @param executor runs block decoding tasks.
+   * @param maxPendingBlocks the maximum number of blocks read ahead of the
+   *   caller.  This bounds memory use to roughly this many decoded blocks.
+   * @param ordered if true, entries are returned in file order.  If false,
+   *   blocks are returned in the order that they finish decoding.
+   */
+  public ParallelDataFileReader(DataFileStream<D> in, Executor executor,
+                                int maxPendingBlocks, boolean ordered) {
+    if (maxPendingBlocks < 1)
+      throw new IllegalArgumentException("Invalid maxPendingBlocks: "
+                                         + maxPendingBlocks);
+    this.in = in;
+    this.reader = in.getDatumReader();
+    this.executor = executor;
+    this.maxPendingBlocks = maxPendingBlocks;
+    this.ordered = ordered;
+    this.completed = ordered
+      ? null
+      : new ExecutorCompletionService<List<D>>(executor);
+  }
+
+  /** Returns true if entries are returned in file order. */
+  public boolean isOrdered() { return ordered; }
+
+  /** Returns an iterator over entries in this file.  Note that this iterator
+   * is shared with other users of this reader. */
+  public Iterator<D> iterator() { return this; }
+
+  /** True if more entries remain in this file. */
+  public boolean hasNext() {
+    try {
+      while (current == null || !current.hasNext()) {
+        fill();
+        if (pendingCount == 0)
+          return false;
+        Future<List<D>> next;
+        if (ordered) {
+          next = pending.removeFirst();
+        } else {
+          next = completed.take();
+          pending.remove(next);
+        }
+        pendingCount--;
+        current = getBlock(next).iterator();
+      }
+      return true;
+    } catch (IOException e) {
+      throw new AvroRuntimeException(e);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new AvroRuntimeException(e);
+    }
+  }
+
+  /** Read the next datum in the file.
+   * @throws NoSuchElementException if no more remain in the file.
+   */
+  public D next() {
+    if (!hasNext())
+      throw new NoSuchElementException();
+    return current.next();
+  }
+
+  /** Submit blocks for decoding until the limit on pending blocks is met. */
+  private void fill() throws IOException {
+    while (pendingCount < maxPendingBlocks && in.hasNextBlock()) {
+      // blocks are decoded concurrently with reading, so are never reused
+      BlockDecoder task = new BlockDecoder(in.nextBlock(null));
+      if (ordered) {
+        FutureTask<List<D>> future = new FutureTask<List<D>>(task);
+        executor.execute(future);
+        pending.add(future);
+      } else {
+        pending.add(completed.submit(task));      // kept to cancel on close
+      }
+      pendingCount++;
+    }
+  }
+
+  private List<D> getBlock(Future<List<D>> future)
+    throws IOException, InterruptedException {
+    try {
+      return future.get();
+    } catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof IOException)
+        throw (IOException)cause;
+      if (cause instanceof RuntimeException)
+        throw (RuntimeException)cause;
+      throw new AvroRuntimeException(cause);
+    }
+  }
+
+  /** Decompresses a block and decodes all of its entries. */
+  private class BlockDecoder implements Callable<List<D>> {
+    private final DataBlock block;
+
+    BlockDecoder(DataBlock block) { this.block = block; }
+
+    public List<D> call() throws IOException {
+      ByteBuffer data = codecs.get()
+        .decompress(ByteBuffer.wrap(block.data, 0, block.blockSize));
+      BinaryDecoder decoder = DecoderFactory.defaultFactory()
+        .createBinaryDecoder(data.array(), data.arrayOffset()+data.position(),
+                             data.remaining(), null);
+      List<D> result = new ArrayList<D>((int)block.numEntries);
+      for (long i = 0; i < block.numEntries; i++)
+        result.add(reader.read(null, decoder));
+      if (!decoder.isEnd())
+        throw new IOException("Block read partially, the data may be corrupt");
+      return result;
+    }
+  }
+
+  /** Not supported. */
+  public void remove() { throw new UnsupportedOperationException(); }
+
+  /** Cancel any pending blocks and close the underlying file. */
+  public void close() throws IOException {
+    for (Future<List<D>> future : pending)
+      future.cancel(false);
+    pending.clear();
+    if (completed != null)                        // drop finished blocks
+      while (completed.poll() != null) {}
+    pendingCount = 0;
+    current = null;
+    in.close();
+  }
+
+}
@@ -0,0 +1,282 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.avro.file;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+
+/**
+ * Implements the "snappy" codec: each block is compressed in the Snappy
+ * format, then followed by the 4-byte, big-endian CRC32 checksum of its
+ * uncompressed data.
+ * <p/>
+ * This is a pure Java implementation of the format, with no native
+ * dependencies.  Snappy is a byte-oriented LZ77 variant: a block is a
+ * sequence of literal runs and back-references into the block's own output,
+ * with no entropy coding.  It compresses less than deflate, but decompresses
+ * much faster.
+ */
+class SnappyCodec extends Codec {
+
+  static class Option extends CodecFactory {
+    @Override
+    protected Codec createInstance() {
+      return new SnappyCodec();
+    }
+  }
+
+  private static final int HASH_BITS = 14;
+  private static final int MIN_MATCH = 4;
+  private static final int MAX_OFFSET = 1 << 16;  // fits a 2-byte copy
+
+  private static final int LITERAL = 0;           // element tags
+  private static final int COPY_1_BYTE_OFFSET = 1;
+  private static final int COPY_2_BYTE_OFFSET = 2;
+  private static final int COPY_4_BYTE_OFFSET = 3;
+
+  private final CRC32 crc = new CRC32();
+  private int[] table;                            // positions by hash
+  private byte[] buffer = new byte[0];            // reused for results
+
+  @Override
+  public String getName() {
+    return DataFileConstants.SNAPPY_CODEC;
+  }
+
+  @Override
+  public ByteBuffer compress(ByteBuffer data) throws IOException {
+    byte[] in = data.array();
+    int start = data.arrayOffset() + data.position();
+    int length = data.remaining();
+    int max = 5 + 32 + length + length/6 + 4;     // worst case
+    if (buffer.length < max)
+      buffer = new byte[max];
+    int op = writeVarInt(length, buffer, 0);
+    op = compress(in, start, start + length, buffer, op);
+    crc.reset();
+    crc.update(in, start, length);
+    op = writeInt((int)crc.getValue(), buffer, op);
+    return ByteBuffer.wrap(buffer, 0, op);
+  }
+
+  /** Greedily replace each four or more bytes that repeat within the last
+   * 64KB with a copy, skipping ahead faster through incompressible data. */
+  private int compress(byte[] in, int start, int end, byte[] out, int op) {
+    if (table == null)
+      table = new int[1 << HASH_BITS];
+    Arrays.fill(table, -1);
+    int anchor = start;                           // start of pending literal
+    int ip = start;
+    int limit = end - MIN_MATCH;
+    while (ip <= limit) {
+      int bytes = getInt(in, ip);
+      int hash = (bytes * 0x1e35a7bd) >>> (32 - HASH_BITS);
+      int candidate = table[hash];
+      table[hash] = ip;
+      if (candidate >= 0 && ip - candidate < MAX_OFFSET
+          && getInt(in, candidate) == bytes) {
+        op = writeLiteral(in, anchor, ip - anchor, out, op);
+        int length = MIN_MATCH;
+        while (ip + length < end && in[candidate + length] == in[ip + length])
+          length++;
+        op = writeCopy(ip - candidate, length, out, op);
+        ip += length;
+        anchor = ip;
+      } else {
+        ip += 1 + ((ip - anchor) >>> 5);
+      }
+    }
+    return writeLiteral(in, anchor, end - anchor, out, op);
+  }
+
+  private static int writeLiteral(byte[] in, int start, int length,
+                                  byte[] out, int op) {
+    if (length == 0)
+      return op;
+    int n = length - 1;
+    if (n < 60) {
+      out[op++] = (byte)(LITERAL | n << 2);
+    } else {
+      int tag = op++;
+      int bytes = 0;
+      for (; n != 0; n >>>= 8, bytes++)           // little-endian length
+        out[op++] = (byte)n;
+      out[tag] = (byte)(LITERAL | (59 + bytes) << 2);
+    }
+    System.arraycopy(in, start, out, op, length);
+    return op + length;
+  }
+
+  private static int writeCopy(int offset, int length, byte[] out, int op) {
+    while (length >= 68) {                        // leave at least 4 bytes
+      op = writeCopy2(offset, 64, out, op);
+      length -= 64;
+    }
+    if (length > 64) {
+      op = writeCopy2(offset, 60, out, op);
+      length -= 60;
+    }
+    if (length < 12 && offset < 2048) {
+      out[op++] = (byte)(COPY_1_BYTE_OFFSET | (length - 4) << 2
+                         | (offset >>> 8) << 5);
+      out[op++] = (byte)offset;
+      return op;
+    }
+    return writeCopy2(offset, length, out, op);
+  }
+
+  private static int writeCopy2(int offset, int length, byte[] out, int op) {
+    out[op++] = (byte)(COPY_2_BYTE_OFFSET | (length - 1) << 2);
+    out[op++] = (byte)offset;
+    out[op++] = (byte)(offset >>> 8);
+    return op;
+  }
+
+  @Override
+  public ByteBuffer decompress(ByteBuffer data) throws IOException {
+    byte[] in = data.array();
+    int ip = data.arrayOffset() + data.position();
+    int end = ip + data.remaining() - 4;          // before the checksum
+    if (end < ip)
+      throw corrupt();
+
+    int length = 0;                               // uncompressed length
+    for (int shift = 0; ; shift += 7) {
+      if (ip >= end || shift > 28)
+        throw corrupt();
+      int b = in[ip++];
+      length |= (b & 0x7f) << shift;
+      if (b >= 0)
+        break;
+    }
+    if (length < 0)
+      throw corrupt();
+    if (buffer.length < length)
+      buffer = new byte[length];
+    byte[] out = buffer;
+
+    int op = 0;
+    while (ip < end) {
+      int tag = in[ip++] & 0xff;
+      int n, offset;
+      switch (tag & 3) {
+      case LITERAL:
+        n = tag >>> 2;
+        if (n >= 60) {
+          int bytes = n - 59;
+          if (end - ip < bytes)
+            throw corrupt();
+          n = 0;
+          for (int i = 0; i < bytes; i++)
+            n |= (in[ip++] & 0xff) << (i * 8);
+        }
+        n++;
+        if (n <= 0 || n > end - ip || n > length - op)
+          throw corrupt();
+        if (n > 16) {
+          System.arraycopy(in, ip, out, op, n);
+          ip += n;
+          op += n;
+        } else {
+          for (int to = op + n; op < to; )
+            out[op++] = in[ip++];
+        }
+        continue;
+      case COPY_1_BYTE_OFFSET:
+        if (end - ip < 1)
+          throw corrupt();
+        n = 4 + ((tag >>> 2) & 7);
+        offset = (tag >>> 5) << 8 | (in[ip++] & 0xff);
+        break;
+      case COPY_2_BYTE_OFFSET:
+        if (end - ip < 2)
+          throw corrupt();
+        n = 1 + (tag >>> 2);
+        offset = (in[ip] & 0xff) | (in[ip+1] & 0xff) << 8;
+        ip += 2;
+        break;
+      default:
+        if (end - ip < 4)
+          throw corrupt();
+        n = 1 + (tag >>> 2);
+        offset = getInt(in, ip);
+        ip += 4;
+        break;
+      }
+      if (offset <= 0 || offset > op || n > length - op)
+        throw corrupt();
+      if (n > 16 && offset >= n) {
+        System.arraycopy(out, op - offset, out, op, n);
+        op += n;
+      } else {                                    // short or overlapping
+        for (int from = op - offset, to = op + n; op < to; )
+          out[op++] = out[from++];
+      }
+    }
+    if (op != length)
+      throw corrupt();
+
+    crc.reset();
+    crc.update(out, 0, length);
+    int checksum = (in[end] & 0xff) << 24 | (in[end+1] & 0xff) << 16
+      | (in[end+2] & 0xff) << 8 | (in[end+3] & 0xff);
+    if (checksum != (int)crc.getValue())
+      throw new IOException("Checksum failure");
+    return ByteBuffer.wrap(out, 0, length);
+  }
+
+  private static IOException corrupt() {
+    return new IOException("Invalid snappy data, the data may be corrupt");
+  }
+
+  private static int getInt(byte[] b, int i) {    // little-endian
+    return (b[i] & 0xff) | (b[i+1] & 0xff) << 8
+      | (b[i+2] & 0xff) << 16 | (b[i+3] & 0xff) << 24;
+  }
+
+  private static int writeInt(int n, byte[] b, int i) { // big-endian
+    b[i++] = (byte)(n >>> 24);
+    b[i++] = (byte)(n >>> 16);
+    b[i++] = (byte)(n >>> 8);
+    b[i++] = (byte)n;
+    return i;
+  }
+
+  private static int writeVarInt(int n, byte[] b, int i) {
+    while ((n & ~0x7f) != 0) {
+      b[i++] = (byte)((n & 0x7f) | 0x80);
+      n >>>= 7;
+    }
+    b[i++] = (byte)n;
+    return i;
+  }
+
+  @Override
+  public int hashCode() {
+    return 3;
+  }
+
+  @Override
+  public boolean equals(Object other) {
+    if (this == other)
+      return true;
+    return (this.getClass() == other.getClass());
+  }
+}
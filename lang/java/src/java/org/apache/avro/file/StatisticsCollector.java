@@ -0,0 +1,140 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.avro.file;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.avro.Schema;
+import org.apache.avro.Schema.Field;
+import org.apache.avro.io.BinaryDecoder;
+import org.apache.avro.io.Decoder;
+import org.apache.avro.io.DecoderFactory;
+import org.apache.avro.io.parsing.SkipPlan;
+
+/** Gathers {@link BlockStatistics} for some top-level fields of records by
+ * decoding them from each record's serialized form, so that it works with
+ * any {@link org.apache.avro.io.DatumWriter}.  Other fields are skipped. */
+class StatisticsCollector {
+  private final String[] fields;                  // in the order requested
+  private final Schema.Type[] types;
+
+  // for each requested field, in the order written
+  private final SkipPlan[] skips;                 // preceding fields, or null
+  private final int[] slots;                      // index into fields
+  private final int[] nullBranches;               // -1 if not a union
+
+  private BinaryDecoder decoder;
+
+  /** Plan to collect statistics for the named fields of a record schema.
+   * @throws IllegalArgumentException if a field does not exist or is not of a
+   * supported type: int, long, float, double, boolean or string, or a union
+   * of one of these with null. */
+  StatisticsCollector(Schema schema, String[] fields) {
+    if (schema.getType() != Schema.Type.RECORD)
+      throw new IllegalArgumentException("Not a record: " + schema);
+    this.fields = fields;
+    this.types = new Schema.Type[fields.length];
+    int[] nullBranchBySlot = new int[fields.length];
+    for (int i = 0; i < fields.length; i++) {
+      Field field = schema.getField(fields[i]);
+      if (field == null)
+        throw new IllegalArgumentException("No such field: " + fields[i]);
+      Schema s = field.schema();
+      nullBranchBySlot[i] = -1;
+      if (s.getType() == Schema.Type.UNION && s.getTypes().size() == 2) {
+        List<Schema> branches = s.getTypes();
+        for (int b = 0; b < 2; b++)
+          if (branches.get(b).getType() == Schema.Type.NULL) {
+            nullBranchBySlot[i] = b;
+            s = branches.get(1 - b);
+          }
+      }
+      switch (s.getType()) {
+      case INT: case LONG: case FLOAT: case DOUBLE: case BOOLEAN: case STRING:
+        types[i] = s.getType();
+        break;
+      default:
+        throw new IllegalArgumentException
+          ("Statistics not supported for field: " + field);
+      }
+    }
+
+    List<SkipPlan> skips = new ArrayList<SkipPlan>();
+    int[] slots = new int[fields.length];
+    int n = 0;
+    List<Schema> skipped = new ArrayList<Schema>();
+    for (Field field : schema.getFields()) {
+      if (n == fields.length)
+        break;                                    // rest need not be read
+      int slot = Arrays.asList(fields).indexOf(field.name());
+      if (slot < 0) {
+        skipped.add(field.schema());
+      } else {
+        skips.add(skipped.isEmpty() ? null : SkipPlan.generate(skipped));
+        skipped.clear();
+        slots[n++] = slot;
+      }
+    }
+    this.skips = skips.toArray(new SkipPlan[n]);
+    this.slots = Arrays.copyOf(slots, n);
+    this.nullBranches = new int[n];
+    for (int i = 0; i < n; i++)
+      nullBranches[i] = nullBranchBySlot[slots[i]];
+  }
+
+  /** Return a new, empty set of statistics for the requested fields. */
+  BlockStatistics newStatistics() {
+    return new BlockStatistics(fields);
+  }
+
+  /** Include a serialized record in some statistics. */
+  void collect(byte[] data, int start, int length, BlockStatistics stats)
+    throws IOException {
+    decoder = DecoderFactory.defaultFactory()
+      .createBinaryDecoder(data, start, length, decoder);
+    for (int i = 0; i < slots.length; i++) {
+      if (skips[i] != null)
+        skips[i].skip(decoder);
+      Object value = null;
+      if (nullBranches[i] < 0 || decoder.readIndex() != nullBranches[i])
+        value = read(types[slots[i]], decoder);
+      stats.add(slots[i], value);
+    }
+  }
+
+  /** Return the names of the fields with statistics. */
+  String[] getFields() { return fields; }
+
+  /** Return the types of the fields with statistics. */
+  Schema.Type[] getTypes() { return types; }
+
+  static Object read(Schema.Type type, Decoder in) throws IOException {
+    switch (type) {
+    case INT:     return in.readInt();
+    case LONG:    return in.readLong();
+    case FLOAT:   return in.readFloat();
+    case DOUBLE:  return in.readDouble();
+    case BOOLEAN: return in.readBoolean();
+    case STRING:  return in.readString(null).toString();
+    default: throw new IllegalArgumentException("Unsupported type: " + type);
+    }
+  }
+}
@@ -0,0 +1,529 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.avro.generic;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.avro.AvroTypeException;
+import org.apache.avro.Schema;
+import org.apache.avro.Schema.Field;
+import org.apache.avro.Schema.Type;
+import org.apache.avro.io.DatumReader;
+import org.apache.avro.io.Decoder;
+import org.apache.avro.io.DecoderFactory;
+import org.apache.avro.io.parsing.ResolvingGrammarGenerator;
+import org.apache.avro.util.Utf8;
+
+/** A {@link DatumReader} for generic Java objects that is compiled for its
+ * pair of writer's and reader's schemas.  Schema resolution -- field order,
+ * skipped fields, default values, promotions, enum symbols and union
+ * branches -- is worked out once, into a tree of readers each specialized
+ * for a part of the schemas, rather than for every datum as {@link
+ * GenericDatumReader} does.  Compiled trees are immutable.  Each reader keeps
+ * its own, and the {@link #MAX_CACHED} pairs of schemas most recently
+ * compiled are also cached, so that readers for a common pair share one.
+ * <p/>
+ * Data is represented as by {@link GenericDatumReader}.  Values are read in
+ * the order written, as the writer's schema dictates, without a {@link
+ * org.apache.avro.io.ResolvingDecoder}.
+ */
+public class CompiledDatumReader<D> implements DatumReader<D> {
+  /** The most pairs of schemas whose compiled readers are cached. */
+  public static final int MAX_CACHED = 256;
+
+  private static final Map<SchemaPair,Reader> CACHE =
+    Collections.synchronizedMap(new LinkedHashMap<SchemaPair,Reader>
+                                (16, 0.75f, true) {
+        protected boolean removeEldestEntry(Map.Entry<SchemaPair,Reader> e) {
+          return size() > MAX_CACHED;             // least recently used
+        }
+      });
+
+  private Schema actual;
+  private Schema expected;
+  private Reader reader;
+
+  public CompiledDatumReader() {}
+
+  public CompiledDatumReader(Schema actual) {
+    this(actual, actual);
+  }
+
+  public CompiledDatumReader(Schema actual, Schema expected) {
+    this.actual = actual;
+    this.expected = expected;
+  }
+
+  @Override
+  public void setSchema(Schema actual) {
+    this.actual = actual;
+    if (expected == null)
+      expected = actual;
+    reader = null;
+  }
+
+  public void setExpected(Schema expected) {
+    this.expected = expected;
+    reader = null;
+  }
+
+  @SuppressWarnings("unchecked")
+  public D read(D reuse, Decoder in) throws IOException {
+    if (reader == null)
+      reader = compile(actual, expected);
+    return (D)reader.read(reuse, in);
+  }
+
+  /** The number of compiled readers cached. */
+  static int cached() { return CACHE.size(); }
+
+  private static Reader compile(Schema writer, Schema reader)
+    throws IOException {
+    SchemaPair key = new SchemaPair(writer, reader);
+    Reader result = CACHE.get(key);
+    if (result == null) {
+      result = new Compiler().compile(writer, reader);
+      CACHE.put(key, result);
+    }
+    return result;
+  }
+
+  private static class SchemaPair {
+    private final Schema writer;
+    private final Schema reader;
+    SchemaPair(Schema writer, Schema reader) {
+      this.writer = writer;
+      this.reader = reader;
+    }
+    public boolean equals(Object o) {
+      if (!(o instanceof SchemaPair)) return false;
+      SchemaPair that = (SchemaPair)o;
+      return writer.equals(that.writer) && reader.equals(that.reader);
+    }
+    public int hashCode() { return writer.hashCode() * 31 + reader.hashCode(); }
+  }
+
+  /** Builds the reader tree for a pair of schemas.  This follows {@link
+   * ResolvingGrammarGenerator}, which builds the equivalent grammar. */
+  private static class Compiler {
+    private final Map<Schema,Map<Schema,RecordReader>> seen =
+      new IdentityHashMap<Schema,Map<Schema,RecordReader>>();
+
+    Reader compile(Schema writer, Schema reader) throws IOException {
+      Type writerType = writer.getType();
+      Type readerType = reader.getType();
+
+      if (writerType == readerType) {
+        switch (writerType) {
+        case NULL:    return NULL;
+        case BOOLEAN: return BOOLEAN;
+        case INT:     return INT;
+        case LONG:    return LONG;
+        case FLOAT:   return FLOAT;
+        case DOUBLE:  return DOUBLE;
+        case STRING:  return STRING;
+        case BYTES:   return BYTES;
+        case FIXED:
+          if (writer.getName().equals(reader.getName())
+              && writer.getFixedSize() == reader.getFixedSize())
+            return new FixedReader(reader);
+          break;
+        case ENUM:
+          if (writer.getName() == null
+              || writer.getName().equals(reader.getName()))
+            return new EnumReader(writer, reader);
+          break;
+        case ARRAY:
+          Schema writerElement = writer.getElementType();
+          Schema readerElement = reader.getElementType();
+          return new ArrayReader(reader,
+                                 compile(writerElement, readerElement),
+                                 isPrimitive(writerElement, readerElement));
+        case MAP:
+          return new MapReader(compile(writer.getValueType(),
+                                       reader.getValueType()));
+        case RECORD:
+          return compileRecord(writer, reader);
+        case UNION:
+          return compileUnion(writer, reader);
+        default:
+          throw new AvroTypeException("Unknown type for schema: " + writerType);
+        }
+      } else if (writerType == Type.UNION) {
+        return compileUnion(writer, reader);
+      } else {
+        switch (readerType) {
+        case LONG:
+          switch (writerType) {
+          case INT:    return INT_AS_LONG;
+          case FLOAT:  return FLOAT_AS_LONG;
+          case DOUBLE: return DOUBLE_AS_LONG;
+          }
+          break;
+        case DOUBLE:
+          switch (writerType) {
+          case INT:   return INT_AS_DOUBLE;
+          case LONG:  return LONG_AS_DOUBLE;
+          case FLOAT: return FLOAT_AS_DOUBLE;
+          }
+          break;
+        case UNION:
+          int j = ResolvingGrammarGenerator.bestBranch(reader, writer);
+          if (j >= 0)
+            return compile(writer, reader.getTypes().get(j));
+          break;
+        }
+      }
+      return new ErrorReader("Found " + writer + ", expecting " + reader);
+    }
+
+    private Reader compileUnion(Schema writer, Schema reader)
+      throws IOException {
+      List<Schema> branches = writer.getTypes();
+      Reader[] readers = new Reader[branches.size()];
+      for (int i = 0; i < readers.length; i++)
+        readers[i] = compile(branches.get(i), reader);
+      return new UnionReader(readers);
+    }
+
+    private Reader compileRecord(Schema writer, Schema reader)
+      throws IOException {
+      Map<Schema,RecordReader> byReader = seen.get(writer);
+      if (byReader == null) {
+        byReader = new IdentityHashMap<Schema,RecordReader>();
+        seen.put(writer, byReader);
+      }
+      RecordReader result = byReader.get(reader);
+      if (result != null)
+        return result;                            // recursive reference
+
+      for (Field rf : reader.getFields())
+        if (writer.getField(rf.name()) == null && rf.defaultValue() == null)
+          return new ErrorReader("Found " + writer + ", expecting " + reader);
+
+      result = new RecordReader(reader);
+      byReader.put(reader, result);
+
+      // read the writer's fields in order, skipping runs the reader lacks
+      List<FieldReader> fields = new ArrayList<FieldReader>();
+      List<Schema> skipped = new ArrayList<Schema>();
+      for (Field wf : writer.getFields()) {
+        Field rf = reader.getField(wf.name());
+        if (rf == null) {
+          skipped.add(wf.schema());
+          continue;
+        }
+        if (!skipped.isEmpty()) {
+          fields.add(new SkipFields(skipped));
+          skipped.clear();
+        }
+        fields.add(new ReadField(rf.pos(), compile(wf.schema(), rf.schema())));
+      }
+      if (!skipped.isEmpty())
+        fields.add(new SkipFields(skipped));
+
+      // then set the reader's fields that the writer lacks to their defaults
+      for (Field rf : reader.getFields()) {
+        if (writer.getField(rf.name()) == null) {
+          byte[] bytes =
+            ResolvingGrammarGenerator.getBinary(rf.schema(), rf.defaultValue());
+          fields.add(new DefaultField(rf.pos(), bytes,
+                                      compile(rf.schema(), rf.schema())));
+        }
+      }
+      result.fields = fields.toArray(new FieldReader[fields.size()]);
+      return result;
+    }
+
+    private static boolean isPrimitive(Schema writer, Schema reader) {
+      if (writer.getType() != reader.getType())
+        return false;                             // promoted
+      switch (writer.getType()) {
+      case INT: case LONG: case FLOAT: case DOUBLE: case BOOLEAN:
+        return true;
+      default:
+        return false;
+      }
+    }
+  }
+
+  /** Reads values of one writer's schema as values of one reader's schema. */
+  private abstract static class Reader {
+    abstract Object read(Object old, Decoder in) throws IOException;
+  }
+
+  private static final Reader NULL = new Reader() {
+      Object read(Object old, Decoder in) throws IOException {
+        in.readNull();
+        return null;
+      }
+    };
+  private static final Reader BOOLEAN = new Reader() {
+      Object read(Object old, Decoder in) throws IOException {
+        return in.readBoolean();
+      }
+    };
+  private static final Reader INT = new Reader() {
+      Object read(Object old, Decoder in) throws IOException {
+        return in.readInt();
+      }
+    };
+  private static final Reader LONG = new Reader() {
+      Object read(Object old, Decoder in) throws IOException {
+        return in.readLong();
+      }
+    };
+  private static final Reader FLOAT = new Reader() {
+      Object read(Object old, Decoder in) throws IOException {
+        return in.readFloat();
+      }
+    };
+  private static final Reader DOUBLE = new Reader() {
+      Object read(Object old, Decoder in) throws IOException {
+        return in.readDouble();
+      }
+    };
+  private static final Reader STRING = new Reader() {
+      Object read(Object old, Decoder in) throws IOException {
+        return in.readString(old instanceof Utf8 ? (Utf8)old : null);
+      }
+    };
+  private static final Reader BYTES = new Reader() {
+      Object read(Object old, Decoder in) throws IOException {
+        return in.readBytes(old instanceof ByteBuffer ? (ByteBuffer)old : null);
+      }
+    };
+  private static final Reader INT_AS_LONG = new Reader() {
+      Object read(Object old, Decoder in) throws IOException {
+        return (long)in.readInt();
+      }
+    };
+  private static final Reader FLOAT_AS_LONG = new Reader() {
+      Object read(Object old, Decoder in) throws IOException {
+        return (long)in.readFloat();
+      }
+    };
+  private static final Reader DOUBLE_AS_LONG = new Reader() {
+      Object read(Object old, Decoder in) throws IOException {
+        return (long)in.readDouble();
+      }
+    };
+  private static final Reader INT_AS_DOUBLE = new Reader() {
+      Object read(Object old, Decoder in) throws IOException {
+        return (double)in.readInt();
+      }
+    };
+  private static final Reader LONG_AS_DOUBLE = new Reader() {
+      Object read(Object old, Decoder in) throws IOException {
+        return (double)in.readLong();
+      }
+    };
+  private static final Reader FLOAT_AS_DOUBLE = new Reader() {
+      Object read(Object old, Decoder in) throws IOException {
+        return (double)in.readFloat();
+      }
+    };
+
+  /** Reports schemas that can't be resolved, when data needs them. */
+  private static class ErrorReader extends Reader {
+    private final String message;
+    ErrorReader(String message) { this.message = message; }
+    Object read(Object old, Decoder in) throws IOException {
+      throw new AvroTypeException(message);
+    }
+  }
+
+  private static class FixedReader extends Reader {
+    private final Schema schema;
+    FixedReader(Schema schema) { this.schema = schema; }
+    Object read(Object old, Decoder in) throws IOException {
+      GenericFixed fixed = (old instanceof GenericFixed
+                            && ((GenericFixed)old).bytes().length
+                               == schema.getFixedSize())
+        ? (GenericFixed)old
+        : new GenericData.Fixed(schema);
+      in.readFixed(fixed.bytes(), 0, schema.getFixedSize());
+      return fixed;
+    }
+  }
+
+  private static class EnumReader extends Reader {
+    private final List<String> writerSymbols;
+    private final String[] symbols;               // by writer's ordinal
+    EnumReader(Schema writer, Schema reader) {
+      this.writerSymbols = writer.getEnumSymbols();
+      this.symbols = new String[writerSymbols.size()];
+      for (int i = 0; i < symbols.length; i++)
+        if (reader.hasEnumSymbol(writerSymbols.get(i)))
+          symbols[i] = writerSymbols.get(i);
+    }
+    Object read(Object old, Decoder in) throws IOException {
+      int ordinal = in.readEnum();
+      String symbol = symbols[ordinal];
+      if (symbol == null)
+        throw new AvroTypeException("No match for "+writerSymbols.get(ordinal));
+      return symbol;
+    }
+  }
+
+  private static class UnionReader extends Reader {
+    private final Reader[] branches;              // by writer's index
+    UnionReader(Reader[] branches) { this.branches = branches; }
+    Object read(Object old, Decoder in) throws IOException {
+      return branches[in.readIndex()].read(old, in);
+    }
+  }
+
+  private static class ArrayReader extends Reader {
+    private final Schema schema;
+    private final Reader element;
+    private final boolean primitive;              // read without boxing
+    ArrayReader(Schema schema, Reader element, boolean primitive) {
+      this.schema = schema;
+      this.element = element;
+      this.primitive = primitive;
+    }
+    @SuppressWarnings("unchecked")
+    Object read(Object old, Decoder in) throws IOException {
+      long l = in.readArrayStart();
+      GenericArray<Object> array = newArray(old, (int)l);
+      if (l > 0) {
+        if (primitive) {
+          GenericData.PrimitiveArray primitives =
+            (GenericData.PrimitiveArray)array;
+          do {
+            primitives.read(in, (int)l);
+          } while ((l = in.arrayNext()) > 0);
+        } else {
+          do {
+            for (long i = 0; i < l; i++)
+              array.add(element.read(array.peek(), in));
+          } while ((l = in.arrayNext()) > 0);
+        }
+      }
+      return array;
+    }
+    @SuppressWarnings("unchecked")
+    private GenericArray<Object> newArray(Object old, int size) {
+      if (old instanceof GenericArray
+          && (old instanceof GenericData.PrimitiveArray
+              ? ((GenericData.PrimitiveArray)old).getSchema().getElementType()
+                .getType() == schema.getElementType().getType()
+              : !primitive)) {
+        GenericArray<Object> array = (GenericArray<Object>)old;
+        array.clear();
+        return array;
+      }
+      return (GenericArray<Object>)GenericData.newArray(size, schema);
+    }
+  }
+
+  private static class MapReader extends Reader {
+    private final Reader value;
+    MapReader(Reader value) { this.value = value; }
+    @SuppressWarnings("unchecked")
+    Object read(Object old, Decoder in) throws IOException {
+      long l = in.readMapStart();
+      Map<Object,Object> map;
+      if (old instanceof Map) {
+        map = (Map<Object,Object>)old;
+        map.clear();
+      } else {
+        map = new HashMap<Object,Object>((int)l);
+      }
+      if (l > 0) {
+        do {
+          for (long i = 0; i < l; i++)
+            map.put(in.readString(null), value.read(null, in));
+        } while ((l = in.mapNext()) > 0);
+      }
+      return map;
+    }
+  }
+
+  private static class RecordReader extends Reader {
+    private final Schema schema;
+    private FieldReader[] fields;                 // set once compiled
+    RecordReader(Schema schema) { this.schema = schema; }
+    Object read(Object old, Decoder in) throws IOException {
+      boolean reuse = old instanceof IndexedRecord
+        && ((IndexedRecord)old).getSchema() == schema;
+      IndexedRecord record =
+        reuse ? (IndexedRecord)old : new GenericData.Record(schema);
+      for (FieldReader field : fields)
+        field.read(record, reuse, in);
+      return record;
+    }
+  }
+
+  /** One step in reading a record. */
+  private abstract static class FieldReader {
+    abstract void read(IndexedRecord record, boolean reuse, Decoder in)
+      throws IOException;
+  }
+
+  private static class ReadField extends FieldReader {
+    private final int pos;
+    private final Reader reader;
+    ReadField(int pos, Reader reader) {
+      this.pos = pos;
+      this.reader = reader;
+    }
+    void read(IndexedRecord record, boolean reuse, Decoder in)
+      throws IOException {
+      record.put(pos, reader.read(reuse ? record.get(pos) : null, in));
+    }
+  }
+
+  private static class SkipFields extends FieldReader {
+    private final Schema[] schemas;
+    SkipFields(List<Schema> schemas) {
+      this.schemas = schemas.toArray(new Schema[schemas.size()]);
+    }
+    void read(IndexedRecord record, boolean reuse, Decoder in)
+      throws IOException {
+      for (Schema schema : schemas)
+        GenericDatumReader.skip(schema, in);
+    }
+  }
+
+  private static class DefaultField extends FieldReader {
+    private final int pos;
+    private final byte[] bytes;                   // binary default value
+    private final Reader reader;
+    DefaultField(int pos, byte[] bytes, Reader reader) {
+      this.pos = pos;
+      this.bytes = bytes;
+      this.reader = reader;
+    }
+    void read(IndexedRecord record, boolean reuse, Decoder in)
+      throws IOException {
+      Decoder defaults =
+        DecoderFactory.defaultFactory().createBinaryDecoder(bytes, null);
+      record.put(pos, reader.read(reuse ? record.get(pos) : null, defaults));
+    }
+  }
+}
@@ -0,0 +1,271 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.avro.generic;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.avro.AvroTypeException;
+import org.apache.avro.Schema;
+import org.apache.avro.Schema.Field;
+import org.apache.avro.io.BinaryEncoder;
+import org.apache.avro.io.DatumWriter;
+import org.apache.avro.io.Encoder;
+import org.apache.avro.util.Utf8;
+
+/** A {@link DatumWriter} for generic Java objects that is compiled for its
+ * schema.  The schema is traversed once, into a tree of writers each
+ * specialized for a part of it, rather than for every datum as {@link
+ * GenericDatumWriter} does.  Compiled trees are immutable.  Each writer keeps
+ * its own, and those for the {@link #MAX_CACHED} schemas most recently
+ * compiled are also cached, so that writers for a common schema share one.
+ * <p/>
+ * Data must be represented as {@link GenericDatumWriter} expects.
+ */
+public class CompiledDatumWriter<D> implements DatumWriter<D> {
+  /** The most schemas whose compiled writers are cached. */
+  public static final int MAX_CACHED = 256;
+
+  private static final Map<Schema,Writer> CACHE =
+    Collections.synchronizedMap(new LinkedHashMap<Schema,Writer>
+                                (16, 0.75f, true) {
+        protected boolean removeEldestEntry(Map.Entry<Schema,Writer> e) {
+          return size() > MAX_CACHED;             // least recently used
+        }
+      });
+
+  /** Writes the changed fields of {@link LazyRecord}s. */
+  private static final GenericDatumWriter<Object> LAZY_WRITER =
+    new GenericDatumWriter<Object>();
+
+  private Schema root;
+  private Writer writer;
+
+  public CompiledDatumWriter() {}
+
+  public CompiledDatumWriter(Schema root) {
+    setSchema(root);
+  }
+
+  public void setSchema(Schema root) {
+    this.root = root;
+    this.writer = null;
+  }
+
+  public void write(D datum, Encoder out) throws IOException {
+    if (writer == null)
+      writer = compile(root);
+    writer.write(datum, out);
+  }
+
+  /** The number of compiled writers cached. */
+  static int cached() { return CACHE.size(); }
+
+  private static Writer compile(Schema schema) {
+    Writer result = CACHE.get(schema);
+    if (result == null) {
+      result = new Compiler().compile(schema);
+      CACHE.put(schema, result);
+    }
+    return result;
+  }
+
+  /** Builds the writer tree for a schema. */
+  private static class Compiler {
+    private final Map<Schema,RecordWriter> seen =
+      new IdentityHashMap<Schema,RecordWriter>();
+
+    Writer compile(Schema schema) {
+      switch (schema.getType()) {
+      case RECORD:
+        RecordWriter record = seen.get(schema);
+        if (record == null) {                     // not a recursive reference
+          record = new RecordWriter(schema);
+          seen.put(schema, record);
+          List<Field> fields = schema.getFields();
+          record.fields = new Writer[fields.size()];
+          for (int i = 0; i < record.fields.length; i++)
+            record.fields[i] = compile(fields.get(i).schema());
+        }
+        return record;
+      case ENUM:   return new EnumWriter(schema);
+      case ARRAY:  return new ArrayWriter(schema, compile(schema.getElementType()));
+      case MAP:    return new MapWriter(compile(schema.getValueType()));
+      case UNION:
+        List<Schema> branches = schema.getTypes();
+        Writer[] writers = new Writer[branches.size()];
+        for (int i = 0; i < writers.length; i++)
+          writers[i] = compile(branches.get(i));
+        return new UnionWriter(schema, writers);
+      case FIXED:   return new FixedWriter(schema.getFixedSize());
+      case STRING:  return STRING;
+      case BYTES:   return BYTES;
+      case INT:     return INT;
+      case LONG:    return LONG;
+      case FLOAT:   return FLOAT;
+      case DOUBLE:  return DOUBLE;
+      case BOOLEAN: return BOOLEAN;
+      case NULL:    return NULL;
+      default: throw new AvroTypeException("Not a schema: "+schema);
+      }
+    }
+  }
+
+  /** Writes values of one schema. */
+  private abstract static class Writer {
+    abstract void write(Object datum, Encoder out) throws IOException;
+  }
+
+  private static final Writer NULL = new Writer() {
+      void write(Object datum, Encoder out) throws IOException {
+        out.writeNull();
+      }
+    };
+  private static final Writer BOOLEAN = new Writer() {
+      void write(Object datum, Encoder out) throws IOException {
+        out.writeBoolean((Boolean)datum);
+      }
+    };
+  private static final Writer INT = new Writer() {
+      void write(Object datum, Encoder out) throws IOException {
+        out.writeInt((Integer)datum);
+      }
+    };
+  private static final Writer LONG = new Writer() {
+      void write(Object datum, Encoder out) throws IOException {
+        out.writeLong((Long)datum);
+      }
+    };
+  private static final Writer FLOAT = new Writer() {
+      void write(Object datum, Encoder out) throws IOException {
+        out.writeFloat((Float)datum);
+      }
+    };
+  private static final Writer DOUBLE = new Writer() {
+      void write(Object datum, Encoder out) throws IOException {
+        out.writeDouble((Double)datum);
+      }
+    };
+  private static final Writer STRING = new Writer() {
+      void write(Object datum, Encoder out) throws IOException {
+        out.writeString((Utf8)datum);
+      }
+    };
+  private static final Writer BYTES = new Writer() {
+      void write(Object datum, Encoder out) throws IOException {
+        out.writeBytes((ByteBuffer)datum);
+      }
+    };
+
+  private static class FixedWriter extends Writer {
+    private final int size;
+    FixedWriter(int size) { this.size = size; }
+    void write(Object datum, Encoder out) throws IOException {
+      out.writeFixed(((GenericFixed)datum).bytes(), 0, size);
+    }
+  }
+
+  private static class EnumWriter extends Writer {
+    private final Schema schema;
+    EnumWriter(Schema schema) { this.schema = schema; }
+    void write(Object datum, Encoder out) throws IOException {
+      out.writeEnum(schema.getEnumOrdinal((String)datum));
+    }
+  }
+
+  private static class UnionWriter extends Writer {
+    private final Schema schema;
+    private final Writer[] branches;
+    UnionWriter(Schema schema, Writer[] branches) {
+      this.schema = schema;
+      this.branches = branches;
+    }
+    void write(Object datum, Encoder out) throws IOException {
+      int index = GenericData.get().resolveUnion(schema, datum);
+      out.writeIndex(index);
+      branches[index].write(datum, out);
+    }
+  }
+
+  private static class ArrayWriter extends Writer {
+    private final Schema.Type elementType;
+    private final Writer element;
+    ArrayWriter(Schema schema, Writer element) {
+      this.elementType = schema.getElementType().getType();
+      this.element = element;
+    }
+    @SuppressWarnings("unchecked")
+    void write(Object datum, Encoder out) throws IOException {
+      GenericArray<Object> array = (GenericArray<Object>)datum;
+      out.writeArrayStart();
+      out.setItemCount(array.size());
+      if (array instanceof GenericData.PrimitiveArray
+          && ((GenericData.PrimitiveArray)array).getSchema().getElementType()
+             .getType() == elementType) {
+        ((GenericData.PrimitiveArray)array).write(out); // without boxing
+      } else {
+        for (Iterator<Object> it = array.iterator(); it.hasNext();) {
+          out.startItem();
+          element.write(it.next(), out);
+        }
+      }
+      out.writeArrayEnd();
+    }
+  }
+
+  private static class MapWriter extends Writer {
+    private final Writer value;
+    MapWriter(Writer value) { this.value = value; }
+    @SuppressWarnings("unchecked")
+    void write(Object datum, Encoder out) throws IOException {
+      Map<Object,Object> map = (Map<Object,Object>)datum;
+      out.writeMapStart();
+      out.setItemCount(map.size());
+      for (Map.Entry<Object,Object> entry : map.entrySet()) {
+        out.startItem();
+        out.writeString((Utf8)entry.getKey());
+        value.write(entry.getValue(), out);
+      }
+      out.writeMapEnd();
+    }
+  }
+
+  private static class RecordWriter extends Writer {
+    private final Schema schema;
+    private Writer[] fields;                      // set once compiled
+    RecordWriter(Schema schema) { this.schema = schema; }
+    void write(Object datum, Encoder out) throws IOException {
+      if (datum instanceof LazyRecord && out instanceof BinaryEncoder) {
+        LazyRecord lazy = (LazyRecord)datum;
+        if (lazy.getSchema() == schema || lazy.getSchema().equals(schema)) {
+          lazy.write(LAZY_WRITER, out);           // copy unchanged fields
+          return;
+        }
+      }
+      IndexedRecord record = (IndexedRecord)datum;
+      for (int i = 0; i < fields.length; i++)
+        fields[i].write(record.get(i), out);
+    }
+  }
+}
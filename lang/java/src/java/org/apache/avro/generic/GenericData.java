@@ -17,6 +17,7 @@
  */
 package org.apache.avro.generic;
 
+import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.util.Iterator;
 import java.util.Arrays;
@@ -29,6 +30,8 @@ import org.apache.avro.Schema.Field;
 import org.apache.avro.Schema.Type;
 import org.apache.avro.util.Utf8;
 import org.apache.avro.io.BinaryData;
+import org.apache.avro.io.Decoder;
+import org.apache.avro.io.Encoder;
 
 /** Utilities for generic Java data. */
 public class GenericData {
@@ -145,6 +148,219 @@ public class GenericData {
     }
   }
 
+  /** Return a new, empty array for a schema.  Arrays of int, long, float,
+   * double and boolean store their elements without boxing. */
+  public static Array<?> newArray(int capacity, Schema schema) {
+    switch (schema.getElementType().getType()) {
+    case INT:     return new IntArray(capacity, schema);
+    case LONG:    return new LongArray(capacity, schema);
+    case FLOAT:   return new FloatArray(capacity, schema);
+    case DOUBLE:  return new DoubleArray(capacity, schema);
+    case BOOLEAN: return new BooleanArray(capacity, schema);
+    default:      return new Array<Object>(capacity, schema);
+    }
+  }
+
+  /** Base class for arrays whose elements are stored as primitive values.
+   * Elements are only boxed when accessed through {@link #iterator()}.*/
+  public abstract static class PrimitiveArray<T> extends Array<T> {
+    protected int size;
+    protected PrimitiveArray(Schema schema, Type elementType) {
+      super(0, schema);
+      if (schema.getElementType().getType() != elementType)
+        throw new AvroRuntimeException("Not an array of "+elementType+": "
+                                       +schema);
+    }
+    @Override public long size() { return size; }
+    @Override public void clear() { size = 0; }
+    /** Returns null: primitive elements are not reused. */
+    @Override public T peek() { return null; }
+    @Override public Iterator<T> iterator() {
+      return new Iterator<T>() {
+        private int position = 0;
+        public boolean hasNext() { return position < size; }
+        public T next() { return get(position++); }
+        public void remove() { throw new UnsupportedOperationException(); }
+      };
+    }
+    /** Return an element, boxed. */
+    protected abstract T get(int index);
+    /** Read and append <i>count</i> elements. */
+    protected abstract void read(Decoder in, int count) throws IOException;
+    /** Write all elements as array items. */
+    protected abstract void write(Encoder out) throws IOException;
+
+    protected int grow(int capacity, int count) {
+      return Math.max((capacity * 3)/2 + 1, size + count);
+    }
+    protected void checkIndex(int index) {
+      if (index < 0 || index >= size)
+        throw new IndexOutOfBoundsException("Index: "+index+", size: "+size);
+    }
+  }
+
+  /** An array of ints. */
+  public static class IntArray extends PrimitiveArray<Integer> {
+    private int[] elements;
+    public IntArray(int capacity, Schema schema) {
+      super(schema, Type.INT);
+      elements = new int[capacity];
+    }
+    public int getInt(int index) { checkIndex(index); return elements[index]; }
+    /** The elements, which are valid up to {@link #size()}. */
+    public int[] elements() { return elements; }
+    @Override protected Integer get(int index) { return elements[index]; }
+    @Override public void add(Integer o) { add(o.intValue()); }
+    public void add(int value) {
+      reserve(1);
+      elements[size++] = value;
+    }
+    private void reserve(int count) {
+      if (size + count > elements.length)
+        elements = Arrays.copyOf(elements, grow(elements.length, count));
+    }
+    @Override protected void read(Decoder in, int count) throws IOException {
+      reserve(count);
+      in.readInts(elements, size, count);
+      size += count;
+    }
+    @Override protected void write(Encoder out) throws IOException {
+      out.writeInts(elements, 0, size);
+    }
+  }
+
+  /** An array of longs. */
+  public static class LongArray extends PrimitiveArray<Long> {
+    private long[] elements;
+    public LongArray(int capacity, Schema schema) {
+      super(schema, Type.LONG);
+      elements = new long[capacity];
+    }
+    public long getLong(int index) { checkIndex(index); return elements[index]; }
+    /** The elements, which are valid up to {@link #size()}. */
+    public long[] elements() { return elements; }
+    @Override protected Long get(int index) { return elements[index]; }
+    @Override public void add(Long o) { add(o.longValue()); }
+    public void add(long value) {
+      reserve(1);
+      elements[size++] = value;
+    }
+    private void reserve(int count) {
+      if (size + count > elements.length)
+        elements = Arrays.copyOf(elements, grow(elements.length, count));
+    }
+    @Override protected void read(Decoder in, int count) throws IOException {
+      reserve(count);
+      in.readLongs(elements, size, count);
+      size += count;
+    }
+    @Override protected void write(Encoder out) throws IOException {
+      out.writeLongs(elements, 0, size);
+    }
+  }
+
+  /** An array of floats. */
+  public static class FloatArray extends PrimitiveArray<Float> {
+    private float[] elements;
+    public FloatArray(int capacity, Schema schema) {
+      super(schema, Type.FLOAT);
+      elements = new float[capacity];
+    }
+    public float getFloat(int index) {
+      checkIndex(index);
+      return elements[index];
+    }
+    /** The elements, which are valid up to {@link #size()}. */
+    public float[] elements() { return elements; }
+    @Override protected Float get(int index) { return elements[index]; }
+    @Override public void add(Float o) { add(o.floatValue()); }
+    public void add(float value) {
+      reserve(1);
+      elements[size++] = value;
+    }
+    private void reserve(int count) {
+      if (size + count > elements.length)
+        elements = Arrays.copyOf(elements, grow(elements.length, count));
+    }
+    @Override protected void read(Decoder in, int count) throws IOException {
+      reserve(count);
+      in.readFloats(elements, size, count);
+      size += count;
+    }
+    @Override protected void write(Encoder out) throws IOException {
+      out.writeFloats(elements, 0, size);
+    }
+  }
+
+  /** An array of doubles. */
+  public static class DoubleArray extends PrimitiveArray<Double> {
+    private double[] elements;
+    public DoubleArray(int capacity, Schema schema) {
+      super(schema, Type.DOUBLE);
+      elements = new double[capacity];
+    }
+    public double getDouble(int index) {
+      checkIndex(index);
+      return elements[index];
+    }
+    /** The elements, which are valid up to {@link #size()}. */
+    public double[] elements() { return elements; }
+    @Override protected Double get(int index) { return elements[index]; }
+    @Override public void add(Double o) { add(o.doubleValue()); }
+    public void add(double value) {
+      reserve(1);
+      elements[size++] = value;
+    }
+    private void reserve(int count) {
+      if (size + count > elements.length)
+        elements = Arrays.copyOf(elements, grow(elements.length, count));
+    }
+    @Override protected void read(Decoder in, int count) throws IOException {
+      reserve(count);
+      in.readDoubles(elements, size, count);
+      size += count;
+    }
+    @Override protected void write(Encoder out) throws IOException {
+      out.writeDoubles(elements, 0, size);
+    }
+  }
+
+  /** An array of booleans. */
+  public static class BooleanArray extends PrimitiveArray<Boolean> {
+    private boolean[] elements;
+    public BooleanArray(int capacity, Schema schema) {
+      super(schema, Type.BOOLEAN);
+      elements = new boolean[capacity];
+    }
+    public boolean getBoolean(int index) {
+      checkIndex(index);
+      return elements[index];
+    }
+    /** The elements, which are valid up to {@link #size()}. */
+    public boolean[] elements() { return elements; }
+    @Override protected Boolean get(int index) { return elements[index]; }
+    @Override public void add(Boolean o) { add(o.booleanValue()); }
+    public void add(boolean value) {
+      reserve(1);
+      elements[size++] = value;
+    }
+    private void reserve(int count) {
+      if (size + count > elements.length)
+        elements = Arrays.copyOf(elements, grow(elements.length, count));
+    }
+    @Override protected void read(Decoder in, int count) throws IOException {
+      reserve(count);
+      for (int end = size + count; size < end; size++)
+        elements[size] = in.readBoolean();
+    }
+    @Override protected void write(Encoder out) throws IOException {
+      for (int i = 0; i < size; i++) {
+        out.startItem();
+        out.writeBoolean(elements[i]);
+      }
+    }
+  }
+
   /** Default implementation of {@link GenericFixed}. */
   public static class Fixed implements GenericFixed, Comparable<Fixed> {
     private byte[] bytes;
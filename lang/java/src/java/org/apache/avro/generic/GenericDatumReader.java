@@ -19,6 +19,7 @@ package org.apache.avro.generic;
 
 import java.io.IOException;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.Map;
 import java.nio.ByteBuffer;
 
@@ -28,6 +29,7 @@ import org.apache.avro.Schema.Field;
 import org.apache.avro.io.DatumReader;
 import org.apache.avro.io.Decoder;
 import org.apache.avro.io.ResolvingDecoder;
+import org.apache.avro.util.StringCache;
 import org.apache.avro.util.Utf8;
 
 /** {@link DatumReader} for generic Java objects. */
@@ -35,6 +37,8 @@ public class GenericDatumReader<D> implements DatumReader<D> {
   private Schema actual;
   private Schema expected;
   private Object resolver;
+  private boolean flatGrammar;
+  private Map<Field,StringCache> stringCaches;
 
   public GenericDatumReader() {}
 
@@ -62,12 +66,48 @@ public class GenericDatumReader<D> implements DatumReader<D> {
     this.expected = expected;
   }
 
+  /** Resolve the actual and expected schemas with a grammar flattened into
+   * instructions, which is faster to interpret.  See {@link
+   * ResolvingDecoder#resolveFlat(Schema, Schema)}. */
+  public void setFlatGrammar(boolean flatGrammar) {
+    this.flatGrammar = flatGrammar;
+    resolver = null;
+  }
+
+  /** Read the strings of a field through a cache, so that repeated values
+   * share a single instance.  This applies to all strings within the field,
+   * including array elements and map keys and values.  The field must be
+   * one of the expected schema's, as returned by {@link
+   * Schema#getField(String)}.  A null cache removes any cache from the
+   * field.  Since caches are not thread-safe, a reader with caches must not
+   * be shared by threads. */
+  public void setStringCache(Field field, StringCache cache) {
+    if (stringCaches == null)
+      stringCaches = new IdentityHashMap<Field,StringCache>();
+    if (cache == null)
+      stringCaches.remove(field);
+    else
+      stringCaches.put(field, cache);
+    if (stringCaches.isEmpty())
+      stringCaches = null;
+  }
+
+  /** Return the cache for the strings currently being read from a decoder,
+   * or null. */
+  protected StringCache getStringCache(Decoder in) {
+    return in instanceof ResolvingDecoder
+      ? ((ResolvingDecoder)in).getStringCache()
+      : null;
+  }
+
   @SuppressWarnings("unchecked")
   public D read(D reuse, Decoder in) throws IOException {
     if (resolver == null) {
-      resolver = ResolvingDecoder.resolve(actual, expected);
+      resolver = flatGrammar
+        ? ResolvingDecoder.resolveFlat(actual, expected)
+        : ResolvingDecoder.resolve(actual, expected);
     }
-    ResolvingDecoder r = new ResolvingDecoder(resolver, in);
+    ResolvingDecoder r = ResolvingDecoder.create(resolver, in);
     D result = (D) read(reuse, expected, r);
     r.drain();
     return result;
@@ -105,7 +145,18 @@ public class GenericDatumReader<D> implements DatumReader<D> {
       int pos = f.pos();
       String name = f.name();
       Object oldDatum = (old != null) ? getField(record, name, pos) : null;
-      setField(record, name, pos, read(oldDatum, f.schema(), in));
+      StringCache cache = stringCaches == null ? null : stringCaches.get(f);
+      if (cache == null) {
+        setField(record, name, pos, read(oldDatum, f.schema(), in));
+      } else {
+        StringCache outer = in.getStringCache();
+        in.setStringCache(cache);                 // held by this read only
+        try {
+          setField(record, name, pos, read(oldDatum, f.schema(), in));
+        } finally {
+          in.setStringCache(outer);
+        }
+      }
     }
 
     return record;
@@ -151,6 +202,16 @@ public class GenericDatumReader<D> implements DatumReader<D> {
     long base = 0;
     if (l > 0) {
       Object array = newArray(old, (int) l, expected);
+      if (array instanceof GenericData.PrimitiveArray
+          && ((GenericData.PrimitiveArray)array).getSchema().getElementType()
+             .getType() == expectedType.getType()) {
+        GenericData.PrimitiveArray primitives =
+          (GenericData.PrimitiveArray)array;
+        do {                                      // read without boxing
+          primitives.read(in, (int)l);
+        } while ((l = in.arrayNext()) > 0);
+        return array;
+      }
       do {
         for (long i = 0; i < l; i++) {
           addToArray(array, base + i, read(peekArray(array), expectedType, in));
@@ -246,13 +307,17 @@ public class GenericDatumReader<D> implements DatumReader<D> {
 
   /** Called to create new array instances.  Subclasses may override to use a
    * different array implementation.  By default, this returns a {@link
-   * GenericData.Array}.*/
+   * GenericData.Array}, one that stores primitive elements without boxing
+   * when the elements are ints, longs, floats, doubles or booleans.*/
   @SuppressWarnings("unchecked")
   protected Object newArray(Object old, int size, Schema schema) {
-    if (old instanceof GenericArray) {
+    if (old instanceof GenericArray
+        && !(old instanceof GenericData.PrimitiveArray
+             && ((GenericData.PrimitiveArray)old).getSchema().getElementType()
+                .getType() != schema.getElementType().getType())) {
       ((GenericArray) old).clear();
       return old;
-    } else return new GenericData.Array(size, schema);
+    } else return GenericData.newArray(size, schema);
   }
 
   /** Called to create new array instances.  Subclasses may override to use a
@@ -275,8 +340,12 @@ public class GenericDatumReader<D> implements DatumReader<D> {
   }
   /** Called to read strings.  Subclasses may override to use a different
    * string representation.  By default, this calls {@link
-   * Decoder#readString(Utf8)}.*/
+   * Decoder#readString(Utf8)}, or {@link StringCache#readUtf8(Decoder)} when
+   * the field being read has a cache.*/
   protected Object readString(Object old, Decoder in) throws IOException {
+    StringCache cache = getStringCache(in);
+    if (cache != null)
+      return cache.readUtf8(in);                  // don't reuse shared old
     return in.readString((Utf8)old);
   }
 
@@ -26,6 +26,7 @@ import java.util.Map.Entry;
 import org.apache.avro.AvroTypeException;
 import org.apache.avro.Schema;
 import org.apache.avro.Schema.Field;
+import org.apache.avro.io.BinaryEncoder;
 import org.apache.avro.io.DatumWriter;
 import org.apache.avro.io.Encoder;
 import org.apache.avro.util.Utf8;
@@ -85,6 +86,13 @@ public class GenericDatumWriter<D> implements DatumWriter<D> {
    * representations.*/
   protected void writeRecord(Schema schema, Object datum, Encoder out)
     throws IOException {
+    if (datum instanceof LazyRecord && out instanceof BinaryEncoder) {
+      LazyRecord lazy = (LazyRecord)datum;
+      if (lazy.getSchema() == schema || lazy.getSchema().equals(schema)) {
+        lazy.write(this, out);                    // copy unchanged fields
+        return;
+      }
+    }
     for (Field field : schema.getFields()) {
       write(field.schema(), getField(datum, field.name(), field.pos()), out);
     }
@@ -112,6 +120,13 @@ public class GenericDatumWriter<D> implements DatumWriter<D> {
     long size = getArraySize(datum);
     out.writeArrayStart();
     out.setItemCount(size);
+    if (datum instanceof GenericData.PrimitiveArray
+        && ((GenericData.PrimitiveArray)datum).getSchema().getElementType()
+           .getType() == element.getType()) {
+      ((GenericData.PrimitiveArray)datum).write(out); // without boxing
+      out.writeArrayEnd();
+      return;
+    }
     for (Iterator<? extends Object> it = getArrayElements(datum); it.hasNext();) {
       out.startItem();
       write(element, it.next(), out);
@@ -0,0 +1,232 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.avro.generic;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.List;
+
+import org.apache.avro.AvroRuntimeException;
+import org.apache.avro.Schema;
+import org.apache.avro.Schema.Field;
+import org.apache.avro.Schema.Type;
+import org.apache.avro.io.BinaryDecoder;
+import org.apache.avro.io.DecoderFactory;
+import org.apache.avro.io.Encoder;
+
+/** A {@link GenericRecord} that is a view over a record's binary encoding.
+ * Fields are decoded only when they are first accessed, using a table of
+ * field offsets that is built on first access.  Nested records are
+ * themselves returned as lazy views.
+ * <p/>
+ * When written by a {@link GenericDatumWriter} to a {@link
+ * org.apache.avro.io.BinaryEncoder}, fields that have not been changed are
+ * copied verbatim from the original encoding, so that a record that is
+ * only inspected can be forwarded with almost no decoding or encoding.  A
+ * field that has been set, or whose value is mutable (e.g., a string or an
+ * array) and has been read, is re-encoded, since its value may have been
+ * modified in place.
+ * <p/>
+ * The encoded bytes must not be modified while the record is in use.
+ */
+public class LazyRecord implements GenericRecord, Comparable<LazyRecord> {
+  private static final DecoderFactory FACTORY =
+    new DecoderFactory().configureDirectDecoder(true);
+
+  private static final byte UNREAD = 0;
+  private static final byte READ = 1;
+  private static final byte SET = 2;
+
+  private final Schema schema;
+  private final byte[] bytes;
+  private final int offset;
+  private final int length;
+  private final Object[] values;
+  private final byte[] states;
+  private int[] offsets;                          // built on first access
+  private Input input;
+  private BinaryDecoder decoder;
+
+  /** Construct a view over a record's binary encoding. */
+  public LazyRecord(Schema schema, byte[] bytes) {
+    this(schema, bytes, 0, bytes.length);
+  }
+
+  /** Construct a view over a record's binary encoding, the <i>length</i>
+   * bytes of <i>bytes</i> starting at <i>offset</i>. */
+  public LazyRecord(Schema schema, byte[] bytes, int offset, int length) {
+    if (schema == null || !Type.RECORD.equals(schema.getType()))
+      throw new AvroRuntimeException("Not a record schema: "+schema);
+    if (offset < 0 || length < 0 || offset + length > bytes.length)
+      throw new IndexOutOfBoundsException(offset+"+"+length+" > "+bytes.length);
+    this.schema = schema;
+    this.bytes = bytes;
+    this.offset = offset;
+    this.length = length;
+    int fields = schema.getFields().size();
+    this.values = new Object[fields];
+    this.states = new byte[fields];
+  }
+
+  @Override public Schema getSchema() { return schema; }
+
+  @Override public void put(String key, Object value) {
+    put(schema.getField(key).pos(), value);
+  }
+
+  @Override public void put(int i, Object v) {
+    values[i] = v;
+    states[i] = SET;
+  }
+
+  @Override public Object get(String key) {
+    Field field = schema.getField(key);
+    if (field == null) return null;
+    return get(field.pos());
+  }
+
+  @Override public Object get(int i) {
+    if (states[i] == UNREAD) {
+      try {
+        int[] offsets = getOffsets();
+        values[i] = decode(schema.getFields().get(i).schema(),
+                           offsets[i], offsets[i+1]);
+      } catch (IOException e) {
+        throw new AvroRuntimeException(e);
+      }
+      states[i] = READ;
+    }
+    return values[i];
+  }
+
+  /** Write this record, copying the encoding of unchanged fields. */
+  void write(GenericDatumWriter<?> writer, Encoder out) throws IOException {
+    List<Field> fields = schema.getFields();
+    int copied = 0;                               // fields not yet written
+    for (int i = 0; i < fields.size(); i++) {
+      if (isUnchanged(i))
+        continue;
+      int[] offsets = getOffsets();
+      copy(offsets[copied], offsets[i], out);     // unchanged fields before i
+      writer.write(fields.get(i).schema(), values[i], out);
+      copied = i + 1;
+    }
+    if (copied == 0)
+      copy(offset, offset + length, out);         // the whole record
+    else
+      copy(offsets[copied], offset + length, out);
+  }
+
+  private boolean isUnchanged(int i) {
+    switch (states[i]) {
+    case UNREAD: return true;
+    case READ:                                    // can't be changed in place
+      Object value = values[i];
+      return value == null || value instanceof Integer || value instanceof Long
+        || value instanceof Float || value instanceof Double
+        || value instanceof Boolean || value instanceof String;
+    default: return false;
+    }
+  }
+
+  private void copy(int start, int end, Encoder out) throws IOException {
+    if (end > start)
+      out.writeFixed(bytes, start, end - start);
+  }
+
+  private int[] getOffsets() throws IOException {
+    if (offsets == null) {
+      List<Field> fields = schema.getFields();
+      int[] result = new int[fields.size() + 1];
+      BinaryDecoder in = seek(offset);
+      for (int i = 0; i < fields.size(); i++) {
+        result[i] = input.position();
+        GenericDatumReader.skip(fields.get(i).schema(), in);
+      }
+      result[fields.size()] = input.position();
+      if (result[fields.size()] != offset + length)
+        throw new AvroRuntimeException("Record is "+(result[fields.size()]-offset)
+                                       +" bytes, not "+length);
+      offsets = result;
+    }
+    return offsets;
+  }
+
+  private BinaryDecoder seek(int position) {
+    if (input == null) {
+      input = new Input(bytes, offset + length);
+      decoder = FACTORY.createBinaryDecoder(input, null);
+    }
+    input.seek(position);
+    return decoder;
+  }
+
+  /** Decode a value as {@link GenericDatumReader} would by default. */
+  private Object decode(Schema schema, int start, int end) throws IOException {
+    BinaryDecoder in = seek(start);
+    switch (schema.getType()) {
+    case RECORD:  return new LazyRecord(schema, bytes, start, end - start);
+    case UNION:
+      Schema branch = schema.getTypes().get(in.readIndex());
+      return decode(branch, input.position(), end);
+    case ARRAY:
+    case MAP:     return new GenericDatumReader<Object>(schema).read(null, in);
+    case ENUM:    return schema.getEnumSymbols().get(in.readEnum());
+    case FIXED:
+      GenericData.Fixed fixed = new GenericData.Fixed(schema);
+      in.readFixed(fixed.bytes(), 0, schema.getFixedSize());
+      return fixed;
+    case STRING:  return in.readString(null);
+    case BYTES:   return in.readBytes(null);
+    case INT:     return in.readInt();
+    case LONG:    return in.readLong();
+    case FLOAT:   return in.readFloat();
+    case DOUBLE:  return in.readDouble();
+    case BOOLEAN: return in.readBoolean();
+    case NULL:    in.readNull(); return null;
+    default: throw new AvroRuntimeException("Unknown type: " + schema);
+    }
+  }
+
+  @Override public boolean equals(Object o) {
+    if (o == this) return true;                   // identical object
+    if (!(o instanceof LazyRecord)) return false; // not a lazy record
+    LazyRecord that = (LazyRecord)o;
+    if (!schema.getFullName().equals(that.schema.getFullName()))
+      return false;                               // not the same schema
+    return this.compareTo(that) == 0;
+  }
+  @Override public int hashCode() {
+    return GenericData.get().hashCode(this, schema);
+  }
+  @Override public int compareTo(LazyRecord that) {
+    return GenericData.get().compare(this, that, schema);
+  }
+  @Override public String toString() {
+    return GenericData.get().toString(this);
+  }
+
+  /** A byte array stream whose position can be read and set. */
+  private static class Input extends ByteArrayInputStream {
+    Input(byte[] bytes, int end) {
+      super(bytes, 0, end);
+    }
+    int position() { return pos; }
+    void seek(int position) { pos = position; }
+  }
+}
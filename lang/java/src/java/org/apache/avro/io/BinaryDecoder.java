@@ -21,6 +21,7 @@ import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 
 import org.apache.avro.util.Utf8;
 
@@ -79,6 +80,11 @@ public class BinaryDecoder extends Decoder {
     init(data, offset, length);
   }
 
+  BinaryDecoder(int bufferSize, ByteBuffer data) {
+    super();
+    init(bufferSize, data);
+  }
+
   /**
    * @deprecated Use {@link DecoderFactory} to create BinaryDecoder instances and
    *             reinitialize them
@@ -98,6 +104,14 @@ public class BinaryDecoder extends Decoder {
         data, offset, length));
   }
 
+  void init(int bufferSize, ByteBuffer data) {
+    if (data.hasArray()) {
+      init(data.array(), data.arrayOffset() + data.position(), data.remaining());
+    } else {
+      configureSource(bufferSize, new ByteBufferByteSource(data));
+    }
+  }
+
   /**
    * Initializes this decoder with a new ByteSource. Detaches the old source (if
    * it exists) from this Decoder. The old source's state no longer depends on
@@ -257,6 +271,100 @@ public class BinaryDecoder extends Decoder {
         | (((long) n2) << 32));
   }
 
+  // The batch methods decode directly from the buffer while it holds enough
+  // bytes for the longest encoding, then call the single-value method, which
+  // refills the buffer.
+
+  @Override
+  public void readInts(int[] ints, int start, int len) throws IOException {
+    int i = start;
+    int end = start + len;
+    while (i < end) {
+      int p = pos;
+      int safe = limit - 5;
+      byte[] b = buf;
+      while (i < end && p <= safe) {
+        int n = 0;
+        int shift = 0;
+        int c;
+        do {
+          c = b[p++] & 0xff;
+          n |= (c & 0x7f) << shift;
+          shift += 7;
+        } while (c > 0x7f && shift < 35);
+        if (c > 0x7f)
+          throw new IOException("Invalid int encoding");
+        ints[i++] = (n >>> 1) ^ -(n & 1);
+      }
+      pos = p;
+      if (i < end)
+        ints[i++] = readInt();                    // refill
+    }
+  }
+
+  @Override
+  public void readLongs(long[] longs, int start, int len) throws IOException {
+    int i = start;
+    int end = start + len;
+    while (i < end) {
+      int p = pos;
+      int safe = limit - 10;
+      byte[] b = buf;
+      while (i < end && p <= safe) {
+        long n = 0;
+        int shift = 0;
+        int c;
+        do {
+          c = b[p++] & 0xff;
+          n |= (c & 0x7fL) << shift;
+          shift += 7;
+        } while (c > 0x7f && shift < 70);
+        if (c > 0x7f)
+          throw new IOException("Invalid long encoding");
+        longs[i++] = (n >>> 1) ^ -(n & 1);
+      }
+      pos = p;
+      if (i < end)
+        longs[i++] = readLong();                  // refill
+    }
+  }
+
+  @Override
+  public void readFloats(float[] floats, int start, int len)
+    throws IOException {
+    int i = start;
+    int end = start + len;
+    while (i < end) {
+      int n = Math.min(end - i, (limit - pos) >> 2);
+      if (n > 0) {                                // bulk little-endian copy
+        ByteBuffer.wrap(buf, pos, n << 2).order(ByteOrder.LITTLE_ENDIAN)
+          .asFloatBuffer().get(floats, i, n);
+        pos += n << 2;
+        i += n;
+      }
+      if (i < end)
+        floats[i++] = readFloat();                // refill
+    }
+  }
+
+  @Override
+  public void readDoubles(double[] doubles, int start, int len)
+    throws IOException {
+    int i = start;
+    int end = start + len;
+    while (i < end) {
+      int n = Math.min(end - i, (limit - pos) >> 3);
+      if (n > 0) {                                // bulk little-endian copy
+        ByteBuffer.wrap(buf, pos, n << 3).order(ByteOrder.LITTLE_ENDIAN)
+          .asDoubleBuffer().get(doubles, i, n);
+        pos += n << 3;
+        i += n;
+      }
+      if (i < end)
+        doubles[i++] = readDouble();              // refill
+    }
+  }
+
   @Override
   public Utf8 readString(Utf8 old) throws IOException {
     int length = readInt();
@@ -980,4 +1088,102 @@ public class BinaryDecoder extends Decoder {
       return (remaining == 0);
     }
   }
+
+  /**
+   * A byte source for a {@link ByteBuffer} that is not backed by an array,
+   * such as a direct or memory-mapped buffer. Bytes are copied from the
+   * ByteBuffer into the decoder's buffer as they are needed, rather than
+   * first copying the entire ByteBuffer onto the heap. The position of the
+   * ByteBuffer passed in is not changed.
+   * <p/>
+   * When a decoder reading from one such source is reinitialized with
+   * another, the new source reuses the decoder's buffer, so that decoding a
+   * sequence of messages allocates no buffer per message.  To permit this,
+   * a source copies any bytes still buffered when it is detached.
+   */
+  private static class ByteBufferByteSource extends ByteSource {
+    private final ByteBuffer data;
+
+    private ByteBufferByteSource(ByteBuffer data) {
+      super();
+      this.data = data.duplicate();
+    }
+
+    @Override
+    protected void attach(int bufferSize, BinaryDecoder decoder) {
+      // no need for a buffer larger than the data, but ensureBounds requires
+      // at least 16 bytes
+      int size = Math.max(16, Math.min(bufferSize, data.remaining()));
+      byte[] buf = decoder.buf;
+      if (decoder.source instanceof ByteBufferByteSource
+          && buf.length >= size && buf.length <= Math.max(16, bufferSize)) {
+        decoder.pos = 0;                // reuse the previous source's buffer
+        decoder.minPos = 0;
+        decoder.limit = 0;
+        this.ba = new BufferAccessor(decoder);
+      } else {
+        super.attach(size, decoder);
+      }
+    }
+
+    @Override
+    protected void detach() {
+      super.detach();
+      // the decoder's buffer may be reused: keep only what is still buffered
+      int pos = ba.getPos();
+      int remaining = ba.getLim() - pos;
+      byte[] buffered = new byte[remaining];
+      System.arraycopy(ba.getBuf(), pos, buffered, 0, remaining);
+      ba.setBuf(buffered, 0, remaining);
+    }
+
+    @Override
+    protected void skipSourceBytes(long length) throws IOException {
+      long skipped = trySkipBytes(length);
+      if (skipped < length) {
+        throw new EOFException();
+      }
+    }
+
+    @Override
+    protected long trySkipBytes(long length) throws IOException {
+      int skipped = (int) Math.min(length, data.remaining());
+      data.position(data.position() + skipped);
+      return skipped;
+    }
+
+    @Override
+    protected void readRaw(byte[] bytes, int off, int len) throws IOException {
+      if (len > data.remaining()) {
+        data.position(data.limit());
+        throw new EOFException();
+      }
+      data.get(bytes, off, len);
+    }
+
+    @Override
+    protected int tryReadRaw(byte[] bytes, int off, int len)
+        throws IOException {
+      int read = Math.min(len, data.remaining());
+      data.get(bytes, off, read);
+      return read;
+    }
+
+    @Override
+    public int read() throws IOException {
+      if (ba.getLim() - ba.getPos() == 0) {
+        return data.hasRemaining() ? (data.get() & 0xff) : -1;
+      } else {
+        int position = ba.getPos();
+        int result = ba.getBuf()[position] & 0xff;
+        ba.setPos(position + 1);
+        return result;
+      }
+    }
+
+    @Override
+    public boolean isEof() {
+      return !data.hasRemaining();
+    }
+  }
 }
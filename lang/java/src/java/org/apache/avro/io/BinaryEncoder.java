@@ -76,13 +76,18 @@ public class BinaryEncoder extends Encoder {
     }
   }
   
-  private final ByteWriter byteWriter;
+  private ByteWriter byteWriter;
 
   /** Create a writer that sends its output to the underlying stream
-   *  <code>out</code>. */
+   *  <code>out</code>.
+   *  @see EncoderFactory */
   public BinaryEncoder(OutputStream out) {
     this.out = out;
-    this.byteWriter = (out instanceof ByteBufferOutputStream) ?
+    this.byteWriter = createByteWriter(out);
+  }
+
+  private static ByteWriter createByteWriter(OutputStream out) {
+    return (out instanceof ByteBufferOutputStream) ?
         new ReuseByteWriter((ByteBufferOutputStream) out) :
           new SimpleByteWriter(out);
   }
@@ -91,6 +96,7 @@ public class BinaryEncoder extends Encoder {
   public void init(OutputStream out) throws IOException {
     flush();
     this.out = out;
+    this.byteWriter = createByteWriter(out);
   }
 
   @Override
@@ -198,6 +204,16 @@ public class BinaryEncoder extends Encoder {
     o.write((byte)n);
   }
 
+  protected static int encodeInt(int n, byte[] b, int pos) {
+    n = (n << 1) ^ (n >> 31); // move sign to low-order bit
+    while ((n & ~0x7F) != 0) {
+      b[pos++] = (byte)((n & 0x7f) | 0x80);
+      n >>>= 7;
+    }
+    b[pos++] = (byte) n;
+    return pos;
+  }
+
   protected static int encodeLong(long n, byte[] b, int pos) {
     n = (n << 1) ^ (n >> 63); // move sign to low-order bit
     while ((n & ~0x7F) != 0) {
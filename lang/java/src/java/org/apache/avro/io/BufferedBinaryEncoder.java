@@ -0,0 +1,263 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.avro.io;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import org.apache.avro.ipc.ByteBufferOutputStream;
+import org.apache.avro.util.Utf8;
+
+/**
+ * A {@link BinaryEncoder} that encodes values into its own buffer, writing
+ * the buffer to its output stream only when it fills or when {@link #flush()}
+ * is called.  This avoids a call to {@link OutputStream#write(int)} for each
+ * byte of each number, which {@link BinaryEncoder} makes.  Byte arrays of at
+ * least half the buffer size are written to the stream directly rather than
+ * copied.
+ * <p/>
+ * Since output is buffered, {@link #flush()} must be called before the data
+ * written is used.
+ * <p/>
+ * Instances are created with {@link EncoderFactory}.
+ * @see EncoderFactory
+ */
+public class BufferedBinaryEncoder extends BinaryEncoder {
+  private byte[] buf;
+  private int pos;
+  private int bulkLimit;                          // larger writes bypass buf
+
+  BufferedBinaryEncoder(OutputStream out, int bufferSize) {
+    super(out);
+    this.buf = new byte[bufferSize];
+    this.bulkLimit = bufferSize >>> 1;
+  }
+
+  BufferedBinaryEncoder configure(OutputStream out, int bufferSize)
+    throws IOException {
+    if (this.out != null && pos > 0)
+      flushBuffer();
+    this.out = out;
+    this.pos = 0;
+    if (buf == null || buf.length != bufferSize)
+      this.buf = new byte[bufferSize];
+    this.bulkLimit = bufferSize >>> 1;
+    return this;
+  }
+
+  @Override
+  public void init(OutputStream out) throws IOException {
+    flush();
+    configure(out, buf.length);
+  }
+
+  @Override
+  public void flush() throws IOException {
+    if (out != null) {
+      flushBuffer();
+      out.flush();
+    }
+  }
+
+  /** Write the buffered bytes to the stream, without flushing the stream. */
+  private void flushBuffer() throws IOException {
+    if (pos > 0) {
+      out.write(buf, 0, pos);
+      pos = 0;
+    }
+  }
+
+  /** Ensure that at least <i>n</i> bytes remain in the buffer. */
+  private void ensureBounds(int n) throws IOException {
+    if (buf.length - pos < n)
+      flushBuffer();
+  }
+
+  /** Return the number of bytes written but not yet sent to the stream. */
+  public int bytesBuffered() {
+    return pos;
+  }
+
+  @Override
+  public void writeBoolean(boolean b) throws IOException {
+    if (pos == buf.length)
+      flushBuffer();
+    buf[pos++] = (byte)(b ? 1 : 0);
+  }
+
+  @Override
+  public void writeInt(int n) throws IOException {
+    ensureBounds(5);
+    pos = encodeInt(n, buf, pos);
+  }
+
+  @Override
+  public void writeLong(long n) throws IOException {
+    ensureBounds(10);
+    pos = encodeLong(n, buf, pos);
+  }
+
+  @Override
+  public void writeFloat(float f) throws IOException {
+    ensureBounds(4);
+    pos = encodeFloat(f, buf, pos);
+  }
+
+  @Override
+  public void writeDouble(double d) throws IOException {
+    ensureBounds(8);
+    pos = encodeDouble(d, buf, pos);
+  }
+
+  // startItem() does nothing, so batches of items are encoded directly
+
+  @Override
+  public void writeInts(int[] ints, int start, int len) throws IOException {
+    byte[] b = buf;
+    int p = pos;
+    int safe = b.length - 5;
+    for (int i = start, end = start + len; i < end; i++) {
+      if (p > safe) {
+        pos = p;
+        flushBuffer();
+        p = pos;
+      }
+      p = encodeInt(ints[i], b, p);
+    }
+    pos = p;
+  }
+
+  @Override
+  public void writeLongs(long[] longs, int start, int len) throws IOException {
+    byte[] b = buf;
+    int p = pos;
+    int safe = b.length - 10;
+    for (int i = start, end = start + len; i < end; i++) {
+      if (p > safe) {
+        pos = p;
+        flushBuffer();
+        p = pos;
+      }
+      p = encodeLong(longs[i], b, p);
+    }
+    pos = p;
+  }
+
+  @Override
+  public void writeFloats(float[] floats, int start, int len)
+    throws IOException {
+    int end = start + len;
+    while (start < end) {
+      int n = Math.min(end - start, (buf.length - pos) >> 2);
+      if (n == 0) {
+        flushBuffer();
+        continue;
+      }
+      ByteBuffer.wrap(buf, pos, n << 2).order(ByteOrder.LITTLE_ENDIAN)
+        .asFloatBuffer().put(floats, start, n);   // bulk little-endian copy
+      pos += n << 2;
+      start += n;
+    }
+  }
+
+  @Override
+  public void writeDoubles(double[] doubles, int start, int len)
+    throws IOException {
+    int end = start + len;
+    while (start < end) {
+      int n = Math.min(end - start, (buf.length - pos) >> 3);
+      if (n == 0) {
+        flushBuffer();
+        continue;
+      }
+      ByteBuffer.wrap(buf, pos, n << 3).order(ByteOrder.LITTLE_ENDIAN)
+        .asDoubleBuffer().put(doubles, start, n); // bulk little-endian copy
+      pos += n << 3;
+      start += n;
+    }
+  }
+
+  @Override
+  public void writeString(Utf8 utf8) throws IOException {
+    writeBytes(utf8.getBytes(), 0, utf8.getLength());
+  }
+
+  @Override
+  public void writeBytes(ByteBuffer bytes) throws IOException {
+    int len = bytes.remaining();
+    if (len > bulkLimit && out instanceof ByteBufferOutputStream) {
+      writeInt(len);
+      flushBuffer();
+      ((ByteBufferOutputStream)out).writeBuffer(bytes);
+    } else {
+      writeBytes(bytes.array(), bytes.arrayOffset() + bytes.position(), len);
+    }
+  }
+
+  @Override
+  public void writeBytes(byte[] bytes, int start, int len) throws IOException {
+    writeInt(len);
+    writeFixed(bytes, start, len);
+  }
+
+  @Override
+  public void writeFixed(byte[] bytes, int start, int len) throws IOException {
+    if (len > bulkLimit) {                        // too big to be worth copying
+      flushBuffer();
+      out.write(bytes, start, len);
+      return;
+    }
+    ensureBounds(len);
+    System.arraycopy(bytes, start, buf, pos, len);
+    pos += len;
+  }
+
+  @Override
+  public void writeEnum(int e) throws IOException {
+    writeInt(e);
+  }
+
+  @Override
+  public void setItemCount(long itemCount) throws IOException {
+    if (itemCount > 0)
+      writeLong(itemCount);
+  }
+
+  @Override
+  public void writeArrayEnd() throws IOException {
+    writeZero();
+  }
+
+  @Override
+  public void writeMapEnd() throws IOException {
+    writeZero();
+  }
+
+  @Override
+  public void writeIndex(int unionIndex) throws IOException {
+    writeInt(unionIndex);
+  }
+
+  private void writeZero() throws IOException {
+    if (pos == buf.length)
+      flushBuffer();
+    buf[pos++] = 0;
+  }
+}
@@ -98,6 +98,48 @@ public abstract class Decoder {
    *           is not the type of the next value to be read
    */
   public abstract double readDouble() throws IOException;
+
+  /**
+   * Reads <tt>len</tt> ints, such as the items of an array, into
+   * <tt>ints</tt> starting at <tt>start</tt>.  The result is the same as
+   * calling {@link #readInt} <tt>len</tt> times, which the default
+   * implementation does, but implementations may read faster.
+   * @throws AvroTypeException If this is a stateful reader and
+   * int is not the type of the next values to be read
+   */
+  public void readInts(int[] ints, int start, int len) throws IOException {
+    for (int i = start, end = start + len; i < end; i++)
+      ints[i] = readInt();
+  }
+
+  /**
+   * Reads <tt>len</tt> longs into <tt>longs</tt> starting at
+   * <tt>start</tt>.  See {@link #readInts}.
+   */
+  public void readLongs(long[] longs, int start, int len) throws IOException {
+    for (int i = start, end = start + len; i < end; i++)
+      longs[i] = readLong();
+  }
+
+  /**
+   * Reads <tt>len</tt> floats into <tt>floats</tt> starting at
+   * <tt>start</tt>.  See {@link #readInts}.
+   */
+  public void readFloats(float[] floats, int start, int len)
+    throws IOException {
+    for (int i = start, end = start + len; i < end; i++)
+      floats[i] = readFloat();
+  }
+
+  /**
+   * Reads <tt>len</tt> doubles into <tt>doubles</tt> starting at
+   * <tt>start</tt>.  See {@link #readInts}.
+   */
+  public void readDoubles(double[] doubles, int start, int len)
+    throws IOException {
+    for (int i = start, end = start + len; i < end; i++)
+      doubles[i] = readDouble();
+  }
     
   /**
    * Reads a char-string written by {@link Encoder#writeString}.
@@ -18,6 +18,10 @@
 package org.apache.avro.io;
 
 import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.List;
+
+import org.apache.avro.ipc.ByteBufferInputStream;
 
 /**
  * A factory for creating and configuring {@link Decoder}s.
@@ -219,6 +223,76 @@ public class DecoderFactory {
     return createBinaryDecoder(bytes, 0, bytes.length, reuse);
   }
 
+  /**
+   * Creates or reinitializes a {@link BinaryDecoder} with the remaining bytes
+   * of a {@link ByteBuffer} as the source of data. If the buffer is backed by
+   * an array, that array is used as the decoder's buffer as in
+   * {@link #createBinaryDecoder(byte[], int, int, BinaryDecoder)}. Otherwise,
+   * for example for a direct or memory-mapped buffer, bytes are copied from
+   * the buffer as needed through a heap buffer no larger than the data or
+   * than this factory's configured buffer size, rather than all at once.
+   * When <i>reuse</i> last read from such a buffer, its heap buffer is
+   * reused.
+   * <p/>
+   * The position of <i>bytes</i> is not changed by decoding.
+   * 
+   * @param bytes The ByteBuffer to initialize to
+   * @param reuse The BinaryDecoder to attempt to reinitialize. if null a new
+   *          BinaryDecoder is created.
+   * @return A BinaryDecoder that uses <i>bytes</i> as its source of data. If
+   *         <i>reuse</i> is null, this will be a new instance. <i>reuse</i> may
+   *         be reinitialized if appropriate, otherwise a new instance is
+   *         returned. Clients must not assume that <i>reuse</i> is
+   *         reinitialized and returned.
+   */
+  public BinaryDecoder createBinaryDecoder(ByteBuffer bytes,
+      BinaryDecoder reuse) {
+    if (null != reuse && reuse.getClass() == BinaryDecoder.class) {
+      reuse.init(binaryDecoderBufferSize, bytes);
+      return reuse;
+    } else {
+      return new BinaryDecoder(binaryDecoderBufferSize, bytes);
+    }
+  }
+
+  /**
+   * Creates or reinitializes a {@link BinaryDecoder} with the remaining bytes
+   * of a sequence of {@link ByteBuffer}s as the source of data, such as the
+   * frames of an RPC message.  Data held in a single buffer is decoded as by
+   * {@link #createBinaryDecoder(ByteBuffer, BinaryDecoder)}: in place if it
+   * is a heap buffer, else through a reused heap buffer.
+   * Otherwise the buffers are read in turn, through a buffer no larger than
+   * the data, rather than through one of the size configured by this factory.
+   * <p/>
+   * The positions of the buffers may be changed by decoding.
+   * 
+   * @param buffers The ByteBuffers to initialize to
+   * @param reuse The BinaryDecoder to attempt to reinitialize. if null a new
+   *          BinaryDecoder is created.
+   * @return A BinaryDecoder that uses <i>buffers</i> as its source of data.
+   *         Clients must not assume that <i>reuse</i> is reinitialized and
+   *         returned.
+   */
+  public BinaryDecoder createBinaryDecoder(List<ByteBuffer> buffers,
+      BinaryDecoder reuse) {
+    if (buffers.size() == 1) {
+      return createBinaryDecoder(buffers.get(0), reuse);
+    }
+    long length = 0;
+    for (ByteBuffer buffer : buffers) {
+      length += buffer.remaining();
+    }
+    // ensureBounds requires a buffer of at least 16 bytes
+    int bufferSize = (int)Math.max(16, Math.min(length, binaryDecoderBufferSize));
+    InputStream in = new ByteBufferInputStream(buffers);
+    if (null != reuse && reuse.getClass() == BinaryDecoder.class) {
+      reuse.init(bufferSize, in);
+      return reuse;
+    } else {
+      return new BinaryDecoder(bufferSize, in);
+    }
+  }
+
   private static class DefaultDecoderFactory extends DecoderFactory {
     @Override
     public DecoderFactory configureDecoderBufferSize(int bufferSize) {
@@ -159,6 +159,34 @@ class DirectBinaryDecoder extends BinaryDecoder {
     return Double.longBitsToDouble(n);
   }
 
+  // DirectBinaryDecoder has no buffer to decode batches from
+
+  @Override
+  public void readInts(int[] ints, int start, int len) throws IOException {
+    for (int i = start, end = start + len; i < end; i++)
+      ints[i] = readInt();
+  }
+
+  @Override
+  public void readLongs(long[] longs, int start, int len) throws IOException {
+    for (int i = start, end = start + len; i < end; i++)
+      longs[i] = readLong();
+  }
+
+  @Override
+  public void readFloats(float[] floats, int start, int len)
+    throws IOException {
+    for (int i = start, end = start + len; i < end; i++)
+      floats[i] = readFloat();
+  }
+
+  @Override
+  public void readDoubles(double[] doubles, int start, int len)
+    throws IOException {
+    for (int i = start, end = start + len; i < end; i++)
+      doubles[i] = readDouble();
+  }
+
   @Override
   public ByteBuffer readBytes(ByteBuffer old) throws IOException {
     int length = readInt();
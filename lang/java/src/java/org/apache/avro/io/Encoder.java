@@ -210,6 +210,57 @@ public abstract class Encoder implements Flushable {
    */
   public abstract void startItem() throws IOException;
 
+  /**
+   * Writes <tt>len</tt> ints from <tt>ints</tt>, starting at
+   * <tt>start</tt>, as items of an array.  The result is the same as
+   * calling {@link #startItem()} then {@link #writeInt} for each, which the
+   * default implementation does, but implementations may write faster.
+   * Call {@link #setItemCount} first, as for any items.
+   * @throws AvroTypeException If this is a stateful writer and an
+   *         array of ints is not expected
+   */
+  public void writeInts(int[] ints, int start, int len) throws IOException {
+    for (int i = start, end = start + len; i < end; i++) {
+      startItem();
+      writeInt(ints[i]);
+    }
+  }
+
+  /**
+   * Writes <tt>len</tt> longs from <tt>longs</tt>, starting at
+   * <tt>start</tt>, as items of an array.  See {@link #writeInts}.
+   */
+  public void writeLongs(long[] longs, int start, int len) throws IOException {
+    for (int i = start, end = start + len; i < end; i++) {
+      startItem();
+      writeLong(longs[i]);
+    }
+  }
+
+  /**
+   * Writes <tt>len</tt> floats from <tt>floats</tt>, starting at
+   * <tt>start</tt>, as items of an array.  See {@link #writeInts}.
+   */
+  public void writeFloats(float[] floats, int start, int len)
+    throws IOException {
+    for (int i = start, end = start + len; i < end; i++) {
+      startItem();
+      writeFloat(floats[i]);
+    }
+  }
+
+  /**
+   * Writes <tt>len</tt> doubles from <tt>doubles</tt>, starting at
+   * <tt>start</tt>, as items of an array.  See {@link #writeInts}.
+   */
+  public void writeDoubles(double[] doubles, int start, int len)
+    throws IOException {
+    for (int i = start, end = start + len; i < end; i++) {
+      startItem();
+      writeDouble(doubles[i]);
+    }
+  }
+
   /**
    * Call this method to finish writing an array.
    * See {@link #writeArrayStart} for usage information.
@@ -0,0 +1,162 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.avro.io;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+import org.apache.avro.AvroRuntimeException;
+
+/**
+ * A factory for creating and configuring {@link Encoder}s.
+ * <p/>
+ * Factories are thread-safe, and are generally cached by applications for
+ * performance reasons. Multiple instances are only required if multiple
+ * concurrent configurations are needed.
+ *
+ * @see Encoder
+ * @see DecoderFactory
+ */
+public class EncoderFactory {
+  private static final EncoderFactory DEFAULT_FACTORY =
+    new DefaultEncoderFactory();
+  static final int DEFAULT_BUFFER_SIZE = 2048;
+  static final int MIN_BUFFER_SIZE = 32;
+  static final int MAX_BUFFER_SIZE = 16 * 1024 * 1024;
+
+  int binaryEncoderBufferSize = DEFAULT_BUFFER_SIZE;
+
+  /** Constructor for factory instances */
+  public EncoderFactory() {
+    super();
+  }
+
+  /**
+   * Returns an immutable static EncoderFactory configured with default
+   * settings. All mutating methods throw IllegalArgumentExceptions. All
+   * creator methods create objects with default settings.
+   */
+  public static EncoderFactory defaultFactory() {
+    return DEFAULT_FACTORY;
+  }
+
+  /**
+   * Configures this factory to use the specified buffer size when creating
+   * Encoder instances that buffer their output. The default buffer size is
+   * 2048 bytes.
+   *
+   * @param size The preferred buffer size. Valid values are in the range [32,
+   *          16*1024*1024]. Values outside this range are rounded to the
+   *          nearest value in the range. Values less than 256 are not
+   *          recommended, since small writes are then more often made
+   *          directly to the underlying stream.
+   * @return This factory, to enable method chaining:
+   * <pre>
+   * EncoderFactory myFactory = new EncoderFactory().configureBufferSize(4096);
+   * </pre>
+   */
+  public EncoderFactory configureBufferSize(int size) {
+    if (size < MIN_BUFFER_SIZE)
+      size = MIN_BUFFER_SIZE;
+    if (size > MAX_BUFFER_SIZE)
+      size = MAX_BUFFER_SIZE;
+    this.binaryEncoderBufferSize = size;
+    return this;
+  }
+
+  /**
+   * Returns this factory's configured preferred buffer size.  Used when
+   * creating Encoder instances that buffer. See {@link #configureBufferSize}
+   * @return The preferred buffer size, in bytes.
+   */
+  public int getBufferSize() {
+    return this.binaryEncoderBufferSize;
+  }
+
+  /**
+   * Creates or reinitializes a buffering {@link BinaryEncoder} with the output
+   * stream provided as the destination for written data. If <i>reuse</i> is
+   * provided, it will be reinitialized to the given output stream.
+   * <p/>
+   * The encoder buffers as many bytes as configured by this factory, so
+   * {@link Encoder#flush()} must be called before the data written to
+   * <i>out</i> is used.  Any data buffered by <i>reuse</i> is first written
+   * to its previous stream.
+   *
+   * @param out The OutputStream to initialize to
+   * @param reuse The BinaryEncoder to <i>attempt</i> to reuse. If null, or
+   *          not a buffering encoder, a new instance is created.
+   * @return A BinaryEncoder that writes to <i>out</i>. Clients must not
+   *         assume that <i>reuse</i> is reinitialized and returned.
+   *         <p/>
+   *         example:
+   *
+   *         <pre>
+   * EncoderFactory factory = new EncoderFactory();
+   * BinaryEncoder e = factory.createBinaryEncoder(output, null);
+   * ...
+   * e.flush();
+   * e = factory.createBinaryEncoder(output2, e); // reinitializes e
+   * </pre>
+   * @see BufferedBinaryEncoder
+   */
+  public BinaryEncoder createBinaryEncoder(OutputStream out,
+                                           BinaryEncoder reuse) {
+    if (null != reuse && reuse.getClass() == BufferedBinaryEncoder.class) {
+      try {
+        return ((BufferedBinaryEncoder)reuse)
+          .configure(out, binaryEncoderBufferSize);
+      } catch (IOException e) {
+        throw new AvroRuntimeException("Failure flushing old output", e);
+      }
+    }
+    return new BufferedBinaryEncoder(out, binaryEncoderBufferSize);
+  }
+
+  /**
+   * Creates or reinitializes a {@link BinaryEncoder} that writes each value
+   * to the output stream as it is written, without buffering.  This is
+   * appropriate when the stream is itself an efficient buffer, or when data
+   * must reach the stream without a call to {@link Encoder#flush()}.
+   *
+   * @param out The OutputStream to initialize to
+   * @param reuse The BinaryEncoder to <i>attempt</i> to reuse. If null, or
+   *          not an unbuffered encoder, a new instance is created.
+   * @return A BinaryEncoder that writes to <i>out</i>. Clients must not
+   *         assume that <i>reuse</i> is reinitialized and returned.
+   */
+  public BinaryEncoder createDirectBinaryEncoder(OutputStream out,
+                                                 BinaryEncoder reuse) {
+    if (null != reuse && reuse.getClass() == BinaryEncoder.class) {
+      try {
+        reuse.init(out);
+      } catch (IOException e) {
+        throw new AvroRuntimeException("Failure flushing old output", e);
+      }
+      return reuse;
+    }
+    return new BinaryEncoder(out);
+  }
+
+  private static class DefaultEncoderFactory extends EncoderFactory {
+    @Override
+    public EncoderFactory configureBufferSize(int size) {
+      throw new IllegalArgumentException("This Factory instance is Immutable");
+    }
+  }
+}
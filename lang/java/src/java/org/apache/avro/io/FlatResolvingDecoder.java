@@ -0,0 +1,468 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.avro.io;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import org.apache.avro.AvroTypeException;
+import org.apache.avro.Schema;
+import org.apache.avro.io.parsing.FlatGrammar;
+import org.apache.avro.io.parsing.Symbol;
+import org.apache.avro.util.Utf8;
+
+/**
+ * A {@link ResolvingDecoder} that interprets a {@link FlatGrammar}.  Rather
+ * than expanding productions onto a stack of symbols it steps a program
+ * counter through the grammar's instructions, keeping only return addresses
+ * on its stack.
+ */
+class FlatResolvingDecoder extends ResolvingDecoder {
+  private final FlatGrammar grammar;
+  private final int[] code;
+  private final Object[] constants;
+
+  private int pc;
+  private int[] stack = new int[16];
+  private int sp;
+  private Decoder backup;
+  private BinaryDecoder defaults;                 // reused for default values
+
+  FlatResolvingDecoder(FlatGrammar grammar, Decoder in) throws IOException {
+    super(null, in);
+    this.grammar = grammar;
+    this.code = grammar.code;
+    this.constants = grammar.constants;
+  }
+
+  /** Runs instructions until one matches the terminal <tt>input</tt>, and
+   * returns its address.  The program counter is left after it. */
+  private int advance(int input) throws IOException {
+    for (;;) {
+      int at = pc;
+      int op = code[at];
+      if (op == input) {
+        pc = at + grammar.length(at);
+        return at;
+      }
+      switch (op) {
+      case FlatGrammar.FIELD_ACTION:
+        pc = at + 2;
+        break;
+      case FlatGrammar.PROMOTE:
+        if (code[at + 1] != input)
+          throw new AvroTypeException("Found " + FlatGrammar.name(code[at + 1])
+                                      + " while looking for "
+                                      + FlatGrammar.name(input));
+        pc = at + 3;
+        return at;
+      case FlatGrammar.REPEAT:
+        if (code[at + 1] == input) {
+          pc = at + 3;
+          return at;
+        }
+        call(at, code[at + 2]);                   // return here for the next
+        break;
+      case FlatGrammar.END:
+        pc = 0;
+        break;
+      default:
+        if (op < FlatGrammar.PROMOTE)
+          throw new AvroTypeException("Attempt to process a "
+                                      + FlatGrammar.name(input) + " when a "
+                                      + FlatGrammar.name(op)
+                                      + " was expected.");
+        action(at);
+      }
+    }
+  }
+
+  private void call(int returnTo, int target) {
+    if (sp == stack.length)
+      stack = Arrays.copyOf(stack, sp * 2);
+    stack[sp++] = returnTo;
+    pc = target;
+  }
+
+  /** Performs the action at <tt>at</tt>. */
+  private void action(int at) throws IOException {
+    switch (code[at]) {
+    case FlatGrammar.RET:
+      pc = stack[--sp];
+      break;
+    case FlatGrammar.WRITER_UNION:
+      int branches = code[at + 1];
+      int branch = in.readIndex();
+      if (branch < 0 || branch >= branches)
+        throw new AvroTypeException("Union index out of range: " + branch);
+      call(at + 2 + branches, code[at + 2 + branch]);
+      break;
+    case FlatGrammar.SKIP:
+      pc = at + 2;
+      skip((Symbol.SkipAction) constants[code[at + 1]]);
+      break;
+    case FlatGrammar.DEFAULT_START:
+      pc = at + 2;
+      backup = in;
+      defaults = DecoderFactory.defaultFactory()
+        .createBinaryDecoder((byte[]) constants[code[at + 1]], defaults);
+      in = defaults;
+      break;
+    case FlatGrammar.DEFAULT_END:
+      pc = at + 1;
+      in = backup;
+      break;
+    case FlatGrammar.ERROR:
+      throw new AvroTypeException((String) constants[code[at + 1]]);
+    default:
+      throw new AvroTypeException("Unknown action: " + code[at]);
+    }
+  }
+
+  /** Skip fields that the reader lacks.  Binary data is skipped with the
+   * action's precomputed plan, other encodings through the writer's
+   * grammar. */
+  private void skip(Symbol.SkipAction action) throws IOException {
+    if (action.plan != null && in instanceof BinaryDecoder) {
+      action.plan.skip(in);
+    } else {
+      new ValidatingDecoder(action.symToSkip, in).parser.skipTo(0);
+    }
+  }
+
+  /** Performs the actions that end the current item of an array or map. */
+  private void processTrailingActions() throws IOException {
+    for (;;) {
+      switch (code[pc]) {
+      case FlatGrammar.RET:
+      case FlatGrammar.SKIP:
+      case FlatGrammar.DEFAULT_END:
+        action(pc);
+        break;
+      default:
+        return;
+      }
+    }
+  }
+
+  /** Skips the item of the repeater at the program counter. */
+  private void skipRepeater() throws IOException {
+    int target = sp;
+    call(pc, code[pc + 2]);
+    while (sp > target) {
+      int at = pc;
+      switch (code[at]) {
+      case FlatGrammar.NULL:        readNull(); break;
+      case FlatGrammar.BOOLEAN:     readBoolean(); break;
+      case FlatGrammar.INT:         readInt(); break;
+      case FlatGrammar.LONG:        readLong(); break;
+      case FlatGrammar.FLOAT:       readFloat(); break;
+      case FlatGrammar.DOUBLE:      readDouble(); break;
+      case FlatGrammar.STRING:      skipString(); break;
+      case FlatGrammar.BYTES:       skipBytes(); break;
+      case FlatGrammar.FIXED:       skipFixed(); break;
+      case FlatGrammar.ENUM:        readEnum(); break;
+      case FlatGrammar.UNION:       readIndex(); break;
+      case FlatGrammar.ARRAY_START: skipArray(); break;
+      case FlatGrammar.MAP_START:   skipMap(); break;
+      case FlatGrammar.FIELD_ACTION:
+        pc = at + 2;
+        break;
+      case FlatGrammar.PROMOTE:
+        if (code[at + 1] == FlatGrammar.LONG)
+          readLong();
+        else
+          readDouble();
+        break;
+      default:
+        action(at);
+      }
+    }
+  }
+
+  @Override
+  public void init(InputStream in) throws IOException {
+    pc = 0;
+    sp = 0;
+    this.in.init(in);
+  }
+
+  @Override
+  public Schema.Field[] readFieldOrder() throws IOException {
+    int at = advance(FlatGrammar.FIELD_ACTION);
+    return (Schema.Field[]) constants[code[at + 1]];
+  }
+
+  @Override
+  public void drain() throws IOException {
+    while (pc != 0) {
+      int at = pc;
+      switch (code[at]) {
+      case FlatGrammar.END:
+        pc = 0;
+        break;
+      case FlatGrammar.FIELD_ACTION:
+        pc = at + 2;
+        break;
+      case FlatGrammar.RET:
+      case FlatGrammar.WRITER_UNION:
+      case FlatGrammar.SKIP:
+      case FlatGrammar.DEFAULT_START:
+      case FlatGrammar.DEFAULT_END:
+      case FlatGrammar.ERROR:
+        action(at);
+        break;
+      default:
+        return;
+      }
+    }
+  }
+
+  @Override
+  public void readNull() throws IOException {
+    advance(FlatGrammar.NULL);
+    in.readNull();
+  }
+
+  @Override
+  public boolean readBoolean() throws IOException {
+    advance(FlatGrammar.BOOLEAN);
+    return in.readBoolean();
+  }
+
+  @Override
+  public int readInt() throws IOException {
+    advance(FlatGrammar.INT);
+    return in.readInt();
+  }
+
+  @Override
+  public long readLong() throws IOException {
+    int at = advance(FlatGrammar.LONG);
+    if (code[at] == FlatGrammar.LONG)
+      return in.readLong();
+    switch (code[at + 2]) {                       // the writer's type
+    case FlatGrammar.INT:    return in.readInt();
+    case FlatGrammar.FLOAT:  return (long) in.readFloat();
+    default:                 return (long) in.readDouble();
+    }
+  }
+
+  @Override
+  public float readFloat() throws IOException {
+    advance(FlatGrammar.FLOAT);
+    return in.readFloat();
+  }
+
+  @Override
+  public double readDouble() throws IOException {
+    int at = advance(FlatGrammar.DOUBLE);
+    if (code[at] == FlatGrammar.DOUBLE)
+      return in.readDouble();
+    switch (code[at + 2]) {                       // the writer's type
+    case FlatGrammar.INT:    return (double) in.readInt();
+    case FlatGrammar.LONG:   return (double) in.readLong();
+    default:                 return (double) in.readFloat();
+    }
+  }
+
+  // Items of an array of primitives need no parsing, so can be read in bulk.
+
+  @Override
+  public void readInts(int[] ints, int start, int len) throws IOException {
+    if (grammar.isRepeaterOf(pc, FlatGrammar.INT)) {
+      in.readInts(ints, start, len);
+    } else {
+      for (int i = start, end = start + len; i < end; i++)
+        ints[i] = readInt();
+    }
+  }
+
+  @Override
+  public void readLongs(long[] longs, int start, int len) throws IOException {
+    if (grammar.isRepeaterOf(pc, FlatGrammar.LONG)) {
+      in.readLongs(longs, start, len);
+    } else {
+      for (int i = start, end = start + len; i < end; i++)
+        longs[i] = readLong();
+    }
+  }
+
+  @Override
+  public void readFloats(float[] floats, int start, int len)
+    throws IOException {
+    if (grammar.isRepeaterOf(pc, FlatGrammar.FLOAT)) {
+      in.readFloats(floats, start, len);
+    } else {
+      for (int i = start, end = start + len; i < end; i++)
+        floats[i] = readFloat();
+    }
+  }
+
+  @Override
+  public void readDoubles(double[] doubles, int start, int len)
+    throws IOException {
+    if (grammar.isRepeaterOf(pc, FlatGrammar.DOUBLE)) {
+      in.readDoubles(doubles, start, len);
+    } else {
+      for (int i = start, end = start + len; i < end; i++)
+        doubles[i] = readDouble();
+    }
+  }
+
+  @Override
+  public Utf8 readString(Utf8 old) throws IOException {
+    advance(FlatGrammar.STRING);
+    return in.readString(old);
+  }
+
+  @Override
+  public void skipString() throws IOException {
+    advance(FlatGrammar.STRING);
+    in.skipString();
+  }
+
+  @Override
+  public ByteBuffer readBytes(ByteBuffer old) throws IOException {
+    advance(FlatGrammar.BYTES);
+    return in.readBytes(old);
+  }
+
+  @Override
+  public void skipBytes() throws IOException {
+    advance(FlatGrammar.BYTES);
+    in.skipBytes();
+  }
+
+  private void checkFixed(int size) throws IOException {
+    int expected = code[advance(FlatGrammar.FIXED) + 1];
+    if (size != expected) {
+      throw new AvroTypeException(
+        "Incorrect length for fixed binary: expected " +
+        expected + " but received " + size + " bytes.");
+    }
+  }
+
+  @Override
+  public void readFixed(byte[] bytes, int start, int len) throws IOException {
+    checkFixed(len);
+    in.readFixed(bytes, start, len);
+  }
+
+  @Override
+  public void skipFixed(int length) throws IOException {
+    checkFixed(length);
+    in.skipFixed(length);
+  }
+
+  @Override
+  protected void skipFixed() throws IOException {
+    in.skipFixed(code[advance(FlatGrammar.FIXED) + 1]);
+  }
+
+  @Override
+  public int readEnum() throws IOException {
+    Object[] adjustments =
+      (Object[]) constants[code[advance(FlatGrammar.ENUM) + 1]];
+    int n = in.readEnum();
+    if (n < 0 || n >= adjustments.length) {
+      throw new AvroTypeException(
+          "Enumeration out of range: max is " +
+          adjustments.length + " but received " + n);
+    }
+    Object o = adjustments[n];
+    if (o instanceof Integer) {
+      return ((Integer) o).intValue();
+    } else {
+      throw new AvroTypeException((String) o);
+    }
+  }
+
+  @Override
+  public long readArrayStart() throws IOException {
+    advance(FlatGrammar.ARRAY_START);
+    long result = in.readArrayStart();
+    if (result == 0) {
+      advance(FlatGrammar.ARRAY_END);
+    }
+    return result;
+  }
+
+  @Override
+  public long arrayNext() throws IOException {
+    processTrailingActions();
+    long result = in.arrayNext();
+    if (result == 0) {
+      advance(FlatGrammar.ARRAY_END);
+    }
+    return result;
+  }
+
+  @Override
+  public long skipArray() throws IOException {
+    advance(FlatGrammar.ARRAY_START);
+    for (long c = in.skipArray(); c != 0; c = in.skipArray()) {
+      while (c-- > 0) {
+        skipRepeater();
+      }
+    }
+    advance(FlatGrammar.ARRAY_END);
+    return 0;
+  }
+
+  @Override
+  public long readMapStart() throws IOException {
+    advance(FlatGrammar.MAP_START);
+    long result = in.readMapStart();
+    if (result == 0) {
+      advance(FlatGrammar.MAP_END);
+    }
+    return result;
+  }
+
+  @Override
+  public long mapNext() throws IOException {
+    processTrailingActions();
+    long result = in.mapNext();
+    if (result == 0) {
+      advance(FlatGrammar.MAP_END);
+    }
+    return result;
+  }
+
+  @Override
+  public long skipMap() throws IOException {
+    advance(FlatGrammar.MAP_START);
+    for (long c = in.skipMap(); c != 0; c = in.skipMap()) {
+      while (c-- > 0) {
+        skipRepeater();
+      }
+    }
+    advance(FlatGrammar.MAP_END);
+    return 0;
+  }
+
+  @Override
+  public int readIndex() throws IOException {
+    int at = advance(FlatGrammar.UNION);
+    call(pc, code[at + 2]);                       // the reader's branch
+    return code[at + 1];
+  }
+}
@@ -21,8 +21,10 @@ import java.io.IOException;
 
 import org.apache.avro.AvroTypeException;
 import org.apache.avro.Schema;
+import org.apache.avro.io.parsing.FlatGrammar;
 import org.apache.avro.io.parsing.ResolvingGrammarGenerator;
 import org.apache.avro.io.parsing.Symbol;
+import org.apache.avro.util.StringCache;
 
 /**
  * {@link Decoder} that performs type-resolution between the reader's and
@@ -40,6 +42,7 @@ import org.apache.avro.io.parsing.Symbol;
 public class ResolvingDecoder extends ValidatingDecoder {
 
   private Decoder backup;
+  private StringCache stringCache;
   
   public ResolvingDecoder(Schema writer, Schema reader, Decoder in)
     throws IOException {
@@ -76,6 +79,48 @@ public class ResolvingDecoder extends ValidatingDecoder {
     return new ResolvingGrammarGenerator().generate(writer, reader);
   }
 
+  /**
+   * Produces an opaque resolver like {@link #resolve(Schema, Schema)}, but
+   * with the grammar flattened into instructions that decoders interpret
+   * without expanding productions onto a stack.  The returned Object is
+   * immutable and may be shared among threads.  Decoders for it must be
+   * constructed with {@link #create(Object, Decoder)}.
+   *
+   * @param writer  The writer's schema.
+   * @param reader  The reader's schema.
+   * @return  The opaque resolver.
+   * @throws IOException
+   */
+  public static Object resolveFlat(Schema writer, Schema reader)
+    throws IOException {
+    return new ResolvingGrammarGenerator().generateFlat(writer, reader);
+  }
+
+  /**
+   * Constructs a <tt>ResolvingDecoder</tt> for a resolver returned by either
+   * {@link #resolve(Schema, Schema)} or {@link #resolveFlat(Schema, Schema)}.
+   * @param resolver  The resolver to use.
+   * @param in  The underlying decoder.
+   * @throws IOException
+   */
+  public static ResolvingDecoder create(Object resolver, Decoder in)
+    throws IOException {
+    if (resolver instanceof FlatGrammar)
+      return new FlatResolvingDecoder((FlatGrammar) resolver, in);
+    return new ResolvingDecoder(resolver, in);
+  }
+
+  /** Returns the cache through which strings are currently being read, or
+   * null.  Readers set this as they enter and leave fields that have one,
+   * so that it lasts no longer than a single read. */
+  public StringCache getStringCache() { return stringCache; }
+
+  /** Sets the cache through which strings are read.  See {@link
+   * #getStringCache()}. */
+  public void setStringCache(StringCache stringCache) {
+    this.stringCache = stringCache;
+  }
+
   /** Returns the actual order in which the reader's fields will be
    * returned to the reader.
    *
@@ -117,7 +162,7 @@ public class ResolvingDecoder extends ValidatingDecoder {
    * @throws AvroTypeException If we're not starting a new record
    *                               
    */
-  public final Schema.Field[] readFieldOrder() throws IOException {
+  public Schema.Field[] readFieldOrder() throws IOException {
     return ((Symbol.FieldOrderAction) parser.advance(Symbol.FIELD_ACTION)).
       fields;
   }
@@ -137,7 +182,7 @@ public class ResolvingDecoder extends ValidatingDecoder {
    * portions are consumed before the next object is decoded.
    * @throws IOException
    */
-  public final void drain() throws IOException {
+  public void drain() throws IOException {
     parser.processImplicitActions();
   }
 
@@ -148,6 +193,8 @@ public class ResolvingDecoder extends ValidatingDecoder {
       return in.readInt();
     } else if (actual == Symbol.DOUBLE) {
       return (long) in.readDouble();
+    } else if (actual == Symbol.FLOAT) {
+      return (long) in.readFloat();
     } else {
       assert actual == Symbol.LONG;
       return in.readLong();
@@ -203,8 +250,7 @@ public class ResolvingDecoder extends ValidatingDecoder {
         return t.writer;
       }
     } else if (top instanceof Symbol.SkipAction) {
-      Symbol symToSkip = ((Symbol.SkipAction) top).symToSkip;
-      parser.skipSymbol(symToSkip);
+      skip((Symbol.SkipAction) top);
     } else if (top instanceof Symbol.WriterUnionAction) {
       Symbol.Alternative branches = (Symbol.Alternative) parser.popSymbol();
       parser.pushSymbol(branches.getSymbol(in.readIndex()));
@@ -223,13 +269,23 @@ public class ResolvingDecoder extends ValidatingDecoder {
     return null;
   }
 
+  /** Skip fields that the reader lacks.  Binary data is skipped with the
+   * action's precomputed plan, other encodings through the grammar. */
+  private void skip(Symbol.SkipAction action) throws IOException {
+    if (action.plan != null && in instanceof BinaryDecoder) {
+      action.plan.skip(in);
+    } else {
+      parser.skipSymbol(action.symToSkip);
+    }
+  }
+
   @Override
   public void skipAction() throws IOException {
     Symbol top = parser.popSymbol();
     if (top instanceof Symbol.ResolvingAction) {
       parser.pushSymbol(((Symbol.ResolvingAction) top).writer);
     } else if (top instanceof Symbol.SkipAction) {
-      parser.pushSymbol(((Symbol.SkipAction) top).symToSkip);
+      skip((Symbol.SkipAction) top);
     } else if (top instanceof Symbol.WriterUnionAction) {
       Symbol.Alternative branches = (Symbol.Alternative) parser.popSymbol();
       parser.pushSymbol(branches.getSymbol(in.readIndex()));
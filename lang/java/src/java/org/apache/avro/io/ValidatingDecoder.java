@@ -86,6 +86,42 @@ public class ValidatingDecoder extends ParsingDecoder
     parser.advance(Symbol.DOUBLE);
     return in.readDouble();
   }
+
+  // Items of an array of primitives need no parsing, so can be read in bulk.
+
+  @Override
+  public void readInts(int[] ints, int start, int len) throws IOException {
+    if (parser.isRepeaterOf(Symbol.INT))
+      in.readInts(ints, start, len);
+    else
+      super.readInts(ints, start, len);
+  }
+
+  @Override
+  public void readLongs(long[] longs, int start, int len) throws IOException {
+    if (parser.isRepeaterOf(Symbol.LONG))
+      in.readLongs(longs, start, len);
+    else
+      super.readLongs(longs, start, len);
+  }
+
+  @Override
+  public void readFloats(float[] floats, int start, int len)
+    throws IOException {
+    if (parser.isRepeaterOf(Symbol.FLOAT))
+      in.readFloats(floats, start, len);
+    else
+      super.readFloats(floats, start, len);
+  }
+
+  @Override
+  public void readDoubles(double[] doubles, int start, int len)
+    throws IOException {
+    if (parser.isRepeaterOf(Symbol.DOUBLE))
+      in.readDoubles(doubles, start, len);
+    else
+      super.readDoubles(doubles, start, len);
+  }
     
   @Override
   public Utf8 readString(Utf8 old) throws IOException {
@@ -0,0 +1,287 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.avro.io.parsing;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.avro.AvroTypeException;
+
+/**
+ * A resolving grammar flattened into an array of int-coded instructions.
+ * Rather than expanding productions onto a stack of {@link Symbol}s, an
+ * interpreter steps a program counter through {@link #code}, keeping only
+ * return addresses on its stack.  Each production that is entered from more
+ * than one place (array and map items, union branches) becomes a block that
+ * ends with {@link #RET}; the root block ends with {@link #END}, which
+ * starts over for the next datum.
+ *
+ * <p>Instructions are an opcode followed by its operands.  Opcodes below
+ * {@link #PROMOTE} are terminals; an interpreter matches them against the
+ * terminal its caller asks for.  Operands that are not plain ints index
+ * {@link #constants}.
+ *
+ * <p>Instances are immutable and may be shared among threads.
+ */
+public class FlatGrammar {
+  // terminals
+  public static final int NULL = 0;
+  public static final int BOOLEAN = 1;
+  public static final int INT = 2;
+  public static final int LONG = 3;
+  public static final int FLOAT = 4;
+  public static final int DOUBLE = 5;
+  public static final int STRING = 6;
+  public static final int BYTES = 7;
+  /** Followed by the size of the fixed. */
+  public static final int FIXED = 8;
+  /** Followed by the constant holding the enum's adjustments. */
+  public static final int ENUM = 9;
+  /** Followed by the reader's branch and the address of its block. */
+  public static final int UNION = 10;
+  public static final int ARRAY_START = 11;
+  public static final int ARRAY_END = 12;
+  public static final int MAP_START = 13;
+  public static final int MAP_END = 14;
+  /** Followed by the constant holding the reader's fields in the order they
+   * are read.  Passed over unless asked for. */
+  public static final int FIELD_ACTION = 15;
+
+  // actions
+  /** Followed by the reader's and the writer's terminals. */
+  public static final int PROMOTE = 16;
+  /** Followed by the terminal that ends it and the address of its item. */
+  public static final int REPEAT = 17;
+  public static final int RET = 18;
+  /** Followed by the number of writer's branches and their addresses. */
+  public static final int WRITER_UNION = 19;
+  /** Followed by the constant holding the {@link Symbol.SkipAction}. */
+  public static final int SKIP = 20;
+  /** Followed by the constant holding the default value's encoding. */
+  public static final int DEFAULT_START = 21;
+  public static final int DEFAULT_END = 22;
+  /** Followed by the constant holding the message. */
+  public static final int ERROR = 23;
+  public static final int END = 24;
+
+  private static final Symbol[] TERMINALS = {
+    Symbol.NULL, Symbol.BOOLEAN, Symbol.INT, Symbol.LONG, Symbol.FLOAT,
+    Symbol.DOUBLE, Symbol.STRING, Symbol.BYTES, Symbol.FIXED, Symbol.ENUM,
+    Symbol.UNION, Symbol.ARRAY_START, Symbol.ARRAY_END, Symbol.MAP_START,
+    Symbol.MAP_END, Symbol.FIELD_ACTION
+  };
+
+  /** The instructions.  Execution starts at zero. */
+  public final int[] code;
+  /** Values referred to by instructions. */
+  public final Object[] constants;
+
+  /** Flattens the grammar generated by {@link ResolvingGrammarGenerator}. */
+  public FlatGrammar(Symbol root) {
+    Builder b = new Builder();
+    b.build(root);
+    this.code = b.link();
+    this.constants = b.constants.toArray();
+  }
+
+  /** Returns the name of a terminal, for messages. */
+  public static String name(int terminal) {
+    return TERMINALS[terminal].toString();
+  }
+
+  /** Returns the number of ints taken by the instruction at <tt>pc</tt>. */
+  public int length(int pc) {
+    switch (code[pc]) {
+    case FIXED: case ENUM: case FIELD_ACTION:
+    case SKIP: case DEFAULT_START: case ERROR:
+      return 2;
+    case UNION: case PROMOTE: case REPEAT:
+      return 3;
+    case WRITER_UNION:
+      return 2 + code[pc + 1];
+    default:
+      return 1;
+    }
+  }
+
+  /** Returns true if <tt>pc</tt> addresses a repeater whose items each
+   * consist of just the terminal <tt>item</tt>. */
+  public boolean isRepeaterOf(int pc, int item) {
+    if (code[pc] != REPEAT)
+      return false;
+    int start = code[pc + 2];
+    return code[start] == item && code[start + 1] == RET;
+  }
+
+  /** Translates symbols into blocks of code.  Blocks are numbered as they
+   * are first referred to and are laid out once all are built. */
+  private static class Builder {
+    private final List<Object> constants = new ArrayList<Object>();
+    private final Map<Symbol,Integer> blocks =
+      new IdentityHashMap<Symbol,Integer>();
+    private final List<Symbol> pending = new ArrayList<Symbol>();
+    private final List<Block> built = new ArrayList<Block>();
+
+    void build(Symbol root) {
+      Block main = new Block();
+      built.add(main);
+      emit(main, root.production, 1);
+      main.add(END);
+      while (built.size() <= pending.size()) {    // block i is pending[i - 1]
+        Symbol s = pending.get(built.size() - 1);
+        Block block = new Block();
+        built.add(block);
+        if (s instanceof Symbol.Repeater) {
+          emit(block, s.production, 1);
+        } else if (s instanceof Symbol.Sequence) {
+          emit(block, s.production, 0);
+        } else {
+          emit(block, new Symbol[] { s }, 0);
+        }
+        block.add(RET);
+      }
+    }
+
+    /** Lays out the blocks and replaces block numbers by addresses. */
+    int[] link() {
+      int[] start = new int[built.size()];
+      int size = 0;
+      for (int i = 0; i < start.length; i++) {
+        start[i] = size;
+        size += built.get(i).size;
+      }
+      int[] result = new int[size];
+      for (int i = 0; i < start.length; i++) {
+        Block block = built.get(i);
+        System.arraycopy(block.code, 0, result, start[i], block.size);
+        for (int j = 0; j < block.refs.size(); j++) {
+          int at = start[i] + block.refs.get(j);
+          result[at] = start[result[at]];
+        }
+      }
+      return result;
+    }
+
+    /** Emits a production, which is stored in reverse order. */
+    private void emit(Block b, Symbol[] production, int from) {
+      for (int i = production.length - 1; i >= from; i--) {
+        Symbol s = production[i];
+        if (s == Symbol.FIXED) {
+          b.add(FIXED);
+          b.add(((Symbol.IntCheckAction) production[--i]).size);
+        } else if (s == Symbol.ENUM) {
+          Symbol check = production[--i];
+          b.add(ENUM);
+          b.add(constant(check instanceof Symbol.EnumAdjustAction
+                         ? ((Symbol.EnumAdjustAction) check).adjustments
+                         : identity(((Symbol.IntCheckAction) check).size)));
+        } else if (s == Symbol.UNION) {
+          Symbol.UnionAdjustAction adjust =
+            (Symbol.UnionAdjustAction) production[--i];
+          b.add(UNION);
+          b.add(adjust.rindex);
+          b.addRef(block(adjust.symToParse));
+        } else if (s.kind == Symbol.Kind.TERMINAL) {
+          b.add(terminal(s));
+        } else if (s instanceof Symbol.Repeater) {
+          b.add(REPEAT);
+          b.add(terminal(((Symbol.Repeater) s).end));
+          b.addRef(block(s));
+        } else if (s instanceof Symbol.ResolvingAction) {
+          Symbol.ResolvingAction a = (Symbol.ResolvingAction) s;
+          b.add(PROMOTE);
+          b.add(terminal(a.reader));
+          b.add(terminal(a.writer));
+        } else if (s instanceof Symbol.WriterUnionAction) {
+          Symbol.Alternative branches = (Symbol.Alternative) production[--i];
+          b.add(WRITER_UNION);
+          b.add(branches.size());
+          for (int j = 0; j < branches.size(); j++)
+            b.addRef(block(branches.getSymbol(j)));
+        } else if (s instanceof Symbol.FieldOrderAction) {
+          b.add(FIELD_ACTION);
+          b.add(constant(((Symbol.FieldOrderAction) s).fields));
+        } else if (s instanceof Symbol.SkipAction) {
+          b.add(SKIP);
+          b.add(constant(s));
+        } else if (s instanceof Symbol.DefaultStartAction) {
+          b.add(DEFAULT_START);
+          b.add(constant(((Symbol.DefaultStartAction) s).contents));
+        } else if (s == Symbol.DEFAULT_END_ACTION) {
+          b.add(DEFAULT_END);
+        } else if (s instanceof Symbol.ErrorAction) {
+          b.add(ERROR);
+          b.add(constant(((Symbol.ErrorAction) s).msg));
+        } else {
+          throw new AvroTypeException("Cannot flatten: " + s);
+        }
+      }
+    }
+
+    private int terminal(Symbol s) {
+      for (int i = 0; i < TERMINALS.length; i++)
+        if (TERMINALS[i] == s)
+          return i;
+      throw new AvroTypeException("Not a terminal: " + s);
+    }
+
+    private int block(Symbol s) {
+      Integer result = blocks.get(s);
+      if (result == null) {
+        pending.add(s);
+        result = pending.size();
+        blocks.put(s, result);
+      }
+      return result;
+    }
+
+    private int constant(Object value) {
+      constants.add(value);
+      return constants.size() - 1;
+    }
+
+    private static Object[] identity(int size) {
+      Object[] result = new Object[size];
+      for (int i = 0; i < size; i++)
+        result[i] = i;
+      return result;
+    }
+  }
+
+  /** A growable block of code. */
+  private static class Block {
+    private int[] code = new int[16];
+    private int size;
+    /** Positions of operands that hold block numbers. */
+    private final List<Integer> refs = new ArrayList<Integer>();
+
+    void add(int i) {
+      if (size == code.length)
+        code = Arrays.copyOf(code, size * 2);
+      code[size++] = i;
+    }
+
+    void addRef(int block) {
+      refs.add(size);
+      add(block);
+    }
+  }
+}
@@ -139,6 +139,19 @@ public class Parser {
     }
   }
 
+  /**
+   * Returns true if the symbol at the top of the stack is a repeater whose
+   * items each consist of just the terminal <tt>item</tt>.  Any number of
+   * such items may then be consumed without changing the stack.
+   */
+  public final boolean isRepeaterOf(Symbol item) {
+    if (pos == 0)
+      return false;
+    Symbol top = stack[pos - 1];
+    return top.kind == Symbol.Kind.REPEATER
+      && top.production.length == 2 && top.production[1] == item;
+  }
+
   /**
    * Pushes the production for the given symbol <tt>sym</tt>.
    * If <tt>sym</tt> is a repeater and <tt>input</tt> is either
@@ -19,6 +19,7 @@ package org.apache.avro.io.parsing;
 
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Iterator;
@@ -49,7 +50,21 @@ public class ResolvingGrammarGenerator extends ValidatingGrammarGenerator {
     throws IOException {
     return Symbol.root(generate(writer, reader, new HashMap<LitS, Symbol>()));
   }
-  
+
+  /**
+   * Resolves the writer schema <tt>writer</tt> and the reader schema
+   * <tt>reader</tt> and returns the generated grammar flattened into
+   * instructions.
+   * @param writer    The schema used by the writer
+   * @param reader    The schema used by the reader
+   * @return          The flattened resolving grammar
+   * @throws IOException
+   */
+  public final FlatGrammar generateFlat(Schema writer, Schema reader)
+    throws IOException {
+    return new FlatGrammar(generate(writer, reader));
+  }
+
   /**
    * Resolves the writer schema <tt>writer</tt> and the reader schema
    * <tt>reader</tt> and returns the start symbol for the grammar generated.
@@ -203,13 +218,18 @@ public class ResolvingGrammarGenerator extends ValidatingGrammarGenerator {
       // number elements in the result's production
       Field[] reordered = new Field[rfields.size()];
       int ridx = 0;
-      int count = 1 + wfields.size();
+      int count = 1;
+      boolean skipping = false;
 
       for (Field f : wfields) {
         Field rdrField = reader.getField(f.name());
         if (rdrField != null) {
           reordered[ridx++] = rdrField;
+          count++;
+        } else if (!skipping) {
+          count++;                                // one per run of skips
         }
+        skipping = rdrField == null;
       }
 
       for (Field rf : rfields) {
@@ -243,19 +263,21 @@ public class ResolvingGrammarGenerator extends ValidatingGrammarGenerator {
        * skipped during read.
        */
 
-      // Handle all the writer's fields
+      // Handle all the writer's fields.  Each run of adjacent fields that
+      // the reader lacks is skipped by a single action.
+      List<Schema> skipped = new ArrayList<Schema>();
       for (Field wf : wfields) {
         String fname = wf.name();
         Field rf = reader.getField(fname);
         if (rf == null) {
-          production[--count] =
-            new Symbol.SkipAction(super.generate(wf.schema(),
-              seen));
+          skipped.add(wf.schema());
         } else {
+          count = skip(skipped, production, count, seen);
           production[--count] =
             generate(wf.schema(), rf.schema(), seen);
         }
       }
+      count = skip(skipped, production, count, seen);
 
       // Add default values for fields missing from Writer
       for (Field rf : rfields) {
@@ -272,6 +294,26 @@ public class ResolvingGrammarGenerator extends ValidatingGrammarGenerator {
     return result;
   }
 
+  /**
+   * Adds an action to <tt>production</tt>, ending before <tt>count</tt>,
+   * that skips values of each of the <tt>skipped</tt> schemas, then clears
+   * <tt>skipped</tt>.  Returns the new end of <tt>production</tt>.
+   */
+  private int skip(List<Schema> skipped, Symbol[] production, int count,
+                   Map<LitS, Symbol> seen) throws IOException {
+    if (skipped.isEmpty()) {
+      return count;
+    }
+    Symbol[] symbols = new Symbol[skipped.size()];
+    for (int i = 0; i < symbols.length; i++) {   // productions are reversed
+      symbols[symbols.length - 1 - i] = super.generate(skipped.get(i), seen);
+    }
+    production[--count] = new Symbol.SkipAction(Symbol.seq(symbols),
+                                                 SkipPlan.generate(skipped));
+    skipped.clear();
+    return count;
+  }
+
   /**
    * Returns the Avro binary encoded version of <tt>n</tt> according to
    * the schema <tt>s</tt>.
@@ -280,7 +322,7 @@ public class ResolvingGrammarGenerator extends ValidatingGrammarGenerator {
    * @return  The binary encoded version of <tt>n</tt>.
    * @throws IOException
    */
-  private static byte[] getBinary(Schema s, JsonNode n) throws IOException {
+  public static byte[] getBinary(Schema s, JsonNode n) throws IOException {
     ByteArrayOutputStream out = new ByteArrayOutputStream();
     Encoder e = new BinaryEncoder(out);
     encode(e, s, n);
@@ -386,7 +428,13 @@ public class ResolvingGrammarGenerator extends ValidatingGrammarGenerator {
     return new Symbol.EnumAdjustAction(rsymbols.size(), adjustments);
   }
 
-  private static int bestBranch(Schema r, Schema w) {
+  /**
+   * Returns the index of the branch of the reader's union <tt>r</tt> that
+   * values of the writer's non-union schema <tt>w</tt> are read as: the
+   * first of the same type, else the first that the type can be promoted
+   * to.  Returns -1 if there is no such branch.
+   */
+  public static int bestBranch(Schema r, Schema w) {
     Schema.Type vt = w.getType();
       // first scan for exact match
       int j = 0;
@@ -0,0 +1,220 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.avro.io.parsing;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.avro.AvroTypeException;
+import org.apache.avro.Schema;
+import org.apache.avro.Schema.Field;
+import org.apache.avro.io.Decoder;
+
+/**
+ * A precomputed plan for skipping binary-encoded data of some schemas,
+ * without walking the grammar symbol by symbol.  Records are flattened into
+ * the plan of their enclosing schema, and runs of fixed-width values (floats,
+ * doubles, booleans and fixeds) are merged into a single skip of their total
+ * size.  Arrays and maps are skipped with {@link Decoder#skipArray()} and
+ * {@link Decoder#skipMap()}, and so skip whole blocks when the writer
+ * recorded their size in bytes.
+ * <p/>
+ * Plans merge values of different types, and so may only be used with
+ * decoders of the binary encoding.
+ * @see Symbol.SkipAction
+ */
+public abstract class SkipPlan {
+
+  /** Skips one value of this plan's schemas. */
+  public abstract void skip(Decoder in) throws IOException;
+
+  /** Returns a plan that skips a value of each of a sequence of schemas. */
+  public static SkipPlan generate(List<Schema> schemas) {
+    return new Builder(new IdentityHashMap<Schema, Steps>()).plan(schemas);
+  }
+
+  /** Returns a plan that skips a value of a schema. */
+  public static SkipPlan generate(Schema schema) {
+    List<Schema> schemas = new ArrayList<Schema>(1);
+    schemas.add(schema);
+    return generate(schemas);
+  }
+
+  private static class Builder {
+    private final Map<Schema, Steps> records;     // includes records in progress
+
+    Builder(Map<Schema, Steps> records) {
+      this.records = records;
+    }
+
+    SkipPlan plan(List<Schema> schemas) {
+      List<SkipPlan> steps = new ArrayList<SkipPlan>();
+      for (Schema schema : schemas)
+        add(schema, steps);
+      return steps.size() == 1 ? steps.get(0) : new Steps(steps);
+    }
+
+    private SkipPlan plan(Schema schema) {
+      List<SkipPlan> steps = new ArrayList<SkipPlan>();
+      add(schema, steps);
+      return steps.size() == 1 ? steps.get(0) : new Steps(steps);
+    }
+
+    /** Append steps that skip a schema, merging fixed-width runs. */
+    private void add(Schema schema, List<SkipPlan> steps) {
+      switch (schema.getType()) {
+      case NULL:                                  // nothing written
+        return;
+      case BOOLEAN:
+        addFixed(1, steps);
+        return;
+      case FLOAT:
+        addFixed(4, steps);
+        return;
+      case DOUBLE:
+        addFixed(8, steps);
+        return;
+      case FIXED:
+        addFixed(schema.getFixedSize(), steps);
+        return;
+      case INT: case LONG: case ENUM:
+        steps.add(VARINT);
+        return;
+      case STRING: case BYTES:
+        steps.add(BYTES);
+        return;
+      case ARRAY:
+        steps.add(new ArraySkip(plan(schema.getElementType())));
+        return;
+      case MAP:
+        steps.add(new MapSkip(plan(schema.getValueType())));
+        return;
+      case UNION:
+        List<Schema> types = schema.getTypes();
+        SkipPlan[] branches = new SkipPlan[types.size()];
+        for (int i = 0; i < branches.length; i++)
+          branches[i] = plan(types.get(i));
+        steps.add(new UnionSkip(branches));
+        return;
+      case RECORD:
+        Steps record = records.get(schema);
+        if (record == null) {
+          record = new Steps(null);
+          records.put(schema, record);
+          List<SkipPlan> fields = new ArrayList<SkipPlan>();
+          for (Field f : schema.getFields())
+            add(f.schema(), fields);
+          record.steps = fields.toArray(new SkipPlan[fields.size()]);
+        }
+        if (record.steps == null) {               // recursive reference
+          steps.add(record);
+        } else {
+          for (SkipPlan step : record.steps)      // inline fields
+            if (step instanceof FixedSkip)
+              addFixed(((FixedSkip)step).size, steps);
+            else
+              steps.add(step);
+        }
+        return;
+      default:
+        throw new AvroTypeException("Unknown type: " + schema);
+      }
+    }
+
+    private static void addFixed(int size, List<SkipPlan> steps) {
+      if (size == 0)
+        return;
+      int last = steps.size() - 1;
+      if (last >= 0 && steps.get(last) instanceof FixedSkip)
+        size += ((FixedSkip)steps.remove(last)).size;
+      steps.add(new FixedSkip(size));
+    }
+  }
+
+  private static class Steps extends SkipPlan {
+    SkipPlan[] steps;
+    Steps(List<SkipPlan> steps) {
+      this.steps = steps == null ? null
+        : steps.toArray(new SkipPlan[steps.size()]);
+    }
+    @Override
+    public void skip(Decoder in) throws IOException {
+      for (SkipPlan step : steps)
+        step.skip(in);
+    }
+  }
+
+  private static class FixedSkip extends SkipPlan {
+    final int size;
+    FixedSkip(int size) { this.size = size; }
+    @Override
+    public void skip(Decoder in) throws IOException {
+      in.skipFixed(size);
+    }
+  }
+
+  private static final SkipPlan VARINT = new SkipPlan() {
+    @Override
+    public void skip(Decoder in) throws IOException {
+      in.readLong();
+    }
+  };
+
+  private static final SkipPlan BYTES = new SkipPlan() {
+    @Override
+    public void skip(Decoder in) throws IOException {
+      in.skipBytes();
+    }
+  };
+
+  private static class ArraySkip extends SkipPlan {
+    private final SkipPlan element;
+    ArraySkip(SkipPlan element) { this.element = element; }
+    @Override
+    public void skip(Decoder in) throws IOException {
+      for (long n = in.skipArray(); n != 0; n = in.skipArray())
+        for (long i = 0; i < n; i++)
+          element.skip(in);
+    }
+  }
+
+  private static class MapSkip extends SkipPlan {
+    private final SkipPlan value;
+    MapSkip(SkipPlan value) { this.value = value; }
+    @Override
+    public void skip(Decoder in) throws IOException {
+      for (long n = in.skipMap(); n != 0; n = in.skipMap())
+        for (long i = 0; i < n; i++) {
+          in.skipString();
+          value.skip(in);
+        }
+    }
+  }
+
+  private static class UnionSkip extends SkipPlan {
+    private final SkipPlan[] branches;
+    UnionSkip(SkipPlan[] branches) { this.branches = branches; }
+    @Override
+    public void skip(Decoder in) throws IOException {
+      branches[in.readIndex()].skip(in);
+    }
+  }
+}
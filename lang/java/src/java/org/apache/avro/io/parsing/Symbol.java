@@ -439,14 +439,23 @@ public abstract class Symbol {
   
   public static class SkipAction extends ImplicitAction {
     public final Symbol symToSkip;
+    /** Skips the same data as <tt>symToSkip</tt> in binary encoded data,
+     * or null if none. */
+    public final SkipPlan plan;
     public SkipAction(Symbol symToSkip) {
+      this(symToSkip, null);
+    }
+
+    public SkipAction(Symbol symToSkip, SkipPlan plan) {
+      super(true);
       this.symToSkip = symToSkip;
+      this.plan = plan;
     }
     
     @Override
     public SkipAction flatten(Map<Sequence, Sequence> map,
         Map<Sequence, List<Fixup>> map2) {
-      return new SkipAction(symToSkip.flatten(map, map2));
+      return new SkipAction(symToSkip.flatten(map, map2), plan);
     }
 
   }
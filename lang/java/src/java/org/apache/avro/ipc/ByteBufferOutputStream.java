@@ -26,13 +26,26 @@ import java.util.ArrayList;
 import java.util.List;
 
 /** Utility to collect data written to an {@link OutputStream} in {@link
- * ByteBuffer}s.*/
+ * ByteBuffer}s.
+ * <p/>
+ * If constructed with a {@link ByteBufferPool}, data is written into direct
+ * buffers acquired from the pool, and buffers passed to {@link
+ * #write(ByteBuffer)} or {@link #writeBuffer(ByteBuffer)} are always copied, so that every buffer returned
+ * by {@link #getBufferList()} may be {@link ByteBufferPool#release(List)
+ * released} to the pool once it has been consumed. */
 public class ByteBufferOutputStream extends OutputStream {
   public static final int BUFFER_SIZE = 8192;
 
+  private final ByteBufferPool pool;
   private List<ByteBuffer> buffers;
 
   public ByteBufferOutputStream() {
+    this(null);
+  }
+
+  /** Construct a stream whose buffers are acquired from a pool. */
+  public ByteBufferOutputStream(ByteBufferPool pool) {
+    this.pool = pool;
     reset();
   }
 
@@ -46,31 +59,46 @@ public class ByteBufferOutputStream extends OutputStream {
 
   public void reset() {
     buffers = new ArrayList<ByteBuffer>(1);
-    buffers.add(ByteBuffer.allocate(BUFFER_SIZE));
+    if (pool == null)
+      buffers.add(ByteBuffer.allocate(BUFFER_SIZE));
+    // else allocate lazily, so that nothing is acquired that is not returned
   }
 
+  /** Add a buffer to the output, copying it if this uses a pool. */
   public void write(ByteBuffer buffer) {
+    if (pool == null)
+      buffers.add(buffer);
+    else
+      copy(buffer.duplicate());
+  }
+
+  /** Return the buffer being written, with at least one byte remaining. */
+  private ByteBuffer current() {
+    int size = buffers.size();
+    if (size > 0) {
+      ByteBuffer buffer = buffers.get(size-1);
+      if (buffer.hasRemaining())
+        return buffer;
+    }
+    ByteBuffer buffer = pool == null
+      ? ByteBuffer.allocate(BUFFER_SIZE)
+      : pool.acquire(BUFFER_SIZE);
     buffers.add(buffer);
+    return buffer;
   }
 
   public void write(int b) {
-    ByteBuffer buffer = buffers.get(buffers.size()-1);
-    if (buffer.remaining() < 1) {
-      buffer = ByteBuffer.allocate(BUFFER_SIZE);
-      buffers.add(buffer);
-    }
-    buffer.put((byte)b);
+    current().put((byte)b);
   }
 
   public void write(byte[] b, int off, int len) {
-    ByteBuffer buffer = buffers.get(buffers.size()-1);
+    ByteBuffer buffer = current();
     int remaining = buffer.remaining();
     while (len > remaining) {
       buffer.put(b, off, remaining);
       len -= remaining;
       off += remaining;
-      buffer = ByteBuffer.allocate(BUFFER_SIZE);
-      buffers.add(buffer);
+      buffer = current();
       remaining = buffer.remaining();
     }
     buffer.put(b, off, len);
@@ -80,12 +108,31 @@ public class ByteBufferOutputStream extends OutputStream {
    * Sets buffer's position to its limit.
    */
   public void writeBuffer(ByteBuffer buffer) throws IOException {
-    if (buffer.remaining() < BUFFER_SIZE) {
-      write(buffer.array(), buffer.position(), buffer.remaining());
-    } else {
+    if (pool == null && buffer.remaining() >= BUFFER_SIZE) {
       buffers.add(buffer);                        // append w/o copying
+    } else {
+      copy(buffer.duplicate());
     }
     buffer.position(buffer.limit());              // mark data as consumed
   }
-}
 
+  /** Copies a buffer's remaining content into this stream's buffers. */
+  private void copy(ByteBuffer data) {
+    if (data.hasArray()) {
+      write(data.array(), data.arrayOffset() + data.position(),
+            data.remaining());
+      return;
+    }
+    while (data.hasRemaining()) {
+      ByteBuffer out = current();
+      if (data.remaining() > out.remaining()) {
+        ByteBuffer chunk = data.slice();
+        chunk.limit(out.remaining());
+        data.position(data.position() + chunk.remaining());
+        out.put(chunk);
+      } else {
+        out.put(data);
+      }
+    }
+  }
+}
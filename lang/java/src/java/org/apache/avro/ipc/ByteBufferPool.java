@@ -0,0 +1,132 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.avro.ipc;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/** A thread-safe pool of direct {@link ByteBuffer}s.  Direct buffers are
+ * written to channels without an intermediate copy, but are expensive to
+ * allocate and are only freed by garbage collection, so they should be
+ * reused.
+ * <p/>
+ * Buffers are pooled by size class: each request is rounded up to a power of
+ * two between {@link #MIN_SIZE} and {@link #MAX_SIZE}.  Larger buffers are
+ * allocated on the heap and are never pooled.  At most a fixed number of
+ * buffers of each class are retained; others released are left for the
+ * garbage collector.
+ * <p/>
+ * A buffer must not be used after it has been {@link #release(ByteBuffer)
+ * released}, since it may already have been handed to another user.
+ */
+public class ByteBufferPool {
+  /** The smallest size class. */
+  public static final int MIN_SIZE = 1 << 10;
+  /** The largest size class. */
+  public static final int MAX_SIZE = 1 << 20;
+  /** The default number of buffers retained per size class. */
+  public static final int DEFAULT_MAX_POOLED = 64;
+
+  private static final int MIN_SHIFT = Integer.numberOfTrailingZeros(MIN_SIZE);
+  private static final int CLASSES =
+    Integer.numberOfTrailingZeros(MAX_SIZE) - MIN_SHIFT + 1;
+
+  private static final ByteBufferPool DEFAULT_POOL = new ByteBufferPool();
+
+  private final int maxPooled;
+  private final ConcurrentLinkedQueue<ByteBuffer>[] free;
+  private final AtomicInteger[] counts;
+
+  /** Return a pool shared by the RPC implementations in this package. */
+  public static ByteBufferPool defaultPool() { return DEFAULT_POOL; }
+
+  /** Construct a pool retaining {@link #DEFAULT_MAX_POOLED} buffers of each
+   * size class. */
+  public ByteBufferPool() {
+    this(DEFAULT_MAX_POOLED);
+  }
+
+  /** Construct a pool retaining at most <i>maxPooled</i> buffers of each size
+   * class. */
+  @SuppressWarnings("unchecked")
+  public ByteBufferPool(int maxPooled) {
+    if (maxPooled < 0)
+      throw new IllegalArgumentException("Invalid pool size: " + maxPooled);
+    this.maxPooled = maxPooled;
+    this.free = new ConcurrentLinkedQueue[CLASSES];
+    this.counts = new AtomicInteger[CLASSES];
+    for (int i = 0; i < CLASSES; i++) {
+      free[i] = new ConcurrentLinkedQueue<ByteBuffer>();
+      counts[i] = new AtomicInteger();
+    }
+  }
+
+  /** Return a cleared buffer with a capacity of at least <i>size</i>
+   * bytes. */
+  public ByteBuffer acquire(int size) {
+    if (size < 0)
+      throw new IllegalArgumentException("Invalid buffer size: " + size);
+    if (size > MAX_SIZE)
+      return ByteBuffer.allocate(size);           // too big to pool
+    int sizeClass = sizeClass(size);
+    ByteBuffer buffer = free[sizeClass].poll();
+    if (buffer == null)
+      return ByteBuffer.allocateDirect(MIN_SIZE << sizeClass);
+    counts[sizeClass].decrementAndGet();
+    buffer.clear();
+    return buffer;
+  }
+
+  /** Return a buffer to the pool.  Only buffers acquired from a pool should
+   * be released; heap buffers, and direct buffers whose capacity is not a
+   * size class, are ignored. */
+  public void release(ByteBuffer buffer) {
+    int capacity = buffer.capacity();
+    if (!buffer.isDirect() || capacity < MIN_SIZE || capacity > MAX_SIZE
+        || Integer.bitCount(capacity) != 1)
+      return;                                     // not ours
+    int sizeClass = sizeClass(capacity);
+    if (counts[sizeClass].incrementAndGet() > maxPooled) {
+      counts[sizeClass].decrementAndGet();        // full: leave to gc
+      return;
+    }
+    free[sizeClass].offer(buffer);
+  }
+
+  /** Return each of a list of buffers to the pool. */
+  public void release(List<ByteBuffer> buffers) {
+    for (ByteBuffer buffer : buffers)
+      release(buffer);
+  }
+
+  /** Return the number of buffers currently held by this pool. */
+  public int size() {
+    int size = 0;
+    for (AtomicInteger count : counts)
+      size += count.get();
+    return size;
+  }
+
+  private static int sizeClass(int size) {
+    if (size <= MIN_SIZE)
+      return 0;
+    return 32 - Integer.numberOfLeadingZeros(size - 1) - MIN_SHIFT;
+  }
+}
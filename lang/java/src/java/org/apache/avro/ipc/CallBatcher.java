@@ -0,0 +1,225 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.avro.ipc;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.avro.io.BinaryEncoder;
+import org.apache.avro.io.Decoder;
+import org.apache.avro.io.DecoderFactory;
+import org.apache.avro.io.Encoder;
+import org.apache.avro.io.EncoderFactory;
+import org.apache.avro.util.Utf8;
+
+/** Collects a {@link Requestor}'s calls and sends them together.
+ *
+ * <p>A batch is sent as a single request.  After the handshake, if any, it
+ * has call metadata holding {@link #BATCH_META}, an empty message name, and
+ * an array of bytes, each the metadata, message name and payload of a call.
+ * The response has empty call metadata and no error, then an array of
+ * bytes, each the metadata and response or error of the corresponding
+ * call.  Servers that do not support batches respond with an error, which
+ * fails each call. */
+class CallBatcher {
+  /** Call metadata that marks a batch. */
+  static final Utf8 BATCH_META = new Utf8("avro.batch");
+
+  private static final ThreadFactory DAEMONS = new ThreadFactory() {
+      public Thread newThread(Runnable r) {
+        Thread thread = new Thread(r, "CallBatcher");
+        thread.setDaemon(true);
+        return thread;
+      }
+    };
+  /** Starts batches whose delay has passed. */
+  private static final ScheduledExecutorService TIMER =
+    Executors.newSingleThreadScheduledExecutor(DAEMONS);
+  /** Sends them, so that a slow transceiver delays no other batches. */
+  private static final Executor SENDERS =
+    Executors.newCachedThreadPool(DAEMONS);
+
+  private final Requestor requestor;
+  private final int maxCalls;
+  private final long maxDelay;                    // nanoseconds
+
+  // guarded by this
+  private List<Batched> waiting = new ArrayList<Batched>();
+  private ScheduledFuture<?> timeout;
+
+  CallBatcher(Requestor requestor, int maxCalls, long maxDelay) {
+    this.requestor = requestor;
+    this.maxCalls = maxCalls;
+    this.maxDelay = maxDelay;
+  }
+
+  /** Writes a call and adds it to the batch, sending the batch if full. */
+  void add(Requestor.Exchange call) throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    BinaryEncoder out =
+      EncoderFactory.defaultFactory().createBinaryEncoder(bytes, null);
+    call.write(out);
+    out.flush();
+    Batch full = null;
+    synchronized (this) {
+      waiting.add(new Batched(call, bytes.toByteArray()));
+      if (waiting.size() >= maxCalls)
+        full = take();
+      else if (waiting.size() == 1)
+        timeout = TIMER.schedule(new Timeout(waiting),
+                                 maxDelay, TimeUnit.NANOSECONDS);
+    }
+    if (full != null)
+      send(full);
+  }
+
+  /** Sends the calls waiting, if any. */
+  void flush() {
+    Batch batch;
+    synchronized (this) {
+      batch = waiting.isEmpty() ? null : take();
+    }
+    if (batch != null)
+      send(batch);
+  }
+
+  /** Sends the calls waiting if they are still <i>scheduled</i>, the batch a
+   * timeout was set for, rather than a later batch. */
+  private void flush(List<Batched> scheduled) {
+    Batch batch;
+    synchronized (this) {
+      batch = waiting == scheduled ? take() : null;
+    }
+    if (batch != null)
+      send(batch);
+  }
+
+  /** Sends a batch once its delay has passed.  Cancelling this may be too
+   * late once it has run, so it only sends the batch it was set for. */
+  private class Timeout implements Runnable {
+    private final List<Batched> scheduled;
+
+    Timeout(List<Batched> scheduled) { this.scheduled = scheduled; }
+
+    public void run() {
+      SENDERS.execute(new Runnable() {
+          public void run() { flush(scheduled); }
+        });
+    }
+  }
+
+  private Batch take() {
+    if (timeout != null)
+      timeout.cancel(false);
+    timeout = null;
+    Batch batch = new Batch(waiting);
+    waiting = new ArrayList<Batched>();
+    return batch;
+  }
+
+  /** Sends a batch, failing its calls if it cannot be. */
+  private void send(Batch batch) {
+    try {
+      requestor.send(batch);
+    } catch (IOException e) {
+      batch.fail(e);
+    } catch (RuntimeException e) {
+      batch.fail(e);
+    }
+  }
+
+  /** A call and its request, as written. */
+  private static class Batched {
+    private final Requestor.Exchange call;
+    private final byte[] request;
+
+    Batched(Requestor.Exchange call, byte[] request) {
+      this.call = call;
+      this.request = request;
+    }
+  }
+
+  /** Calls sent together. */
+  private static class Batch implements Requestor.Exchange {
+    private final List<Batched> calls;
+    private int read;                             // calls completed
+
+    Batch(List<Batched> calls) {
+      this.calls = calls;
+    }
+
+    public void write(Encoder out) throws IOException {
+      out.writeMapStart();                        // call metadata
+      out.setItemCount(1);
+      out.startItem();
+      out.writeString(BATCH_META);
+      out.writeBytes(ByteBuffer.allocate(0));
+      out.writeMapEnd();
+      out.writeString("");                        // no message name
+      out.writeArrayStart();
+      out.setItemCount(calls.size());
+      for (Batched batched : calls) {
+        out.startItem();
+        out.writeBytes(batched.request);
+      }
+      out.writeArrayEnd();
+    }
+
+    public void read(Decoder in) {
+      try {
+        for (long n = in.readMapStart(); n != 0; n = in.mapNext())
+          for (long i = 0; i < n; i++) {          // ignore call metadata
+            in.skipString();
+            in.skipBytes();
+          }
+        if (in.readBoolean()) {                   // system error
+          in.readIndex();
+          fail(new AvroRemoteException(in.readString(null)));
+          return;
+        }
+        for (long n = in.readArrayStart(); n != 0; n = in.arrayNext())
+          for (long i = 0; i < n; i++) {
+            if (read == calls.size())
+              throw new IOException("More responses than calls in batch");
+            Decoder call = DecoderFactory.defaultFactory()
+              .createBinaryDecoder(in.readBytes(null), null);
+            calls.get(read++).call.read(call);
+          }
+        if (read != calls.size())
+          throw new IOException("Fewer responses than calls in batch");
+      } catch (IOException e) {
+        fail(e);
+      }
+    }
+
+    /** Fails the calls that have not completed. */
+    public void fail(Throwable error) {
+      for (; read < calls.size(); read++)
+        calls.get(read).call.fail(error);
+    }
+  }
+}
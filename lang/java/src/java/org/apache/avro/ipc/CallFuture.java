@@ -0,0 +1,79 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.avro.ipc;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/** A {@link Callback} whose outcome may be awaited as a {@link Future}.
+ * Calls cannot be cancelled once sent, so {@link #cancel(boolean)} always
+ * returns false.
+ * @param <T> the type of the call's result */
+public class CallFuture<T> implements Future<T>, Callback<T> {
+  private T result;
+  private Throwable error;
+  private boolean done;
+
+  public synchronized void handleResult(T result) {
+    if (done) return;
+    this.result = result;
+    this.done = true;
+    notifyAll();
+  }
+
+  public synchronized void handleError(Throwable error) {
+    if (done) return;
+    this.error = error;
+    this.done = true;
+    notifyAll();
+  }
+
+  public boolean cancel(boolean mayInterruptIfRunning) { return false; }
+
+  public boolean isCancelled() { return false; }
+
+  public synchronized boolean isDone() { return done; }
+
+  public synchronized T get()
+    throws InterruptedException, ExecutionException {
+    while (!done)
+      wait();
+    return outcome();
+  }
+
+  public synchronized T get(long timeout, TimeUnit unit)
+    throws InterruptedException, ExecutionException, TimeoutException {
+    long deadline = System.nanoTime() + unit.toNanos(timeout);
+    while (!done) {
+      long remaining = deadline - System.nanoTime();
+      if (remaining <= 0)
+        throw new TimeoutException();
+      TimeUnit.NANOSECONDS.timedWait(this, remaining);
+    }
+    return outcome();
+  }
+
+  /** Returns the result, or throws the error wrapped. */
+  private T outcome() throws ExecutionException {
+    if (error != null)
+      throw new ExecutionException(error);
+    return result;
+  }
+}
@@ -0,0 +1,31 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.avro.ipc;
+
+/** Receives the outcome of an asynchronous call.  Implementations are
+ * invoked by whichever thread completes the call, often a transport's
+ * reader, and so should not block.
+ * @param <T> the type of the call's result */
+public interface Callback<T> {
+  /** Called when the call completes normally. */
+  void handleResult(T result);
+
+  /** Called when the call fails, whether with an error declared by the
+   * message or with a transport failure. */
+  void handleError(Throwable error);
+}
@@ -21,8 +21,10 @@ package org.apache.avro.ipc;
 import java.io.IOException;
 import java.net.InetSocketAddress;
 import java.net.SocketAddress;
+import java.nio.ByteBuffer;
 import java.nio.channels.ClosedChannelException;
 import java.nio.channels.DatagramChannel;
+import java.util.List;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -36,6 +38,7 @@ public class DatagramServer extends Thread implements Server {
   private final Responder responder;
   private final DatagramChannel channel;
   private final Transceiver transceiver;
+  private final ByteBufferPool pool = ByteBufferPool.defaultPool();
 
   public DatagramServer(Responder responder, SocketAddress addr)
     throws IOException {
@@ -58,7 +61,10 @@ public class DatagramServer extends Thread implements Server {
   public void run() {
     while (true) {
       try {
-        transceiver.writeBuffers(responder.respond(transceiver.readBuffers()));
+        List<ByteBuffer> response =
+          responder.respond(transceiver.readBuffers(), pool);
+        transceiver.writeBuffers(response);
+        pool.release(response);                   // written: reuse buffers
       } catch (ClosedChannelException e) {
         return;
       } catch (IOException e) {
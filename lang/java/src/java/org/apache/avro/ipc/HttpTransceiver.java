@@ -31,6 +31,7 @@ import java.net.HttpURLConnection;
 /** An HTTP-based {@link Transceiver} implementation. */
 public class HttpTransceiver extends Transceiver {
   static final String CONTENT_TYPE = "avro/binary"; 
+  private static final int COPY_SIZE = 8192;      // for direct buffers
 
   private URL url;
   private HttpURLConnection connection;
@@ -96,8 +97,18 @@ public class HttpTransceiver extends Transceiver {
     throws IOException {
     for (ByteBuffer buffer : buffers) {
       writeLength(buffer.limit(), out);           // length-prefix
-      out.write(buffer.array(), buffer.position(), buffer.remaining());
-      buffer.position(buffer.limit());
+      if (buffer.hasArray()) {
+        out.write(buffer.array(), buffer.arrayOffset() + buffer.position(),
+                  buffer.remaining());
+        buffer.position(buffer.limit());
+      } else {                                    // direct: copy out
+        byte[] bytes = new byte[Math.min(buffer.remaining(), COPY_SIZE)];
+        while (buffer.hasRemaining()) {
+          int length = Math.min(buffer.remaining(), bytes.length);
+          buffer.get(bytes, 0, length);
+          out.write(bytes, 0, length);
+        }
+      }
     }
     writeLength(0, out);                          // null-terminate
   }
@@ -0,0 +1,224 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.avro.ipc;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/** A socket-based {@link Transceiver} that carries many calls at once over
+ * a single connection.  Each request is tagged with a call id, and responses,
+ * which may arrive in any order, are matched to their callers by it.  Thus
+ * {@link #transceive(List)} may be called by many threads concurrently, and
+ * {@link #transceive(List,Callback)} does not wait for responses at all.
+ *
+ * <p>Frames are as written by {@link SocketTransceiver}, each preceded by its
+ * call id.  A connection starts with {@link #MULTIPLEXED}, which no length
+ * may equal, so that servers can tell it from an unmultiplexed one.  Only
+ * {@link NioSocketServer} supports multiplexed connections. */
+public class MultiplexedSocketTransceiver extends Transceiver {
+  private static final Logger LOG
+    = LoggerFactory.getLogger(MultiplexedSocketTransceiver.class);
+
+  /** Sent first on a multiplexed connection. */
+  static final int MULTIPLEXED = -1;
+
+  private final SocketChannel channel;
+  private final String remoteName;
+  private final Object writeLock = new Object();
+  private final Map<Integer,Callback<List<ByteBuffer>>> calls =
+    new HashMap<Integer,Callback<List<ByteBuffer>>>();
+  private int nextId;                             // guarded by calls
+  private IOException failure;                    // guarded by calls
+
+  public MultiplexedSocketTransceiver(SocketAddress address)
+    throws IOException {
+    this(SocketChannel.open(address));
+  }
+
+  public MultiplexedSocketTransceiver(SocketChannel channel)
+    throws IOException {
+    this.channel = channel;
+    this.channel.socket().setTcpNoDelay(true);
+    this.remoteName = channel.socket().getRemoteSocketAddress().toString();
+    ByteBuffer start = ByteBuffer.allocate(4);
+    start.putInt(MULTIPLEXED).flip();
+    while (start.hasRemaining())
+      channel.write(start);
+    LOG.info("open to "+getRemoteName());
+
+    Thread reader = new Thread(new Reader());
+    reader.setName("Responses from "+getRemoteName());
+    reader.setDaemon(true);
+    reader.start();
+  }
+
+  public String getRemoteName() { return remoteName; }
+
+  @Override
+  public boolean acceptsDirectBuffers() { return true; }
+
+  /** Sends a request and waits for its response.  Other threads may send
+   * requests meanwhile. */
+  @Override
+  public List<ByteBuffer> transceive(List<ByteBuffer> request)
+    throws IOException {
+    CallFuture<List<ByteBuffer>> future = new CallFuture<List<ByteBuffer>>();
+    transceive(request, future);
+    try {
+      return future.get();
+    } catch (ExecutionException e) {
+      throw (IOException)e.getCause();            // only failure passed
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted awaiting response");
+    }
+  }
+
+  /** Sends a request and returns without awaiting its response, which is
+   * passed to the callback by the thread that reads responses. */
+  @Override
+  public void transceive(List<ByteBuffer> request,
+                         Callback<List<ByteBuffer>> callback)
+    throws IOException {
+    int id;
+    synchronized (calls) {
+      if (failure != null)
+        throw failure;
+      id = nextId++;
+      calls.put(id, callback);
+    }
+    try {
+      ByteBuffer[] data = frame(id, request);
+      synchronized (writeLock) {
+        while (data[data.length-1].hasRemaining())
+          channel.write(data);
+      }
+    } catch (IOException e) {
+      synchronized (calls) {
+        calls.remove(id);
+      }
+      throw e;
+    }
+  }
+
+  /** Returns a frame as written by {@link SocketTransceiver}, preceded by a
+   * call id. */
+  static ByteBuffer[] frame(int id, List<ByteBuffer> buffers) {
+    ByteBuffer[] framed = SocketTransceiver.frame(buffers);
+    ByteBuffer[] data = new ByteBuffer[framed.length + 1];
+    data[0] = ByteBuffer.allocate(4);
+    data[0].putInt(id).flip();
+    System.arraycopy(framed, 0, data, 1, framed.length);
+    return data;
+  }
+
+  /** Unsupported: calls must be made with {@link #transceive(List)}. */
+  @Override
+  public List<ByteBuffer> readBuffers() throws IOException {
+    throw new UnsupportedOperationException();
+  }
+
+  /** Unsupported: calls must be made with {@link #transceive(List)}. */
+  @Override
+  public void writeBuffers(List<ByteBuffer> buffers) throws IOException {
+    throw new UnsupportedOperationException();
+  }
+
+  @Override
+  public void close() throws IOException {
+    if (channel.isOpen()) {
+      LOG.info("closing to "+getRemoteName());
+      channel.close();
+    }
+  }
+
+  /** Reads responses and passes each to its caller. */
+  private class Reader implements Runnable {
+    private final ByteBuffer header = ByteBuffer.allocate(4);
+
+    public void run() {
+      try {
+        while (true) {
+          int id = readInt();
+          List<ByteBuffer> response = new ArrayList<ByteBuffer>();
+          for (int length = readInt(); length != 0; length = readInt()) {
+            ByteBuffer buffer = ByteBuffer.allocate(length);
+            SocketTransceiver.readFully(channel, buffer);
+            buffer.flip();
+            response.add(buffer);
+          }
+          Callback<List<ByteBuffer>> callback;
+          synchronized (calls) {
+            callback = calls.remove(id);
+          }
+          if (callback == null)
+            LOG.warn("response to unknown call "+id+" from "+getRemoteName());
+          else
+            complete(callback, response);
+        }
+      } catch (IOException e) {
+        if (channel.isOpen())
+          LOG.warn("unexpected error", e);
+        fail(e);
+      }
+    }
+
+    private int readInt() throws IOException {
+      header.clear();
+      SocketTransceiver.readFully(channel, header);
+      header.flip();
+      return header.getInt();
+    }
+
+    /** Fails calls in progress and any later. */
+    private void fail(IOException cause) {
+      IOException e = new IOException("Connection to "+getRemoteName()
+                                      +" failed: "+cause);
+      e.initCause(cause);
+      List<Callback<List<ByteBuffer>>> failed;
+      synchronized (calls) {
+        failure = e;
+        failed = new ArrayList<Callback<List<ByteBuffer>>>(calls.values());
+        calls.clear();
+      }
+      for (Callback<List<ByteBuffer>> callback : failed)
+        callback.handleError(e);
+    }
+
+    /** Passes a response on, keeping reading if the callback fails. */
+    private void complete(Callback<List<ByteBuffer>> callback,
+                          List<ByteBuffer> response) {
+      try {
+        callback.handleResult(response);
+      } catch (RuntimeException e) {
+        LOG.warn("callback failed", e);
+      }
+    }
+  }
+}
@@ -0,0 +1,475 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.avro.ipc;
+
+import java.io.IOException;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/** A {@link Server} for {@link SocketTransceiver} and {@link
+ * MultiplexedSocketTransceiver} clients that does not dedicate a thread to
+ * each connection.  Connections are shared among a few selector threads,
+ * which read requests without blocking.  Each complete request is passed to
+ * a pool of worker threads that compute responses.  Requests on a
+ * multiplexed connection are responded to concurrently, others in the order
+ * received.  A connection that sends a request larger than {@link
+ * #MAX_REQUEST_SIZE} bytes, or that otherwise fails, is closed without
+ * disturbing others. */
+public class NioSocketServer implements Server {
+  private static final Logger LOG =
+    LoggerFactory.getLogger(NioSocketServer.class);
+
+  private static final int INPUT_SIZE = 8 * 1024;
+  /** Requests read from a connection but not yet answered, beyond which no
+   * more are read from it until some are. */
+  private static final int MAX_PENDING = 128;
+  /** The most bytes a request may hold, so that a corrupt or hostile length
+   * cannot exhaust memory shared by all connections. */
+  public static final int MAX_REQUEST_SIZE = 64 * 1024 * 1024;
+
+  private final Responder responder;
+  private final ServerSocketChannel channel;
+  private final Executor workers;
+  private final boolean ownWorkers;
+  private final Loop[] loops;
+  private final ByteBufferPool pool = ByteBufferPool.defaultPool();
+  private int next;                               // loop for next connection
+  private volatile boolean closed;
+
+  /** Serves with one selector thread and a pool of worker threads that grows
+   * as needed. */
+  public NioSocketServer(Responder responder, SocketAddress addr)
+    throws IOException {
+    this(responder, addr, 1, null);
+  }
+
+  /** Serves with the given number of selector threads.  Responses are
+   * computed by <i>workers</i>, or, if that is null, by a pool of threads
+   * that grows as needed. */
+  public NioSocketServer(Responder responder, SocketAddress addr,
+                         int selectors, Executor workers) throws IOException {
+    final String name = "NioSocketServer on "+addr;
+    this.responder = responder;
+    this.ownWorkers = workers == null;
+    this.workers = ownWorkers
+      ? Executors.newCachedThreadPool(new ThreadFactory() {
+          public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, name+" worker");
+            thread.setDaemon(true);
+            return thread;
+          }
+        })
+      : workers;
+
+    this.channel = ServerSocketChannel.open();
+    channel.socket().bind(addr);
+    channel.configureBlocking(false);
+
+    this.loops = new Loop[Math.max(selectors, 1)];
+    for (int i = 0; i < loops.length; i++)
+      loops[i] = new Loop(name+" selector "+i);
+    channel.register(loops[0].selector, SelectionKey.OP_ACCEPT);
+    for (Loop loop : loops)
+      loop.start();
+    LOG.info("starting "+channel.socket().getInetAddress());
+  }
+
+  public int getPort() { return channel.socket().getLocalPort(); }
+
+  public void close() {
+    closed = true;
+    LOG.info("stopping "+channel.socket().getInetAddress());
+    try {
+      channel.close();
+    } catch (IOException e) {
+      LOG.warn("unexpected error", e);
+    }
+    for (Loop loop : loops)
+      loop.selector.wakeup();
+    if (ownWorkers)
+      ((ExecutorService)workers).shutdown();
+  }
+
+  private void accept() throws IOException {
+    SocketChannel accepted = channel.accept();
+    if (accepted == null)
+      return;
+    accepted.configureBlocking(false);
+    accepted.socket().setTcpNoDelay(true);
+    loops[next++ % loops.length].add(accepted);   // only loop 0 accepts
+  }
+
+  /** A selector thread.  It reads from its connections and writes responses
+   * that workers could not write without blocking.  A connection with {@link
+   * #MAX_PENDING} requests awaiting responses is not read from until some
+   * are answered. */
+  private class Loop extends Thread {
+    private final Selector selector;
+    private final Queue<SocketChannel> added =
+      new ConcurrentLinkedQueue<SocketChannel>();
+    private final Queue<Connection> changed =
+      new ConcurrentLinkedQueue<Connection>();
+
+    Loop(String name) throws IOException {
+      this.selector = Selector.open();
+      setName(name);
+      setDaemon(true);
+    }
+
+    void add(SocketChannel accepted) {
+      added.add(accepted);
+      selector.wakeup();
+    }
+
+    /** Called when a connection's interest in writing changes. */
+    void update(Connection connection) {
+      changed.add(connection);
+      selector.wakeup();
+    }
+
+    public void run() {
+      try {
+        while (!closed) {
+          selector.select();
+          for (SocketChannel c = added.poll(); c != null; c = added.poll()) {
+            Connection connection = new Connection(c, this);
+            try {
+              connection.key = c.register(selector, SelectionKey.OP_READ,
+                                          connection);
+            } catch (IOException e) {
+              fail(connection, e);
+            }
+          }
+          for (Connection c = changed.poll(); c != null; c = changed.poll()) {
+            try {
+              c.updateInterest();
+            } catch (RuntimeException e) {        // e.g., key just cancelled
+              fail(c, e);
+            }
+          }
+          Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+          while (keys.hasNext()) {
+            SelectionKey key = keys.next();
+            keys.remove();
+            if (!key.isValid())
+              continue;
+            if (key.isAcceptable()) {
+              try {
+                accept();
+              } catch (IOException e) {
+                if (!closed)
+                  LOG.warn("unexpected error", e);
+              }
+              continue;
+            }
+            Connection connection = (Connection)key.attachment();
+            try {
+              if (key.isReadable())
+                connection.read();
+              if (key.isValid() && key.isWritable() && connection.flush())
+                connection.updateInterest();
+            } catch (IOException e) {
+              fail(connection, e);
+            } catch (RuntimeException e) {        // e.g., key just cancelled
+              fail(connection, e);
+            } catch (OutOfMemoryError e) {        // confine to this connection
+              fail(connection, e);
+            }
+          }
+        }
+      } catch (ClosedSelectorException e) {
+        return;
+      } catch (IOException e) {
+        if (!closed)
+          LOG.warn("unexpected error", e);
+      } finally {
+        for (SelectionKey key : selector.keys())
+          if (key.attachment() instanceof Connection)
+            ((Connection)key.attachment()).close();
+        try {
+          selector.close();
+        } catch (IOException e) {
+          LOG.warn("unexpected error", e);
+        }
+      }
+    }
+
+    /** Closes a connection after an error, leaving others served. */
+    private void fail(Connection connection, Throwable e) {
+      LOG.debug("closing after error", e);
+      connection.close();
+    }
+  }
+
+  /** A client connection.  Requests are framed as by {@link
+   * SocketTransceiver}: each buffer is prefixed by its length, and a zero
+   * length ends the request.  On a connection that starts as a {@link
+   * MultiplexedSocketTransceiver}'s does, each request is also preceded by a
+   * call id.  Those requests are responded to concurrently, and responses
+   * are written as they complete, each preceded by its call's id.  Other
+   * connections support sessions. */
+  private class Connection extends Transceiver {
+    private final SocketChannel channel;
+    private final Loop loop;
+    private SelectionKey key;
+
+    // accessed only by the loop
+    private final ByteBuffer input = ByteBuffer.allocate(INPUT_SIZE);
+    private boolean started;                      // read anything
+    private boolean haveId;                       // read current call's id
+    private int id;
+    private ByteBuffer buffer;                    // being read, or null
+    private List<ByteBuffer> frame = new ArrayList<ByteBuffer>();
+    private int frameSize;                        // bytes in frame so far
+
+    // set before any call is made
+    private boolean multiplexed;
+
+    // guarded by this
+    private final Queue<Call> calls = new LinkedList<Call>();
+    private Call current;                         // if not multiplexed
+    private int pending;                          // read, not yet answered
+    private final Queue<ByteBuffer[]> outputs = new LinkedList<ByteBuffer[]>();
+    private final Queue<List<ByteBuffer>> responses =
+      new LinkedList<List<ByteBuffer>>();         // release once written
+
+    Connection(SocketChannel channel, Loop loop) {
+      this.channel = channel;
+      this.loop = loop;
+      LOG.debug("open to "+getRemoteName());
+    }
+
+    public String getRemoteName() {
+      return channel.socket().getRemoteSocketAddress().toString();
+    }
+
+    @Override
+    public boolean supportsSessions() { return !multiplexed; }
+
+    /** Unsupported: requests are read by the loop. */
+    @Override
+    public List<ByteBuffer> readBuffers() {
+      throw new UnsupportedOperationException();
+    }
+
+    /** Unsupported: responses are written with {@link #write(int,List)}. */
+    @Override
+    public void writeBuffers(List<ByteBuffer> buffers) {
+      throw new UnsupportedOperationException();
+    }
+
+    /** Reads what is available, without blocking. */
+    void read() throws IOException {
+      if (buffer != null && input.position() == 0) {
+        if (channel.read(buffer) < 0) {           // read large buffers whole
+          close();
+        } else if (!buffer.hasRemaining()) {
+          endBuffer();
+        }
+        return;
+      }
+      if (channel.read(input) < 0) {
+        close();
+        return;
+      }
+      input.flip();
+      while (input.hasRemaining()) {
+        if (buffer == null) {
+          if (input.remaining() < 4)
+            break;                                // wait for whole int
+          int value = input.getInt();
+          if (!started) {
+            started = true;
+            if (value == MultiplexedSocketTransceiver.MULTIPLEXED) {
+              multiplexed = true;
+              continue;
+            }
+          }
+          if (multiplexed && !haveId) {
+            id = value;
+            haveId = true;
+          } else if (value == 0) {                // end of buffers
+            endRequest();
+          } else if (value < 0) {
+            throw new IOException("Invalid buffer length: "+value);
+          } else if (value > MAX_REQUEST_SIZE - frameSize) {
+            throw new IOException("Request exceeds "+MAX_REQUEST_SIZE
+                                  +" bytes");
+          } else {
+            buffer = ByteBuffer.allocate(value);
+            frameSize += value;
+          }
+        } else {
+          int limit = input.limit();
+          input.limit(input.position()
+                      + Math.min(input.remaining(), buffer.remaining()));
+          buffer.put(input);
+          input.limit(limit);
+          if (!buffer.hasRemaining())
+            endBuffer();
+        }
+      }
+      input.compact();
+    }
+
+    private void endBuffer() {
+      buffer.flip();
+      frame.add(buffer);
+      buffer = null;
+    }
+
+    private void endRequest() {
+      Call call = new Call(this, id, frame);
+      frame = new ArrayList<ByteBuffer>();
+      frameSize = 0;
+      haveId = false;
+      synchronized (this) {
+        if (++pending == MAX_PENDING)
+          updateInterest();                       // stop reading
+        if (multiplexed) {
+          if (!closed)
+            execute(call);
+        } else {
+          calls.add(call);
+          dispatch();
+        }
+      }
+    }
+
+    /** Passes the next call to a worker, unless one is being handled. */
+    private synchronized void dispatch() {
+      if (current != null || calls.isEmpty() || closed)
+        return;
+      current = calls.remove();
+      execute(current);
+    }
+
+    /** Passes a call to a worker, closing the connection if the workers
+     * reject it. */
+    private void execute(Call call) {
+      try {
+        workers.execute(call);
+      } catch (RejectedExecutionException e) {
+        LOG.warn("closing "+getRemoteName()+": call rejected", e);
+        close();
+      }
+    }
+
+    /** Queues a response to be written.  Called by workers. */
+    synchronized void write(int id, List<ByteBuffer> response)
+      throws IOException {
+      if (!channel.isOpen()) {
+        pool.release(response);
+        return;
+      }
+      outputs.add(multiplexed
+                  ? MultiplexedSocketTransceiver.frame(id, response)
+                  : SocketTransceiver.frame(response));
+      responses.add(response);
+      if (outputs.size() == 1 && !flush())        // else already writing
+        loop.update(this);                        // finish when writable
+    }
+
+    /** Writes as many responses as possible without blocking, and returns
+     * true if none remain. */
+    synchronized boolean flush() throws IOException {
+      while (!outputs.isEmpty()) {
+        ByteBuffer[] output = outputs.peek();
+        while (output[output.length-1].hasRemaining())
+          if (channel.write(output) == 0)
+            return false;
+        outputs.remove();
+        pool.release(responses.remove());         // written: reuse buffers
+        if (pending-- == MAX_PENDING)
+          loop.update(this);                      // resume reading
+        if (!multiplexed) {
+          current = null;
+          dispatch();
+        }
+      }
+      return true;
+    }
+
+    synchronized void updateInterest() {
+      if (key.isValid())
+        key.interestOps((pending < MAX_PENDING ? SelectionKey.OP_READ : 0)
+                        | (outputs.isEmpty() ? 0 : SelectionKey.OP_WRITE));
+    }
+
+    @Override
+    public synchronized void close() {
+      if (!channel.isOpen())
+        return;
+      LOG.debug("closing to "+getRemoteName());
+      try {
+        channel.close();
+      } catch (IOException e) {
+        LOG.warn("unexpected error", e);
+      }
+      calls.clear();
+      outputs.clear();
+      for (List<ByteBuffer> response : responses)
+        pool.release(response);
+      responses.clear();
+    }
+  }
+
+  /** A request to respond to.  Run by a worker. */
+  private class Call implements Runnable {
+    private final Connection connection;
+    private final int id;
+    private final List<ByteBuffer> request;
+
+    Call(Connection connection, int id, List<ByteBuffer> request) {
+      this.connection = connection;
+      this.id = id;
+      this.request = request;
+    }
+
+    public void run() {
+      try {
+        connection.write(id, responder.respond(request, pool, connection));
+      } catch (IOException e) {
+        LOG.warn("unexpected error", e);
+        connection.close();
+      } catch (RuntimeException e) {
+        LOG.warn("unexpected error", e);
+        connection.close();
+      }
+    }
+  }
+}
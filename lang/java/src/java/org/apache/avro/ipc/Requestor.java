@@ -25,6 +25,8 @@ import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
 
 import org.apache.avro.AvroRuntimeException;
 import org.apache.avro.Protocol;
@@ -36,7 +38,7 @@ import org.apache.avro.io.DecoderFactory;
 import org.apache.avro.io.BinaryDecoder;
 import org.apache.avro.io.Decoder;
 import org.apache.avro.io.Encoder;
-import org.apache.avro.io.BinaryEncoder;
+import org.apache.avro.io.EncoderFactory;
 import org.apache.avro.specific.SpecificDatumReader;
 import org.apache.avro.specific.SpecificDatumWriter;
 import org.apache.avro.util.Utf8;
@@ -53,11 +55,14 @@ public abstract class Requestor {
     new GenericDatumReader<Map<Utf8,ByteBuffer>>(META);
   private static final GenericDatumWriter<Map<Utf8,ByteBuffer>> META_WRITER =
     new GenericDatumWriter<Map<Utf8,ByteBuffer>>(META);
+  private static final ByteBufferPool POOL = ByteBufferPool.defaultPool();
 
   private Protocol local;
-  private Protocol remote;
-  private boolean sendLocalText;
+  private MD5 localHash;
+  private volatile Protocol remote;              // may be shared by threads
+  private volatile boolean sendLocalText;
   private Transceiver transceiver;
+  private volatile CallBatcher batcher;
   
   protected List<RPCPlugin> rpcMetaPlugins;
 
@@ -68,6 +73,8 @@ public abstract class Requestor {
   protected Requestor(Protocol local, Transceiver transceiver)
     throws IOException {
     this.local = local;
+    this.localHash = new MD5();
+    localHash.bytes(local.getMD5());
     this.transceiver = transceiver;
     this.rpcMetaPlugins =
       Collections.synchronizedList(new ArrayList<RPCPlugin>());
@@ -85,59 +92,204 @@ public abstract class Requestor {
   /** Writes a request message and reads a response or error message. */
   public Object request(String messageName, Object request)
     throws Exception {
-    BinaryDecoder in = null;
-    Message m;
-    RPCContext context = new RPCContext();
-    do {
-      ByteBufferOutputStream bbo = new ByteBufferOutputStream();
-      Encoder out = new BinaryEncoder(bbo);
+    CallFuture<Object> future = new CallFuture<Object>();
+    request(messageName, request, future);
+    try {
+      return future.get();
+    } catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof Exception)
+        throw (Exception)cause;
+      throw (Error)cause;
+    }
+  }
+
+  /** Writes a request message and passes the response or error message to a
+   * callback.  If the transceiver supports it, this returns without
+   * awaiting the response, and plugins see the response as it arrives.
+   * @see Transceiver#transceive(List,Callback) */
+  public <T> void request(String messageName, Object request,
+                          Callback<T> callback) throws IOException {
+    Call<T> call = new Call<T>(messageName, request, callback);
+    CallBatcher b = batcher;
+    if (b != null)
+      b.add(call);
+    else
+      send(call);
+  }
+
+  /** Batches calls.  Rather than each being sent at once, calls wait until
+   * <i>maxCalls</i> are waiting or <i>maxDelay</i> has passed since the
+   * first, then are sent together in one request.  Each call keeps its own
+   * metadata, response and plugin invocations.  The server must support
+   * batches, as {@link Responder} does.  A <i>maxCalls</i> of one or less
+   * turns batching off, first sending any calls waiting. */
+  public void setBatching(int maxCalls, long maxDelay, TimeUnit unit) {
+    CallBatcher old = batcher;
+    batcher = maxCalls > 1
+      ? new CallBatcher(this, maxCalls, unit.toNanos(maxDelay))
+      : null;
+    if (old != null)
+      old.flush();
+  }
+
+  /** Sends any batched calls now. */
+  public void flush() {
+    CallBatcher b = batcher;
+    if (b != null)
+      b.flush();
+  }
+
+  /** Something sent in a request: a call, or a batch of them.  Written after
+   * the handshake, if any, and read after the handshake's response. */
+  interface Exchange {
+    /** Writes the request.  May be called again if the handshake fails. */
+    void write(Encoder out) throws IOException;
+    /** Reads the response, completing callbacks. */
+    void read(Decoder in);
+    /** Fails callbacks. */
+    void fail(Throwable error);
+  }
+
+  /** Writes an exchange, preceded by a handshake unless a session makes it
+   * unnecessary, then transceives it. */
+  void send(Exchange exchange) throws IOException {
+    Transceiver t = getTransceiver();
+    if (t.supportsSessions() && t.getSessions().get(localHash) == null) {
+      synchronized (t) {                          // one handshake at a time
+        write(exchange);
+      }
+    } else {
+      write(exchange);
+    }
+  }
+
+  private void write(Exchange exchange) throws IOException {
+    ByteBufferPool pool =                         // if the transport opts in
+      getTransceiver().acceptsDirectBuffers() ? POOL : null;
+    ByteBufferOutputStream bbo = new ByteBufferOutputStream(pool);
+    Encoder out = EncoderFactory.defaultFactory()
+      .createBinaryEncoder(bbo, null);
+
+    Sessions.Session session = null;
+    if (getTransceiver().supportsSessions()) {
+      Sessions sessions = getTransceiver().getSessions();
+      session = sessions.get(localHash);
+      if (sessions.isOpen())                      // name the session, if any
+        out.writeInt(session == null ? 0 : session.id);
+    }
+    if (session != null)
+      remote = session.remote;                    // handshake already made
+    else
+      writeHandshake(out);                        // prepend handshake
+
+    exchange.write(out);
+    out.flush();
+
+    List<ByteBuffer> buffers = bbo.getBufferList();
+    try {
+      getTransceiver().transceive(buffers,        // transceive
+        new Response(exchange, session == null));
+    } finally {
+      if (pool != null)
+        pool.release(buffers);                    // written: reuse buffers
+    }
+  }
+
+  /** Reads the response to an exchange, first repeating the exchange if the
+   * handshake failed. */
+  private class Response implements Callback<List<ByteBuffer>> {
+    private final Exchange exchange;
+    private final boolean handshake;
+
+    Response(Exchange exchange, boolean handshake) {
+      this.exchange = exchange;
+      this.handshake = handshake;
+    }
 
-      writeHandshake(out);                      // prepend handshake
+    public void handleResult(List<ByteBuffer> buffers) {
+      BinaryDecoder in =
+        DecoderFactory.defaultFactory().createBinaryDecoder(buffers, null);
+      try {
+        if (handshake && !readHandshake(in)) {
+          write(exchange);                        // with local text
+          return;
+        }
+      } catch (Exception e) {
+        exchange.fail(e);
+        return;
+      }
+      exchange.read(in);
+    }
+
+    public void handleError(Throwable error) {
+      exchange.fail(error);
+    }
+  }
+
+  /** A single call. */
+  private class Call<T> implements Exchange {
+    private final String messageName;
+    private final Object request;
+    private final RPCContext context = new RPCContext();
+    private final Callback<T> callback;
+
+    Call(String messageName, Object request, Callback<T> callback) {
+      this.messageName = messageName;
+      this.request = request;
+      this.callback = callback;
+    }
 
+    public void write(Encoder out) throws IOException {
       // use local protocol to write request
-      m = getLocal().getMessages().get(messageName);
+      Message m = getLocal().getMessages().get(messageName);
       if (m == null)
         throw new AvroRuntimeException("Not a local message: "+messageName);
       context.setMessage(m);
-      
+
       for (RPCPlugin plugin : rpcMetaPlugins) {
         plugin.clientSendRequest(context);
       }
-      
+
       META_WRITER.write(context.requestCallMeta(), out);
-      out.writeString(m.getName());       // write message name
+      out.writeString(m.getName());               // write message name
       writeRequest(m.getRequest(), request, out); // write request payload
-      
-      List<ByteBuffer> response =                 // transceive
-        getTransceiver().transceive(bbo.getBufferList());
-      
-      ByteBufferInputStream bbi = new ByteBufferInputStream(response);
-      in = DecoderFactory.defaultFactory().createBinaryDecoder(bbi, in);
-    } while (!readHandshake(in));
-
-    // use remote protocol to read response
-    m = getRemote().getMessages().get(messageName);
-    if (m == null)
-      throw new AvroRuntimeException("Not a remote message: "+messageName);
-    context.setRequestCallMeta(META_READER.read(null, in));
-    
-    if (!in.readBoolean()) {                      // no error
-      Object response = readResponse(m.getResponse(), in);
-      context.setResponse(response);
-      for (RPCPlugin plugin : rpcMetaPlugins) {
-        plugin.clientReceiveResponse(context);
-      }
-      return response;
-      
-    } else {
-      Exception error = readError(m.getErrors(), in);
-      context.setError(error);
-      for (RPCPlugin plugin : rpcMetaPlugins) {
-        plugin.clientReceiveResponse(context);
+    }
+
+    @SuppressWarnings("unchecked")
+    public void read(Decoder in) {
+      Object response = null;
+      Exception error;
+      try {
+        // use remote protocol to read response
+        Message m = getRemote().getMessages().get(messageName);
+        if (m == null)
+          throw new AvroRuntimeException("Not a remote message: "+messageName);
+        context.setRequestCallMeta(META_READER.read(null, in));
+
+        if (!in.readBoolean()) {                  // no error
+          response = readResponse(m.getResponse(), in);
+          context.setResponse(response);
+          error = null;
+        } else {
+          error = readError(m.getErrors(), in);
+          context.setError(error);
+        }
+        for (RPCPlugin plugin : rpcMetaPlugins) {
+          plugin.clientReceiveResponse(context);
+        }
+      } catch (Exception e) {
+        error = e;
       }
-      throw error;
+      if (error == null)
+        callback.handleResult((T)response);
+      else
+        callback.handleError(error);
+    }
+
+    public void fail(Throwable error) {
+      callback.handleError(error);
     }
-    
   }
 
   private static final Map<String,MD5> REMOTE_HASHES =
@@ -152,8 +304,6 @@ public abstract class Requestor {
     new SpecificDatumReader<HandshakeResponse>(HandshakeResponse.class);
 
   private void writeHandshake(Encoder out) throws IOException {
-    MD5 localHash = new MD5();
-    localHash.bytes(local.getMD5());
     String remoteName = transceiver.getRemoteName();
     MD5 remoteHash = REMOTE_HASHES.get(remoteName);
     remote = REMOTE_PROTOCOLS.get(remoteHash);
@@ -172,6 +322,8 @@ public abstract class Requestor {
       plugin.clientStartConnect(context);
     }
     handshake.meta = context.requestHandshakeMeta();
+    if (transceiver.supportsSessions())           // ask to omit it hereafter
+      handshake.meta.put(Transceiver.SESSION_META, ByteBuffer.allocate(0));
     
     HANDSHAKE_WRITER.write(handshake, out);
   }
@@ -200,6 +352,10 @@ public abstract class Requestor {
     RPCContext context = new RPCContext();
     if (handshake.meta != null) {
       context.setResponseHandshakeMeta((Map<Utf8, ByteBuffer>) handshake.meta);
+      ByteBuffer id = handshake.meta.get(Transceiver.SESSION_META);
+      if (established && id != null)              // server accepted session
+        transceiver.getSessions()
+          .open(localHash, Sessions.decodeId(id), remote);
     }
       
     for (RPCPlugin plugin : rpcMetaPlugins) {
@@ -18,6 +18,7 @@
 
 package org.apache.avro.ipc;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.nio.ByteBuffer;
 
@@ -38,7 +39,7 @@ import org.apache.avro.util.Utf8;
 import org.apache.avro.generic.GenericDatumReader;
 import org.apache.avro.generic.GenericDatumWriter;
 import org.apache.avro.io.DecoderFactory;
-import org.apache.avro.io.BinaryEncoder;
+import org.apache.avro.io.EncoderFactory;
 import org.apache.avro.io.Decoder;
 import org.apache.avro.io.Encoder;
 import org.apache.avro.specific.SpecificDatumReader;
@@ -85,68 +86,178 @@ public abstract class Responder {
   /** Called by a server to deserialize a request, compute and serialize
    * a response or error. */
   public List<ByteBuffer> respond(List<ByteBuffer> buffers) throws IOException {
-    Decoder in = DecoderFactory.defaultFactory().createBinaryDecoder(
-        new ByteBufferInputStream(buffers), null);
-    ByteBufferOutputStream bbo = new ByteBufferOutputStream();
-    Encoder out = new BinaryEncoder(bbo);
-    Exception error = null;
+    return respond(buffers, null);
+  }
+
+  /** Called by a server to deserialize a request, compute and serialize a
+   * response or error into buffers acquired from a pool.  The server should
+   * {@link ByteBufferPool#release(List) release} the buffers returned once
+   * it has written them.  If <i>pool</i> is null, heap buffers are used. */
+  public List<ByteBuffer> respond(List<ByteBuffer> buffers,
+                                  ByteBufferPool pool) throws IOException {
+    return respond(buffers, pool, null);
+  }
+
+  /** As {@link #respond(List,ByteBufferPool)}, for a request that arrived on
+   * <i>connection</i>.  If the connection {@link
+   * Transceiver#supportsSessions() supports sessions}, it must pass requests
+   * one at a time; later requests of a client protocol that was granted a
+   * session carry its id rather than a handshake. */
+  public List<ByteBuffer> respond(List<ByteBuffer> buffers,
+                                  ByteBufferPool pool, Transceiver connection)
+    throws IOException {
+    Decoder in =
+      DecoderFactory.defaultFactory().createBinaryDecoder(buffers, null);
+    ByteBufferOutputStream bbo = new ByteBufferOutputStream(pool);
+    Encoder out = EncoderFactory.defaultFactory()
+      .createBinaryEncoder(bbo, null);
     RPCContext context = new RPCContext();
+    Handshake handshake = null;
+    List<ByteBuffer> handshakeBuffers = null;     // kept before any error
     try {
-      Protocol remote = handshake(in, out);
-      if (remote == null)                        // handshake failed
-        return bbo.getBufferList();
+      Sessions sessions = connection != null && connection.supportsSessions()
+        ? connection.getSessions()
+        : null;
+      Protocol remote = null;
+      if (sessions != null && sessions.isOpen()) {
+        int id = in.readInt();                    // zero if handshake follows
+        if (id != 0) {
+          Sessions.Session session = sessions.get(id);
+          if (session == null)
+            throw new AvroRuntimeException("No such session: "+id);
+          remote = session.remote;
+        }
+      }
+      if (remote == null) {                       // no session yet
+        handshake = handshake(in, out, sessions);
+        out.flush();
+        handshakeBuffers = bbo.getBufferList();
+        if (handshake.remote == null)             // handshake failed
+          return handshakeBuffers;
+        remote = handshake.remote;
+      }
 
       // read request using remote protocol specification
       context.setRequestCallMeta(META_READER.read(null, in));
-      String messageName = in.readString(null).toString();
-      Message m = remote.getMessages().get(messageName);
-      if (m == null)
-        throw new AvroRuntimeException("No such remote message: "+messageName);
-      
-      context.setMessage(m);
-      
-      Object request = readRequest(m.getRequest(), in);
-      
-      for (RPCPlugin plugin : rpcMetaPlugins) {
-        plugin.serverReceiveRequest(context);
-      }
-
-      // create response using local protocol specification
-      m = getLocal().getMessages().get(messageName);
-      if (m == null)
-        throw new AvroRuntimeException("No message named "+messageName
-                                       +" in "+getLocal());
-      Object response = null;
-      try {
-        response = respond(m, request);
-        context.setResponse(response);
-      } catch (Exception e) {
-        error = e;
-        context.setError(error);
-      }
-      
-      for (RPCPlugin plugin : rpcMetaPlugins) {
-        plugin.serverSendResponse(context);
-      }
-      
-      META_WRITER.write(context.responseCallMeta(), out);
-      out.writeBoolean(error != null);
-      if (error == null)
-        writeResponse(m.getResponse(), response, out);
+      if (context.requestCallMeta().containsKey(CallBatcher.BATCH_META))
+        respondBatch(remote, in, out);
       else
-        writeError(m.getErrors(), error, out);
+        respondCall(remote, context, in, out);
 
     } catch (Exception e) {                       // system error
       LOG.warn("system error", e);
       context.setError(e);
-      bbo = new ByteBufferOutputStream();
-      out = new BinaryEncoder(bbo);
-      META_WRITER.write(context.responseCallMeta(), out);
-      out.writeBoolean(true);
-      writeError(Protocol.SYSTEM_ERRORS, new Utf8(e.toString()), out);
+      if (pool != null)
+        pool.release(bbo.getBufferList());        // discard partial response
+      bbo = new ByteBufferOutputStream(pool);
+      out = EncoderFactory.defaultFactory().createBinaryEncoder(bbo, null);
+      writeSystemError(context, e, out);
+    }
+    out.flush();
+
+    List<ByteBuffer> response = bbo.getBufferList();
+    if (handshakeBuffers != null) {
+      handshakeBuffers.addAll(response);
+      response = handshakeBuffers;
     }
-      
-    return bbo.getBufferList();
+    if (handshake != null && handshake.session)   // client sees acceptance
+      connection.getSessions()
+        .open(handshake.clientHash, handshake.id, handshake.remote);
+    return response;
+  }
+
+  /** Reads a call's message name and request, whose metadata has been read,
+   * and writes its response or error, preceded by metadata. */
+  private void respondCall(Protocol remote, RPCContext context,
+                           Decoder in, Encoder out) throws Exception {
+    String messageName = in.readString(null).toString();
+    Message m = remote.getMessages().get(messageName);
+    if (m == null)
+      throw new AvroRuntimeException("No such remote message: "+messageName);
+    
+    context.setMessage(m);
+    
+    Object request = readRequest(m.getRequest(), in);
+    
+    for (RPCPlugin plugin : rpcMetaPlugins) {
+      plugin.serverReceiveRequest(context);
+    }
+
+    // create response using local protocol specification
+    m = getLocal().getMessages().get(messageName);
+    if (m == null)
+      throw new AvroRuntimeException("No message named "+messageName
+                                     +" in "+getLocal());
+    Object response = null;
+    Exception error = null;
+    try {
+      response = respond(m, request);
+      context.setResponse(response);
+    } catch (Exception e) {
+      error = e;
+      context.setError(error);
+    }
+    
+    for (RPCPlugin plugin : rpcMetaPlugins) {
+      plugin.serverSendResponse(context);
+    }
+    
+    META_WRITER.write(context.responseCallMeta(), out);
+    out.writeBoolean(error != null);
+    if (error == null)
+      writeResponse(m.getResponse(), response, out);
+    else
+      writeError(m.getErrors(), error, out);
+  }
+
+  /** Responds to each call in a batch, as sent by {@link CallBatcher}. */
+  private void respondBatch(Protocol remote, Decoder in, Encoder out)
+    throws IOException {
+    in.readString(null);                          // no message name
+    List<byte[]> responses = new ArrayList<byte[]>();
+    for (long n = in.readArrayStart(); n != 0; n = in.arrayNext())
+      for (long i = 0; i < n; i++)
+        responses.add(respondBatched(remote, in.readBytes(null)));
+
+    META_WRITER.write(new HashMap<Utf8,ByteBuffer>(), out);
+    out.writeBoolean(false);
+    out.writeArrayStart();
+    out.setItemCount(responses.size());
+    for (byte[] response : responses) {
+      out.startItem();
+      out.writeBytes(response);
+    }
+    out.writeArrayEnd();
+  }
+
+  /** Responds to a call in a batch, confining any system error to it. */
+  private byte[] respondBatched(Protocol remote, ByteBuffer call)
+    throws IOException {
+    Decoder in =
+      DecoderFactory.defaultFactory().createBinaryDecoder(call, null);
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    Encoder out = EncoderFactory.defaultFactory()
+      .createBinaryEncoder(bytes, null);
+    RPCContext context = new RPCContext();
+    try {
+      context.setRequestCallMeta(META_READER.read(null, in));
+      respondCall(remote, context, in, out);
+    } catch (Exception e) {                       // system error
+      LOG.warn("system error", e);
+      context.setError(e);
+      out.flush();
+      bytes.reset();                              // discard partial response
+      writeSystemError(context, e, out);
+    }
+    out.flush();
+    return bytes.toByteArray();
+  }
+
+  private void writeSystemError(RPCContext context, Exception e, Encoder out)
+    throws IOException {
+    META_WRITER.write(context.responseCallMeta(), out);
+    out.writeBoolean(true);
+    writeError(Protocol.SYSTEM_ERRORS, new Utf8(e.toString()), out);
   }
 
   private SpecificDatumWriter<HandshakeResponse> handshakeWriter =
@@ -154,7 +265,15 @@ public abstract class Responder {
   private SpecificDatumReader<HandshakeRequest> handshakeReader =
     new SpecificDatumReader<HandshakeRequest>(HandshakeRequest.class);
 
-  private Protocol handshake(Decoder in, Encoder out)
+  /** The outcome of a handshake. */
+  private static class Handshake {
+    Protocol remote;                              // null if it failed
+    MD5 clientHash;
+    boolean session;                              // later calls omit it
+    int id;                                       // of the session
+  }
+
+  private Handshake handshake(Decoder in, Encoder out, Sessions sessions)
     throws IOException {
     HandshakeRequest request = (HandshakeRequest)handshakeReader.read(null, in);
     Protocol remote = protocols.get(request.clientHash);
@@ -182,9 +301,20 @@ public abstract class Responder {
       plugin.serverConnecting(context);
     }
     response.meta = context.responseHandshakeMeta();
+
+    Handshake result = new Handshake();
+    result.remote = remote;
+    result.clientHash = request.clientHash;
+    result.session = remote != null && sessions != null
+      && request.meta != null
+      && request.meta.containsKey(Transceiver.SESSION_META);
+    if (result.session) {                         // opened once responded
+      result.id = sessions.nextId();
+      response.meta.put(Transceiver.SESSION_META, Sessions.encodeId(result.id));
+    }
     
     handshakeWriter.write(response, out);
-    return remote;
+    return result;
   }
 
   /** Computes the response for a message. */
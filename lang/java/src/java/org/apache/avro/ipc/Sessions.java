@@ -0,0 +1,79 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.avro.ipc;
+
+import java.nio.ByteBuffer;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.avro.Protocol;
+
+/** The sessions open over one connection.  Each session belongs to one client
+ * protocol, so that several protocols may share a connection.  Once any is
+ * open, every request starts with the id of its session, or with zero if it
+ * instead starts with a handshake.  Sessions are opened one at a time. */
+class Sessions {
+
+  /** A session's id and the remote protocol its calls use. */
+  static class Session {
+    final int id;
+    final Protocol remote;
+
+    Session(int id, Protocol remote) {
+      this.id = id;
+      this.remote = remote;
+    }
+  }
+
+  private final Map<MD5,Session> byHash =      // by client protocol's hash
+    new ConcurrentHashMap<MD5,Session>(4);
+  private final Map<Integer,Session> byId =
+    new ConcurrentHashMap<Integer,Session>(4);
+
+  /** True once a session is open, so that requests carry session ids. */
+  boolean isOpen() { return !byId.isEmpty(); }
+
+  /** The session for calls of a client protocol, or null. */
+  Session get(MD5 clientHash) { return byHash.get(clientHash); }
+
+  /** The session with an id, or null. */
+  Session get(int id) { return byId.get(id); }
+
+  /** The id the server assigns to the next session it opens. */
+  int nextId() { return byId.size() + 1; }
+
+  /** Opens a session. */
+  void open(MD5 clientHash, int id, Protocol remote) {
+    Session session = new Session(id, remote);
+    byId.put(id, session);
+    byHash.put(clientHash, session);
+  }
+
+  /** Encodes a session id as handshake metadata. */
+  static ByteBuffer encodeId(int id) {
+    ByteBuffer buffer = ByteBuffer.allocate(4);
+    buffer.putInt(id).flip();
+    return buffer;
+  }
+
+  /** Decodes a session id from handshake metadata. */
+  static int decodeId(ByteBuffer buffer) {
+    return buffer.getInt(buffer.position());
+  }
+}
@@ -18,12 +18,15 @@
 
 package org.apache.avro.ipc;
 
+import java.io.EOFException;
 import java.io.IOException;
 import java.net.InetSocketAddress;
 import java.net.SocketAddress;
+import java.nio.ByteBuffer;
 import java.nio.channels.ClosedChannelException;
 import java.nio.channels.ServerSocketChannel;
 import java.nio.channels.SocketChannel;
+import java.util.List;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -36,6 +39,7 @@ public class SocketServer extends Thread implements Server {
   private Responder responder;
   private ServerSocketChannel channel;
   private ThreadGroup group;
+  private ByteBufferPool pool = ByteBufferPool.defaultPool();
 
   public SocketServer(Responder responder, SocketAddress addr)
     throws IOException {
@@ -89,10 +93,15 @@ public class SocketServer extends Thread implements Server {
       try {
         try {
           while (true) {
-            writeBuffers(responder.respond(readBuffers()));
+            List<ByteBuffer> response =
+              responder.respond(readBuffers(), pool, this);
+            writeBuffers(response);
+            pool.release(response);               // written: reuse buffers
           }
         } catch (ClosedChannelException e) {
           return;
+        } catch (EOFException e) {                // closed by client
+          return;
         } finally {
           close();
         }
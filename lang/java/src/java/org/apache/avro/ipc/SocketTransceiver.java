@@ -18,6 +18,7 @@
 
 package org.apache.avro.ipc;
 
+import java.io.EOFException;
 import java.io.IOException;
 import java.net.SocketAddress;
 import java.nio.channels.SocketChannel;
@@ -51,41 +52,72 @@ public class SocketTransceiver extends Transceiver {
     return channel.socket().getRemoteSocketAddress().toString();
   }
 
+  @Override
+  public boolean supportsSessions() { return true; }
+
+  @Override
+  public boolean acceptsDirectBuffers() { return true; }
+
   public synchronized List<ByteBuffer> readBuffers() throws IOException {
     List<ByteBuffer> buffers = new ArrayList<ByteBuffer>();
     while (true) {
       header.clear();
-      while (header.hasRemaining()) {
-        channel.read(header);
-      }
+      readFully(channel, header);
       header.flip();
       int length = header.getInt();
       if (length == 0) {                       // end of buffers
         return buffers;
       }
       ByteBuffer buffer = ByteBuffer.allocate(length);
-      while (buffer.hasRemaining()) {
-        channel.read(buffer);
-      }
+      readFully(channel, buffer);
       buffer.flip();
       buffers.add(buffer);
     }
   }
 
+  /** Reads until <i>buffer</i> is full. */
+  static void readFully(SocketChannel channel, ByteBuffer buffer)
+    throws IOException {
+    while (buffer.hasRemaining())
+      if (channel.read(buffer) < 0)
+        throw new EOFException("Connection closed by "
+                               +channel.socket().getRemoteSocketAddress());
+  }
+
+  /** Writes buffers, each prefixed by its length, with a single gathering
+   * write when possible. */
   public synchronized void writeBuffers(List<ByteBuffer> buffers)
     throws IOException {
-    for (ByteBuffer buffer : buffers) {
-      writeLength(buffer.limit());                // length-prefix
-      channel.write(buffer);
+    ByteBuffer[] data = frame(buffers);
+    long remaining = 0;
+    for (ByteBuffer buffer : data)
+      remaining += buffer.remaining();
+    while (remaining > 0)
+      remaining -= channel.write(data);
+  }
+
+  /** Returns buffers, each prefixed by its length and followed by a zero
+   * length, as they are written to the wire. */
+  static ByteBuffer[] frame(List<ByteBuffer> buffers) {
+    int count = buffers.size();
+    ByteBuffer lengths = ByteBuffer.allocate((count+1) * 4);
+    ByteBuffer[] data = new ByteBuffer[count*2 + 1];
+    for (int i = 0; i < count; i++) {
+      ByteBuffer buffer = buffers.get(i);
+      data[i*2] = length(lengths, buffer.remaining()); // length-prefix
+      data[i*2+1] = buffer;
     }
-    writeLength(0);                               // null-terminate
+    data[count*2] = length(lengths, 0);           // null-terminate
+    return data;
   }
 
-  private void writeLength(int length) throws IOException {
-    header.clear();
+  private static ByteBuffer length(ByteBuffer lengths, int length) {
+    ByteBuffer header = lengths.slice();
+    header.limit(4);
     header.putInt(length);
     header.flip();
-    channel.write(header);
+    lengths.position(lengths.position() + 4);
+    return header;
   }
 
   public void close() throws IOException {
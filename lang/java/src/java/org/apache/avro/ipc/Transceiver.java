@@ -23,9 +23,16 @@ import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.util.List;
 
+import org.apache.avro.Protocol;
+import org.apache.avro.util.Utf8;
+
 /** Base class for transmitters and recievers of raw binary messages. */
 public abstract class Transceiver implements Closeable {
 
+  /** Handshake metadata by which a client offers, and a server accepts, to
+   * omit the handshake from later calls over the same connection. */
+  static final Utf8 SESSION_META = new Utf8("avro.session");
+
   public abstract String getRemoteName();
 
   public synchronized List<ByteBuffer> transceive(List<ByteBuffer> request)
@@ -34,6 +41,50 @@ public abstract class Transceiver implements Closeable {
     return readBuffers();
   }
 
+  /** Sends a request and passes its response to a callback.  The request's
+   * buffers may be reused once this returns.  Transceivers that can await a
+   * response without blocking the caller override this; by default it calls
+   * {@link #transceive(List)}, completing the callback before returning.
+   * Failures to send may be thrown rather than passed to the callback. */
+  public void transceive(List<ByteBuffer> request,
+                         Callback<List<ByteBuffer>> callback)
+    throws IOException {
+    List<ByteBuffer> response;
+    try {
+      response = transceive(request);
+    } catch (IOException e) {
+      callback.handleError(e);
+      return;
+    }
+    callback.handleResult(response);
+  }
+
+  /** True if successive calls made through this share a connection, so that
+   * a handshake need only be made once for each local protocol.  Calls of a
+   * protocol are then made one at a time until one has completed the
+   * handshake.  False by default. */
+  public boolean supportsSessions() { return false; }
+
+  /** True if requests may be written into pooled direct buffers: this
+   * writes them to a channel and keeps no reference to them once {@link
+   * #transceive(List)} or {@link #transceive(List,Callback)} returns, when
+   * they are reused.  False by default, so that heap buffers are passed. */
+  public boolean acceptsDirectBuffers() { return false; }
+
+  private final Sessions sessions = new Sessions();
+
+  /** The sessions open over this connection.  Only used if {@link
+   * #supportsSessions()}. */
+  Sessions getSessions() { return sessions; }
+
+  /** True if calls of a local protocol made through this omit the
+   * handshake. */
+  public boolean hasSession(Protocol local) {
+    MD5 hash = new MD5();
+    hash.bytes(local.getMD5());
+    return sessions.get(hash) != null;
+  }
+
   public abstract List<ByteBuffer> readBuffers() throws IOException;
 
   public abstract void writeBuffers(List<ByteBuffer> buffers)
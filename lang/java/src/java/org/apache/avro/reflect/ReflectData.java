@@ -42,6 +42,7 @@ import org.apache.avro.generic.GenericFixed;
 import org.apache.avro.specific.SpecificData;
 import org.apache.avro.specific.FixedSize;
 import org.apache.avro.ipc.AvroRemoteException;
+import org.apache.avro.ipc.Callback;
 
 import com.thoughtworks.paranamer.CachingParanamer;
 import com.thoughtworks.paranamer.Paranamer;
@@ -357,7 +358,8 @@ public class ReflectData extends SpecificData {
     Map<String,Schema> names = new LinkedHashMap<String,Schema>();
     Map<String,Message> messages = protocol.getMessages();
     for (Method method : iface.getMethods())
-      if ((method.getModifiers() & Modifier.STATIC) == 0) {
+      if ((method.getModifiers() & Modifier.STATIC) == 0
+          && !isCallback(method)) {
         String name = method.getName();
         if (messages.containsKey(name))
           throw new AvroTypeException("Two methods with same name: "+name);
@@ -373,6 +375,13 @@ public class ReflectData extends SpecificData {
     return protocol;
   }
 
+  /** True if a method is an asynchronous variant of a message. */
+  private static boolean isCallback(Method method) {
+    Class<?>[] params = method.getParameterTypes();
+    return params.length > 0
+      && Callback.class.isAssignableFrom(params[params.length-1]);
+  }
+
   private final Paranamer paranamer = new CachingParanamer();
 
   private Message getMessage(Method method, Protocol protocol,
@@ -28,6 +28,7 @@ import org.apache.avro.AvroRuntimeException;
 import org.apache.avro.Schema;
 import org.apache.avro.specific.SpecificDatumReader;
 import org.apache.avro.io.Decoder;
+import org.apache.avro.util.StringCache;
 
 /**
  * {@link org.apache.avro.io.DatumReader DatumReader} for existing classes via
@@ -120,6 +121,9 @@ public class ReflectDatumReader<T> extends SpecificDatumReader<T> {
 
   @Override
   protected Object readString(Object old, Decoder in) throws IOException {
+    StringCache cache = getStringCache(in);
+    if (cache != null)
+      return cache.readString(in);
     return super.readString(null, in).toString();
   }
 
@@ -191,7 +191,7 @@ public class SpecificData extends GenericData {
   /** Return the protocol for a Java interface. */
   public Protocol getProtocol(Class iface) {
     try {
-      return (Protocol)(iface.getDeclaredField("PROTOCOL").get(null));
+      return (Protocol)(iface.getField("PROTOCOL").get(null));
     } catch (NoSuchFieldException e) {
       throw new AvroRuntimeException(e);
     } catch (IllegalAccessException e) {
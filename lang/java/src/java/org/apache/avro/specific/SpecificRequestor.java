@@ -30,10 +30,19 @@ import org.apache.avro.io.DatumWriter;
 import org.apache.avro.io.Decoder;
 import org.apache.avro.io.Encoder;
 import org.apache.avro.ipc.AvroRemoteException;
+import org.apache.avro.ipc.Callback;
 import org.apache.avro.ipc.Transceiver;
 import org.apache.avro.ipc.Requestor;
 
-/** {@link org.apache.avro.ipc.Requestor Requestor} for generated interfaces. */
+/** {@link org.apache.avro.ipc.Requestor Requestor} for generated interfaces.
+ * A proxy method whose last parameter is a {@link Callback} makes the call
+ * named by the method asynchronously, passing the response to the callback.
+ * Such methods may be declared by an interface extending the generated one:
+ * <pre>
+ * interface SimpleCallback extends Simple {
+ *   void hello(Utf8 greeting, Callback&lt;Utf8&gt; callback) throws IOException;
+ * }
+ * </pre> */
 public class SpecificRequestor extends Requestor implements InvocationHandler {
   
   public SpecificRequestor(Class<?> iface, Transceiver transceiver)
@@ -49,6 +58,18 @@ public class SpecificRequestor extends Requestor implements InvocationHandler {
   @Override
   public Object invoke(Object proxy, Method method, Object[] args)
     throws Throwable {
+    Class<?>[] types = method.getParameterTypes();
+    if (types.length > 0
+        && Callback.class.isAssignableFrom(types[types.length-1])) {
+      Callback<?> callback = (Callback<?>)args[args.length-1]; // asynchronous
+      if (callback == null)
+        throw new IllegalArgumentException("Null callback for "
+                                           +method.getName());
+      Object[] params = new Object[args.length-1];
+      System.arraycopy(args, 0, params, 0, params.length);
+      request(method.getName(), params, callback);
+      return null;
+    }
     return request(method.getName(), args);
   }
 
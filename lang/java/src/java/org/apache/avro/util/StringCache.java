@@ -0,0 +1,119 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.avro.util;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.apache.avro.io.Decoder;
+
+/** A bounded cache of decoded strings, keyed by their UTF-8 bytes.  Each
+ * distinct value is decoded and allocated once, then shared by every datum
+ * that contains it, which saves both time and memory when a field has few
+ * distinct values, e.g., a country or status code.
+ * <p/>
+ * Attach a cache to a field with {@link
+ * org.apache.avro.generic.GenericDatumReader#setStringCache}.  The {@link
+ * Utf8} instances returned are shared and must not be modified.  When the
+ * cache is full, the value that was added first is evicted.
+ * <p/>
+ * Instances are not thread-safe: like a {@link
+ * org.apache.avro.io.DatumReader}, each should be used by a single thread.
+ */
+public class StringCache {
+  /** The default maximum number of values cached. */
+  public static final int DEFAULT_MAX_SIZE = 1024;
+
+  private final int maxSize;
+  private final Map<Utf8,Utf8> entries;
+  private Utf8 scratch = new Utf8();              // bytes of last value read
+  private long hits;
+  private long misses;
+
+  /** Construct a cache holding at most {@link #DEFAULT_MAX_SIZE} values. */
+  public StringCache() {
+    this(DEFAULT_MAX_SIZE);
+  }
+
+  /** Construct a cache holding at most <i>maxSize</i> values. */
+  public StringCache(int maxSize) {
+    if (maxSize <= 0)
+      throw new IllegalArgumentException("Invalid cache size: " + maxSize);
+    this.maxSize = maxSize;
+    this.entries = new LinkedHashMap<Utf8,Utf8>(16, 0.75f, false) {
+      protected boolean removeEldestEntry(Map.Entry<Utf8,Utf8> eldest) {
+        return size() > StringCache.this.maxSize;
+      }
+    };
+  }
+
+  /** Read a string, returning the shared instance for its value. */
+  public Utf8 readUtf8(Decoder in) throws IOException {
+    scratch = in.readString(scratch);
+    return lookup(scratch);
+  }
+
+  /** Read a string, returning the shared {@link String} for its value. */
+  public String readString(Decoder in) throws IOException {
+    scratch = in.readString(scratch);
+    return lookup(scratch).toString();
+  }
+
+  /** Return the shared instance equal to a value. */
+  public Utf8 getUtf8(Utf8 value) {
+    return lookup(value);
+  }
+
+  /** Return the shared {@link String} for a value. */
+  public String getString(Utf8 value) {
+    return lookup(value).toString();
+  }
+
+  private Utf8 lookup(Utf8 value) {
+    Utf8 shared = entries.get(value);
+    if (shared != null) {
+      hits++;
+      return shared;
+    }
+    misses++;
+    byte[] bytes = new byte[value.getLength()];   // copy: value may be reused
+    System.arraycopy(value.getBytes(), 0, bytes, 0, bytes.length);
+    shared = new Utf8(bytes);                     // caches its String
+    entries.put(shared, shared);
+    return shared;
+  }
+
+  /** Return the number of values read that were already cached. */
+  public long getHits() { return hits; }
+
+  /** Return the number of values read that were not already cached. */
+  public long getMisses() { return misses; }
+
+  /** Return the number of values cached. */
+  public int size() { return entries.size(); }
+
+  /** Return the maximum number of values cached. */
+  public int getMaxSize() { return maxSize; }
+
+  /** Remove all values and reset the hit and miss counts. */
+  public void clear() {
+    entries.clear();
+    hits = misses = 0;
+  }
+}
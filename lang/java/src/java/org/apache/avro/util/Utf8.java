@@ -17,28 +17,34 @@
  */
 package org.apache.avro.util;
 
-import java.io.UnsupportedEncodingException;
+import java.nio.charset.Charset;
 
 import org.apache.avro.io.BinaryData;
 import org.apache.avro.reflect.Stringable;
 
-/** A Utf8 string. */
+/** A Utf8 string.
+ * <p/>
+ * The decoded {@link String} is cached until the string is changed with
+ * {@link #setLength(int)}, which must be called before the bytes returned by
+ * {@link #getBytes()} are modified.  Strings consisting only of ASCII
+ * characters are converted in both directions without a charset, and are
+ * viewed as a {@link CharSequence} without being decoded. */
 @Stringable
-public class Utf8 implements Comparable<Utf8> {
+public class Utf8 implements Comparable<Utf8>, CharSequence {
   private static final byte[] EMPTY = new byte[0];
+  private static final Charset UTF8 = Charset.forName("UTF-8");
 
   byte[] bytes = EMPTY;
   int length;
+  private String string;                          // cached toString()
+  private byte ascii;                             // 0 unknown, 1 yes, -1 no
 
   public Utf8() {}
 
   public Utf8(String string) {
-    try {
-      this.bytes = string.getBytes("UTF-8");
-    } catch (UnsupportedEncodingException e) {
-      throw new RuntimeException(e);
-    }
+    this.bytes = encode(string);
     this.length = bytes.length;
+    this.string = string;
   }
 
   public Utf8(byte[] bytes) {
@@ -56,15 +62,65 @@ public class Utf8 implements Comparable<Utf8> {
       this.bytes = newBytes;
     }
     this.length = newLength;
+    this.string = null;
+    this.ascii = 0;
     return this;
   }
 
   public String toString() {
-    try {
-      return new String(bytes, 0, length, "UTF-8");
-    } catch (UnsupportedEncodingException e) {
-      throw new RuntimeException(e);
+    if (string == null)
+      string = isAscii() ? decodeAscii(bytes, length)
+        : new String(bytes, 0, length, UTF8);
+    return string;
+  }
+
+  private boolean isAscii() {
+    if (ascii == 0) {
+      ascii = 1;
+      for (int i = 0; i < length; i++)
+        if (bytes[i] < 0) {
+          ascii = -1;
+          break;
+        }
+    }
+    return ascii > 0;
+  }
+
+  private static String decodeAscii(byte[] bytes, int length) {
+    char[] chars = new char[length];
+    for (int i = 0; i < length; i++)
+      chars[i] = (char)bytes[i];
+    return new String(chars);
+  }
+
+  private static byte[] encode(String string) {
+    int length = string.length();
+    byte[] bytes = new byte[length];
+    for (int i = 0; i < length; i++) {
+      char c = string.charAt(i);
+      if (c >= 0x80)
+        return string.getBytes(UTF8);             // not ASCII
+      bytes[i] = (byte)c;
     }
+    return bytes;
+  }
+
+  /** Return the number of characters in this string.  This is {@link
+   * #getLength()}, the number of bytes, when all are ASCII. */
+  public int length() {
+    return isAscii() ? length : toString().length();
+  }
+
+  public char charAt(int index) {
+    if (!isAscii())
+      return toString().charAt(index);
+    if (index < 0 || index >= length)
+      throw new IndexOutOfBoundsException("Index: "+index+", length: "+length);
+    return (char)bytes[index];
+  }
+
+  public CharSequence subSequence(int start, int end) {
+    return toString().subSequence(start, end);
   }
 
   public boolean equals(Object o) {
@@ -18,21 +18,32 @@
 package org.apache.avro;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
 
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Random;
 
+import org.apache.avro.file.BlockPredicate;
+import org.apache.avro.file.BlockStatistics;
 import org.apache.avro.file.CodecFactory;
+import org.apache.avro.file.DataFileIndex;
 import org.apache.avro.file.DataFileReader;
+import org.apache.avro.file.DataFileSplit;
 import org.apache.avro.file.DataFileWriter;
+import org.apache.avro.file.MappedSeekableInput;
+import org.apache.avro.generic.GenericData;
 import org.apache.avro.generic.GenericDatumReader;
 import org.apache.avro.generic.GenericDatumWriter;
 import org.apache.avro.io.DatumReader;
 import org.apache.avro.specific.SpecificDatumReader;
+import org.apache.avro.util.Utf8;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.junit.runners.Parameterized;
@@ -59,6 +70,7 @@ public class TestDataFile {
     r.add(new Object[] { CodecFactory.deflateCodec(1) });
     r.add(new Object[] { CodecFactory.deflateCodec(9) });
     r.add(new Object[] { CodecFactory.nullCodec() });
+    r.add(new Object[] { CodecFactory.snappyCodec() });
     return r;
   }
 
@@ -123,6 +135,27 @@ public class TestDataFile {
     }
   }
 
+  @Test
+  public void testMappedRead() throws IOException {
+    File file = makeFile();
+    // a small region size forces some blocks to span regions
+    for (int regionSize : new int[] { 1000, (int)file.length() }) {
+      DataFileReader<Object> reader =
+        new DataFileReader<Object>(new MappedSeekableInput(file, regionSize),
+                                   new GenericDatumReader<Object>());
+      try {
+        Object datum = null;
+        for (Object expected : new RandomData(SCHEMA, COUNT, SEED)) {
+          datum = reader.next(datum);
+          assertEquals(expected, datum);
+        }
+        assertFalse(reader.hasNext());
+      } finally {
+        reader.close();
+      }
+    }
+  }
+
   @Test
   public void testSplits() throws IOException {
     File file = makeFile();
@@ -151,6 +184,122 @@ public class TestDataFile {
     }
   }
 
+  @Test
+  public void testSplitsLargeBlocks() throws IOException {
+    // blocks larger than the buffer used to scan for synchronization points
+    File file = new File(DIR, "test-large-" + codec + ".avro");
+    int count = 20000;
+    DataFileWriter<Object> writer =
+      new DataFileWriter<Object>(new GenericDatumWriter<Object>())
+      .setSyncInterval(100000);
+    if (codec != null) {
+      writer.setCodec(codec);
+    }
+    writer.create(SCHEMA, file);
+    try {
+      for (Object datum : new RandomData(SCHEMA, count, SEED))
+        writer.append(datum);
+    } finally {
+      writer.close();
+    }
+    DataFileReader<Object> reader =
+      new DataFileReader<Object>(file, new GenericDatumReader<Object>());
+    try {
+      int length = (int)file.length();
+      int splits = 7;
+      int total = 0;
+      for (int i = 0; i < splits; i++) {
+        long start = (long)length * i / splits;
+        long end = (long)length * (i + 1) / splits;
+        reader.sync(start);
+        while (!reader.pastSync(end)) {
+          reader.next();
+          total++;
+        }
+      }
+      assertEquals(count, total);
+    } finally {
+      reader.close();
+    }
+  }
+
+  @Test
+  public void testSetSplit() throws IOException {
+    File file = makeFile();
+    List<Object> expected = new ArrayList<Object>();
+    for (Object datum : new RandomData(SCHEMA, COUNT, SEED))
+      expected.add(datum);
+    for (int count : new int[] { 1, 3, 10, (int)file.length() }) {
+      List<DataFileSplit> splits = DataFileSplit.getSplits(file, count);
+      assertEquals(count, splits.size());
+      assertEquals(file.length(), splits.get(count-1).getEnd());
+      assertEquals(expected, readSplits(file, splits));
+    }
+  }
+
+  @Test
+  public void testIndexedSplits() throws IOException {
+    File file = new File(DIR, "test-split-" + codec + ".avro");
+    File indexFile = DataFileIndex.getIndexFile(file);
+    List<Object> expected = new ArrayList<Object>();
+    for (Object datum : new RandomData(SCHEMA, COUNT, SEED))
+      expected.add(datum);
+    DataFileWriter<Object> writer =
+      new DataFileWriter<Object>(new GenericDatumWriter<Object>())
+      .setSyncInterval(100)
+      .setBlockIndex(new FileOutputStream(indexFile));
+    if (codec != null) {
+      writer.setCodec(codec);
+    }
+    writer.create(SCHEMA, file);
+    try {
+      for (Object datum : expected)
+        writer.append(datum);
+    } finally {
+      writer.close();
+    }
+    DataFileIndex index = DataFileIndex.read(indexFile);
+    int blockRecords = 0;
+    for (int b = 0; b < index.getBlockCount(); b++)
+      blockRecords = Math.max(blockRecords, (int)index.getBlockRecordCount(b));
+    for (int count : new int[] { 1, 4, index.getBlockCount() * 2 }) {
+      List<DataFileSplit> splits =
+        DataFileSplit.getSplits(index, file.length(), count);
+      assertTrue(splits.size() <= Math.min(count, index.getBlockCount()));
+      assertEquals(expected, readSplits(file, splits));
+      for (DataFileSplit split : splits) {        // balanced to within a block
+        DataFileReader<Object> reader =
+          new DataFileReader<Object>(file, new GenericDatumReader<Object>());
+        try {
+          reader.setSplit(split);
+          int n = 0;
+          for (Object datum : reader)
+            n++;
+          assertTrue(Math.abs(n - COUNT / splits.size()) <= blockRecords);
+        } finally {
+          reader.close();
+        }
+      }
+    }
+  }
+
+  private List<Object> readSplits(File file, List<DataFileSplit> splits)
+    throws IOException {
+    List<Object> result = new ArrayList<Object>();
+    for (DataFileSplit split : splits) {
+      DataFileReader<Object> reader =
+        new DataFileReader<Object>(file, new GenericDatumReader<Object>());
+      try {
+        reader.setSplit(split);
+        for (Object datum : reader)
+          result.add(datum);
+      } finally {
+        reader.close();
+      }
+    }
+    return result;
+  }
+
   @Test
   public void testGenericAppend() throws IOException {
     File file = makeFile();
@@ -185,6 +334,142 @@ public class TestDataFile {
     }
   }  
 
+  @Test
+  public void testSeekToRecord() throws IOException {
+    File file = new File(DIR, "test-indexed-" + codec + ".avro");
+    File indexFile = DataFileIndex.getIndexFile(file);
+    List<Object> expected = new ArrayList<Object>();
+    for (Object datum : new RandomData(SCHEMA, COUNT, SEED))
+      expected.add(datum);
+    DataFileWriter<Object> writer =
+      new DataFileWriter<Object>(new GenericDatumWriter<Object>())
+      .setSyncInterval(100)
+      .setBlockIndex(new FileOutputStream(indexFile));
+    if (codec != null) {
+      writer.setCodec(codec);
+    }
+    writer.create(SCHEMA, file);
+    try {
+      for (Object datum : expected.subList(0, COUNT/2))
+        writer.append(datum);
+    } finally {
+      writer.close();
+    }
+    // append the rest, so that the existing blocks must be indexed too
+    writer = new DataFileWriter<Object>(new GenericDatumWriter<Object>())
+      .setBlockIndex(new FileOutputStream(indexFile))
+      .appendTo(file);
+    try {
+      for (Object datum : expected.subList(COUNT/2, COUNT))
+        writer.append(datum);
+    } finally {
+      writer.close();
+    }
+
+    DataFileReader<Object> reader =
+      new DataFileReader<Object>(file, new GenericDatumReader<Object>());
+    try {
+      reader.setBlockIndex(DataFileIndex.read(indexFile));
+      assertEquals(COUNT, reader.getBlockIndex().getRecordCount());
+      assertTrue(reader.getBlockCount() > 1);
+      Random rand = new Random(SEED);
+      for (int i = 0; i < 20; i++) {
+        int record = rand.nextInt(COUNT);
+        reader.seekToRecord(record);
+        assertEquals(expected.get(record), reader.next());
+      }
+      reader.seekToRecord(COUNT-1);
+      assertEquals(expected.get(COUNT-1), reader.next());
+      assertFalse(reader.hasNext());
+      reader.seekToRecord(COUNT);
+      assertFalse(reader.hasNext());
+    } finally {
+      reader.close();
+    }
+  }
+
+  @Test
+  public void testBlockFilter() throws IOException {
+    Schema schema = Schema.parse
+      ("{\"type\": \"record\", \"name\": \"Stats\", \"fields\": ["
+       +"{\"name\":\"stringField\", \"type\":\"string\"},"
+       +"{\"name\":\"id\", \"type\":\"long\"},"
+       +"{\"name\":\"value\", \"type\":[\"null\", \"double\"]}]}");
+    File file = new File(DIR, "test-stats-" + codec + ".avro");
+    File indexFile = DataFileIndex.getIndexFile(file);
+    DataFileWriter<Object> writer =
+      new DataFileWriter<Object>(new GenericDatumWriter<Object>())
+      .setSyncInterval(100)
+      .setBlockIndex(new FileOutputStream(indexFile))
+      .setBlockStatistics("value", "id");
+    if (codec != null) {
+      writer.setCodec(codec);
+    }
+    writer.create(schema, file);
+    try {
+      for (int i = 0; i < COUNT; i++) {
+        GenericData.Record record = new GenericData.Record(schema);
+        record.put("stringField", new Utf8("record " + i));
+        record.put("id", (long)i);
+        record.put("value", i % 3 == 0 ? null : (double)-i);
+        writer.append(record);
+      }
+    } finally {
+      writer.close();
+    }
+
+    DataFileIndex index = DataFileIndex.read(indexFile);
+    assertEquals(Arrays.asList("value", "id"), index.getStatisticsFields());
+    assertTrue(index.getBlockCount() > 2);
+    for (int b = 0; b < index.getBlockCount(); b++) {
+      BlockStatistics stats = index.getBlockStatistics(b);
+      long first = index.getBlockFirstRecord(b);
+      long last = first + index.getBlockRecordCount(b) - 1;
+      assertEquals(first, stats.getMin("id"));
+      assertEquals(last, stats.getMax("id"));
+      assertEquals(0, stats.getNullCount("id"));
+      long nulls = 0;
+      for (long i = first; i <= last; i++)
+        if (i % 3 == 0) nulls++;
+      assertEquals(nulls, stats.getNullCount("value"));
+    }
+
+    int low = COUNT/2, high = COUNT/2 + 5;
+    DataFileReader<Object> reader =
+      new DataFileReader<Object>(file, new GenericDatumReader<Object>());
+    try {
+      reader.setBlockIndex(index);
+      reader.setBlockFilter(BlockPredicate.between("id", low, high));
+      int read = 0, matched = 0;
+      for (Object datum : reader) {
+        long id = (Long)((GenericData.Record)datum).get("id");
+        if (id >= low && id <= high)
+          matched++;
+        read++;
+      }
+      assertEquals(high - low + 1, matched);
+      assertTrue(read < COUNT/2);
+
+      // no block has only nulls, and no values are positive
+      reader.seek(index.getBlockOffset(0));
+      reader.setBlockFilter(BlockPredicate.or
+                            (BlockPredicate.gt("value", 0),
+                             BlockPredicate.isNull("id")));
+      assertFalse(reader.hasNext());
+      reader.seek(index.getBlockOffset(0));
+      reader.setBlockFilter(BlockPredicate.isNull("value"));
+      assertTrue(reader.hasNext());
+      reader.seek(index.getBlockOffset(0));
+      reader.setBlockFilter(BlockPredicate.ge("id", COUNT - 1));
+      int count = 0;
+      for (Object datum : reader)
+        count++;
+      assertEquals(index.getBlockRecordCount(index.getBlockCount()-1), count);
+    } finally {
+      reader.close();
+    }
+  }
+
   protected void readFile(File f, DatumReader<Object> datumReader)
     throws IOException {
     System.out.println("Reading "+ f.getName());
@@ -65,6 +65,10 @@ public class TestDataFileConcat {
         { CodecFactory.deflateCodec(3), CodecFactory.nullCodec(), false });
     r.add(new Object[]
         { CodecFactory.nullCodec(), CodecFactory.deflateCodec(6), false });
+    r.add(new Object[]
+        { CodecFactory.snappyCodec(), CodecFactory.deflateCodec(6), false });
+    r.add(new Object[]
+        { CodecFactory.deflateCodec(6), CodecFactory.snappyCodec(), false });
     return r;
   }
 
@@ -23,6 +23,8 @@ import static org.junit.Assert.assertFalse;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import org.apache.avro.Schema.Type;
 import org.apache.avro.file.CodecFactory;
@@ -61,4 +63,37 @@ public class TestDataFileDeflate {
     assertEquals("bye bye moon", r.next().toString());
     assertFalse(r.hasNext());
   }
+
+  @Test
+  public void testAsyncCompression() throws IOException {
+    Schema schema = Schema.create(Type.STRING);
+    int count = 5000;
+
+    // Write it, compressing blocks on a small pool
+    ExecutorService executor = Executors.newFixedThreadPool(3);
+    ByteArrayOutputStream baos = new ByteArrayOutputStream();
+    DataFileWriter<Utf8> w = new DataFileWriter<Utf8>(new GenericDatumWriter<Utf8>(schema));
+    w.setCodec(CodecFactory.deflateCodec(6));
+    w.setSyncInterval(64);
+    w.setCompressionExecutor(executor, 2);
+    w.create(schema, baos);
+    try {
+      for (int i = 0; i < count; i++) {
+        w.append(new Utf8("record " + i));
+        if (i == count / 2)
+          w.sync();
+      }
+    } finally {
+      w.close();
+      executor.shutdown();
+    }
+
+    // Read it
+    DataFileStream<Utf8> r = new DataFileStream<Utf8>(
+        new ByteArrayInputStream(baos.toByteArray()),
+        new GenericDatumReader<Utf8>(schema));
+    for (int i = 0; i < count; i++)
+      assertEquals("record " + i, r.next().toString());
+    assertFalse(r.hasNext());
+  }
 }
@@ -0,0 +1,157 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.avro;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.avro.file.CodecFactory;
+import org.apache.avro.file.DataFileReader;
+import org.apache.avro.file.DataFileWriter;
+import org.apache.avro.file.ParallelDataFileReader;
+import org.apache.avro.generic.GenericDatumReader;
+import org.apache.avro.generic.GenericDatumWriter;
+import org.apache.avro.io.Decoder;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+public class TestParallelDataFileReader {
+  private static final int COUNT =
+    Integer.parseInt(System.getProperty("test.count", "200"));
+  private static final File DIR
+    = new File(System.getProperty("test.dir", "/tmp"));
+  private static final File FILE = new File(DIR, "test-parallel.avro");
+  private static final long SEED = System.currentTimeMillis();
+  private static final Schema SCHEMA = Schema.parse(
+    "{\"type\": \"record\", \"name\": \"Test\", \"fields\": ["
+    +"{\"name\":\"stringField\", \"type\":\"string\"},"
+    +"{\"name\":\"longField\", \"type\":\"long\"}]}");
+
+  private static ExecutorService executor;
+
+  @BeforeClass
+  public static void writeFile() throws IOException {
+    executor = Executors.newFixedThreadPool(4);
+    DataFileWriter<Object> writer =
+      new DataFileWriter<Object>(new GenericDatumWriter<Object>())
+      .setSyncInterval(100)
+      .setCodec(CodecFactory.deflateCodec(1));
+    writer.create(SCHEMA, FILE);
+    try {
+      for (Object datum : new RandomData(SCHEMA, COUNT, SEED))
+        writer.append(datum);
+    } finally {
+      writer.close();
+    }
+  }
+
+  @AfterClass
+  public static void shutdown() {
+    executor.shutdown();
+  }
+
+  private ParallelDataFileReader<Object> open(int maxPending, boolean ordered)
+    throws IOException {
+    return new ParallelDataFileReader<Object>
+      (new DataFileReader<Object>(FILE, new GenericDatumReader<Object>()),
+       executor, maxPending, ordered);
+  }
+
+  @Test
+  public void testOrdered() throws IOException {
+    for (int maxPending : new int[] {1, 3, 16}) {
+      ParallelDataFileReader<Object> reader = open(maxPending, true);
+      try {
+        for (Object expected : new RandomData(SCHEMA, COUNT, SEED)) {
+          assertTrue(reader.hasNext());
+          assertEquals(expected, reader.next());
+        }
+        assertFalse(reader.hasNext());
+      } finally {
+        reader.close();
+      }
+    }
+  }
+
+  @Test
+  public void testUnordered() throws IOException {
+    Map<Object,Integer> expected = count(new RandomData(SCHEMA, COUNT, SEED));
+    ParallelDataFileReader<Object> reader = open(8, false);
+    try {
+      assertEquals(expected, count(reader));
+    } finally {
+      reader.close();
+    }
+  }
+
+  @Test
+  public void testClosedEarly() throws IOException {
+    ParallelDataFileReader<Object> reader = open(4, true);
+    reader.next();                                // leave blocks pending
+    reader.close();
+  }
+
+  @Test
+  public void testUnorderedClosedEarly() throws IOException {
+    final List<Runnable> held = new ArrayList<Runnable>();
+    Executor runFirst = new Executor() {          // holds all but the first
+        public void execute(Runnable command) {
+          if (held.add(command) && held.size() == 1)
+            command.run();
+        }
+      };
+    final AtomicInteger decoded = new AtomicInteger();
+    GenericDatumReader<Object> counting = new GenericDatumReader<Object>() {
+        public Object read(Object reuse, Decoder in) throws IOException {
+          decoded.incrementAndGet();
+          return super.read(reuse, in);
+        }
+      };
+    ParallelDataFileReader<Object> reader = new ParallelDataFileReader<Object>
+      (new DataFileReader<Object>(FILE, counting), runFirst, 4, false);
+    reader.next();
+    reader.close();
+    int before = decoded.get();
+    assertTrue(held.size() > 1);
+    for (Runnable task : held.subList(1, held.size()))
+      task.run();                                 // cancelled: no decoding
+    assertEquals(before, decoded.get());
+  }
+
+  private static Map<Object,Integer> count(Iterable<Object> data) {
+    Map<Object,Integer> counts = new HashMap<Object,Integer>();
+    for (Object datum : data) {
+      Integer c = counts.get(datum);
+      counts.put(datum, c == null ? 1 : c + 1);
+    }
+    return counts;
+  }
+}
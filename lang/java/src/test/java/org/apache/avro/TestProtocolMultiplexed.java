@@ -0,0 +1,87 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.avro;
+
+import static org.junit.Assert.assertEquals;
+
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+
+import org.apache.avro.ipc.CallFuture;
+import org.apache.avro.ipc.MultiplexedSocketTransceiver;
+import org.apache.avro.ipc.NioSocketServer;
+import org.apache.avro.specific.SpecificRequestor;
+import org.apache.avro.specific.SpecificResponder;
+import org.apache.avro.test.Simple;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestProtocolMultiplexed extends TestProtocolSpecific {
+
+  @Before
+  public void testStartServer() throws Exception {
+    server =
+      new NioSocketServer(new SpecificResponder(Simple.class, new TestImpl()),
+                          new InetSocketAddress(0), 2,
+                          Executors.newFixedThreadPool(4));
+    client = new MultiplexedSocketTransceiver
+      (new InetSocketAddress(server.getPort()));
+    proxy = (Simple)SpecificRequestor.getClient(Simple.class, client);
+  }
+
+  @Test
+  public void testConcurrentCalls() throws Exception {
+    final Throwable[] failure = new Throwable[1];
+    Thread[] threads = new Thread[8];
+    for (int i = 0; i < threads.length; i++) {
+      final int t = i;
+      threads[i] = new Thread() {
+          public void run() {
+            try {
+              for (int j = 0; j < 200; j++)       // all on one connection
+                assertEquals(t * 1000 + j, proxy.add(t * 1000, j));
+            } catch (Throwable e) {
+              synchronized (failure) { failure[0] = e; }
+            }
+          }
+        };
+      threads[i].start();
+    }
+    for (Thread thread : threads)
+      thread.join();
+    if (failure[0] != null)
+      throw new AssertionError(failure[0]);
+  }
+
+  @Test
+  public void testManyCallbacks() throws Exception {
+    SimpleCallback async = (SimpleCallback)
+      SpecificRequestor.getClient(SimpleCallback.class, client);
+    List<CallFuture<Integer>> futures = new ArrayList<CallFuture<Integer>>();
+    for (int i = 0; i < 500; i++) {               // all outstanding at once
+      CallFuture<Integer> future = new CallFuture<Integer>();
+      async.add(i, 1, future);
+      futures.add(future);
+    }
+    for (int i = 0; i < futures.size(); i++)
+      assertEquals(i + 1, futures.get(i).get().intValue());
+  }
+
+}
@@ -0,0 +1,138 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.avro;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.lang.reflect.UndeclaredThrowableException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+
+import org.apache.avro.ipc.NioSocketServer;
+import org.apache.avro.ipc.Server;
+import org.apache.avro.ipc.SocketTransceiver;
+import org.apache.avro.ipc.Transceiver;
+import org.apache.avro.specific.SpecificRequestor;
+import org.apache.avro.specific.SpecificResponder;
+import org.apache.avro.test.Simple;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestProtocolNio extends TestProtocolSpecific {
+
+  @Before
+  public void testStartServer() throws Exception {
+    server =
+      new NioSocketServer(new SpecificResponder(Simple.class, new TestImpl()),
+                          new InetSocketAddress(0), 2,
+                          Executors.newFixedThreadPool(4));
+    client = new SocketTransceiver(new InetSocketAddress(server.getPort()));
+    proxy = (Simple)SpecificRequestor.getClient(Simple.class, client);
+  }
+
+  @Test
+  public void testManyConnections() throws Exception {
+    Transceiver[] clients = new Transceiver[100];
+    Simple[] proxies = new Simple[clients.length];
+    for (int i = 0; i < clients.length; i++) {
+      clients[i] = new SocketTransceiver(new InetSocketAddress(server.getPort()));
+      proxies[i] = (Simple)SpecificRequestor.getClient(Simple.class, clients[i]);
+    }
+    for (int round = 0; round < 3; round++)   // interleaved on each connection
+      for (int i = 0; i < clients.length; i++)
+        assertEquals(i + round, proxies[i].add(i, round));
+    for (Transceiver c : clients)
+      c.close();
+  }
+
+  @Test
+  public void testRejectedCall() throws Exception {
+    final Executor pool = Executors.newFixedThreadPool(2);
+    Executor rejectFirst = new Executor() {
+        private boolean rejected;
+        public synchronized void execute(Runnable command) {
+          if (!rejected) {
+            rejected = true;
+            throw new RejectedExecutionException();
+          }
+          pool.execute(command);
+        }
+      };
+    Server s =
+      new NioSocketServer(new SpecificResponder(Simple.class, new TestImpl()),
+                          new InetSocketAddress(0), 1, rejectFirst);
+    try {
+      Transceiver t = new SocketTransceiver(new InetSocketAddress(s.getPort()));
+      try {
+        ((Simple)SpecificRequestor.getClient(Simple.class, t)).add(1, 1);
+        fail("expected connection to be closed");
+      } catch (UndeclaredThrowableException e) {
+        assertTrue(e.getCause() instanceof IOException);
+      } finally {
+        t.close();
+      }
+      t = new SocketTransceiver(new InetSocketAddress(s.getPort()));
+      Simple p = (Simple)SpecificRequestor.getClient(Simple.class, t);
+      assertEquals(3, p.add(1, 2));               // loop still serving
+      t.close();
+    } finally {
+      s.close();
+    }
+  }
+
+  @Test
+  public void testOversizedRequest() throws Exception {
+    Socket s = new Socket("localhost", server.getPort());
+    s.setSoTimeout(10000);
+    DataOutputStream out = new DataOutputStream(s.getOutputStream());
+    out.writeInt(Integer.MAX_VALUE);              // a buffer that's too large
+    out.flush();
+    assertEquals(-1, s.getInputStream().read());  // closed by the server
+    s.close();
+    for (int i = 0; i < 2; i++) {                 // each loop still serving
+      Transceiver t =
+        new SocketTransceiver(new InetSocketAddress(server.getPort()));
+      Simple p = (Simple)SpecificRequestor.getClient(Simple.class, t);
+      assertEquals(i + 2, p.add(i, 2));
+      t.close();
+    }
+    assertEquals(3, proxy.add(1, 2));
+  }
+
+  @Test
+  public void testWithoutSession() throws Exception {
+    Transceiver t =                               // handshakes every call
+      new SocketTransceiver(new InetSocketAddress(server.getPort())) {
+        public boolean supportsSessions() { return false; }
+      };
+    Simple p = (Simple)SpecificRequestor.getClient(Simple.class, t);
+    for (int i = 0; i < 3; i++)
+      assertEquals(i + 1, p.add(i, 1));
+    assertFalse(t.hasSession(Simple.PROTOCOL));
+    t.close();
+  }
+
+}
@@ -17,7 +17,15 @@
  */
 package org.apache.avro;
 
+import org.apache.avro.generic.GenericData;
+import org.apache.avro.generic.GenericRecord;
+import org.apache.avro.generic.GenericRequestor;
 import org.apache.avro.ipc.AvroRemoteException;
+import org.apache.avro.ipc.CallFuture;
+import org.apache.avro.ipc.Callback;
+import org.apache.avro.ipc.LocalTransceiver;
+import org.apache.avro.ipc.RPCContext;
+import org.apache.avro.ipc.RPCPlugin;
 import org.apache.avro.ipc.Server;
 import org.apache.avro.ipc.SocketServer;
 import org.apache.avro.ipc.SocketTransceiver;
@@ -35,6 +43,8 @@ import org.junit.Before;
 import org.junit.Test;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 import java.io.File;
 import java.io.FileReader;
@@ -43,7 +53,12 @@ import java.io.IOException;
 import java.io.LineNumberReader;
 import java.net.InetSocketAddress;
 import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 
 public class TestProtocolSpecific {
@@ -137,6 +152,169 @@ public class TestProtocolSpecific {
     assertEquals("an error", error.message.toString());
   }
 
+  @Test
+  public void testSession() throws IOException {
+    assertEquals(3, proxy.add(1, 2));
+    assertEquals(client.supportsSessions(),
+                 client.hasSession(Simple.PROTOCOL));
+    assertEquals(7, proxy.add(3, 4));             // without handshake
+  }
+
+  @Test
+  public void testSessionAfterSystemError() throws Exception {
+    SpecificResponder responder =
+      new SpecificResponder(Simple.class, new TestImpl());
+    responder.addRPCPlugin(new RPCPlugin() {
+        private boolean failed;
+        public void serverReceiveRequest(RPCContext context) {
+          if (!failed) {                          // fail the first call
+            failed = true;
+            throw new RuntimeException("first call");
+          }
+        }
+      });
+    Server s = new SocketServer(responder, new InetSocketAddress(0));
+    Transceiver t = new SocketTransceiver(new InetSocketAddress(s.getPort()));
+    try {
+      Simple p = (Simple)SpecificRequestor.getClient(Simple.class, t);
+      try {
+        p.add(0, 1);
+        fail("expected system error");
+      } catch (AvroRemoteException e) {
+        assertTrue(e.getValue().toString().contains("first call"));
+      }
+      assertTrue(t.hasSession(Simple.PROTOCOL));  // session begun anyway
+      assertEquals(2, p.add(1, 1));
+      assertEquals(3, p.add(2, 1));
+    } finally {
+      t.close();
+      s.close();
+    }
+  }
+
+  @Test
+  public void testHeapRequests() throws Exception {
+    SpecificResponder responder =
+      new SpecificResponder(Simple.class, new TestImpl());
+    Transceiver t = new LocalTransceiver(responder) {
+        public List<ByteBuffer> transceive(List<ByteBuffer> request)
+          throws IOException {
+          for (ByteBuffer buffer : request)       // no direct buffers
+            assertTrue(buffer.array() != null);
+          return super.transceive(request);
+        }
+      };
+    Simple p = (Simple)SpecificRequestor.getClient(Simple.class, t);
+    assertEquals(3, p.add(1, 2));
+  }
+
+  @Test
+  public void testTwoProtocolsOneConnection() throws Exception {
+    Protocol addOnly = Protocol.parse
+      ("{\"protocol\":\"AddOnly\",\"namespace\":\"org.apache.avro.test\","
+       +"\"messages\":{\"add\":{\"request\":[{\"name\":\"arg1\","
+       +"\"type\":\"int\"},{\"name\":\"arg2\",\"type\":\"int\"}],"
+       +"\"response\":\"int\"}}}");
+    GenericRequestor generic = new GenericRequestor(addOnly, client);
+    GenericRecord args =
+      new GenericData.Record(addOnly.getMessages().get("add").getRequest());
+    args.put("arg1", 1);
+    args.put("arg2", 2);
+    assertEquals(3, generic.request("add", args));
+    assertEquals(client.supportsSessions(), client.hasSession(addOnly));
+
+    // a second protocol on the same connection makes its own handshake
+    assertEquals(new Utf8("goodbye"), proxy.hello(new Utf8("bob")));
+    assertEquals(client.supportsSessions(),
+                 client.hasSession(Simple.PROTOCOL));
+    for (int i = 0; i < 3; i++) {                 // both sessions in use
+      assertEquals(i + 1, proxy.add(i, 1));
+      args.put("arg1", i);
+      assertEquals(i + 2, generic.request("add", args));
+    }
+  }
+
+  /** Declares asynchronous variants of some messages. */
+  public interface SimpleCallback extends Simple {
+    void add(int arg1, int arg2, Callback<Integer> callback)
+      throws IOException;
+    void error(Callback<Void> callback) throws IOException;
+  }
+
+  @Test
+  public void testAddCallback() throws Exception {
+    SimpleCallback async = (SimpleCallback)
+      SpecificRequestor.getClient(SimpleCallback.class, client);
+    CallFuture<Integer> future = new CallFuture<Integer>();
+    async.add(1, 2, future);
+    assertEquals(3, future.get().intValue());
+  }
+
+  @Test
+  public void testErrorCallback() throws Exception {
+    SimpleCallback async = (SimpleCallback)
+      SpecificRequestor.getClient(SimpleCallback.class, client);
+    CallFuture<Void> future = new CallFuture<Void>();
+    async.error(future);
+    TestError error = null;
+    try {
+      future.get();
+    } catch (ExecutionException e) {
+      error = (TestError)e.getCause();
+    }
+    assertNotNull(error);
+    assertEquals("an error", error.message.toString());
+  }
+
+  @Test(expected=IllegalArgumentException.class)
+  public void testNullCallback() throws Exception {
+    SimpleCallback async = (SimpleCallback)
+      SpecificRequestor.getClient(SimpleCallback.class, client);
+    async.add(1, 2, null);
+  }
+
+  @Test
+  public void testBatching() throws Exception {
+    SpecificRequestor requestor = new SpecificRequestor(Simple.class, client);
+    final AtomicInteger sent = new AtomicInteger();
+    final AtomicInteger received = new AtomicInteger();
+    requestor.addRPCPlugin(new RPCPlugin() {
+        public void clientSendRequest(RPCContext context) {
+          sent.incrementAndGet();
+        }
+        public void clientReceiveResponse(RPCContext context) {
+          received.incrementAndGet();
+        }
+      });
+    requestor.setBatching(10, 1, TimeUnit.SECONDS);
+    SimpleCallback async = (SimpleCallback)
+      SpecificRequestor.getClient(SimpleCallback.class, requestor);
+    List<CallFuture<Integer>> futures = new ArrayList<CallFuture<Integer>>();
+    for (int i = 0; i < 25; i++) {                // two full batches and more
+      CallFuture<Integer> future = new CallFuture<Integer>();
+      async.add(i, 1, future);
+      futures.add(future);
+    }
+    CallFuture<Void> error = new CallFuture<Void>();
+    async.error(error);
+    requestor.flush();                            // the rest
+    for (int i = 0; i < futures.size(); i++)
+      assertEquals(i + 1, futures.get(i).get().intValue());
+    try {
+      error.get();
+      fail("expected error");
+    } catch (ExecutionException e) {
+      assertEquals("an error", ((TestError)e.getCause()).message.toString());
+    }
+    assertEquals(26, sent.get());                 // plugins run per call
+    assertEquals(26, received.get());
+
+    requestor.setBatching(10, 10, TimeUnit.MILLISECONDS);
+    CallFuture<Integer> late = new CallFuture<Integer>();
+    async.add(2, 3, late);
+    assertEquals(5, late.get(10, TimeUnit.SECONDS).intValue()); // after delay
+  }
+
   @After
   public void testStopServer() throws IOException {
     client.close();
@@ -0,0 +1,65 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.avro.file;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class TestBlockPredicate {
+
+  private static BlockStatistics stats(Object... values) {
+    BlockStatistics stats = new BlockStatistics(new String[] { "x" });
+    for (Object value : values)
+      stats.add(0, value);
+    return stats;
+  }
+
+  @Test
+  public void testOnlyNaN() {
+    BlockStatistics stats = stats(null, Double.NaN);
+    assertEquals(Double.NaN, stats.getMin("x"));  // not taken as all null
+    assertEquals(1, stats.getNullCount("x"));
+    assertTrue(BlockPredicate.eq("x", Double.NaN).mightMatch(stats));
+    assertTrue(BlockPredicate.ge("x", 0.0).mightMatch(stats));
+    assertTrue(BlockPredicate.gt("x", 1.0).mightMatch(stats));
+    assertFalse(BlockPredicate.lt("x", 1.0).mightMatch(stats));
+    assertFalse(BlockPredicate.eq("x", 1.0).mightMatch(stats));
+  }
+
+  @Test
+  public void testSomeNaN() {
+    BlockStatistics stats = stats(1.0, Double.NaN, 3.0);
+    assertEquals(1.0, stats.getMin("x"));
+    assertTrue(BlockPredicate.eq("x", Double.NaN).mightMatch(stats));
+    assertTrue(BlockPredicate.gt("x", 5.0).mightMatch(stats)); // NaN > 5
+    assertTrue(BlockPredicate.eq("x", 2.0).mightMatch(stats));
+    assertFalse(BlockPredicate.lt("x", 1.0).mightMatch(stats));
+  }
+
+  @Test
+  public void testNoNaN() {
+    BlockStatistics stats = stats(1.0f, 3.0f);
+    assertFalse(BlockPredicate.eq("x", Double.NaN).mightMatch(stats));
+    assertFalse(BlockPredicate.eq("x", Float.NaN).mightMatch(stats));
+    assertFalse(BlockPredicate.gt("x", 3).mightMatch(stats));
+    assertTrue(BlockPredicate.lt("x", Double.NaN).mightMatch(stats));
+  }
+}
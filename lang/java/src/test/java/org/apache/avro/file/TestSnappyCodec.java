@@ -0,0 +1,185 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.avro.file;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class TestSnappyCodec {
+  private static final File DIR
+    = new File(System.getProperty("test.dir", "/tmp"));
+
+  private static byte[] roundTrip(byte[] data, int offset, int length)
+    throws IOException {
+    Codec codec = CodecFactory.snappyCodec().createInstance();
+    ByteBuffer compressed = codec.compress(ByteBuffer.wrap(data, offset, length));
+    ByteBuffer copy = ByteBuffer.allocate(compressed.remaining() + 3);
+    copy.position(3);                             // not at the array start
+    copy.put(compressed).position(3);
+    ByteBuffer result = codec.decompress(copy);
+    byte[] bytes = new byte[result.remaining()];
+    result.get(bytes);
+    byte[] expected = new byte[length];
+    System.arraycopy(data, offset, expected, 0, length);
+    assertArrayEquals(expected, bytes);
+    return bytes;
+  }
+
+  @Test
+  public void testRoundTrip() throws IOException {
+    Random random = new Random(42);
+    for (int length : new int[] {0, 1, 3, 4, 5, 60, 61, 300, 70000, 300000}) {
+      byte[] randomData = new byte[length];
+      random.nextBytes(randomData);
+      roundTrip(randomData, 0, length);
+
+      byte[] repeated = new byte[length];         // short and long matches
+      for (int i = 0; i < length; i++)
+        repeated[i] = (byte)(i % 7 == 0 ? random.nextInt() : i % 13);
+      roundTrip(repeated, 0, length);
+
+      byte[] zeros = new byte[length + 10];
+      roundTrip(zeros, 10, length);
+    }
+  }
+
+  @Test
+  public void testCompresses() throws IOException {
+    byte[] text = new byte[100000];
+    byte[] words = "the quick brown fox jumps over the lazy dog ".getBytes("UTF-8");
+    Random random = new Random(0);
+    for (int i = 0; i < text.length; )
+      for (int j = random.nextInt(words.length); j < words.length && i < text.length; )
+        text[i++] = words[j++];
+    ByteBuffer compressed =
+      CodecFactory.snappyCodec().createInstance().compress(ByteBuffer.wrap(text));
+    assertTrue(compressed.remaining() < text.length / 4);
+  }
+
+  @Test
+  public void testDecompressKnown() throws IOException {
+    // "abcdabcdabcd": a 4-byte literal and an overlapping 8-byte copy
+    byte[] data = new byte[] { 12, 3 << 2, 'a', 'b', 'c', 'd',
+                               (byte)(1 | (8 - 4) << 2), 4,
+                               (byte)0xd5, (byte)0xb9, (byte)0xe5, (byte)0xb7 };
+    ByteBuffer result = new SnappyCodec().decompress(ByteBuffer.wrap(data));
+    assertEquals("abcdabcdabcd",
+                 new String(result.array(), 0, result.remaining(), "UTF-8"));
+  }
+
+  @Test
+  public void testCorrupt() throws IOException {
+    byte[] data = new byte[1000];
+    for (int i = 0; i < data.length; i++)
+      data[i] = (byte)(i % 10);
+    ByteBuffer compressed = new SnappyCodec().compress(ByteBuffer.wrap(data));
+    byte[] bytes = new byte[compressed.remaining()];
+    compressed.get(bytes);
+    for (int i = 0; i < bytes.length; i++) {
+      byte[] corrupt = bytes.clone();
+      corrupt[i] ^= 0x20;
+      try {
+        new SnappyCodec().decompress(ByteBuffer.wrap(corrupt));
+        fail("Corruption at byte " + i + " not detected");
+      } catch (IOException e) {
+        // expected
+      }
+    }
+  }
+
+  public static class TestCodecOption extends CodecFactory {
+    @Override
+    protected Codec createInstance() {
+      return new TestCodec();
+    }
+  }
+
+  private static class TestCodec extends Codec {
+    @Override
+    public String getName() { return "test-service"; }
+    @Override
+    public ByteBuffer compress(ByteBuffer data) { return data; }
+    @Override
+    public ByteBuffer decompress(ByteBuffer data) { return data; }
+    @Override
+    public boolean equals(Object other) { return other instanceof TestCodec; }
+    @Override
+    public int hashCode() { return 0; }
+  }
+
+  @Test
+  public void testServiceLoader() throws IOException {
+    File dir = new File(DIR, "test-codec-services");
+    File services = new File(dir, "META-INF/services");
+    services.mkdirs();
+    FileWriter out =
+      new FileWriter(new File(services, CodecFactory.class.getName()));
+    out.write("# a test codec\n" + TestCodecOption.class.getName() + "\n");
+    out.close();
+    CodecFactory.loadCodecs(new URLClassLoader
+                            (new URL[] { dir.toURI().toURL() },
+                             getClass().getClassLoader()));
+    assertEquals("test-service",
+                 CodecFactory.fromString("test-service").createInstance()
+                 .getName());
+  }
+
+  /** Claims the built-in name "deflate". */
+  public static class ImpostorOption extends CodecFactory {
+    @Override
+    protected Codec createInstance() {
+      return new TestCodec() {
+        @Override
+        public String getName() { return DataFileConstants.DEFLATE_CODEC; }
+      };
+    }
+  }
+
+  @Test
+  public void testBadServices() throws IOException {
+    File dir = new File(DIR, "test-bad-codec-services");
+    File services = new File(dir, "META-INF/services");
+    services.mkdirs();
+    FileWriter out =
+      new FileWriter(new File(services, CodecFactory.class.getName()));
+    out.write("org.apache.avro.file.NoSuchCodecOption\n"
+              + ImpostorOption.class.getName() + "\n"
+              + TestCodecOption.class.getName() + "\n");
+    out.close();
+    CodecFactory.loadCodecs(new URLClassLoader
+                            (new URL[] { dir.toURI().toURL() },
+                             getClass().getClassLoader()));
+    assertTrue(CodecFactory.fromString(DataFileConstants.DEFLATE_CODEC)
+               .createInstance() instanceof DeflateCodec);
+    assertEquals("test-service",               // loaded past the failures
+                 CodecFactory.fromString("test-service").createInstance()
+                 .getName());
+  }
+}
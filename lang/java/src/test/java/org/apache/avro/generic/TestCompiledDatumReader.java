@@ -0,0 +1,207 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.avro.generic;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+
+import org.apache.avro.AvroTypeException;
+import org.apache.avro.RandomData;
+import org.apache.avro.Schema;
+import org.apache.avro.io.BinaryDecoder;
+import org.apache.avro.io.DatumReader;
+import org.apache.avro.io.DatumWriter;
+import org.apache.avro.io.Decoder;
+import org.apache.avro.io.DecoderFactory;
+import org.apache.avro.io.Encoder;
+import org.apache.avro.io.EncoderFactory;
+import org.apache.avro.util.Utf8;
+import org.junit.Test;
+
+public class TestCompiledDatumReader {
+  private static final int COUNT = 100;
+
+  private static final String SCHEMA =
+    "{\"type\":\"record\",\"name\":\"Node\",\"fields\":["
+    +"{\"name\":\"id\",\"type\":\"long\"},"
+    +"{\"name\":\"name\",\"type\":\"string\"},"
+    +"{\"name\":\"weight\",\"type\":\"float\"},"
+    +"{\"name\":\"kind\",\"type\":{\"type\":\"enum\",\"name\":\"Kind\","
+    +  "\"symbols\":[\"A\",\"B\",\"C\"]}},"
+    +"{\"name\":\"hash\",\"type\":{\"type\":\"fixed\",\"name\":\"H\",\"size\":3}},"
+    +"{\"name\":\"data\",\"type\":[\"null\",\"bytes\",\"int\"]},"
+    +"{\"name\":\"values\",\"type\":{\"type\":\"array\",\"items\":\"int\"}},"
+    +"{\"name\":\"flags\",\"type\":{\"type\":\"array\",\"items\":\"boolean\"}},"
+    +"{\"name\":\"attrs\",\"type\":{\"type\":\"map\",\"values\":\"double\"}},"
+    +"{\"name\":\"children\",\"type\":{\"type\":\"array\",\"items\":"
+    +  "[\"null\",\"Node\"]}}]}";
+
+  private static byte[] write(DatumWriter<Object> writer, Iterable<Object> data)
+    throws Exception {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    Encoder encoder = EncoderFactory.defaultFactory()
+      .createBinaryEncoder(out, null);
+    for (Object datum : data)
+      writer.write(datum, encoder);
+    encoder.flush();
+    return out.toByteArray();
+  }
+
+  private static BinaryDecoder decoder(byte[] bytes) {
+    return DecoderFactory.defaultFactory().createBinaryDecoder(bytes, null);
+  }
+
+  /** Check that the compiled reader reads as the generic reader does. */
+  private static void checkRead(Schema writer, Schema reader, byte[] bytes,
+                                int count) throws Exception {
+    DatumReader<Object> generic = new GenericDatumReader<Object>(writer, reader);
+    DatumReader<Object> compiled = new CompiledDatumReader<Object>(writer, reader);
+    Decoder genericIn = decoder(bytes);
+    BinaryDecoder compiledIn = decoder(bytes);
+    Object reuse = null;
+    for (int i = 0; i < count; i++) {
+      Object expected = generic.read(null, genericIn);
+      Object actual = compiled.read(reuse, compiledIn);
+      assertDeepEquals(expected, actual);
+      reuse = actual;
+    }
+    assertTrue(compiledIn.isEnd());
+  }
+
+  /** Like {@link GenericData#compare}, but also compares maps. */
+  @SuppressWarnings("unchecked")
+  private static void assertDeepEquals(Object expected, Object actual) {
+    if (expected instanceof IndexedRecord) {
+      IndexedRecord record = (IndexedRecord)expected;
+      int fields = record.getSchema().getFields().size();
+      for (int i = 0; i < fields; i++)
+        assertDeepEquals(record.get(i), ((IndexedRecord)actual).get(i));
+    } else if (expected instanceof GenericArray) {
+      Iterator<Object> it = ((GenericArray<Object>)actual).iterator();
+      for (Object element : (GenericArray<Object>)expected)
+        assertDeepEquals(element, it.next());
+      assertFalse(it.hasNext());
+    } else if (expected instanceof Map) {
+      Map<Object,Object> map = (Map<Object,Object>)actual;
+      assertEquals(((Map<Object,Object>)expected).size(), map.size());
+      for (Map.Entry<Object,Object> e : ((Map<Object,Object>)expected).entrySet())
+        assertDeepEquals(e.getValue(), map.get(e.getKey()));
+    } else {
+      assertEquals(expected, actual);
+    }
+  }
+
+  @Test
+  public void testRoundTrip() throws Exception {
+    Schema schema = Schema.parse(SCHEMA);
+    RandomData data = new RandomData(schema, COUNT, 7);
+    byte[] bytes = write(new GenericDatumWriter<Object>(schema), data);
+    assertArrayEquals(bytes,
+                      write(new CompiledDatumWriter<Object>(schema), data));
+    checkRead(schema, schema, bytes, COUNT);
+  }
+
+  @Test
+  public void testCacheBounded() throws Exception {
+    for (int i = 0; i < CompiledDatumReader.MAX_CACHED + 10; i++) {
+      Schema schema = Schema.parse                // a distinct schema each time
+        ("{\"type\":\"record\",\"name\":\"R"+i+"\",\"fields\":["
+         +"{\"name\":\"f\",\"type\":\"int\"}]}");
+      GenericRecord record = new GenericData.Record(schema);
+      record.put("f", i);
+      byte[] bytes = write(new CompiledDatumWriter<Object>(schema),
+                           Arrays.asList((Object)record));
+      checkRead(schema, schema, bytes, 1);
+    }
+    assertTrue(CompiledDatumReader.cached() <= CompiledDatumReader.MAX_CACHED);
+    assertTrue(CompiledDatumWriter.cached() <= CompiledDatumWriter.MAX_CACHED);
+  }
+
+  @Test
+  public void testPrimitiveArrays() throws Exception {
+    Schema schema = Schema.parse(SCHEMA);
+    byte[] bytes = write(new GenericDatumWriter<Object>(schema),
+                         new RandomData(schema, 1, 3));
+    GenericRecord record = (GenericRecord)
+      new CompiledDatumReader<Object>(schema).read(null, decoder(bytes));
+    assertTrue(record.get("values") instanceof GenericData.IntArray);
+    assertTrue(record.get("flags") instanceof GenericData.BooleanArray);
+  }
+
+  @Test
+  public void testResolution() throws Exception {
+    Schema writer = Schema.parse
+      ("{\"type\":\"record\",\"name\":\"R\",\"fields\":["
+       +"{\"name\":\"a\",\"type\":\"int\"},"
+       +"{\"name\":\"skip1\",\"type\":{\"type\":\"array\",\"items\":\"string\"}},"
+       +"{\"name\":\"skip2\",\"type\":\"long\"},"
+       +"{\"name\":\"b\",\"type\":\"float\"},"
+       +"{\"name\":\"c\",\"type\":{\"type\":\"array\",\"items\":\"int\"}},"
+       +"{\"name\":\"d\",\"type\":[\"string\",\"long\"]},"
+       +"{\"name\":\"e\",\"type\":\"int\"},"
+       +"{\"name\":\"f\",\"type\":{\"type\":\"enum\",\"name\":\"E\","
+       +  "\"symbols\":[\"X\",\"Y\"]}}]}");
+    Schema reader = Schema.parse
+      ("{\"type\":\"record\",\"name\":\"R\",\"fields\":["
+       +"{\"name\":\"f\",\"type\":{\"type\":\"enum\",\"name\":\"E\","
+       +  "\"symbols\":[\"Z\",\"Y\",\"X\"]}},"
+       +"{\"name\":\"d\",\"type\":[\"null\",\"string\",\"double\"]},"
+       +"{\"name\":\"b\",\"type\":\"double\"},"
+       +"{\"name\":\"new\",\"type\":{\"type\":\"map\",\"values\":\"int\"},"
+       +  "\"default\":{\"k\":1}},"
+       +"{\"name\":\"a\",\"type\":\"long\"},"
+       +"{\"name\":\"c\",\"type\":{\"type\":\"array\",\"items\":\"long\"}},"
+       +"{\"name\":\"e\",\"type\":[\"null\",\"long\"]}]}");
+    byte[] bytes = write(new GenericDatumWriter<Object>(writer),
+                         new RandomData(writer, COUNT, 11));
+    checkRead(writer, reader, bytes, COUNT);
+  }
+
+  @Test(expected=AvroTypeException.class)
+  public void testMissingEnumSymbol() throws Exception {
+    Schema writer = Schema.parse
+      ("{\"type\":\"enum\",\"name\":\"E\",\"symbols\":[\"X\",\"Y\"]}");
+    Schema reader = Schema.parse
+      ("{\"type\":\"enum\",\"name\":\"E\",\"symbols\":[\"X\"]}");
+    GenericDatumWriter<Object> w = new GenericDatumWriter<Object>(writer);
+    byte[] bytes = write(w, Arrays.asList((Object)"X", "Y"));
+    DatumReader<Object> r = new CompiledDatumReader<Object>(writer, reader);
+    Decoder in = decoder(bytes);
+    assertEquals("X", r.read(null, in));
+    r.read(null, in);
+  }
+
+  @Test(expected=AvroTypeException.class)
+  public void testMismatch() throws Exception {
+    Schema writer = Schema.parse("[\"int\",\"string\"]");
+    Schema reader = Schema.parse("\"int\"");
+    byte[] bytes = write(new GenericDatumWriter<Object>(writer),
+                         Arrays.asList((Object)1, new Utf8("x")));
+    DatumReader<Object> r = new CompiledDatumReader<Object>(writer, reader);
+    Decoder in = decoder(bytes);
+    assertEquals(1, r.read(null, in));            // unresolvable branch is lazy
+    r.read(null, in);
+  }
+}
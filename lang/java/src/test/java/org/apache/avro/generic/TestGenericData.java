@@ -17,6 +17,7 @@
  */
 package org.apache.avro.generic;
 
+import java.io.ByteArrayOutputStream;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -28,6 +29,10 @@ import org.apache.avro.Schema;
 import org.apache.avro.Schema.Field;
 import org.apache.avro.AvroRuntimeException;
 import org.apache.avro.Schema.Type;
+import org.apache.avro.io.Decoder;
+import org.apache.avro.io.DecoderFactory;
+import org.apache.avro.io.Encoder;
+import org.apache.avro.io.EncoderFactory;
 
 import org.junit.Test;
 
@@ -68,5 +73,105 @@ public class TestGenericData {
     GenericData.Record record = new GenericData.Record(schema);
     assertNull(record.get("does not exist"));
   }
-    
+
+  private static final String[] PRIMITIVES =
+    { "int", "long", "float", "double", "boolean" };
+
+  private static Schema arraySchema(String elementType) {
+    return Schema.parse("{\"type\":\"array\",\"items\":\""
+                        +elementType+"\"}");
+  }
+
+  @Test
+  public void testPrimitiveArrays() throws Exception {
+    for (String type : PRIMITIVES) {
+      Schema schema = arraySchema(type);
+      GenericData.Array<?> array = GenericData.newArray(0, schema);
+      assertTrue(type, array instanceof GenericData.PrimitiveArray);
+      GenericData.Array<Object> boxed = new GenericData.Array<Object>(0, schema);
+      for (int i = 0; i < 1000; i++) {
+        Object value = value(type, i);
+        add(array, value);
+        boxed.add(value);
+      }
+      assertEquals(1000, array.size());
+      assertNull(array.peek());
+      assertEquals(boxed, array);
+      assertEquals(array, boxed);
+      assertEquals(boxed.hashCode(), array.hashCode());
+      assertEquals(boxed.toString(), array.toString());
+      assertTrue(GenericData.get().validate(schema, array));
+
+      // round trip, reusing the array
+      GenericDatumReader<Object> reader = new GenericDatumReader<Object>(schema);
+      Object read = reader.read(null, decoder(write(schema, boxed)));
+      assertSame(array.getClass(), read.getClass());
+      assertEquals(boxed, read);
+      assertSame(read, reader.read(read, decoder(write(schema, array))));
+      assertEquals(boxed, read);
+    }
+  }
+
+  @Test
+  public void testPrimitiveArrayAccess() {
+    GenericData.IntArray ints = new GenericData.IntArray(1, arraySchema("int"));
+    ints.add(7);
+    ints.add(Integer.valueOf(8));
+    assertEquals(8, ints.getInt(1));
+    assertEquals(7, ints.elements()[0]);
+    ints.clear();
+    assertEquals(0, ints.size());
+    try {
+      ints.getInt(0);
+      fail("Expected IndexOutOfBoundsException");
+    } catch (IndexOutOfBoundsException e) {}
+  }
+
+  @Test(expected=AvroRuntimeException.class)
+  public void testPrimitiveArrayWrongSchema() {
+    new GenericData.LongArray(1, arraySchema("int"));
+  }
+
+  @Test
+  public void testPrimitiveArrayPromotion() throws Exception {
+    Schema ints = arraySchema("int");
+    Schema doubles = arraySchema("double");
+    GenericData.IntArray written = new GenericData.IntArray(3, ints);
+    for (int i = -1; i < 2; i++)
+      written.add(i * 1000);
+    GenericDatumReader<Object> reader =
+      new GenericDatumReader<Object>(ints, doubles);
+    Object read = reader.read(null, decoder(write(ints, written)));
+    assertTrue(read instanceof GenericData.DoubleArray);
+    GenericData.DoubleArray result = (GenericData.DoubleArray)read;
+    assertEquals(3, result.size());
+    assertEquals(-1000.0, result.getDouble(0), 0);
+    assertEquals(1000.0, result.getDouble(2), 0);
+  }
+
+  private static Object value(String type, int i) {
+    if (type.equals("int")) return i * (i - 500);
+    if (type.equals("long")) return i * (long)Integer.MAX_VALUE;
+    if (type.equals("float")) return i / 3.0f;
+    if (type.equals("double")) return i / 7.0;
+    return (i % 3) == 0;
+  }
+
+  @SuppressWarnings("unchecked")
+  private static void add(GenericData.Array array, Object value) {
+    array.add(value);
+  }
+
+  private static byte[] write(Schema schema, Object datum) throws Exception {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    Encoder encoder = EncoderFactory.defaultFactory()
+      .createBinaryEncoder(out, null);
+    new GenericDatumWriter<Object>(schema).write(datum, encoder);
+    encoder.flush();
+    return out.toByteArray();
+  }
+
+  private static Decoder decoder(byte[] data) {
+    return DecoderFactory.defaultFactory().createBinaryDecoder(data, null);
+  }
 }
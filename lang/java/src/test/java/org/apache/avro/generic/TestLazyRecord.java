@@ -0,0 +1,176 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.avro.generic;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.avro.AvroRuntimeException;
+import org.apache.avro.Schema;
+import org.apache.avro.io.DecoderFactory;
+import org.apache.avro.io.Encoder;
+import org.apache.avro.io.EncoderFactory;
+import org.apache.avro.io.JsonEncoder;
+import org.apache.avro.util.Utf8;
+import org.junit.Test;
+
+public class TestLazyRecord {
+  private static final Schema SCHEMA = Schema.parse
+    ("{\"type\":\"record\",\"name\":\"Message\",\"fields\":["
+     +"{\"name\":\"id\",\"type\":\"long\"},"
+     +"{\"name\":\"route\",\"type\":\"string\"},"
+     +"{\"name\":\"kind\",\"type\":{\"type\":\"enum\",\"name\":\"Kind\","
+     +  "\"symbols\":[\"A\",\"B\"]}},"
+     +"{\"name\":\"header\",\"type\":[\"null\",{\"type\":\"record\","
+     +  "\"name\":\"Header\",\"fields\":["
+     +  "{\"name\":\"ttl\",\"type\":\"int\"},"
+     +  "{\"name\":\"tag\",\"type\":\"string\"}]}]},"
+     +"{\"name\":\"values\",\"type\":{\"type\":\"array\",\"items\":\"double\"}},"
+     +"{\"name\":\"attrs\",\"type\":{\"type\":\"map\",\"values\":\"bytes\"},"
+     +  "\"order\":\"ignore\"},"
+     +"{\"name\":\"hash\",\"type\":{\"type\":\"fixed\",\"name\":\"H\","
+     +  "\"size\":4}},"
+     +"{\"name\":\"ok\",\"type\":\"boolean\"}]}");
+
+  private static GenericRecord record() {
+    GenericRecord record = new GenericData.Record(SCHEMA);
+    record.put("id", 1234567890123L);
+    record.put("route", new Utf8("a/b/c"));
+    record.put("kind", "B");
+    Schema headerSchema = SCHEMA.getField("header").schema().getTypes().get(1);
+    GenericRecord header = new GenericData.Record(headerSchema);
+    header.put("ttl", 30);
+    header.put("tag", new Utf8("t"));
+    record.put("header", header);
+    GenericArray<Double> values =
+      new GenericData.Array<Double>(3, SCHEMA.getField("values").schema());
+    for (int i = 0; i < 3; i++)
+      values.add(i / 3.0);
+    record.put("values", values);
+    Map<Utf8,ByteBuffer> attrs = new HashMap<Utf8,ByteBuffer>();
+    attrs.put(new Utf8("k"), ByteBuffer.wrap(new byte[] { 1, 2 }));
+    record.put("attrs", attrs);
+    record.put("hash", new GenericData.Fixed(new byte[] { 9, 8, 7, 6 }));
+    record.put("ok", true);
+    return record;
+  }
+
+  private static byte[] write(Object datum) throws Exception {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    Encoder encoder = EncoderFactory.defaultFactory()
+      .createBinaryEncoder(out, null);
+    new GenericDatumWriter<Object>(SCHEMA).write(datum, encoder);
+    encoder.flush();
+    return out.toByteArray();
+  }
+
+  private static Object read(byte[] bytes) throws Exception {
+    return new GenericDatumReader<Object>(SCHEMA).read
+      (null, DecoderFactory.defaultFactory()
+       .createBinaryDecoder(bytes, null));
+  }
+
+  @Test
+  public void testGet() throws Exception {
+    GenericRecord expected = record();
+    byte[] bytes = write(expected);
+    LazyRecord lazy = new LazyRecord(SCHEMA, bytes);
+    assertEquals(new Utf8("a/b/c"), lazy.get("route"));
+    assertEquals(1234567890123L, lazy.get("id"));
+    assertEquals("B", lazy.get("kind"));
+    Object header = lazy.get("header");
+    assertTrue(header instanceof LazyRecord);     // nested records are lazy
+    assertEquals(30, ((GenericRecord)header).get("ttl"));
+    assertEquals(expected.get("values"), lazy.get("values"));
+    assertEquals(expected.get("attrs"), lazy.get("attrs"));
+    assertEquals(expected.get("hash"), lazy.get("hash"));
+    assertEquals(true, lazy.get("ok"));
+    assertNull(lazy.get("missing"));
+    assertEquals(expected.toString(), lazy.toString());
+    assertEquals(0, GenericData.get().compare(expected, lazy, SCHEMA));
+    assertEquals(expected.hashCode(), lazy.hashCode());
+    assertEquals(new LazyRecord(SCHEMA, bytes), lazy);
+  }
+
+  @Test
+  public void testCopy() throws Exception {
+    byte[] bytes = write(record());
+    byte[] padded = new byte[bytes.length + 10];  // view within a larger array
+    System.arraycopy(bytes, 0, padded, 5, bytes.length);
+    LazyRecord lazy = new LazyRecord(SCHEMA, padded, 5, bytes.length);
+    assertArrayEquals(bytes, write(lazy));        // copied whole
+    lazy.get("id");
+    lazy.get("kind");
+    ((GenericRecord)lazy.get("header")).get("ttl");
+    assertArrayEquals(bytes, write(lazy));        // immutable values copied
+    lazy.get("route");
+    lazy.get("values");
+    assertArrayEquals(bytes, write(lazy));        // re-encoded, unchanged
+  }
+
+  @Test
+  public void testModify() throws Exception {
+    GenericRecord expected = record();
+    LazyRecord lazy = new LazyRecord(SCHEMA, write(expected));
+
+    lazy.put("route", new Utf8("x/y"));
+    expected.put("route", new Utf8("x/y"));
+    ((Utf8)lazy.get("route")).setLength(1);       // modified in place
+    ((Utf8)expected.get("route")).setLength(1);
+    GenericRecord header = (GenericRecord)lazy.get("header");
+    header.put("tag", new Utf8("changed"));
+    ((GenericRecord)expected.get("header")).put("tag", new Utf8("changed"));
+    lazy.put("ok", false);
+    expected.put("ok", false);
+    byte[] bytes = write(lazy);
+    assertArrayEquals(write(expected), bytes);
+    assertEquals(expected, read(bytes));
+
+    lazy.put("header", null);
+    expected.put("header", null);
+    assertArrayEquals(write(expected), write(lazy));
+  }
+
+  @Test
+  public void testJson() throws Exception {
+    GenericRecord expected = record();
+    LazyRecord lazy = new LazyRecord(SCHEMA, write(expected));
+    ByteArrayOutputStream lazyOut = new ByteArrayOutputStream();
+    ByteArrayOutputStream expectedOut = new ByteArrayOutputStream();
+    Encoder encoder = new JsonEncoder(SCHEMA, lazyOut);
+    new GenericDatumWriter<Object>(SCHEMA).write(lazy, encoder);
+    encoder.flush();
+    encoder = new JsonEncoder(SCHEMA, expectedOut);
+    new GenericDatumWriter<Object>(SCHEMA).write(expected, encoder);
+    encoder.flush();
+    assertEquals(expectedOut.toString("UTF-8"), lazyOut.toString("UTF-8"));
+  }
+
+  @Test(expected=AvroRuntimeException.class)
+  public void testTruncated() throws Exception {
+    byte[] bytes = write(record());
+    new LazyRecord(SCHEMA, bytes, 0, bytes.length - 1).get("id");
+  }
+}
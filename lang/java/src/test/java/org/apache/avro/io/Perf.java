@@ -17,17 +17,37 @@
  */
 package org.apache.avro.io;
 
+import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.EOFException;
+import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Random;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
 
 import org.apache.avro.Schema;
 import org.apache.avro.Schema.Field;
+import org.apache.avro.file.Codec;
+import org.apache.avro.file.CodecFactory;
+import org.apache.avro.file.DataFileReader;
+import org.apache.avro.file.DataFileStream;
+import org.apache.avro.file.DataFileWriter;
+import org.apache.avro.file.SeekableFileInput;
+import org.apache.avro.generic.CompiledDatumReader;
+import org.apache.avro.generic.CompiledDatumWriter;
 import org.apache.avro.generic.GenericDatumReader;
+import org.apache.avro.generic.GenericDatumWriter;
 
 /**
  * Performance tests for various low level operations of
@@ -54,14 +74,26 @@ public class Perf {
         tests.add(new ReadLongSmall(readIntTest));
       } else if (a.equals("-b")) {
         tests.add(new ReadBoolean());
+      } else if (a.equals("-ib")) {
+        tests.add(new ReadBatch("ReadInts", new ReadInt()));
+      } else if (a.equals("-lb")) {
+        tests.add(new ReadBatch("ReadLongs", new ReadLong()));
+      } else if (a.equals("-fb")) {
+        tests.add(new ReadBatch("ReadFloats", new ReadFloat()));
+      } else if (a.equals("-db")) {
+        tests.add(new ReadBatch("ReadDoubles", new ReadDouble()));
       } else if (a.equals("-R")) {
         tests.add(new RepeaterTest());
       } else if (a.equals("-N")) {
         tests.add(new NestedRecordTest());
       } else if (a.equals("-S")) {
         tests.add(new ResolverTest());
+      } else if (a.equals("-Sf")) {
+        tests.add(new ResolverTest("FlatResolverTest", true));
       } else if (a.equals("-M")) {
         tests.add(new MigrationTest());
+      } else if (a.equals("-Mf")) {
+        tests.add(new MigrationTest("FlatMigrationTest", true));
       } else if (a.equals("-G")) {
         tests.add(new GenericReaderTest());
       } else if (a.equals("-Gd")) {
@@ -70,6 +102,62 @@ public class Perf {
         tests.add(new GenericReaderWithOutOfOrderTest());
       } else if (a.equals("-Gp")) {
         tests.add(new GenericReaderWithPromotionTest());
+      } else if (a.equals("-Gj")) {
+        tests.add(new GenericReaderWithProjectionTest());
+      } else if (a.equals("-Gc")) {
+        tests.add(new CompiledReaderTest("CompiledReaderTest", null));
+      } else if (a.equals("-Gcd")) {
+        tests.add(new CompiledReaderTest("CompiledReaderWithDefaultTest",
+                                         MIGRATION_SCHEMA_WITH_DEFAULT));
+      } else if (a.equals("-Gco")) {
+        tests.add(new CompiledReaderTest("CompiledReaderWithOutOfOrderTest",
+                                         MIGRATION_SCHEMA_WITH_OUT_OF_ORDER));
+      } else if (a.equals("-Gcp")) {
+        tests.add(new CompiledReaderTest("CompiledReaderWithPromotionTest",
+                                         MIGRATION_SCHEMA_WITH_PROMOTION));
+      } else if (a.equals("-Gcj")) {
+        tests.add(new CompiledReaderTest("CompiledReaderWithProjectionTest",
+                                         MIGRATION_SCHEMA_WITH_PROJECTION));
+      } else if (a.equals("-Gf")) {
+        tests.add(new FlatReaderTest("FlatReaderTest", null));
+      } else if (a.equals("-Gfd")) {
+        tests.add(new FlatReaderTest("FlatReaderWithDefaultTest",
+                                     MIGRATION_SCHEMA_WITH_DEFAULT));
+      } else if (a.equals("-Gfo")) {
+        tests.add(new FlatReaderTest("FlatReaderWithOutOfOrderTest",
+                                     MIGRATION_SCHEMA_WITH_OUT_OF_ORDER));
+      } else if (a.equals("-Gfp")) {
+        tests.add(new FlatReaderTest("FlatReaderWithPromotionTest",
+                                     MIGRATION_SCHEMA_WITH_PROMOTION));
+      } else if (a.equals("-Gfj")) {
+        tests.add(new FlatReaderTest("FlatReaderWithProjectionTest",
+                                     MIGRATION_SCHEMA_WITH_PROJECTION));
+      } else if (a.equals("-Y")) {
+        tests.add(new SyncTest("SyncSmallBlocks", SMALL_BLOCK, false));
+      } else if (a.equals("-Yb")) {
+        tests.add(new SyncTest("SyncSmallBlocksByteAtATime", SMALL_BLOCK, true));
+      } else if (a.equals("-YL")) {
+        tests.add(new SyncTest("SyncLargeBlocks", LARGE_BLOCK, false));
+      } else if (a.equals("-YLb")) {
+        tests.add(new SyncTest("SyncLargeBlocksByteAtATime", LARGE_BLOCK, true));
+      } else if (a.equals("-W")) {
+        tests.add(new GenericWriterTest("GenericWriterDirect", false));
+      } else if (a.equals("-Wb")) {
+        tests.add(new GenericWriterTest("GenericWriterBuffered", true));
+      } else if (a.equals("-Wc")) {
+        tests.add(new GenericWriterTest("CompiledWriterBuffered", true, true));
+      } else if (a.equals("-Cd")) {
+        tests.add(new CodecTest("DeflateRead", DEFLATE, false));
+      } else if (a.equals("-Cdw")) {
+        tests.add(new CodecTest("DeflateWrite", DEFLATE, true));
+      } else if (a.equals("-Cdo")) {
+        tests.add(new CodecTest("DeflateStreamRead", DEFLATE_STREAM, false));
+      } else if (a.equals("-Cdwo")) {
+        tests.add(new CodecTest("DeflateStreamWrite", DEFLATE_STREAM, true));
+      } else if (a.equals("-Cs")) {
+        tests.add(new CodecTest("SnappyRead", SNAPPY, false));
+      } else if (a.equals("-Csw")) {
+        tests.add(new CodecTest("SnappyWrite", SNAPPY, true));
       } else {
         usage();
         System.exit(1);
@@ -84,11 +172,48 @@ public class Perf {
           new ReadFloat(), 
           new ReadDouble(),
           new ReadBoolean(),
+          new ReadBatch("ReadInts", readIntTest),
+          new ReadBatch("ReadLongs", new ReadLong()),
+          new ReadBatch("ReadFloats", new ReadFloat()),
+          new ReadBatch("ReadDoubles", new ReadDouble()),
           new RepeaterTest(), new NestedRecordTest(),
           new ResolverTest(), new MigrationTest(),
           new GenericReaderTest(), new GenericReaderWithDefaultTest(),
           new GenericReaderWithOutOfOrderTest(),
-          new GenericReaderWithPromotionTest()
+          new GenericReaderWithPromotionTest(),
+          new GenericReaderWithProjectionTest(),
+          new CompiledReaderTest("CompiledReaderTest", null),
+          new CompiledReaderTest("CompiledReaderWithDefaultTest",
+                                 MIGRATION_SCHEMA_WITH_DEFAULT),
+          new CompiledReaderTest("CompiledReaderWithOutOfOrderTest",
+                                 MIGRATION_SCHEMA_WITH_OUT_OF_ORDER),
+          new CompiledReaderTest("CompiledReaderWithPromotionTest",
+                                 MIGRATION_SCHEMA_WITH_PROMOTION),
+          new CompiledReaderTest("CompiledReaderWithProjectionTest",
+                                 MIGRATION_SCHEMA_WITH_PROJECTION),
+          new ResolverTest("FlatResolverTest", true),
+          new MigrationTest("FlatMigrationTest", true),
+          new FlatReaderTest("FlatReaderTest", null),
+          new FlatReaderTest("FlatReaderWithDefaultTest",
+                             MIGRATION_SCHEMA_WITH_DEFAULT),
+          new FlatReaderTest("FlatReaderWithOutOfOrderTest",
+                             MIGRATION_SCHEMA_WITH_OUT_OF_ORDER),
+          new FlatReaderTest("FlatReaderWithPromotionTest",
+                             MIGRATION_SCHEMA_WITH_PROMOTION),
+          new FlatReaderTest("FlatReaderWithProjectionTest",
+                             MIGRATION_SCHEMA_WITH_PROJECTION),
+          new GenericWriterTest("GenericWriterDirect", false),
+          new GenericWriterTest("GenericWriterBuffered", true),
+          new GenericWriterTest("CompiledWriterBuffered", true, true),
+          new SyncTest("SyncSmallBlocks", SMALL_BLOCK, false),
+          new SyncTest("SyncSmallBlocksByteAtATime", SMALL_BLOCK, true),
+          new SyncTest("SyncLargeBlocks", LARGE_BLOCK, false),
+          new CodecTest("DeflateRead", DEFLATE, false),
+          new CodecTest("DeflateWrite", DEFLATE, true),
+          new CodecTest("DeflateStreamRead", DEFLATE_STREAM, false),
+          new CodecTest("DeflateStreamWrite", DEFLATE_STREAM, true),
+          new CodecTest("SnappyRead", SNAPPY, false),
+          new CodecTest("SnappyWrite", SNAPPY, true)
       }));
     }
     
@@ -105,21 +230,35 @@ public class Perf {
     }
     // test
     long s = 0;
+    long allocated = allocatedBytes();
     for (int i = 0; i < t.cycles; i++) {
       long l = t.read();
       // System.out.println("** " + l);
       s += l;
     }
+    allocated = allocatedBytes() - allocated;
     s /= 1000;
     double entries = (t.cycles * (double) t.count);
     double bytes = t.cycles * (double) t.data.length;
     System.out.println(t.name + ": " + (s / 1000) + " ms, "
         +  (entries / s) + " million entries/sec.  "
-        +  (bytes / s) + " million bytes/sec" );
+        +  (bytes / s) + " million bytes/sec"
+        +  (allocated >= 0
+            ? ".  " + (allocated / entries) + " bytes allocated/entry"
+            : ""));
     tests.set(k, null);
     }
   }
   
+  /** Returns the bytes allocated by this thread, or -1 if not supported. */
+  private static long allocatedBytes() {
+    ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+    if (!(threads instanceof com.sun.management.ThreadMXBean))
+      return -1;
+    return ((com.sun.management.ThreadMXBean)threads)
+      .getThreadAllocatedBytes(Thread.currentThread().getId());
+  }
+
   private abstract static class Test {
 
     /**
@@ -339,6 +478,45 @@ public class Perf {
     }
   }
   
+  // reads the same data as another test, an array block at a time
+  private static class ReadBatch extends Test {
+    private final Schema.Type type;
+    private int[] ints;                           // reused across reads
+    private long[] longs;
+    private float[] floats;
+    private double[] doubles;
+
+    public ReadBatch(String name, DecoderTest dataFrom) {
+      super(name, CYCLES, dataFrom.count);
+      this.type = dataFrom.schema.getElementType().getType();
+      this.data = dataFrom.data;
+      switch (type) {
+      case INT:    ints = new int[count];       break;
+      case LONG:   longs = new long[count];     break;
+      case FLOAT:  floats = new float[count];   break;
+      case DOUBLE: doubles = new double[count]; break;
+      default: throw new IllegalArgumentException("Unsupported: " + type);
+      }
+    }
+
+    @Override
+    public long read() throws IOException {
+      Decoder d = DecoderTest.newDecoder(data);
+      long t = System.nanoTime();
+      int n = 0;
+      for (long l = d.readArrayStart(); l > 0; l = d.arrayNext()) {
+        switch (type) {
+        case INT:    d.readInts(ints, n, (int)l);       break;
+        case LONG:   d.readLongs(longs, n, (int)l);     break;
+        case FLOAT:  d.readFloats(floats, n, (int)l);   break;
+        case DOUBLE: d.readDoubles(doubles, n, (int)l); break;
+        }
+        n += l;
+      }
+      return (System.nanoTime() - t);
+    }
+  }
+
   private static final String REPEATER_SCHEMA =
     "{ \"type\": \"array\", \"items\":\n"
     + "{ \"type\": \"record\", \"name\": \"R\", \"fields\": [\n"
@@ -382,13 +560,22 @@ public class Perf {
   }
   
   private static class ResolverTest extends RepeaterTest {
+    private final boolean flat;
 
     public ResolverTest() throws IOException {
-      super("ResolverTest");
+      this("ResolverTest", false);
+    }
+
+    public ResolverTest(String name, boolean flat) throws IOException {
+      super(name);
+      this.flat = flat;
     }
     
     @Override
     protected Decoder getDecoder() throws IOException {
+      if (flat)
+        return ResolvingDecoder.create
+          (ResolvingDecoder.resolveFlat(schema, schema), newDecoder(data));
       return new ResolvingDecoder(schema, schema, newDecoder(data));
     }
     
@@ -431,19 +618,35 @@ public class Perf {
     + "{ \"name\": \"f6\", \"type\": \"long\" }\n"
     + "] } }";
 
+  private static final String MIGRATION_SCHEMA_WITH_PROJECTION =
+    "{ \"type\": \"array\", \"items\":\n"
+    + "{ \"type\": \"record\", \"name\": \"R\", \"fields\": [\n"
+    + "{ \"name\": \"f1\", \"type\": \"double\" },\n"
+    + "{ \"name\": \"f4\", \"type\": \"int\" }\n"
+    + "] } }";
 
   /**
    * Tests the performance of introducing default values.
    */
   private static class MigrationTest extends RepeaterTest {
     private final Schema readerSchema;
+    private final boolean flat;
     public MigrationTest() throws IOException {
-      super("MigrationTest");
+      this("MigrationTest", false);
+    }
+
+    public MigrationTest(String name, boolean flat) throws IOException {
+      super(name);
       readerSchema = Schema.parse(MIGRATION_SCHEMA_WITH_DEFAULT);
+      this.flat = flat;
     }
     
     @Override
     protected Decoder getDecoder() throws IOException {
+      if (flat)
+        return ResolvingDecoder.create
+          (ResolvingDecoder.resolveFlat(schema, readerSchema),
+           newDecoder(data));
       return new ResolvingDecoder(schema, readerSchema, newDecoder(data));
     }
     
@@ -481,7 +684,7 @@ public class Perf {
 
     @Override
     public final long read() throws IOException {
-      GenericDatumReader<Object> r = getReader();
+      DatumReader<Object> r = getReader();
       long t = System.nanoTime();
       Decoder d =
         DecoderFactory.defaultFactory().createBinaryDecoder(data, null);
@@ -497,7 +700,7 @@ public class Perf {
       return (System.nanoTime() - t);
     }
     
-    protected GenericDatumReader<Object> getReader() throws IOException {
+    protected DatumReader<Object> getReader() throws IOException {
       return new GenericDatumReader<Object>(writerSchema);
     }
   }
@@ -510,11 +713,44 @@ public class Perf {
       this.readerSchema = Schema.parse(readerSchema);
     }
     
-    protected GenericDatumReader<Object> getReader() throws IOException {
+    protected DatumReader<Object> getReader() throws IOException {
       return new GenericDatumReader<Object>(writerSchema, readerSchema);
     }
   }
 
+  private static class CompiledReaderTest extends GenericReaderTest {
+    private final Schema readerSchema;
+    /** A null reader's schema reads with the writer's. */
+    public CompiledReaderTest(String name, String readerSchema)
+      throws IOException {
+      super(name);
+      this.readerSchema = readerSchema == null
+        ? writerSchema : Schema.parse(readerSchema);
+    }
+
+    protected DatumReader<Object> getReader() throws IOException {
+      return new CompiledDatumReader<Object>(writerSchema, readerSchema);
+    }
+  }
+
+  private static class FlatReaderTest extends GenericReaderTest {
+    private final Schema readerSchema;
+    /** A null reader's schema reads with the writer's. */
+    public FlatReaderTest(String name, String readerSchema)
+      throws IOException {
+      super(name);
+      this.readerSchema = readerSchema == null
+        ? writerSchema : Schema.parse(readerSchema);
+    }
+
+    protected DatumReader<Object> getReader() throws IOException {
+      GenericDatumReader<Object> reader =
+        new GenericDatumReader<Object>(writerSchema, readerSchema);
+      reader.setFlatGrammar(true);
+      return reader;
+    }
+  }
+
   private static class GenericReaderWithDefaultTest extends
     GenericReaderWithMigrationTest {
     public GenericReaderWithDefaultTest() throws IOException {
@@ -538,6 +774,14 @@ public class Perf {
     }
   }
 
+  private static class GenericReaderWithProjectionTest extends
+    GenericReaderWithMigrationTest {
+    public GenericReaderWithProjectionTest() throws IOException {
+      super("GenericReaderTestWithProjectionTest",
+          MIGRATION_SCHEMA_WITH_PROJECTION);
+    }
+  }
+
   private static class NestedRecordTest extends ReadInt {
     public NestedRecordTest() throws IOException {
       super("NestedRecordTest",
@@ -553,22 +797,318 @@ public class Perf {
     }
   }
 
+  private static final int SMALL_BLOCK = 1024;
+  private static final int LARGE_BLOCK = 1024 * 1024;
+
+  /**
+   * Tests the performance of {@link DataFileReader#sync(long)}, as used to
+   * find the first block of each split of a file, for a file with blocks of a
+   * given size.  For comparison, can instead time a byte-at-a-time scan for
+   * the synchronization marker.  (That is slow enough with large blocks that
+   * it is only run when requested with -YLb.)
+   */
+  private static class SyncTest extends Test {
+    private static final int SYNCS = 100;
+    private final boolean byteAtATime;
+    private final File file;
+    private final byte[] sync;
+
+    public SyncTest(String name, int syncInterval, boolean byteAtATime)
+      throws IOException {
+      super(name, syncInterval < LARGE_BLOCK ? 20 : 4, SYNCS);
+      this.byteAtATime = byteAtATime;
+      Schema schema = Schema.create(Schema.Type.LONG);
+      ByteArrayOutputStream bao = new ByteArrayOutputStream();
+      DataFileWriter<Object> writer =
+        new DataFileWriter<Object>(new GenericDatumWriter<Object>(schema))
+        .setSyncInterval(syncInterval);
+      writer.create(schema, bao);
+      int headerEnd = (int)writer.sync();
+      Random r = newRandom();
+      for (int i = 0; i < COUNT * 10; i++) {
+        writer.append(r.nextLong());
+      }
+      writer.close();
+      data = bao.toByteArray();
+      sync = Arrays.copyOfRange(data, headerEnd - 16, headerEnd);
+      file = File.createTempFile("perf", ".avro");
+      file.deleteOnExit();
+      FileOutputStream out = new FileOutputStream(file);
+      out.write(data);
+      out.close();
+    }
+
+    @Override
+    long read() throws IOException {
+      DataFileReader<Object> reader =
+        new DataFileReader<Object>(file, new GenericDatumReader<Object>());
+      SeekableFileInput in = new SeekableFileInput(file);
+      long t = System.nanoTime();
+      for (int i = 0; i < count; i++) {
+        long position = (long)data.length * i / count;
+        if (byteAtATime) {
+          scan(in, position);
+        } else {
+          reader.sync(position);
+        }
+      }
+      t = System.nanoTime() - t;
+      in.close();
+      reader.close();
+      return t;
+    }
+
+    /** Compare each position with the marker through a buffered stream. */
+    private long scan(SeekableFileInput file, long position)
+      throws IOException {
+      file.seek(position);
+      BinaryDecoder d = factory.createBinaryDecoder(file, null);
+      InputStream in = d.inputStream();
+      byte[] window = new byte[sync.length];
+      int i = 0, b;
+      try {
+        d.readFixed(window);
+      } catch (EOFException e) {
+        return -1;
+      }
+      do {
+        int j = 0;
+        for (; j < sync.length; j++) {
+          if (sync[j] != window[(i+j) % sync.length])
+            break;
+        }
+        if (j == sync.length)
+          return position + i + sync.length;
+        b = in.read();
+        window[i++ % sync.length] = (byte)b;
+      } while (b != -1);
+      return -1;
+    }
+  }
+
+  private static final CodecFactory DEFLATE = CodecFactory.deflateCodec(6);
+  private static final CodecFactory SNAPPY = CodecFactory.snappyCodec();
+  private static final CodecFactory DEFLATE_STREAM = new CodecFactory() {
+    @Override
+    protected Codec createInstance() {
+      return new StreamDeflateCodec();
+    }
+  };
+  static {
+    CodecFactory.addCodec(StreamDeflateCodec.NAME, DEFLATE_STREAM);
+  }
+
+  /**
+   * Tests the performance of writing small, numeric records with {@link
+   * GenericDatumWriter}, through either an unbuffered {@link BinaryEncoder}
+   * or one from {@link EncoderFactory}.
+   */
+  private static class GenericWriterTest extends Test {
+    private final boolean buffered;
+    private final boolean compiled;
+    private final Schema schema;
+    private final List<Object> records = new ArrayList<Object>();
+    private final ByteArrayOutputStream out = new ByteArrayOutputStream();
+    private BinaryEncoder encoder;
+
+    public GenericWriterTest(String name, boolean buffered) throws IOException {
+      this(name, buffered, false);
+    }
+
+    public GenericWriterTest(String name, boolean buffered, boolean compiled)
+      throws IOException {
+      super(name, CYCLES, COUNT/12);
+      this.buffered = buffered;
+      this.compiled = compiled;
+      Schema array = Schema.parse(REPEATER_SCHEMA);
+      this.schema = array.getElementType();
+      ByteArrayOutputStream bao = new ByteArrayOutputStream();
+      generateRepeaterData(new BinaryEncoder(bao));
+      data = bao.toByteArray();
+      GenericDatumReader<Object> r = new GenericDatumReader<Object>(array);
+      Decoder d = factory.createBinaryDecoder(data, null);
+      for (Object record : (Iterable<?>)r.read(null, d))
+        records.add(record);
+    }
+
+    @Override
+    long read() throws IOException {
+      DatumWriter<Object> w = compiled
+        ? new CompiledDatumWriter<Object>(schema)
+        : new GenericDatumWriter<Object>(schema);
+      long t = System.nanoTime();
+      out.reset();
+      encoder = buffered
+        ? EncoderFactory.defaultFactory().createBinaryEncoder(out, encoder)
+        : new BinaryEncoder(out);
+      for (Object record : records)
+        w.write(record, encoder);
+      encoder.flush();
+      return System.nanoTime() - t;
+    }
+  }
+
+  /**
+   * Tests the performance of reading or writing a data file with a codec.
+   * The file holds short, text-like byte strings, which are reused while
+   * reading, so compression dominates the time taken.
+   */
+  private static class CodecTest extends Test {
+    private final Schema schema = Schema.create(Schema.Type.BYTES);
+    private final CodecFactory codec;
+    private final boolean write;
+
+    public CodecTest(String name, CodecFactory codec, boolean write)
+      throws IOException {
+      super(name, 20, COUNT);
+      this.codec = codec;
+      this.write = write;
+      data = writeFile();
+    }
+
+    private byte[] writeFile() throws IOException {
+      ByteArrayOutputStream out = new ByteArrayOutputStream();
+      DataFileWriter<Object> writer =
+        new DataFileWriter<Object>(new GenericDatumWriter<Object>(schema))
+        .setCodec(codec);
+      writer.create(schema, out);
+      Random r = newRandom();
+      for (int i = 0; i < count; i++) {
+        String entry = "{\"id\": " + r.nextInt(100000)
+          + ", \"name\": \"user" + r.nextInt(1000)
+          + "\", \"score\": " + r.nextDouble() + "}";
+        writer.append(ByteBuffer.wrap(entry.getBytes("UTF-8")));
+      }
+      writer.close();
+      return out.toByteArray();
+    }
+
+    @Override
+    long read() throws IOException {
+      long t = System.nanoTime();
+      if (write) {
+        writeFile();
+      } else {
+        DataFileStream<Object> in = new DataFileStream<Object>
+          (new ByteArrayInputStream(data), new GenericDatumReader<Object>());
+        Object datum = null;
+        while (in.hasNext()) {
+          datum = in.next(datum);
+        }
+        in.close();
+      }
+      return System.nanoTime() - t;
+    }
+  }
+
+  /**
+   * Deflate through {@link DeflaterOutputStream} and {@link
+   * InflaterInputStream}, as DeflateCodec once did, for comparison.
+   */
+  private static class StreamDeflateCodec extends Codec {
+    static final String NAME = "deflate-stream";
+
+    private static class Buffer extends ByteArrayOutputStream {
+      ByteBuffer asByteBuffer() { return ByteBuffer.wrap(buf, 0, count); }
+    }
+
+    private Buffer buffer = new Buffer();
+    private Deflater deflater = new Deflater(6, true);
+    private Inflater inflater = new Inflater(true);
+
+    @Override
+    public String getName() { return NAME; }
+
+    @Override
+    public ByteBuffer compress(ByteBuffer data) throws IOException {
+      buffer.reset();
+      DeflaterOutputStream out = new DeflaterOutputStream(buffer, deflater);
+      out.write(data.array(), data.arrayOffset() + data.position(),
+                data.remaining());
+      out.finish();
+      deflater.reset();
+      return buffer.asByteBuffer();
+    }
+
+    @Override
+    public ByteBuffer decompress(ByteBuffer data) throws IOException {
+      buffer.reset();
+      InputStream in = new InflaterInputStream
+        (new ByteArrayInputStream(data.array(),
+                                  data.arrayOffset() + data.position(),
+                                  data.remaining()), inflater);
+      byte[] b = new byte[2048];
+      try {
+        for (int n = in.read(b); n >= 0; n = in.read(b)) {
+          buffer.write(b, 0, n);
+        }
+      } catch (EOFException e) {
+        // as InflaterInputStream sometimes throws at the end
+      }
+      inflater.reset();
+      return buffer.asByteBuffer();
+    }
+
+    @Override
+    public boolean equals(Object other) {
+      return other instanceof StreamDeflateCodec;
+    }
+
+    @Override
+    public int hashCode() { return 0; }
+  }
+
   private static void usage() {
-    System.out.println("Usage: Perf { -i | -ls | -l | -f | -d | -b | -R | -N " +
-      "| -S | -M | -G | -Gd | -Go | Gp }");
+    System.out.println("Usage: Perf { -i | -ls | -l | -f | -d | -b " +
+      "| -ib | -lb | -fb | -db | -R | -N " +
+      "| -S | -Sf | -M | -Mf | -G | -Gd | -Go | Gp | -Gj " +
+      "| -Gc | -Gcd | -Gco | -Gcp | -Gcj " +
+      "| -Gf | -Gfd | -Gfo | -Gfp | -Gfj | -W | -Wb | -Wc " +
+      "| -Y | -Yb | -YL | -YLb " +
+      "| -Cd | -Cdw | -Cdo | -Cdwo | -Cs | -Csw }");
     System.out.println("  -i readInt()");
     System.out.println("  -ls readLongSmall()");
     System.out.println("  -l readLong()");
     System.out.println("  -f readFloat()");
     System.out.println("  -d readDouble()");
     System.out.println("  -b readBoolean()");
+    System.out.println("  -ib readInts()");
+    System.out.println("  -lb readLongs()");
+    System.out.println("  -fb readFloats()");
+    System.out.println("  -db readDoubles()");
     System.out.println("  -R repeater in validating decoder");
     System.out.println("  -N nested record in validating decoder");
     System.out.println("  -S resolving decoder");
+    System.out.println("  -Sf resolving decoder (flat grammar)");
     System.out.println("  -M resolving decoder (with default fields)");
+    System.out.println("  -Mf resolving decoder (with default fields, flat grammar)");
     System.out.println("  -G GenericDatumReader");
     System.out.println("  -Gd GenericDatumReader (with default fields)");
     System.out.println("  -Go GenericDatumReader (with out-of-order fields)");
     System.out.println("  -Gp GenericDatumReader (with promotion fields)");
+    System.out.println("  -Gj GenericDatumReader (with projected fields)");
+    System.out.println("  -Gc CompiledDatumReader");
+    System.out.println("  -Gcd CompiledDatumReader (with default fields)");
+    System.out.println("  -Gco CompiledDatumReader (with out-of-order fields)");
+    System.out.println("  -Gcp CompiledDatumReader (with promotion fields)");
+    System.out.println("  -Gcj CompiledDatumReader (with projected fields)");
+    System.out.println("  -Gf GenericDatumReader (flat grammar)");
+    System.out.println("  -Gfd GenericDatumReader (flat grammar, with default fields)");
+    System.out.println("  -Gfo GenericDatumReader (flat grammar, with out-of-order fields)");
+    System.out.println("  -Gfp GenericDatumReader (flat grammar, with promotion fields)");
+    System.out.println("  -Gfj GenericDatumReader (flat grammar, with projected fields)");
+    System.out.println("  -W GenericDatumWriter (unbuffered encoder)");
+    System.out.println("  -Wb GenericDatumWriter (buffered encoder)");
+    System.out.println("  -Wc CompiledDatumWriter (buffered encoder)");
+    System.out.println("  -Y DataFileReader.sync() (with small blocks)");
+    System.out.println("  -Yb byte-at-a-time sync scan (with small blocks)");
+    System.out.println("  -YL DataFileReader.sync() (with large blocks)");
+    System.out.println("  -YLb byte-at-a-time sync scan (with large blocks)");
+    System.out.println("  -Cd read deflated data file");
+    System.out.println("  -Cdw write deflated data file");
+    System.out.println("  -Cdo read deflated data file (through streams)");
+    System.out.println("  -Cdwo write deflated data file (through streams)");
+    System.out.println("  -Cs read snappy data file");
+    System.out.println("  -Csw write snappy data file");
   }
 }
@@ -22,9 +22,11 @@ import java.io.ByteArrayOutputStream;
 import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.List;
 
 import org.apache.avro.RandomData;
 import org.apache.avro.Schema;
@@ -172,6 +174,21 @@ public class TestBinaryDecoder {
 
     Decoder fromOffsetArray = newDecoder(data2, 15, data.length);
 
+    ByteBuffer direct = ByteBuffer.allocateDirect(data.length);
+    direct.put(data).flip();
+    Decoder fromDirectBuffer = factory.createBinaryDecoder(direct, null);
+
+    List<ByteBuffer> buffers = new ArrayList<ByteBuffer>();
+    for (int i = 0; i < data.length; i += 7) {    // spans values, of each kind
+      int n = Math.min(7, data.length - i);
+      buffers.add((i % 2 == 0 ? ByteBuffer.allocate(n)
+                   : ByteBuffer.allocateDirect(n)).put(data, i, n));
+      buffers.get(buffers.size()-1).flip();
+    }
+    Decoder fromBufferList = factory.createBinaryDecoder(buffers, null);
+    Decoder fromSingleBufferList = factory.createBinaryDecoder(
+        Arrays.asList(ByteBuffer.wrap(data)), null);
+
     BinaryDecoder initOnInputStream = factory.createBinaryDecoder(
         new byte[50], 0, 30, null);
     initOnInputStream = factory.createBinaryDecoder(is2, initOnInputStream);
@@ -189,6 +206,15 @@ public class TestBinaryDecoder {
       Assert.assertEquals(
           "offset Array based BinaryDecoder result does not match",
           datum, reader.read(null, fromOffsetArray));
+      Assert.assertEquals(
+          "direct ByteBuffer based BinaryDecoder result does not match",
+          datum, reader.read(null, fromDirectBuffer));
+      Assert.assertEquals(
+          "ByteBuffer list based BinaryDecoder result does not match",
+          datum, reader.read(null, fromBufferList));
+      Assert.assertEquals(
+          "single ByteBuffer list based BinaryDecoder result does not match",
+          datum, reader.read(null, fromSingleBufferList));
       Assert.assertEquals(
           "InputStream initialized BinaryDecoder result does not match",
           datum, reader.read(null, initOnInputStream));
@@ -238,6 +264,27 @@ public class TestBinaryDecoder {
     }
   }
   
+  @Test
+  public void testDirectBufferReused() throws IOException {
+    ByteBuffer first = ByteBuffer.allocateDirect(data.length);
+    first.put(data).flip();
+    BinaryDecoder bd = factory.createBinaryDecoder(first, null);
+    bd.readInt();                                 // fill the decoder's buffer
+    InputStream test = bd.inputStream();
+    InputStream check = new ByteArrayInputStream(data);
+    BinaryDecoder check2 = factory.createBinaryDecoder(check, null);
+    check2.readInt();
+    check = check2.inputStream();
+
+    ByteBuffer second = ByteBuffer.allocateDirect(data.length);
+    second.put(data).flip();
+    // reuses the buffer, yet the detached stream keeps what it had buffered
+    Assert.assertSame(bd, factory.createBinaryDecoder(second, bd));
+    skipGenerated(bd);
+    Assert.assertTrue(bd.isEnd());
+    validateInputStreamReads(test, check);
+  }
+
   @Test
   public void testInputStreamPartiallyUsed() throws IOException {
     BinaryDecoder bd = factory.createBinaryDecoder(
@@ -374,6 +421,11 @@ public class TestBinaryDecoder {
           throw e;
         }
       }
+      ByteBuffer direct = ByteBuffer.allocateDirect(data.length);
+      direct.put(data).flip();
+      bd = factory.createBinaryDecoder(direct, bd);
+      skipGenerated(bd);
+      Assert.assertTrue(bd.isEnd());
     }
   }
 
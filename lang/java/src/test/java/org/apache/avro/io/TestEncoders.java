@@ -17,11 +17,17 @@
  */
 package org.apache.avro.io;
 
+import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.Random;
 
 import org.apache.avro.Schema;
+import org.apache.avro.util.Utf8;
+import org.junit.Assert;
 import org.junit.Test;
 
 public class TestEncoders {
@@ -31,6 +37,165 @@ public class TestEncoders {
     new BinaryEncoder(out).init(new ByteArrayOutputStream());
   }
 
+  @Test
+  public void testBufferedBinaryEncoderInit() throws IOException {
+    OutputStream out = null;
+    new EncoderFactory().createBinaryEncoder(out, null)
+      .init(new ByteArrayOutputStream());
+  }
+
+  @Test
+  public void testBufferedBinaryEncoder() throws IOException {
+    ByteArrayOutputStream expected = new ByteArrayOutputStream();
+    writeValues(new BinaryEncoder(expected));
+    for (int size : new int[] { 1, 32, 100, 2048, 1 << 20 }) {
+      EncoderFactory factory = new EncoderFactory().configureBufferSize(size);
+      ByteArrayOutputStream actual = new ByteArrayOutputStream();
+      BinaryEncoder e = factory.createBinaryEncoder(actual, null);
+      Assert.assertSame(BufferedBinaryEncoder.class, e.getClass());
+      writeValues(e);
+      e.flush();
+      Assert.assertArrayEquals(expected.toByteArray(), actual.toByteArray());
+
+      actual.reset();                             // reused encoder
+      Assert.assertSame(e, factory.createBinaryEncoder(actual, e));
+      writeValues(e);
+      e.flush();
+      Assert.assertArrayEquals(expected.toByteArray(), actual.toByteArray());
+    }
+  }
+
+  @Test
+  public void testBufferedBinaryEncoderReuseFlushes() throws IOException {
+    ByteArrayOutputStream first = new ByteArrayOutputStream();
+    EncoderFactory factory = new EncoderFactory();
+    BinaryEncoder e = factory.createBinaryEncoder(first, null);
+    e.writeLong(-3);
+    Assert.assertEquals(0, first.size());         // still buffered
+    ByteArrayOutputStream second = new ByteArrayOutputStream();
+    e = factory.createBinaryEncoder(second, e);
+    Assert.assertArrayEquals(new byte[] { 5 }, first.toByteArray());
+    e.writeInt(1);
+    e.flush();
+    Assert.assertArrayEquals(new byte[] { 2 }, second.toByteArray());
+  }
+
+  @Test
+  public void testDirectBinaryEncoder() throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    BinaryEncoder e =
+      EncoderFactory.defaultFactory().createDirectBinaryEncoder(out, null);
+    Assert.assertSame(BinaryEncoder.class, e.getClass());
+    e.writeLong(-3);
+    Assert.assertArrayEquals(new byte[] { 5 }, out.toByteArray());
+  }
+
+  @Test
+  public void testBatchPrimitives() throws IOException {
+    Random random = new Random(0);
+    int count = 1000;
+    int[] ints = new int[count];
+    long[] longs = new long[count];
+    float[] floats = new float[count];
+    double[] doubles = new double[count];
+    for (int i = 0; i < count; i++) {
+      ints[i] = random.nextInt() >> random.nextInt(32);
+      longs[i] = random.nextLong() >> random.nextInt(64);
+      floats[i] = random.nextFloat() * ints[i];
+      doubles[i] = random.nextGaussian() * longs[i];
+    }
+    ints[0] = Integer.MIN_VALUE; longs[0] = Long.MIN_VALUE;
+    ints[1] = Integer.MAX_VALUE; longs[1] = Long.MAX_VALUE;
+    floats[0] = Float.NaN; doubles[0] = Double.NEGATIVE_INFINITY;
+
+    ByteArrayOutputStream expected = new ByteArrayOutputStream();
+    Encoder single = new BinaryEncoder(expected);
+    for (int i = 0; i < count; i++) single.writeInt(ints[i]);
+    for (int i = 0; i < count; i++) single.writeLong(longs[i]);
+    for (int i = 0; i < count; i++) single.writeFloat(floats[i]);
+    for (int i = 0; i < count; i++) single.writeDouble(doubles[i]);
+    single.flush();
+    byte[] data = expected.toByteArray();
+
+    for (int size : new int[] { 32, 100, 2048 }) {
+      ByteArrayOutputStream actual = new ByteArrayOutputStream();
+      Encoder e = new EncoderFactory().configureBufferSize(size)
+        .createBinaryEncoder(actual, null);
+      e.writeInts(ints, 0, 10);                   // split batches
+      e.writeInts(ints, 10, count - 10);
+      e.writeLongs(longs, 0, count);
+      e.writeFloats(floats, 0, count);
+      e.writeDoubles(doubles, 0, count - 1);
+      e.writeDoubles(doubles, count - 1, 1);
+      e.flush();
+      Assert.assertArrayEquals(data, actual.toByteArray());
+    }
+
+    for (DecoderFactory factory : new DecoderFactory[] {
+        new DecoderFactory().configureDecoderBufferSize(32),
+        new DecoderFactory().configureDecoderBufferSize(1000),
+        new DecoderFactory().configureDirectDecoder(true) }) {
+      Decoder d = factory.createBinaryDecoder
+        (new ByteArrayInputStream(data), null);
+      int[] ints2 = new int[count + 1];
+      long[] longs2 = new long[count];
+      float[] floats2 = new float[count];
+      double[] doubles2 = new double[count];
+      d.readInts(ints2, 1, 7);                    // unaligned batches
+      d.readInts(ints2, 8, count - 7);
+      d.readLongs(longs2, 0, count);
+      d.readFloats(floats2, 0, 3);
+      d.readFloats(floats2, 3, count - 3);
+      d.readDoubles(doubles2, 0, count);
+      for (int i = 0; i < count; i++) {
+        Assert.assertEquals(ints[i], ints2[i + 1]);
+        Assert.assertEquals(longs[i], longs2[i]);
+        Assert.assertEquals(Float.floatToRawIntBits(floats[i]),
+                            Float.floatToRawIntBits(floats2[i]));
+        Assert.assertEquals(Double.doubleToRawLongBits(doubles[i]),
+                            Double.doubleToRawLongBits(doubles2[i]));
+      }
+      try {
+        d.readInts(ints2, 0, 1);
+        Assert.fail("Expected EOF");
+      } catch (EOFException expectedEOF) {}
+    }
+  }
+
+  private static void writeValues(Encoder e) throws IOException {
+    Random random = new Random(0);
+    int[] ints = { 0, 1, -1, 63, -64, 64, Integer.MAX_VALUE, Integer.MIN_VALUE };
+    long[] longs = { 0, -1, Long.MAX_VALUE, Long.MIN_VALUE, 1L << 35 };
+    e.writeArrayStart();
+    e.setItemCount(ints.length);
+    for (int i : ints) {
+      e.startItem();
+      e.writeInt(i);
+    }
+    e.writeArrayEnd();
+    for (long l : longs)
+      e.writeLong(l);
+    e.writeMapStart();
+    e.writeMapEnd();
+    e.writeNull();
+    e.writeBoolean(true);
+    e.writeBoolean(false);
+    e.writeFloat(1.5f);
+    e.writeDouble(-Math.PI);
+    e.writeEnum(7);
+    e.writeIndex(1);
+    e.writeString(new Utf8("hello"));
+    for (int length : new int[] { 0, 5, 40, 100, 3000 }) {
+      byte[] bytes = new byte[length];
+      random.nextBytes(bytes);
+      e.writeBytes(bytes, 0, length);
+      e.writeBytes(ByteBuffer.wrap(bytes));
+      e.writeFixed(bytes, 0, length);
+    }
+    for (int i = 0; i < 1000; i++)
+      e.writeLong(random.nextLong());
+  }
+
   @Test
   public void testBlockingBinaryEncoderInit() throws IOException {
     OutputStream out = null;
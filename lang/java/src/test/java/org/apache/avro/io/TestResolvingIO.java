@@ -97,19 +97,25 @@ public class TestResolvingIO {
       throws IOException {
     // TestValidatingIO.dump(bytes);
     // System.out.println(new String(bytes, "UTF-8"));
-    Decoder bvi = null;
+    Decoder vi = new ResolvingDecoder(wsc, rsc, decoder(wsc, bytes, encoding));
+    TestValidatingIO.check(vi, calls, values, skipLevel);
+    vi = ResolvingDecoder.create(ResolvingDecoder.resolveFlat(wsc, rsc),
+                                 decoder(wsc, bytes, encoding));
+    TestValidatingIO.check(vi, calls, values, skipLevel);
+  }
+
+  private static Decoder decoder(Schema wsc, byte[] bytes, Encoding encoding)
+    throws IOException {
     switch (encoding) {
     case BINARY:
     case BLOCKING_BINARY:
-      bvi = DecoderFactory.defaultFactory().createBinaryDecoder(bytes, null);
-      break;
+      return DecoderFactory.defaultFactory().createBinaryDecoder(bytes, null);
     case JSON:
       InputStream in = new ByteArrayInputStream(bytes);
-      bvi = new JsonDecoder(wsc, in);
-      break;
+      return new JsonDecoder(wsc, in);
+    default:
+      return null;
     }
-    Decoder vi = new ResolvingDecoder(wsc, rsc, bvi);
-    TestValidatingIO.check(vi, calls, values, skipLevel);
   }
   
   @Parameterized.Parameters
@@ -59,8 +59,10 @@ public class TestResolvingIOResolving {
   public void testResolving()
     throws IOException {
     Schema writerSchema = Schema.parse(sJsWrtSchm);
-    byte[] bytes = TestValidatingIO.make(writerSchema, sWrtCls,
-        oaWrtVals, TestValidatingIO.Encoding.BINARY);
+    // blocking binary output has byte counts that permit skipping blocks
+    byte[] bytes = TestValidatingIO.make(writerSchema, sWrtCls, oaWrtVals,
+        eEnc == TestValidatingIO.Encoding.BLOCKING_BINARY
+        ? eEnc : TestValidatingIO.Encoding.BINARY);
     Schema readerSchema = Schema.parse(sJsRdrSchm);
     TestResolvingIO.check(writerSchema, readerSchema, bytes, sRdrCls,
         oaRdrVals,
@@ -89,6 +91,55 @@ public class TestResolvingIOResolving {
           + "{\"name\":\"f1\", \"type\":\"string\" },"
           + "{\"name\":\"f2\", \"type\":\"string\"}]}", "RS10S10RS10S10",
           new Object[] { "s1", "s2", "t1", "t2" } },
+        { "{\"type\":\"record\",\"name\":\"r\",\"fields\":["
+          + "{\"name\":\"a\", \"type\":\"int\"},"
+          + "{\"name\":\"b\", \"type\":\"double\"},"
+          + "{\"name\":\"c\", \"type\":\"float\"},"
+          + "{\"name\":\"d\", \"type\":\"boolean\"},"
+          + "{\"name\":\"e\", \"type\":"
+          + "{\"type\":\"fixed\",\"name\":\"f\",\"size\":3}},"
+          + "{\"name\":\"g\", \"type\":{\"type\":\"record\","
+          + "\"name\":\"g\",\"fields\":["
+          + "{\"name\":\"x\", \"type\":\"double\"},"
+          + "{\"name\":\"y\", \"type\":\"string\"},"
+          + "{\"name\":\"z\", \"type\":\"float\"}]}},"
+          + "{\"name\":\"h\", \"type\":{\"type\":\"array\",\"items\":"
+          + "{\"type\":\"record\",\"name\":\"h\",\"fields\":["
+          + "{\"name\":\"p\", \"type\":\"long\"},"
+          + "{\"name\":\"q\", \"type\":\"boolean\"}]}}},"
+          + "{\"name\":\"i\", \"type\":"
+          + "{\"type\":\"map\",\"values\":\"double\"}},"
+          + "{\"name\":\"j\", \"type\":[\"null\",\"string\"]},"
+          + "{\"name\":\"k\", \"type\":"
+          + "{\"type\":\"enum\",\"name\":\"k\",\"symbols\":[\"x\",\"y\"]}},"
+          + "{\"name\":\"l\", \"type\":\"bytes\"},"
+          + "{\"name\":\"m\", \"type\":\"string\"}]}",
+          "IDFBf3DS3F[c2sLBsLB]{c1sK3D}U1S3e1b2S4",
+          new Object[] { 7, 1.5, 2.5f, true, new byte[] { 1, 2, 3 },
+                         3.5, "abc", 4.5f, 5L, true, 6L, false, "key", 7.5,
+                         "def", new byte[] { 9, 9 }, "last" },
+          "{\"type\":\"record\",\"name\":\"r\",\"fields\":["
+          + "{\"name\":\"a\", \"type\":\"int\" },"
+          + "{\"name\":\"m\", \"type\":\"string\"}]}", "RIS4",
+          new Object[] { 7, "last" } },
+        // Projection of a recursive record
+        { "{\"type\":\"record\",\"name\":\"n\",\"fields\":["
+          + "{\"name\":\"v\", \"type\":\"int\"},"
+          + "{\"name\":\"next\", \"type\":[\"null\",\"n\"]}]}",
+          "IU1IU1IU0N", new Object[] { 1, 2, 3 },
+          "{\"type\":\"record\",\"name\":\"n\",\"fields\":["
+          + "{\"name\":\"v\", \"type\":\"int\" }]}", "RI",
+          new Object[] { 1 } },
+        // Projection of array items
+        { "{\"type\":\"array\",\"items\":{\"type\":\"record\","
+          + "\"name\":\"h\",\"fields\":["
+          + "{\"name\":\"p\", \"type\":\"long\"},"
+          + "{\"name\":\"q\", \"type\":\"boolean\"}]}}",
+          "[c2sLBsLB]", new Object[] { 5L, false, 6L, true },
+          "{\"type\":\"array\",\"items\":{\"type\":\"record\","
+          + "\"name\":\"h\",\"fields\":["
+          + "{\"name\":\"p\", \"type\":\"long\"}]}}",
+          "[c2sLsL]", new Object[] { 5L, 6L } },
         // Reordered fields
         { "{\"type\":\"record\",\"name\":\"r\",\"fields\":["
           + "{\"name\":\"f1\", \"type\":\"int\"},"
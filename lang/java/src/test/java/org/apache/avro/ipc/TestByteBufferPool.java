@@ -0,0 +1,126 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.avro.ipc;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class TestByteBufferPool {
+
+  @Test
+  public void testSizeClasses() {
+    ByteBufferPool pool = new ByteBufferPool();
+    assertEquals(ByteBufferPool.MIN_SIZE, pool.acquire(0).capacity());
+    assertEquals(ByteBufferPool.MIN_SIZE, pool.acquire(1).capacity());
+    assertEquals(2048, pool.acquire(1025).capacity());
+    assertEquals(8192, pool.acquire(8192).capacity());
+    assertTrue(pool.acquire(8192).isDirect());
+    ByteBuffer big = pool.acquire(ByteBufferPool.MAX_SIZE + 1);
+    assertFalse(big.isDirect());
+    pool.release(big);
+    assertEquals(0, pool.size());
+  }
+
+  @Test
+  public void testReuse() {
+    ByteBufferPool pool = new ByteBufferPool(1);
+    ByteBuffer a = pool.acquire(100);
+    ByteBuffer b = pool.acquire(100);
+    a.put((byte)1);
+    pool.release(a);
+    pool.release(b);                              // over limit: dropped
+    assertEquals(1, pool.size());
+    ByteBuffer c = pool.acquire(1000);
+    assertSame(a, c);
+    assertEquals(0, c.position());                // cleared
+    assertEquals(0, pool.size());
+    pool.release(ByteBuffer.allocate(1024));      // heap: ignored
+    assertEquals(0, pool.size());
+  }
+
+  @Test
+  public void testPooledOutputStream() throws Exception {
+    ByteBufferPool pool = new ByteBufferPool();
+    ByteBufferOutputStream out = new ByteBufferOutputStream(pool);
+    assertEquals(0, out.getBufferList().size());  // nothing acquired
+
+    Random random = new Random(0);
+    byte[] bytes = new byte[3 * ByteBufferOutputStream.BUFFER_SIZE + 17];
+    random.nextBytes(bytes);
+    ByteBuffer direct = ByteBuffer.allocateDirect(bytes.length);
+    direct.put(bytes).flip();
+    out.write(bytes[0]);
+    out.write(bytes, 1, 99);
+    out.writeBuffer(ByteBuffer.wrap(bytes, 100, 9000));
+    out.writeBuffer(direct);
+    assertFalse(direct.hasRemaining());
+
+    List<ByteBuffer> buffers = out.getBufferList();
+    int length = 0;
+    for (ByteBuffer buffer : buffers) {
+      assertTrue(buffer.isDirect());              // all copied into the pool
+      length += buffer.remaining();
+    }
+    assertEquals(9100 + bytes.length, length);
+    ByteBufferInputStream in = new ByteBufferInputStream(buffers);
+    byte[] read = new byte[length];
+    int n = 0;
+    while (n < length)
+      n += in.read(read, n, length - n);
+    for (int i = 0; i < 9100; i++)
+      assertEquals(bytes[i], read[i]);
+    for (int i = 0; i < bytes.length; i++)
+      assertEquals(bytes[i], read[9100 + i]);
+
+    pool.release(buffers);
+    assertEquals(buffers.size(), pool.size());
+  }
+
+  @Test
+  public void testPooledWriteCopies() throws Exception {
+    ByteBufferPool pool = new ByteBufferPool();
+    ByteBufferOutputStream out = new ByteBufferOutputStream(pool);
+    ByteBuffer caller = ByteBuffer.allocateDirect(ByteBufferPool.MIN_SIZE);
+    out.write(caller);
+    assertEquals(ByteBufferPool.MIN_SIZE, caller.remaining()); // unconsumed
+    List<ByteBuffer> buffers = out.getBufferList();
+    for (ByteBuffer buffer : buffers)
+      assertTrue(buffer != caller);               // never pooled
+    pool.release(buffers);
+  }
+
+  @Test
+  public void testHeapOutputStream() throws Exception {
+    ByteBufferOutputStream out = new ByteBufferOutputStream();
+    byte[] bytes = new byte[ByteBufferOutputStream.BUFFER_SIZE];
+    ByteBuffer big = ByteBuffer.wrap(bytes);
+    out.write(1);
+    out.writeBuffer(big);                         // appended without copying
+    List<ByteBuffer> buffers = out.getBufferList();
+    assertEquals(2, buffers.size());
+    assertSame(big, buffers.get(1));
+  }
+}
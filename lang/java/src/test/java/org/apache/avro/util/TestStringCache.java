@@ -0,0 +1,161 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.avro.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import java.io.ByteArrayOutputStream;
+
+import org.apache.avro.Schema;
+import org.apache.avro.generic.GenericArray;
+import org.apache.avro.generic.GenericData;
+import org.apache.avro.generic.GenericDatumReader;
+import org.apache.avro.generic.GenericDatumWriter;
+import org.apache.avro.generic.GenericRecord;
+import org.apache.avro.io.BinaryDecoder;
+import org.apache.avro.io.BinaryEncoder;
+import org.apache.avro.io.DecoderFactory;
+import org.apache.avro.io.EncoderFactory;
+import org.apache.avro.reflect.ReflectData;
+import org.apache.avro.reflect.ReflectDatumReader;
+import org.apache.avro.reflect.ReflectDatumWriter;
+import org.junit.Test;
+
+public class TestStringCache {
+  private static final Schema SCHEMA = Schema.parse
+    ("{\"type\":\"record\",\"name\":\"R\",\"fields\":["
+     +"{\"name\":\"status\",\"type\":\"string\"},"
+     +"{\"name\":\"tags\",\"type\":{\"type\":\"array\",\"items\":\"string\"}},"
+     +"{\"name\":\"name\",\"type\":[\"null\",\"string\"]}]}");
+  private static final String[] STATUS = { "open", "closed", "pending" };
+  private static final int COUNT = 30;
+
+  @Test
+  public void testLookup() {
+    StringCache cache = new StringCache(2);
+    Utf8 a = cache.getUtf8(new Utf8("a"));
+    assertSame(a, cache.getUtf8(new Utf8("a")));
+    assertSame(cache.getString(new Utf8("a")), cache.getString(a));
+    assertEquals(3, cache.getHits());
+    assertEquals(1, cache.getMisses());
+
+    Utf8 reused = new Utf8("b");
+    Utf8 b = cache.getUtf8(reused);
+    assertNotSame(reused, b);                     // keys are copied
+    reused.setLength(0);
+    assertEquals(new Utf8("b"), b);
+
+    cache.getUtf8(new Utf8("c"));                 // evicts "a"
+    assertEquals(2, cache.size());
+    assertNotSame(a, cache.getUtf8(new Utf8("a")));
+
+    cache.clear();
+    assertEquals(0, cache.size());
+    assertEquals(0, cache.getHits() + cache.getMisses());
+  }
+
+  @Test
+  @SuppressWarnings("unchecked")
+  public void testGenericReader() throws Exception {
+    byte[] data = write();
+    GenericDatumReader<GenericRecord> reader =
+      new GenericDatumReader<GenericRecord>(SCHEMA);
+    StringCache statusCache = new StringCache();
+    StringCache tagCache = new StringCache();
+    reader.setStringCache(SCHEMA.getField("status"), statusCache);
+    reader.setStringCache(SCHEMA.getField("tags"), tagCache);
+
+    BinaryDecoder in = DecoderFactory.defaultFactory()
+      .createBinaryDecoder(data, null);
+    GenericRecord record = null;
+    Utf8[] shared = new Utf8[STATUS.length];
+    for (int i = 0; i < COUNT; i++) {
+      record = reader.read(record, in);           // reuse records
+      String status = STATUS[i % STATUS.length];
+      Utf8 value = (Utf8)record.get("status");
+      assertEquals(new Utf8(status), value);
+      if (shared[i % STATUS.length] == null)
+        shared[i % STATUS.length] = value;
+      assertSame(shared[i % STATUS.length], value);
+      GenericArray<Utf8> tags = (GenericArray<Utf8>)record.get("tags");
+      assertEquals(new Utf8("t" + (i % 2)), tags.iterator().next());
+      assertEquals(new Utf8("name" + i), record.get("name"));
+    }
+    assertEquals(COUNT - STATUS.length, statusCache.getHits());
+    assertEquals(STATUS.length, statusCache.getMisses());
+    assertEquals(2, tagCache.size());
+    assertEquals(COUNT - 2, tagCache.getHits());
+  }
+
+  public static class Event {
+    String status;
+    int id;
+  }
+
+  @Test
+  public void testReflectReader() throws Exception {
+    Schema schema = ReflectData.get().getSchema(Event.class);
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    BinaryEncoder encoder = EncoderFactory.defaultFactory()
+      .createBinaryEncoder(out, null);
+    ReflectDatumWriter<Event> writer = new ReflectDatumWriter<Event>(schema);
+    for (int i = 0; i < COUNT; i++) {
+      Event event = new Event();
+      event.status = STATUS[i % STATUS.length];
+      event.id = i;
+      writer.write(event, encoder);
+    }
+    encoder.flush();
+
+    ReflectDatumReader<Event> reader = new ReflectDatumReader<Event>(schema);
+    StringCache cache = new StringCache();
+    reader.setStringCache(schema.getField("status"), cache);
+    BinaryDecoder in = DecoderFactory.defaultFactory()
+      .createBinaryDecoder(out.toByteArray(), null);
+    Event[] events = new Event[COUNT];
+    for (int i = 0; i < COUNT; i++) {
+      events[i] = reader.read(null, in);
+      assertEquals(STATUS[i % STATUS.length], events[i].status);
+      assertEquals(i, events[i].id);
+    }
+    assertSame(events[0].status, events[STATUS.length].status);
+    assertEquals(COUNT - STATUS.length, cache.getHits());
+  }
+
+  private static byte[] write() throws Exception {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    BinaryEncoder encoder = EncoderFactory.defaultFactory()
+      .createBinaryEncoder(out, null);
+    GenericDatumWriter<GenericRecord> writer =
+      new GenericDatumWriter<GenericRecord>(SCHEMA);
+    Schema tagsSchema = SCHEMA.getField("tags").schema();
+    for (int i = 0; i < COUNT; i++) {
+      GenericRecord record = new GenericData.Record(SCHEMA);
+      record.put("status", new Utf8(STATUS[i % STATUS.length]));
+      GenericArray<Utf8> tags = new GenericData.Array<Utf8>(1, tagsSchema);
+      tags.add(new Utf8("t" + (i % 2)));
+      record.put("tags", tags);
+      record.put("name", new Utf8("name" + i));
+      writer.write(record, encoder);
+    }
+    encoder.flush();
+    return out.toByteArray();
+  }
+}
@@ -19,6 +19,7 @@ package org.apache.avro.util;
 
 import org.junit.Test;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
 
 public class TestUtf8 {
   @Test public void testByteConstructor() throws Exception {
@@ -29,4 +30,38 @@ public class TestUtf8 {
       assertEquals(bs[i], u.getBytes()[i]);
     }
   }
+
+  @Test public void testStringCached() throws Exception {
+    String s = "fo\u00f6";
+    Utf8 u = new Utf8(s);
+    assertSame(s, u.toString());
+    assertEquals(4, u.getLength());
+    Utf8 v = new Utf8(s.getBytes("UTF-8"));
+    String decoded = v.toString();
+    assertEquals(s, decoded);
+    assertSame(decoded, v.toString());
+    v.setLength(2);                               // invalidates
+    assertEquals("fo", v.toString());
+    v.setLength(3);
+    v.getBytes()[2] = 'x';
+    assertEquals("fox", v.toString());
+  }
+
+  @Test public void testCharSequence() throws Exception {
+    Utf8 ascii = new Utf8("hello".getBytes("UTF-8"));
+    assertEquals(5, ascii.length());
+    assertEquals('e', ascii.charAt(1));
+    assertEquals("ell", ascii.subSequence(1, 4).toString());
+    Utf8 other = new Utf8("h\u00e9llo".getBytes("UTF-8"));
+    assertEquals(6, other.getLength());
+    assertEquals(5, other.length());
+    assertEquals('\u00e9', other.charAt(1));
+    assertEquals('l', other.charAt(2));
+    assertEquals("h\u00e9llo", new StringBuilder().append(other).toString());
+  }
+
+  @Test(expected=IndexOutOfBoundsException.class)
+  public void testCharAtBounds() {
+    new Utf8("abc").charAt(3);
+  }
 }